@@ -0,0 +1,198 @@
+package org.jenkinsci.plugins.gitclient;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import java.io.Serial;
+import java.io.Serializable;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.Ref;
+
+/**
+ * Refs advertised by a remote repository, as reported by one ls-remote:
+ * the object id of each ref, the peeled object id of annotated tags and
+ * the target of symbolic refs. Maps are in advertisement order.
+ *
+ * @see GitClient#getAdvertisedRefs(String, String)
+ * @since 6.7.0
+ */
+public final class AdvertisedRefs implements Serializable {
+
+    private static final String PEELED_SUFFIX = "^{}";
+    private static final String SYMREF_PREFIX = "ref: ";
+
+    private final Map<String, ObjectId> refs;
+    private final Map<String, ObjectId> peeled;
+    private final Map<String, String> symrefs;
+
+    private AdvertisedRefs(Map<String, ObjectId> refs, Map<String, ObjectId> peeled, Map<String, String> symrefs) {
+        this.refs = Collections.unmodifiableMap(refs);
+        this.peeled = Collections.unmodifiableMap(peeled);
+        this.symrefs = Collections.unmodifiableMap(symrefs);
+    }
+
+    /**
+     * Parses the output of <code>git ls-remote --symref &lt;url&gt;</code>.
+     *
+     * @param output output of the command
+     * @return advertised refs
+     */
+    @NonNull
+    static AdvertisedRefs parseLsRemote(@NonNull String output) {
+        Map<String, ObjectId> refs = new LinkedHashMap<>();
+        Map<String, ObjectId> peeled = new LinkedHashMap<>();
+        Map<String, String> symrefs = new LinkedHashMap<>();
+        for (String line : output.split("\n")) {
+            int tab = line.indexOf('\t');
+            if (tab < 0) {
+                continue;
+            }
+            String name = line.substring(tab + 1).trim();
+            if (line.startsWith(SYMREF_PREFIX)) {
+                symrefs.put(name, line.substring(SYMREF_PREFIX.length(), tab).trim());
+            } else if (tab == 40 && ObjectId.isId(line.substring(0, 40))) {
+                ObjectId id = ObjectId.fromString(line.substring(0, 40));
+                if (name.endsWith(PEELED_SUFFIX)) {
+                    peeled.put(name.substring(0, name.length() - PEELED_SUFFIX.length()), id);
+                } else {
+                    refs.putIfAbsent(name, id);
+                }
+            }
+        }
+        return new AdvertisedRefs(refs, peeled, symrefs);
+    }
+
+    /**
+     * Collects the refs returned by a JGit ls-remote.
+     *
+     * @param advertised refs returned by the remote
+     * @return advertised refs
+     */
+    @NonNull
+    static AdvertisedRefs fromRefs(@NonNull Collection<Ref> advertised) {
+        Map<String, ObjectId> refs = new LinkedHashMap<>();
+        Map<String, ObjectId> peeled = new LinkedHashMap<>();
+        Map<String, String> symrefs = new LinkedHashMap<>();
+        for (Ref ref : advertised) {
+            refs.put(ref.getName(), ref.getObjectId());
+            if (ref.getPeeledObjectId() != null) {
+                peeled.put(ref.getName(), ref.getPeeledObjectId());
+            }
+            if (ref.isSymbolic()) {
+                symrefs.put(ref.getName(), ref.getTarget().getName());
+            }
+        }
+        return new AdvertisedRefs(refs, peeled, symrefs);
+    }
+
+    /**
+     * Combines refs and symbolic refs listed separately.
+     *
+     * @param refs ref names and object ids
+     * @param symrefs symbolic ref names and the names of their targets
+     * @return advertised refs, without peeled object ids
+     */
+    @NonNull
+    static AdvertisedRefs of(@NonNull Map<String, ObjectId> refs, @NonNull Map<String, String> symrefs) {
+        return new AdvertisedRefs(new LinkedHashMap<>(refs), new LinkedHashMap<>(), new LinkedHashMap<>(symrefs));
+    }
+
+    /**
+     * Returns the refs whose name matches <code>pattern</code>, as
+     * <code>git ls-remote &lt;repository&gt; &lt;pattern&gt;</code> would list them.
+     *
+     * @param pattern ls-remote pattern, null for all refs
+     * @return matching refs
+     * @see #lsRemoteMatches(String, String)
+     */
+    @NonNull
+    AdvertisedRefs filter(@CheckForNull String pattern) {
+        if (pattern == null) {
+            return this;
+        }
+        RefGlob glob = RefGlob.lsRemote(pattern);
+        Map<String, ObjectId> matchingRefs = new LinkedHashMap<>();
+        Map<String, ObjectId> matchingPeeled = new LinkedHashMap<>();
+        Map<String, String> matchingSymrefs = new LinkedHashMap<>();
+        for (Map.Entry<String, ObjectId> ref : refs.entrySet()) {
+            if (glob.matches(ref.getKey())) {
+                matchingRefs.put(ref.getKey(), ref.getValue());
+                if (peeled.containsKey(ref.getKey())) {
+                    matchingPeeled.put(ref.getKey(), peeled.get(ref.getKey()));
+                }
+            }
+        }
+        for (Map.Entry<String, String> symref : symrefs.entrySet()) {
+            if (glob.matches(symref.getKey())) {
+                matchingSymrefs.put(symref.getKey(), symref.getValue());
+            }
+        }
+        return new AdvertisedRefs(matchingRefs, matchingPeeled, matchingSymrefs);
+    }
+
+    /**
+     * Returns the object id of each advertised ref. The id of an annotated
+     * tag is the id of the tag object.
+     *
+     * @return ref names and object ids
+     */
+    @NonNull
+    public Map<String, ObjectId> getRefs() {
+        return refs;
+    }
+
+    /**
+     * Returns the object id of each advertised ref, with annotated tags
+     * replaced by the object they point to, like
+     * {@link GitClient#getRemoteReferences(String, String, boolean, boolean)}.
+     *
+     * @return ref names and peeled object ids
+     */
+    @NonNull
+    public Map<String, ObjectId> getPeeledRefs() {
+        Map<String, ObjectId> peeledRefs = new LinkedHashMap<>(refs);
+        peeledRefs.putAll(peeled);
+        return peeledRefs;
+    }
+
+    /**
+     * Returns the object id an annotated tag points to, for each tag
+     * advertised with its peeled value.
+     *
+     * @return ref names and peeled object ids
+     */
+    @NonNull
+    public Map<String, ObjectId> getPeeled() {
+        return peeled;
+    }
+
+    /**
+     * Returns the target of each symbolic ref.
+     *
+     * @return symbolic ref names and the names of their targets
+     */
+    @NonNull
+    public Map<String, String> getSymrefs() {
+        return symrefs;
+    }
+
+    /**
+     * True if <code>refName</code> matches <code>pattern</code> the way
+     * <code>git ls-remote &lt;url&gt; &lt;pattern&gt;</code> matches it:
+     * the pattern matches the end of the ref name at a path component
+     * boundary, '*' and '?' are wildcards.
+     *
+     * @param pattern ls-remote pattern
+     * @param refName name of the ref
+     * @return true if the ref name matches
+     */
+    static boolean lsRemoteMatches(@NonNull String pattern, @NonNull String refName) {
+        return RefGlob.lsRemote(pattern).matches(refName);
+    }
+
+    @Serial
+    private static final long serialVersionUID = 1L;
+}
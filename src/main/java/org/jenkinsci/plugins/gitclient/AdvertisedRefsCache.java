@@ -0,0 +1,238 @@
+package org.jenkinsci.plugins.gitclient;
+
+import com.cloudbees.jenkins.plugins.sshcredentials.SSHUserPrivateKey;
+import com.cloudbees.plugins.credentials.common.StandardCredentials;
+import com.cloudbees.plugins.credentials.common.StandardUsernamePasswordCredentials;
+import com.cloudbees.plugins.credentials.common.UsernameCredentials;
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.plugins.git.GitException;
+import hudson.util.Secret;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cache of the refs advertised by remote repositories, shared by all git
+ * clients of this JVM.
+ * <p>
+ * {@link GitClient#getHeadRev(String)}, {@link GitClient#getHeadRev(String, String)},
+ * {@link GitClient#getRemoteReferences(String, String, boolean, boolean)} and
+ * {@link GitClient#getRemoteSymbolicReferences(String, String)} answer from
+ * the refs of one ls-remote of the repository for {@link #TTL_SECONDS}
+ * seconds, instead of contacting the remote repository on every call.
+ * Entries are keyed by repository URL and a hash of the credentials, since
+ * credentials ids are only unique within one credentials store. Refs
+ * retrieved with credentials whose secret cannot be hashed are not cached. At most
+ * {@link #MAX_ENTRIES} repositories are kept, the least recently used are
+ * evicted first.
+ * <p>
+ * The cache is disabled unless a time to live is configured, because a
+ * cached answer may not include changes pushed since it was retrieved.
+ * Code which learns about a change, like a push notification, can call
+ * {@link #invalidate(String)} so that the next call retrieves the refs again.
+ *
+ * @since 6.7.0
+ */
+public final class AdvertisedRefsCache {
+
+    /**
+     * Seconds advertised refs are reused. Zero disables the cache.
+     */
+    public static final long TTL_SECONDS = Long.getLong(AdvertisedRefsCache.class.getName() + ".ttl", 0L);
+
+    /**
+     * Maximum number of repositories in the cache.
+     */
+    public static final int MAX_ENTRIES =
+            Math.max(1, Integer.getInteger(AdvertisedRefsCache.class.getName() + ".maxEntries", 1000));
+
+    private static final AdvertisedRefsCache INSTANCE =
+            new AdvertisedRefsCache(TimeUnit.SECONDS.toMillis(TTL_SECONDS), MAX_ENTRIES);
+
+    /**
+     * Retrieves the advertised refs from the remote repository.
+     */
+    @FunctionalInterface
+    interface Loader {
+        @NonNull
+        AdvertisedRefs load() throws GitException, InterruptedException;
+    }
+
+    private final long ttlMillis;
+    private final Map<Key, Entry> entries;
+    /* Incremented by each invalidation, so that a load which started before it is not cached */
+    private long generation;
+
+    AdvertisedRefsCache(long ttlMillis, int maxEntries) {
+        this.ttlMillis = ttlMillis;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, Entry> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    static AdvertisedRefsCache get() {
+        return INSTANCE;
+    }
+
+    /**
+     * Returns true if advertised refs are cached.
+     *
+     * @return true if advertised refs are cached
+     */
+    boolean isEnabled() {
+        return ttlMillis > 0;
+    }
+
+    /**
+     * Returns the refs advertised by <code>url</code> to the holder of
+     * <code>credentials</code>, retrieved by <code>loader</code> unless cached.
+     *
+     * @param url remote repository URL
+     * @param credentials credentials used for the repository, null if none
+     * @param loader retrieves the advertised refs
+     * @return advertised refs
+     * @throws GitException if the refs cannot be retrieved
+     * @throws InterruptedException if interrupted
+     */
+    @NonNull
+    AdvertisedRefs refs(@NonNull String url, @CheckForNull StandardCredentials credentials, @NonNull Loader loader)
+            throws GitException, InterruptedException {
+        if (credentials == null) {
+            return get(url, null, loader);
+        }
+        String credentialsKey = isEnabled() ? credentialsKey(credentials) : null;
+        if (credentialsKey == null) {
+            return loader.load();
+        }
+        return get(url, credentialsKey, loader);
+    }
+
+    /**
+     * Returns the refs advertised by <code>url</code>, retrieved by
+     * <code>loader</code> unless cached.
+     *
+     * @param url remote repository URL
+     * @param credentialsKey key of the credentials used for the repository, null if none
+     * @param loader retrieves the advertised refs
+     * @return advertised refs
+     * @throws GitException if the refs cannot be retrieved
+     * @throws InterruptedException if interrupted
+     */
+    @NonNull
+    AdvertisedRefs get(@NonNull String url, @CheckForNull String credentialsKey, @NonNull Loader loader)
+            throws GitException, InterruptedException {
+        if (!isEnabled()) {
+            return loader.load();
+        }
+        Key key = new Key(normalize(url), credentialsKey == null ? "" : credentialsKey);
+        long started = System.currentTimeMillis();
+        long loadGeneration;
+        synchronized (this) {
+            Entry entry = entries.get(key);
+            if (entry != null && started - entry.loaded < ttlMillis) {
+                return entry.refs;
+            }
+            loadGeneration = generation;
+        }
+        AdvertisedRefs refs = loader.load();
+        synchronized (this) {
+            if (generation == loadGeneration) {
+                entries.put(key, new Entry(refs, started));
+            }
+        }
+        return refs;
+    }
+
+    /**
+     * Discards the cached refs of a repository, for example when a push to
+     * the repository was notified. Discards the refs cached for any
+     * credentials.
+     *
+     * @param url remote repository URL
+     */
+    public static void invalidate(@NonNull String url) {
+        INSTANCE.remove(normalize(url));
+    }
+
+    /**
+     * Discards all cached refs.
+     */
+    public static void invalidateAll() {
+        INSTANCE.clear();
+    }
+
+    synchronized void remove(String normalizedUrl) {
+        generation++;
+        Iterator<Key> it = entries.keySet().iterator();
+        while (it.hasNext()) {
+            if (it.next().url.equals(normalizedUrl)) {
+                it.remove();
+            }
+        }
+    }
+
+    synchronized void clear() {
+        generation++;
+        entries.clear();
+    }
+
+    /* Number of cached repositories, for tests */
+    synchronized int size() {
+        return entries.size();
+    }
+
+    /* Hash of the user and secret of credentials, null if their secret is unknown */
+    @CheckForNull
+    static String credentialsKey(@NonNull StandardCredentials credentials) {
+        List<String> parts = new ArrayList<>();
+        parts.add(credentials.getClass().getName());
+        if (credentials instanceof UsernameCredentials usernameCredentials) {
+            parts.add(usernameCredentials.getUsername());
+        }
+        if (credentials instanceof SSHUserPrivateKey privateKey) {
+            parts.addAll(privateKey.getPrivateKeys());
+            parts.add(Secret.toString(privateKey.getPassphrase()));
+        } else if (credentials instanceof StandardUsernamePasswordCredentials password) {
+            parts.add(Secret.toString(password.getPassword()));
+        } else {
+            return null;
+        }
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            for (String part : parts) {
+                digest.update(String.valueOf(part).getBytes(StandardCharsets.UTF_8));
+                digest.update((byte) 0);
+            }
+            return HexFormat.of().formatHex(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    /* The same repository is often written with and without trailing slash or ".git" suffix */
+    static String normalize(String url) {
+        String normalized = url.trim();
+        while (normalized.endsWith("/")) {
+            normalized = normalized.substring(0, normalized.length() - 1);
+        }
+        if (normalized.endsWith(".git")) {
+            normalized = normalized.substring(0, normalized.length() - ".git".length());
+        }
+        return normalized;
+    }
+
+    private record Key(String url, String credentialsKey) {}
+
+    private record Entry(AdvertisedRefs refs, long loaded) {}
+}
@@ -1,6 +1,8 @@
 package org.jenkinsci.plugins.gitclient;
 
+import edu.umd.cs.findbugs.annotations.NonNull;
 import hudson.plugins.git.GitException;
+import java.io.IOException;
 import java.io.Writer;
 import org.eclipse.jgit.lib.ObjectId;
 
@@ -100,6 +102,38 @@ public interface ChangelogCommand extends GitCommand {
      */
     ChangelogCommand to(Writer w);
 
+    /**
+     * Receives the commits of a changelog one at a time.
+     *
+     * @since 6.7.0
+     */
+    @FunctionalInterface
+    interface EntryConsumer {
+        /**
+         * Process one commit of the changelog.
+         *
+         * @param entry commit and the files it changed
+         * @throws IOException if the entry cannot be processed
+         */
+        void accept(@NonNull ChangelogEntry entry) throws IOException;
+    }
+
+    /**
+     * Passes each commit of the changelog to the consumer as a parsed
+     * {@link ChangelogEntry} rather than writing it as text, so the caller
+     * does not have to parse the <code>git log --raw</code> format. Commits
+     * are passed in the order the text format lists them, as soon as each is
+     * read. The writer set by {@link #to(Writer)} is not used when a consumer
+     * is set.
+     *
+     * @param consumer receives each commit of the changelog
+     * @return a {@link org.jenkinsci.plugins.gitclient.ChangelogCommand} object.
+     * @since 6.7.0
+     */
+    default ChangelogCommand entries(@NonNull EntryConsumer consumer) {
+        throw new UnsupportedOperationException(getClass().getName() + " does not support changelog entries");
+    }
+
     /**
      * Limit the number of changelog entries up to n.
      *
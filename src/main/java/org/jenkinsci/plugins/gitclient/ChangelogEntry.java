@@ -0,0 +1,414 @@
+package org.jenkinsci.plugins.gitclient;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import java.io.IOException;
+import java.io.Serial;
+import java.io.Serializable;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import org.eclipse.jgit.diff.DiffEntry;
+import org.eclipse.jgit.diff.DiffEntry.ChangeType;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.PersonIdent;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.jenkinsci.plugins.gitclient.cgit.RecordOutputStream;
+
+/**
+ * One commit of a changelog with the files it changed, as listed by
+ * <code>git log --raw --no-merges -M</code>.
+ *
+ * @see ChangelogCommand#entries(ChangelogCommand.EntryConsumer)
+ * @since 6.7.0
+ */
+public final class ChangelogEntry implements Serializable {
+
+    /**
+     * Format of <code>git log -z --date=raw</code> parsed by {@link LogParser}, one NUL terminated field each.
+     */
+    static final String LOG_FORMAT = "%H%x00%T%x00%P%x00%aN%x00%aE%x00%ad%x00%cN%x00%cE%x00%cd%x00%B";
+
+    private final ObjectId commit;
+    private final ObjectId tree;
+    private final List<ObjectId> parents;
+    private final PersonIdent author;
+    private final PersonIdent committer;
+    private final String message;
+    private final List<Change> changes;
+
+    private ChangelogEntry(
+            ObjectId commit,
+            ObjectId tree,
+            List<ObjectId> parents,
+            PersonIdent author,
+            PersonIdent committer,
+            String message,
+            List<Change> changes) {
+        this.commit = commit;
+        this.tree = tree;
+        this.parents = Collections.unmodifiableList(parents);
+        this.author = author;
+        this.committer = committer;
+        this.message = message;
+        this.changes = Collections.unmodifiableList(changes);
+    }
+
+    /**
+     * Creates the entry of a JGit commit.
+     *
+     * @param commit commit with its headers and message parsed
+     * @param diffs changes of the commit compared to its first parent, renames detected
+     * @return changelog entry
+     */
+    @NonNull
+    static ChangelogEntry fromCommit(@NonNull RevCommit commit, @NonNull List<DiffEntry> diffs) {
+        List<ObjectId> parents = new ArrayList<>(commit.getParentCount());
+        for (RevCommit parent : commit.getParents()) {
+            parents.add(parent.copy());
+        }
+        List<Change> changes = new ArrayList<>(diffs.size());
+        for (DiffEntry diff : diffs) {
+            ChangeType type = diff.getChangeType();
+            changes.add(new Change(
+                    diff.getOldMode().getBits(),
+                    diff.getNewMode().getBits(),
+                    diff.getOldId().toObjectId(),
+                    diff.getNewId().toObjectId(),
+                    type,
+                    diff.getScore(),
+                    type == ChangeType.ADD ? null : diff.getOldPath(),
+                    type == ChangeType.DELETE ? null : diff.getNewPath()));
+        }
+        return new ChangelogEntry(
+                commit.copy(),
+                commit.getTree().copy(),
+                parents,
+                commit.getAuthorIdent(),
+                commit.getCommitterIdent(),
+                withoutFinalNewline(commit.getFullMessage()),
+                changes);
+    }
+
+    private static String withoutFinalNewline(String message) {
+        return message.endsWith("\n") ? message.substring(0, message.length() - 1) : message;
+    }
+
+    /**
+     * Returns the id of the commit.
+     *
+     * @return commit id
+     */
+    @NonNull
+    public ObjectId getCommit() {
+        return commit;
+    }
+
+    /**
+     * Returns the id of the tree of the commit.
+     *
+     * @return tree id
+     */
+    @NonNull
+    public ObjectId getTree() {
+        return tree;
+    }
+
+    /**
+     * Returns the ids of the parents of the commit.
+     *
+     * @return parent ids in commit order, empty for a root commit
+     */
+    @NonNull
+    public List<ObjectId> getParents() {
+        return parents;
+    }
+
+    /**
+     * Returns the author of the commit.
+     *
+     * @return author name, email, date and time zone
+     */
+    @NonNull
+    public PersonIdent getAuthor() {
+        return author;
+    }
+
+    /**
+     * Returns the committer of the commit.
+     *
+     * @return committer name, email, date and time zone
+     */
+    @NonNull
+    public PersonIdent getCommitter() {
+        return committer;
+    }
+
+    /**
+     * Returns the commit message.
+     *
+     * @return full commit message, without its final newline
+     */
+    @NonNull
+    public String getMessage() {
+        return message;
+    }
+
+    /**
+     * Returns the files changed by the commit.
+     *
+     * @return changes compared to the first parent, in path order
+     */
+    @NonNull
+    public List<Change> getChanges() {
+        return changes;
+    }
+
+    @Override
+    public String toString() {
+        return "ChangelogEntry{" + commit.name() + ", " + changes.size() + " changes}";
+    }
+
+    @Serial
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * One file changed by a commit, a line of <code>git log --raw</code>.
+     */
+    public static final class Change implements Serializable {
+        private final int oldMode;
+        private final int newMode;
+        private final ObjectId oldId;
+        private final ObjectId newId;
+        private final ChangeType type;
+        private final int score;
+        private final String oldPath;
+        private final String newPath;
+
+        Change(
+                int oldMode,
+                int newMode,
+                @NonNull ObjectId oldId,
+                @NonNull ObjectId newId,
+                @NonNull ChangeType type,
+                int score,
+                @CheckForNull String oldPath,
+                @CheckForNull String newPath) {
+            this.oldMode = oldMode;
+            this.newMode = newMode;
+            this.oldId = oldId;
+            this.newId = newId;
+            this.type = type;
+            this.score = score;
+            this.oldPath = oldPath;
+            this.newPath = newPath;
+        }
+
+        /**
+         * Returns the file mode before the change.
+         *
+         * @return mode bits, 0 if the file was added
+         */
+        public int getOldMode() {
+            return oldMode;
+        }
+
+        /**
+         * Returns the file mode after the change.
+         *
+         * @return mode bits, 0 if the file was deleted
+         */
+        public int getNewMode() {
+            return newMode;
+        }
+
+        /**
+         * Returns the blob id before the change.
+         *
+         * @return blob id, the zero id if the file was added
+         */
+        @NonNull
+        public ObjectId getOldId() {
+            return oldId;
+        }
+
+        /**
+         * Returns the blob id after the change.
+         *
+         * @return blob id, the zero id if the file was deleted
+         */
+        @NonNull
+        public ObjectId getNewId() {
+            return newId;
+        }
+
+        /**
+         * Returns the kind of change. A change of file type is a modification.
+         *
+         * @return kind of change
+         */
+        @NonNull
+        public ChangeType getType() {
+            return type;
+        }
+
+        /**
+         * Returns the similarity of a renamed or copied file.
+         *
+         * @return similarity percentage, 0 unless renamed or copied
+         */
+        public int getScore() {
+            return score;
+        }
+
+        /**
+         * Returns the path before the change.
+         *
+         * @return path, null if the file was added
+         */
+        @CheckForNull
+        public String getOldPath() {
+            return oldPath;
+        }
+
+        /**
+         * Returns the path after the change.
+         *
+         * @return path, null if the file was deleted
+         */
+        @CheckForNull
+        public String getNewPath() {
+            return newPath;
+        }
+
+        @Override
+        public String toString() {
+            return type + " " + (oldPath == null ? newPath : oldPath) + (newPath == null ? "" : " " + newPath);
+        }
+
+        @Serial
+        private static final long serialVersionUID = 1L;
+    }
+
+    /**
+     * Parses the NUL terminated records of <code>git log --raw -z --date=raw --format=</code>{@link #LOG_FORMAT}.
+     * <p>
+     * The fields of the format are followed by the raw diff entries of the
+     * commit: a record with modes, ids and status, then one path record, or
+     * two for renames and copies. The first diff entry is preceded by a
+     * newline. An entry is passed to the consumer once the next commit starts
+     * or {@link #finish()} is called.
+     */
+    static final class LogParser implements RecordOutputStream.RecordConsumer {
+        private static final int FIELDS = 10;
+
+        private final ChangelogCommand.EntryConsumer consumer;
+        private final String[] fields = new String[FIELDS];
+        private int field;
+        private List<Change> changes = new ArrayList<>();
+        private String[] status;
+        private String oldPath;
+
+        LogParser(@NonNull ChangelogCommand.EntryConsumer consumer) {
+            this.consumer = consumer;
+        }
+
+        @Override
+        public void accept(String record) throws IOException {
+            if (field < FIELDS) {
+                fields[field++] = record;
+            } else if (status != null) {
+                acceptPath(record);
+            } else if (record.startsWith(":") || record.startsWith("\n:")) {
+                status = record.substring(record.indexOf(':') + 1).split(" ");
+                if (status.length != 5) {
+                    throw new IOException("Unexpected raw diff entry: " + record);
+                }
+            } else {
+                finish();
+                fields[field++] = record;
+            }
+        }
+
+        private void acceptPath(String path) {
+            char type = status[4].charAt(0);
+            boolean twoPaths = type == 'R' || type == 'C';
+            if (twoPaths && oldPath == null) {
+                oldPath = path;
+                return;
+            }
+            ChangeType changeType;
+            switch (type) {
+                case 'A':
+                    changeType = ChangeType.ADD;
+                    break;
+                case 'D':
+                    changeType = ChangeType.DELETE;
+                    break;
+                case 'R':
+                    changeType = ChangeType.RENAME;
+                    break;
+                case 'C':
+                    changeType = ChangeType.COPY;
+                    break;
+                default:
+                    changeType = ChangeType.MODIFY;
+                    break;
+            }
+            changes.add(new Change(
+                    Integer.parseInt(status[0], 8),
+                    Integer.parseInt(status[1], 8),
+                    ObjectId.fromString(status[2]),
+                    ObjectId.fromString(status[3]),
+                    changeType,
+                    twoPaths ? Integer.parseInt(status[4].substring(1)) : 0,
+                    twoPaths ? oldPath : changeType == ChangeType.ADD ? null : path,
+                    changeType == ChangeType.DELETE ? null : path));
+            status = null;
+            oldPath = null;
+        }
+
+        /**
+         * Passes the last commit to the consumer.
+         *
+         * @throws IOException if the output ended within a commit or the consumer failed
+         */
+        void finish() throws IOException {
+            if (field == 0) {
+                return;
+            }
+            if (field < FIELDS || status != null) {
+                throw new IOException("Incomplete git log output for commit " + fields[0]);
+            }
+            List<ObjectId> parents = new ArrayList<>(2);
+            for (String parent : fields[2].split(" ")) {
+                if (!parent.isEmpty()) {
+                    parents.add(ObjectId.fromString(parent));
+                }
+            }
+            ChangelogEntry entry = new ChangelogEntry(
+                    ObjectId.fromString(fields[0]),
+                    ObjectId.fromString(fields[1]),
+                    parents,
+                    ident(fields[3], fields[4], fields[5]),
+                    ident(fields[6], fields[7], fields[8]),
+                    withoutFinalNewline(fields[9]),
+                    changes);
+            field = 0;
+            changes = new ArrayList<>();
+            consumer.accept(entry);
+        }
+
+        /* Date in the raw format, seconds since the epoch and time zone offset */
+        private static PersonIdent ident(String name, String email, String date) {
+            int space = date.indexOf(' ');
+            return new PersonIdent(
+                    name,
+                    email,
+                    Instant.ofEpochSecond(Long.parseLong(date.substring(0, space))),
+                    ZoneOffset.of(date.substring(space + 1)));
+        }
+    }
+}
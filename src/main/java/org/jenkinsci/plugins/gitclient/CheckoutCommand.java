@@ -42,6 +42,21 @@ public interface CheckoutCommand extends GitCommand {
      */
     CheckoutCommand sparseCheckoutPaths(List<String> sparseCheckoutPaths);
 
+    /**
+     * Interpret the sparse checkout paths as directories of a cone mode sparse checkout rather than as
+     * <code>.gitignore</code> style patterns. A cone includes the files of the listed directories and their
+     * subdirectories, and the files directly inside each of their parent directories. Matching a cone costs
+     * one lookup per directory rather than one match per pattern and file. Command line git 2.35 or newer is
+     * required, older versions use the paths as patterns.
+     *
+     * @param cone {@code true} to check out the directories listed by {@link #sparseCheckoutPaths(List)} as cones
+     * @return a {@link org.jenkinsci.plugins.gitclient.CheckoutCommand} object.
+     * @since 6.7.0
+     */
+    default CheckoutCommand sparseCheckoutCone(boolean cone) {
+        throw new UnsupportedOperationException(getClass().getName() + " does not support cone mode sparse checkout");
+    }
+
     /**
      * timeout.
      *
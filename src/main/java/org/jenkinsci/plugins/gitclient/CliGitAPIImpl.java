@@ -52,7 +52,6 @@ import java.util.Locale;
 import java.util.Map;
 import java.util.Set;
 import java.util.TreeMap;
-import java.util.concurrent.Callable;
 import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -62,6 +61,7 @@ import java.util.stream.Collectors;
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang3.StringUtils;
+import org.eclipse.jgit.lib.Config;
 import org.eclipse.jgit.lib.Constants;
 import org.eclipse.jgit.lib.ObjectId;
 import org.eclipse.jgit.lib.Ref;
@@ -70,7 +70,10 @@ import org.eclipse.jgit.lib.RepositoryBuilder;
 import org.eclipse.jgit.transport.RefSpec;
 import org.eclipse.jgit.transport.RemoteConfig;
 import org.eclipse.jgit.transport.URIish;
+import org.jenkinsci.plugins.gitclient.cgit.CatFileBatch;
+import org.jenkinsci.plugins.gitclient.cgit.CredentialFileCache;
 import org.jenkinsci.plugins.gitclient.cgit.GitCommandsExecutor;
+import org.jenkinsci.plugins.gitclient.cgit.RecordOutputStream;
 import org.jenkinsci.plugins.scriptsecurity.sandbox.whitelists.Whitelisted;
 import org.kohsuke.stapler.framework.io.WriterOutputStream;
 
@@ -182,6 +185,60 @@ public class CliGitAPIImpl extends LegacyCompatibleGitAPIImpl {
     private static final boolean USE_FORCE_FETCH =
             Boolean.parseBoolean(System.getProperty(CliGitAPIImpl.class.getName() + ".forceFetch", "true"));
 
+    /**
+     * Constant which controls use of a long-lived "git cat-file" process
+     * for object and ref lookups.
+     *
+     * <code>USE_CAT_FILE_BATCH=Boolean.valueOf(System.getProperty(CliGitAPIImpl.class.getName() + ".useCatFileBatch", "true"))</code>.
+     *
+     * revParse, validateRevision, isCommitInRepo, refExists and
+     * getTagMessage write their query to a "git cat-file --batch-check"
+     * or "git cat-file --batch" process instead of launching a new git
+     * command for each call.
+     *
+     * Disabled by default on Windows, where the open pack files of the
+     * process would prevent deleting the workspace or repacked packs.
+     *
+     * Use '-Dorg.jenkinsci.plugins.gitclient.CliGitAPIImpl.useCatFileBatch=false'
+     * to launch a separate git command for each lookup.
+     */
+    private static final boolean USE_CAT_FILE_BATCH = Boolean.parseBoolean(System.getProperty(
+            CliGitAPIImpl.class.getName() + ".useCatFileBatch", File.pathSeparatorChar == ';' ? "false" : "true"));
+
+    /**
+     * Constant which enables the sparse index of command line git in cone
+     * mode sparse checkouts.
+     *
+     * <code>USE_SPARSE_INDEX=Boolean.valueOf(System.getProperty(CliGitAPIImpl.class.getName() + ".useSparseIndex", "false"))</code>.
+     *
+     * A sparse index records a directory outside of the sparse checkout
+     * cones as a single entry rather than one entry per file, so status,
+     * checkout and clean read and write an index sized by the cones. Tools
+     * which read the index directly may not understand a sparse index.
+     *
+     * Use '-Dorg.jenkinsci.plugins.gitclient.CliGitAPIImpl.useSparseIndex=true'
+     * to enable the sparse index in cone mode sparse checkouts.
+     */
+    private static final boolean USE_SPARSE_INDEX =
+            Boolean.parseBoolean(System.getProperty(CliGitAPIImpl.class.getName() + ".useSparseIndex", "false"));
+
+    /**
+     * Constant which controls use of wire protocol version 2 by ls-remote.
+     *
+     * <code>USE_PROTOCOL_V2=Boolean.valueOf(System.getProperty(CliGitAPIImpl.class.getName() + ".useProtocolV2", "true"))</code>.
+     *
+     * With protocol version 2, command line git 2.20 and later send the
+     * namespaces selected by 'ls-remote --heads' and 'ls-remote --tags' to
+     * the server as ref prefixes, and the server only lists the refs of
+     * those namespaces. Servers which do not support protocol version 2
+     * list all refs as before.
+     *
+     * Use '-Dorg.jenkinsci.plugins.gitclient.CliGitAPIImpl.useProtocolV2=false'
+     * to use the protocol version configured for command line git.
+     */
+    private static final boolean USE_PROTOCOL_V2 =
+            Boolean.parseBoolean(System.getProperty(CliGitAPIImpl.class.getName() + ".useProtocolV2", "true"));
+
     private static final Logger LOGGER = Logger.getLogger(CliGitAPIImpl.class.getName());
 
     @Serial
@@ -199,6 +256,9 @@ public class CliGitAPIImpl extends LegacyCompatibleGitAPIImpl {
     private StandardCredentials defaultCredentials;
     private StandardCredentials lfsCredentials;
     private final String encoding;
+    private transient CatFileBatch catFileBatchCheck;
+    private transient CatFileBatch catFileBatch;
+    private transient CredentialFileCache credentialFileCache;
 
     /* If we fail some helper tool (e.g. SELinux chcon) do not make noise
      * until actually git fails. Use a TreeMap to sort by keys (timestamp).
@@ -437,11 +497,27 @@ public class CliGitAPIImpl extends LegacyCompatibleGitAPIImpl {
     /** {@inheritDoc} */
     @Override
     public List<IndexEntry> getSubmodules(String treeIsh) throws GitException, InterruptedException {
-        List<IndexEntry> submodules = lsTree(treeIsh, true);
-
-        // Remove anything that isn't a submodule
-        submodules.removeIf(indexEntry -> !indexEntry.getMode().equals("160000"));
-        return submodules;
+        ObjectId tree = ObjectId.fromString(
+                launchCommand("rev-parse", "--verify", sanitize(treeIsh + "^{tree}")).trim());
+        List<GitlinkCache.Gitlink> gitlinks = GitlinkCache.get().get(tree);
+        if (gitlinks == null) {
+            // Only submodules become objects, the other entries are skipped as they stream by
+            List<GitlinkCache.Gitlink> found = new ArrayList<>();
+            launchCommandIn(
+                    new ArgumentListBuilder("ls-tree", "-r", "-z", tree.name()),
+                    workspace,
+                    environment,
+                    TIMEOUT,
+                    RecordOutputStream.nulTerminated(Charset.forName(encoding), entry -> {
+                        if (entry.startsWith("160000 ")) {
+                            int tab = entry.indexOf('\t');
+                            String id = entry.substring(entry.lastIndexOf(' ', tab) + 1, tab);
+                            found.add(new GitlinkCache.Gitlink(entry.substring(tab + 1), ObjectId.fromString(id)));
+                        }
+                    }));
+            gitlinks = GitlinkCache.get().put(tree, found);
+        }
+        return GitlinkCache.toIndexEntries(gitlinks);
     }
 
     // Package protected for testing
@@ -522,6 +598,7 @@ public class CliGitAPIImpl extends LegacyCompatibleGitAPIImpl {
             private Integer timeout;
             private boolean tags = true;
             private Integer depth = 1;
+            private String filter;
 
             @Override
             public FetchCommand from(URIish remote, List<RefSpec> refspecs) {
@@ -566,6 +643,12 @@ public class CliGitAPIImpl extends LegacyCompatibleGitAPIImpl {
                 return this;
             }
 
+            @Override
+            public FetchCommand filter(String filter) {
+                this.filter = PartialCloneFilter.check(filter);
+                return this;
+            }
+
             @Override
             public void execute() throws GitException, InterruptedException {
                 listener.getLogger().println("Fetching upstream changes from " + url);
@@ -592,13 +675,26 @@ public class CliGitAPIImpl extends LegacyCompatibleGitAPIImpl {
                     args.add("--depth=" + depth);
                 }
 
+                boolean partialClone = isAtLeastVersion(2, 22, 0, 0);
+                if (filter != null) {
+                    if (partialClone) {
+                        args.add("--filter=" + filter);
+                    } else {
+                        listener.getLogger()
+                                .println("[WARNING] Partial clone filter '" + filter
+                                        + "' requires command line git 2.22 or newer, fetching all objects");
+                    }
+                }
+
                 warnIfWindowsTemporaryDirNameHasSpaces();
 
-                StandardCredentials cred = credentials.get(url.toPrivateString());
-                if (cred == null) {
-                    cred = defaultCredentials;
-                }
-                if (isAtLeastVersion(1, 8, 0, 0)) {
+                /* Fetch from the promisor remote by name, so git applies its filter rather than fetching all objects */
+                PromisorRemote promisor = partialClone ? promisorRemote() : null;
+                if (promisor != null
+                        && (promisor.url().equals(url.toString())
+                                || promisor.url().equals(url.toPrivateString()))) {
+                    addCheckedRemoteUrl(args, promisor.name());
+                } else if (isAtLeastVersion(1, 8, 0, 0)) {
                     addCheckedRemoteUrl(args, url.toPrivateASCIIString());
                 } else {
                     // CLI git 1.7.1 on CentOS 6 rejects URL encoded
@@ -635,6 +731,13 @@ public class CliGitAPIImpl extends LegacyCompatibleGitAPIImpl {
                     }
                 }
 
+                StandardCredentials cred = credentials.get(url.toPrivateString());
+                if (cred == null && remoteUrl != url) {
+                    cred = credentials.get(remoteUrl.toPrivateString());
+                }
+                if (cred == null) {
+                    cred = defaultCredentials;
+                }
                 launchCommandWithCredentials(args, workspace, cred, remoteUrl, timeout);
             }
         };
@@ -727,6 +830,7 @@ public class CliGitAPIImpl extends LegacyCompatibleGitAPIImpl {
             private boolean tags = true;
             private List<RefSpec> refspecs;
             private Integer depth = 1;
+            private String filter;
 
             @Override
             public CloneCommand url(String url) {
@@ -802,6 +906,12 @@ public class CliGitAPIImpl extends LegacyCompatibleGitAPIImpl {
                 return this;
             }
 
+            @Override
+            public CloneCommand filter(String filter) {
+                this.filter = PartialCloneFilter.check(filter);
+                return this;
+            }
+
             @Override
             public void execute() throws GitException, InterruptedException {
 
@@ -815,6 +925,7 @@ public class CliGitAPIImpl extends LegacyCompatibleGitAPIImpl {
 
                 listener.getLogger().println("Cloning repository " + url);
 
+                closeCatFileBatches();
                 try {
                     Util.deleteContentsRecursive(workspace);
                 } catch (Exception e) {
@@ -872,11 +983,23 @@ public class CliGitAPIImpl extends LegacyCompatibleGitAPIImpl {
                 if (refspecs == null) {
                     refspecs = Collections.singletonList(new RefSpec("+refs/heads/*:refs/remotes/" + origin + "/*"));
                 }
-                fetch_().from(urIish, refspecs)
+                URIish fetchFrom = urIish;
+                if (filter != null && isAtLeastVersion(2, 22, 0, 0)) {
+                    // git records the remote fetched with a filter as promisor remote, use the remote name
+                    // rather than the URL so later fetches and checkouts fetch missing objects from origin
+                    setRemoteUrl(origin, url);
+                    try {
+                        fetchFrom = new URIish(origin);
+                    } catch (URISyntaxException e) {
+                        throw new GitException("Invalid remote name " + origin, e);
+                    }
+                }
+                fetch_().from(fetchFrom, refspecs)
                         .shallow(shallow)
                         .depth(depth)
                         .timeout(timeout)
                         .tags(tags)
+                        .filter(filter)
                         .execute();
                 setRemoteUrl(origin, url);
                 for (RefSpec refSpec : refspecs) {
@@ -1057,6 +1180,8 @@ public class CliGitAPIImpl extends LegacyCompatibleGitAPIImpl {
 
             @Override
             public void execute() throws GitException, InterruptedException {
+                /* Lookups must not read a repository which is being replaced */
+                closeCatFileBatches();
                 /* Match JGit - create directory if it does not exist */
                 /* Multi-branch pipeline assumes init() creates directory */
                 File workspaceDir = new File(workspace);
@@ -1119,6 +1244,13 @@ public class CliGitAPIImpl extends LegacyCompatibleGitAPIImpl {
     /** {@inheritDoc} */
     @Override
     public ObjectId revParse(String revName) throws GitException, InterruptedException {
+        CatFileBatch.Result object = catFile(revName + "^{commit}", false);
+        if (object != null) {
+            if (object.isMissing()) {
+                throw new GitException("rev-parse no content returned for " + revName);
+            }
+            return object.getId();
+        }
 
         String arg = sanitize(revName + "^{commit}");
         String result = launchCommand("rev-parse", arg);
@@ -1167,6 +1299,105 @@ public class CliGitAPIImpl extends LegacyCompatibleGitAPIImpl {
         return arg;
     }
 
+    /**
+     * Look up <code>name</code> with the long-lived "git cat-file" process
+     * of this instance, starting it if needed. Names are written to the
+     * standard input of the process, so they need no command line quoting.
+     *
+     * @param name object name, as accepted by git rev-parse
+     * @param contents true to read the object content as well
+     * @return result of the lookup, or null if the caller must launch a git command instead
+     */
+    @CheckForNull
+    private CatFileBatch.Result catFile(String name, boolean contents) {
+        if (!USE_CAT_FILE_BATCH || isZos() || name.indexOf('\n') >= 0 || name.indexOf('\r') >= 0) {
+            return null;
+        }
+        CatFileBatch batch;
+        synchronized (this) {
+            if (contents) {
+                if (catFileBatch == null) {
+                    catFileBatch = newCatFileBatch(true);
+                }
+                batch = catFileBatch;
+            } else {
+                if (catFileBatchCheck == null) {
+                    catFileBatchCheck = newCatFileBatch(false);
+                }
+                batch = catFileBatchCheck;
+            }
+        }
+        try {
+            return batch.query(name);
+        } catch (IOException e) {
+            LOGGER.log(Level.FINE, "git cat-file lookup of " + name + " failed, launching git command instead", e);
+            return null;
+        }
+    }
+
+    private CatFileBatch newCatFileBatch(boolean contents) {
+        ArgumentListBuilder gitCommand = new ArgumentListBuilder(gitExe);
+        gitCommand.add(extraGitCommandArguments.toArray(new String[0]));
+        return new CatFileBatch(
+                launcher,
+                gitCommand,
+                catFileBatchDir(),
+                new EnvVars(environment),
+                Charset.forName(encoding),
+                contents,
+                TIMEOUT);
+    }
+
+    /* The idle batch process runs in the git directory, so that it does not keep the workspace in use */
+    private File catFileBatchDir() {
+        try {
+            File gitDir = new RepositoryBuilder().setWorkTree(workspace).setup().getGitDir();
+            if (gitDir != null && gitDir.isDirectory()) {
+                return gitDir;
+            }
+        } catch (IOException | IllegalArgumentException e) {
+            LOGGER.log(Level.FINE, "Unable to find the git directory of " + workspace, e);
+        }
+        // Bare repository
+        return workspace;
+    }
+
+    private synchronized void closeCatFileBatches() {
+        if (catFileBatchCheck != null) {
+            catFileBatchCheck.close();
+            catFileBatchCheck = null;
+        }
+        if (catFileBatch != null) {
+            catFileBatch.close();
+            catFileBatch = null;
+        }
+    }
+
+    /* True if refName is a ref name without revision or pattern syntax, so that
+     * "git cat-file" resolves it to the same ref as "git show-ref" would report.
+     */
+    private static boolean isPlainRefName(String refName) {
+        return StringUtils.containsNone(refName, "^~:?*[\\") && !refName.contains("@{") && !refName.contains("..");
+    }
+
+    /* Message of a raw tag or commit object, without headers or signature, as reported by "git tag -n" */
+    private String objectMessage(byte[] content) {
+        String text = new String(content, Charset.forName(encoding));
+        int body = text.indexOf("\n\n");
+        if (body < 0) {
+            return "";
+        }
+        String message = text.substring(body + 2);
+        Matcher signature = SIGNATURE_START.matcher(message);
+        if (signature.find()) {
+            message = message.substring(0, signature.start());
+        }
+        return message.trim();
+    }
+
+    private static final Pattern SIGNATURE_START = Pattern.compile(
+            "^-----BEGIN (PGP SIGNATURE|PGP MESSAGE|SIGNED MESSAGE|SSH SIGNATURE)-----$", Pattern.MULTILINE);
+
     /**
      * validateRevision.
      *
@@ -1176,6 +1407,17 @@ public class CliGitAPIImpl extends LegacyCompatibleGitAPIImpl {
      * @throws java.lang.InterruptedException if interrupted.
      */
     public ObjectId validateRevision(String revName) throws GitException, InterruptedException {
+        CatFileBatch.Result object = catFile(revName, false);
+        if (object != null) {
+            if (!object.isMissing()) {
+                return object.getId();
+            }
+            // rev-parse --verify accepts a full SHA1 without checking that the object exists
+            if (ObjectId.isId(revName)) {
+                return ObjectId.fromString(revName);
+            }
+            throw new GitException("rev-parse --verify found no object for " + revName);
+        }
         String result = launchCommand("rev-parse", "--verify", revName);
         String line = StringUtils.trimToNull(result);
         if (line == null) {
@@ -1255,6 +1497,7 @@ public class CliGitAPIImpl extends LegacyCompatibleGitAPIImpl {
 
             private Integer n = null;
             private Writer out = null;
+            private EntryConsumer consumer = null;
 
             @Override
             public ChangelogCommand excludes(String rev) {
@@ -1284,6 +1527,12 @@ public class CliGitAPIImpl extends LegacyCompatibleGitAPIImpl {
                 return this;
             }
 
+            @Override
+            public ChangelogCommand entries(@NonNull EntryConsumer consumer) {
+                this.consumer = consumer;
+                return this;
+            }
+
             @Override
             public ChangelogCommand max(int n) {
                 this.n = n;
@@ -1297,6 +1546,10 @@ public class CliGitAPIImpl extends LegacyCompatibleGitAPIImpl {
 
             @Override
             public void execute() throws GitException, InterruptedException {
+                if (consumer != null) {
+                    executeEntries();
+                    return;
+                }
                 ArgumentListBuilder args =
                         new ArgumentListBuilder(gitExe, "log", "--raw", "--no-merges", "--no-abbrev", "-M");
                 if (isAtLeastVersion(1, 8, 3, 0)) {
@@ -1334,6 +1587,31 @@ public class CliGitAPIImpl extends LegacyCompatibleGitAPIImpl {
                     throw new GitException("Error: " + args + " in " + workspace, e);
                 }
             }
+
+            /* Commit fields and raw diff entries as NUL terminated records, parsed as they arrive */
+            private void executeEntries() throws GitException, InterruptedException {
+                ArgumentListBuilder args = new ArgumentListBuilder(
+                        "log", "--raw", "--no-merges", "--no-abbrev", "-M", "-z", "--date=raw");
+                args.add("--format=" + ChangelogEntry.LOG_FORMAT);
+                if (n != null) {
+                    args.add("-n").add(n);
+                }
+                for (String rev : this.revs) {
+                    args.add(rev);
+                }
+                ChangelogEntry.LogParser parser = new ChangelogEntry.LogParser(consumer);
+                launchCommandIn(
+                        args,
+                        workspace,
+                        environment,
+                        TIMEOUT,
+                        RecordOutputStream.nulTerminated(StandardCharsets.UTF_8, parser));
+                try {
+                    parser.finish();
+                } catch (IOException e) {
+                    throw new GitException("Error: " + args + " in " + workspace, e);
+                }
+            }
         };
     }
 
@@ -1476,9 +1754,16 @@ public class CliGitAPIImpl extends LegacyCompatibleGitAPIImpl {
                 // contains the URLs from .gitmodules.
                 submoduleInit();
 
+                // When submodules are updated in parallel, nested submodules
+                // are updated by commands of their own as soon as their parent
+                // is checked out, instead of serially inside the git process
+                // of their top level submodule.
+                boolean nested = recursive && threads > 1;
                 ArgumentListBuilder args = new ArgumentListBuilder();
                 args.add("submodule", "update");
-                if (recursive) {
+                if (nested) {
+                    args.add("--init");
+                } else if (recursive) {
                     args.add("--init", "--recursive");
                 }
                 if (remoteTracking && isAtLeastVersion(1, 8, 2, 0)) {
@@ -1530,13 +1815,21 @@ public class CliGitAPIImpl extends LegacyCompatibleGitAPIImpl {
                     return;
                 }
 
+                new GitCommandsExecutor(threads, listener)
+                        .invokeNested(updateCommands(args, workspace, cfgOutput, nested));
+            }
+
+            /* Commands updating each submodule of the repository in repoDir listed in cfgOutput */
+            private List<GitCommandsExecutor.NestedCommand> updateCommands(
+                    ArgumentListBuilder args, File repoDir, String cfgOutput, boolean nested)
+                    throws GitException, InterruptedException {
                 // Use a matcher to find each configured submodule name, and
                 // then run the submodule update command with the provided
                 // path.
                 Pattern pattern = Pattern.compile(SUBMODULE_REMOTE_PATTERN_STRING, Pattern.MULTILINE);
                 Matcher matcher = pattern.matcher(cfgOutput);
 
-                List<Callable<String>> commands = new ArrayList<>();
+                List<GitCommandsExecutor.NestedCommand> commands = new ArrayList<>();
 
                 while (matcher.find()) {
                     ArgumentListBuilder perModuleArgs = args.clone();
@@ -1545,7 +1838,8 @@ public class CliGitAPIImpl extends LegacyCompatibleGitAPIImpl {
                     // Find the URL for this submodule
                     URIish urIish = null;
                     try {
-                        urIish = new URIish(getSubmoduleUrl(sModuleName));
+                        urIish = new URIish(
+                                configValue(repoDir, "config", "--get", "submodule." + sModuleName + ".url"));
                     } catch (URISyntaxException e) {
                         listener.error("Invalid repository for " + sModuleName);
                         throw new GitException("Invalid repository for " + sModuleName);
@@ -1569,17 +1863,53 @@ public class CliGitAPIImpl extends LegacyCompatibleGitAPIImpl {
                     }
 
                     // Find the path for this submodule
-                    String sModulePath = getSubmodulePath(sModuleName);
+                    String sModulePath = configValue(
+                            repoDir, "config", "-f", ".gitmodules", "--get", "submodule." + sModuleName + ".path");
 
                     perModuleArgs.add(sModulePath);
                     StandardCredentials finalCred = cred;
                     URIish finalUrIish = urIish;
 
-                    commands.add(() ->
-                            launchCommandWithCredentials(perModuleArgs, workspace, finalCred, finalUrIish, timeout));
+                    commands.add(new GitCommandsExecutor.NestedCommand() {
+                        @Override
+                        public List<GitCommandsExecutor.NestedCommand> call()
+                                throws GitException, InterruptedException {
+                            launchCommandWithCredentials(perModuleArgs, repoDir, finalCred, finalUrIish, timeout);
+                            return nested
+                                    ? nestedUpdateCommands(args, new File(repoDir, sModulePath))
+                                    : Collections.emptyList();
+                        }
+
+                        @Override
+                        public String getHost() {
+                            return finalUrIish.getHost();
+                        }
+                    });
                 }
+                return commands;
+            }
 
-                new GitCommandsExecutor(threads, listener).invokeAll(commands);
+            /* Commands updating the nested submodules of the submodule checked out in repoDir */
+            private List<GitCommandsExecutor.NestedCommand> nestedUpdateCommands(
+                    ArgumentListBuilder args, File repoDir) throws GitException, InterruptedException {
+                if (!new File(repoDir, ".gitmodules").isFile()) {
+                    return Collections.emptyList();
+                }
+                launchCommandIn(new ArgumentListBuilder("submodule", "init"), repoDir);
+                String cfgOutput;
+                try {
+                    cfgOutput = launchCommandIn(
+                            new ArgumentListBuilder(
+                                    "config", "-f", ".gitmodules", "--get-regexp", SUBMODULE_REMOTE_PATTERN_CONFIG_KEY),
+                            repoDir);
+                } catch (GitException e) {
+                    return Collections.emptyList();
+                }
+                return updateCommands(args, repoDir, cfgOutput, true);
+            }
+
+            private String configValue(File repoDir, String... args) throws GitException, InterruptedException {
+                return StringUtils.trim(firstLine(launchCommandIn(new ArgumentListBuilder(args), repoDir)));
             }
         };
     }
@@ -2090,15 +2420,20 @@ public class CliGitAPIImpl extends LegacyCompatibleGitAPIImpl {
             @NonNull URIish url,
             Integer timeout)
             throws GitException, InterruptedException {
+        return launchCommandWithCredentials(args, workDir, environment, credentials, url, timeout);
+    }
 
-        Path key = null;
-        Path ssh = null;
-        Path askpass = null;
-        Path usernameFile = null;
-        Path passwordFile = null;
-        Path passphrase = null;
-        Path knownHostsTemp = null;
-        EnvVars env = environment;
+    private String launchCommandWithCredentials(
+            ArgumentListBuilder args,
+            File workDir,
+            EnvVars baseEnv,
+            StandardCredentials credentials,
+            @NonNull URIish url,
+            Integer timeout)
+            throws GitException, InterruptedException {
+
+        CredentialFileCache.CredentialFiles credentialFiles = null;
+        EnvVars env = baseEnv;
         if (!PROMPT_FOR_AUTHENTICATION && isAtLeastVersion(2, 3, 0, 0)) {
             env = new EnvVars(env);
             env.put("GIT_TERMINAL_PROMPT", "false"); // Don't prompt for auth from command line git
@@ -2110,33 +2445,18 @@ public class CliGitAPIImpl extends LegacyCompatibleGitAPIImpl {
             if (credentials instanceof SSHUserPrivateKey sshUser) {
                 listener.getLogger().println("using GIT_SSH to set credentials " + sshUser.getDescription());
 
-                key = createSshKeyFile(sshUser);
                 // Prefer url username if set, OpenSSH 7.7 argument precedence change
                 // See JENKINS-50573 for details
                 String userName = url.getUser();
                 if (userName == null) {
                     userName = sshUser.getUsername();
                 }
-                passphrase = createPassphraseFile(sshUser);
-                // The known hosts file lists the public keys of the git ssh servers.
-                // Public keys of servers are not sensitive information.
-                // They can be stored in the system temporary directory.
-                // Avoids issues with workspace names in the known hosts file path.
-                knownHostsTemp = Files.createTempFile("known_hosts", "");
-                if (launcher.isUnix()) {
-                    ssh = createUnixGitSSH(key, userName, knownHostsTemp);
-                    askpass = createUnixSshAskpass(sshUser, passphrase);
-                } else {
-                    ssh = createWindowsGitSSH(key, userName, knownHostsTemp);
-                    askpass = createWindowsSshAskpass(sshUser, passphrase);
-                }
+                String sshUserName = userName;
+                credentialFiles = credentialFileCache()
+                        .acquire(sshUser, "ssh " + userName, () -> createSshCredentialFiles(sshUser, sshUserName));
 
                 env = new EnvVars(env);
-                env.put("JENKINS_GIT_SSH_KEYFILE", key.toAbsolutePath().toString());
-                env.put("JENKINS_GIT_SSH_USERNAME", userName);
-                env.put("GIT_SSH", ssh.toAbsolutePath().toString());
-                env.put("GIT_SSH_VARIANT", "ssh");
-                env.put("SSH_ASKPASS", askpass.toAbsolutePath().toString());
+                env.putAll(credentialFiles.getEnvironment());
 
                 // supply a dummy value for DISPLAY if not already present
                 // or else ssh will not invoke SSH_ASKPASS
@@ -2147,17 +2467,11 @@ public class CliGitAPIImpl extends LegacyCompatibleGitAPIImpl {
             } else if (credentials instanceof StandardUsernamePasswordCredentials userPass) {
                 listener.getLogger().println("using GIT_ASKPASS to set credentials " + userPass.getDescription());
 
-                usernameFile = createUsernameFile(userPass);
-                passwordFile = createPasswordFile(userPass);
-                if (launcher.isUnix()) {
-                    askpass = createUnixStandardAskpass(userPass, usernameFile, passwordFile);
-                } else {
-                    askpass = createWindowsStandardAskpass(userPass, usernameFile, passwordFile);
-                }
+                credentialFiles =
+                        credentialFileCache().acquire(userPass, "askpass", () -> createAskpassCredentialFiles(userPass));
 
                 env = new EnvVars(env);
-                env.put("GIT_ASKPASS", askpass.toAbsolutePath().toString());
-                env.put("SSH_ASKPASS", askpass.toAbsolutePath().toString());
+                env.putAll(credentialFiles.getEnvironment());
             }
 
             if ("http".equalsIgnoreCase(url.getScheme()) || "https".equalsIgnoreCase(url.getScheme())) {
@@ -2194,13 +2508,84 @@ public class CliGitAPIImpl extends LegacyCompatibleGitAPIImpl {
         } catch (IOException e) {
             throw new GitException("Failed to setup credentials", e);
         } finally {
-            deleteTempFile(key);
-            deleteTempFile(ssh);
-            deleteTempFile(askpass);
-            deleteTempFile(passphrase);
-            deleteTempFile(usernameFile);
-            deleteTempFile(passwordFile);
-            deleteTempFile(knownHostsTemp);
+            if (credentialFiles != null) {
+                credentialFileCache().release(credentialFiles);
+            }
+        }
+    }
+
+    private synchronized CredentialFileCache credentialFileCache() {
+        if (credentialFileCache == null) {
+            credentialFileCache = new CredentialFileCache();
+        }
+        return credentialFileCache;
+    }
+
+    /* Key, passphrase, known hosts, GIT_SSH and SSH_ASKPASS files for an ssh private key */
+    private CredentialFileCache.CredentialFiles createSshCredentialFiles(SSHUserPrivateKey sshUser, String userName)
+            throws IOException {
+        List<Path> files = new ArrayList<>();
+        try {
+            Path key = createSshKeyFile(sshUser);
+            files.add(key);
+            Path passphrase = createPassphraseFile(sshUser);
+            files.add(passphrase);
+            // The known hosts file lists the public keys of the git ssh servers.
+            // Public keys of servers are not sensitive information.
+            // They can be stored in the system temporary directory.
+            // Avoids issues with workspace names in the known hosts file path.
+            Path knownHostsTemp = Files.createTempFile("known_hosts", "");
+            files.add(knownHostsTemp);
+            Path ssh;
+            Path askpass;
+            if (launcher.isUnix()) {
+                ssh = createUnixGitSSH(key, userName, knownHostsTemp);
+                files.add(ssh);
+                askpass = createUnixSshAskpass(sshUser, passphrase);
+            } else {
+                ssh = createWindowsGitSSH(key, userName, knownHostsTemp);
+                files.add(ssh);
+                askpass = createWindowsSshAskpass(sshUser, passphrase);
+            }
+            files.add(askpass);
+
+            Map<String, String> env = new HashMap<>();
+            env.put("JENKINS_GIT_SSH_KEYFILE", key.toAbsolutePath().toString());
+            env.put("JENKINS_GIT_SSH_USERNAME", userName);
+            env.put("GIT_SSH", ssh.toAbsolutePath().toString());
+            env.put("GIT_SSH_VARIANT", "ssh");
+            env.put("SSH_ASKPASS", askpass.toAbsolutePath().toString());
+            return new CredentialFileCache.CredentialFiles(files, env);
+        } catch (IOException | RuntimeException e) {
+            CredentialFileCache.wipe(files);
+            throw e;
+        }
+    }
+
+    /* User name, password and GIT_ASKPASS files for a user name and password */
+    private CredentialFileCache.CredentialFiles createAskpassCredentialFiles(
+            StandardUsernamePasswordCredentials userPass) throws IOException {
+        List<Path> files = new ArrayList<>();
+        try {
+            Path usernameFile = createUsernameFile(userPass);
+            files.add(usernameFile);
+            Path passwordFile = createPasswordFile(userPass);
+            files.add(passwordFile);
+            Path askpass;
+            if (launcher.isUnix()) {
+                askpass = createUnixStandardAskpass(userPass, usernameFile, passwordFile);
+            } else {
+                askpass = createWindowsStandardAskpass(userPass, usernameFile, passwordFile);
+            }
+            files.add(askpass);
+
+            Map<String, String> env = new HashMap<>();
+            env.put("GIT_ASKPASS", askpass.toAbsolutePath().toString());
+            env.put("SSH_ASKPASS", askpass.toAbsolutePath().toString());
+            return new CredentialFileCache.CredentialFiles(files, env);
+        } catch (IOException | RuntimeException e) {
+            CredentialFileCache.wipe(files);
+            throw e;
         }
     }
 
@@ -2426,6 +2811,7 @@ public class CliGitAPIImpl extends LegacyCompatibleGitAPIImpl {
      */
     private void setExtraGitCommandArguments(@NonNull List<String> args) {
         extraGitCommandArguments = new ArrayList<>(args);
+        closeCatFileBatches();
     }
 
     /* package protected for use in tests.
@@ -2786,6 +3172,44 @@ public class CliGitAPIImpl extends LegacyCompatibleGitAPIImpl {
 
     private String launchCommandIn(ArgumentListBuilder args, File workDir, EnvVars env, Integer timeout)
             throws GitException, InterruptedException {
+        return launchCommandIn(args, workDir, env, timeout, null);
+    }
+
+    /**
+     * Launch command using the workspace as working directory and pass each
+     * line of its standard output to <code>consumer</code> as it arrives.
+     * Output is not accumulated, so memory use does not grow with the size of
+     * the command output.
+     *
+     * @param consumer receives each line of the command output
+     * @param args command arguments
+     * @throws hudson.plugins.git.GitException if launched command fails or consumer fails
+     * @throws java.lang.InterruptedException if interrupted
+     */
+    private void launchCommandLines(RecordOutputStream.RecordConsumer consumer, ArgumentListBuilder args)
+            throws GitException, InterruptedException {
+        launchCommandIn(
+                args, workspace, environment, TIMEOUT, RecordOutputStream.lines(Charset.forName(encoding), consumer));
+    }
+
+    private void launchCommandLines(RecordOutputStream.RecordConsumer consumer, String... args)
+            throws GitException, InterruptedException {
+        launchCommandLines(consumer, new ArgumentListBuilder(args));
+    }
+
+    /**
+     * Launch command in <code>workDir</code>. If <code>records</code> is
+     * null, standard output is collected and returned. Otherwise standard
+     * output is streamed into <code>records</code> and an empty string is
+     * returned.
+     */
+    private String launchCommandIn(
+            ArgumentListBuilder args,
+            File workDir,
+            EnvVars env,
+            Integer timeout,
+            @CheckForNull RecordOutputStream records)
+            throws GitException, InterruptedException {
 
         EnvVars freshEnv = new EnvVars(env);
         // If we don't have credentials, but the requested URL requires them,
@@ -2821,7 +3245,7 @@ public class CliGitAPIImpl extends LegacyCompatibleGitAPIImpl {
             String stdout;
             String stderr;
 
-            if (isZos()) {
+            if (isZos() && records == null) {
                 // Another behavior on z/OS required due to the race condition happening during transcoding of charset
                 // in
                 // EBCDIC code page if CopyThread is used on IBM z/OS Java. For unclear reason, if we rely on Proc class
@@ -2838,11 +3262,15 @@ public class CliGitAPIImpl extends LegacyCompatibleGitAPIImpl {
                 stderr = readProcessIntoString(process, encoding, true);
             } else {
                 // JENKINS-13356: capture stdout and stderr separately
+                // Records decode the raw bytes with the git output encoding, so they are pumped the same way on z/OS
                 ByteArrayOutputStream stdoutStream = new ByteArrayOutputStream();
                 ByteArrayOutputStream stderrStream = new ByteArrayOutputStream();
 
-                p.stdout(stdoutStream).stderr(stderrStream);
+                p.stdout(records != null ? records : stdoutStream).stderr(stderrStream);
                 status = p.start().joinWithTimeout(usedTimeout, TimeUnit.MINUTES, listener);
+                if (records != null) {
+                    records.close();
+                }
 
                 stdout = stdoutStream.toString(encoding);
                 stderr = stderrStream.toString(encoding);
@@ -2853,6 +3281,14 @@ public class CliGitAPIImpl extends LegacyCompatibleGitAPIImpl {
                         + stdout + "\nstderr: " + stderr);
             }
 
+            if (records != null) {
+                try {
+                    records.checkFailure();
+                } catch (IOException e) {
+                    throw new GitException("Error parsing output of command \"" + command + "\"", e);
+                }
+            }
+
             return stdout;
         } catch (GitException | InterruptedException e) {
             if (e.getMessage() != null && e.getMessage().contains("unsupported option \"accept-new\"")) {
@@ -2974,20 +3410,7 @@ public class CliGitAPIImpl extends LegacyCompatibleGitAPIImpl {
         String line;
         try {
             while ((line = rdr.readLine()) != null) {
-                if (line.length() < 44 || !line.contains(" ")) {
-                    // Line must contain 2 leading characters, branch
-                    // name (at least 1 character), a space, and 40
-                    // character SHA1.
-                    continue;
-                }
-                // Ignore leading 2 characters (marker for current branch)
-                // Ignore line if second field is not SHA1 length (40 characters)
-                // Split fields into branch name, SHA1, and rest of line
-                // Fields are separated by one or more spaces
-                String[] branchVerboseOutput = line.substring(2).split(" +", 3);
-                if (branchVerboseOutput.length > 1 && branchVerboseOutput[1].length() == 40) {
-                    branches.add(new Branch(branchVerboseOutput[0], ObjectId.fromString(branchVerboseOutput[1])));
-                }
+                parseBranch(line, branches);
             }
         } catch (IOException e) {
             throw new GitException("Error parsing branches", e);
@@ -2996,6 +3419,34 @@ public class CliGitAPIImpl extends LegacyCompatibleGitAPIImpl {
         return branches;
     }
 
+    /**
+     * Launch a "git branch -v --no-abbrev" command and parse its output
+     * line by line as it arrives, rather than after it has been collected.
+     */
+    private Set<Branch> launchBranchCommand(String... args) throws GitException, InterruptedException {
+        Set<Branch> branches = new HashSet<>();
+        // JENKINS-34309 drop CR characters of multi-line commit messages, as parseBranches does
+        launchCommandLines(line -> parseBranch(line.replace("\r", ""), branches), args);
+        return branches;
+    }
+
+    private static void parseBranch(String line, Set<Branch> branches) {
+        if (line.length() < 44 || !line.contains(" ")) {
+            // Line must contain 2 leading characters, branch
+            // name (at least 1 character), a space, and 40
+            // character SHA1.
+            return;
+        }
+        // Ignore leading 2 characters (marker for current branch)
+        // Ignore line if second field is not SHA1 length (40 characters)
+        // Split fields into branch name, SHA1, and rest of line
+        // Fields are separated by one or more spaces
+        String[] branchVerboseOutput = line.substring(2).split(" +", 3);
+        if (branchVerboseOutput.length > 1 && branchVerboseOutput[1].length() == 40) {
+            branches.add(new Branch(branchVerboseOutput[0], ObjectId.fromString(branchVerboseOutput[1])));
+        }
+    }
+
     /**
      * Returns the set of branches defined in this repository,
      * including local branches and remote branches. Remote branches
@@ -3007,7 +3458,7 @@ public class CliGitAPIImpl extends LegacyCompatibleGitAPIImpl {
      */
     @Override
     public Set<Branch> getBranches() throws GitException, InterruptedException {
-        return parseBranches(launchCommand("branch", "-a", "-v", "--no-abbrev"));
+        return launchBranchCommand("branch", "-a", "-v", "--no-abbrev");
     }
 
     /**
@@ -3071,6 +3522,7 @@ public class CliGitAPIImpl extends LegacyCompatibleGitAPIImpl {
             private String branch;
             private boolean deleteBranch;
             private List<String> sparseCheckoutPaths = Collections.emptyList();
+            private boolean sparseCheckoutCone;
             private Integer timeout;
             private String lfsRemote;
             private StandardCredentials lfsCredentials;
@@ -3099,6 +3551,12 @@ public class CliGitAPIImpl extends LegacyCompatibleGitAPIImpl {
                 return this;
             }
 
+            @Override
+            public CheckoutCommand sparseCheckoutCone(boolean cone) {
+                this.sparseCheckoutCone = cone;
+                return this;
+            }
+
             @Override
             public CheckoutCommand timeout(Integer timeout) {
                 this.timeout = timeout;
@@ -3161,7 +3619,7 @@ public class CliGitAPIImpl extends LegacyCompatibleGitAPIImpl {
                         // First, checkout to detached HEAD, so we can delete the branch.
                         ArgumentListBuilder args = new ArgumentListBuilder();
                         args.add("checkout", "-f", ref);
-                        launchCommandIn(args, workspace, checkoutEnv, timeout);
+                        launchCheckout(args, checkoutEnv);
 
                         // Second, check to see if the branch actually exists, and then delete it if it does.
                         for (Branch b : getBranches()) {
@@ -3179,7 +3637,7 @@ public class CliGitAPIImpl extends LegacyCompatibleGitAPIImpl {
                         args.add("-f");
                     }
                     args.add(ref);
-                    launchCommandIn(args, workspace, checkoutEnv, timeout);
+                    launchCheckout(args, checkoutEnv);
 
                     if (lfsRemote != null) {
                         final String url = getRemoteUrl(lfsRemote);
@@ -3226,20 +3684,68 @@ public class CliGitAPIImpl extends LegacyCompatibleGitAPIImpl {
                 }
             }
 
+            /* Checkout of a partial clone fetches missing objects from the promisor remote, with its credentials */
+            private void launchCheckout(ArgumentListBuilder args, EnvVars checkoutEnv)
+                    throws GitException, InterruptedException {
+                PromisorRemote promisor = isAtLeastVersion(2, 22, 0, 0) ? promisorRemote() : null;
+                if (promisor == null) {
+                    launchCommandIn(args, workspace, checkoutEnv, timeout);
+                    return;
+                }
+                StandardCredentials cred = credentials.get(promisor.url());
+                if (cred == null) {
+                    cred = defaultCredentials;
+                }
+                try {
+                    launchCommandWithCredentials(
+                            args, workspace, checkoutEnv, cred, new URIish(promisor.url()), timeout);
+                } catch (URISyntaxException e) {
+                    throw new GitException("Invalid URL " + promisor.url(), e);
+                }
+            }
+
             private void sparseCheckout(@NonNull List<String> paths) throws GitException, InterruptedException {
 
-                boolean coreSparseCheckoutConfigEnable;
+                // git sparse-checkout writes to the worktree config, the last value of a key is the one in effect
+                boolean coreSparseCheckoutConfigEnable = false;
+                boolean coreSparseCheckoutConeConfigEnable = false;
                 try {
-                    coreSparseCheckoutConfigEnable =
-                            launchCommand("config", "core.sparsecheckout").contains("true");
+                    String sparseCheckoutConfig = launchCommand("config", "--get-regexp", "core\\.sparsecheckout");
+                    for (String line : sparseCheckoutConfig.split("\\R")) {
+                        if (line.startsWith("core.sparsecheckout ")) {
+                            coreSparseCheckoutConfigEnable = line.endsWith(" true");
+                        } else if (line.startsWith("core.sparsecheckoutcone ")) {
+                            coreSparseCheckoutConeConfigEnable = line.endsWith(" true");
+                        }
+                    }
                 } catch (GitException ge) {
-                    coreSparseCheckoutConfigEnable = false;
+                    // git config returns status code 1 when neither key is set
                 }
 
-                boolean deactivatingSparseCheckout = false;
                 if (paths.isEmpty() && !coreSparseCheckoutConfigEnable) { // Nothing to do
                     return;
-                } else if (paths.isEmpty() && coreSparseCheckoutConfigEnable) { // deactivating sparse checkout needed
+                }
+                if (coreSparseCheckoutConfigEnable
+                        && coreSparseCheckoutConeConfigEnable
+                        && (paths.isEmpty() || !sparseCheckoutCone)) {
+                    leaveConeMode();
+                    if (paths.isEmpty()) {
+                        return;
+                    }
+                    coreSparseCheckoutConfigEnable = false;
+                }
+                if (sparseCheckoutCone && !paths.isEmpty()) {
+                    if (isAtLeastVersion(2, 35, 0, 0)) {
+                        coneSparseCheckout(paths);
+                        return;
+                    }
+                    listener.getLogger()
+                            .println("[WARNING] Cone mode sparse checkout requires command line git 2.35 or newer, "
+                                    + "using the sparse checkout paths as patterns");
+                }
+
+                boolean deactivatingSparseCheckout = false;
+                if (paths.isEmpty()) { // deactivating sparse checkout needed
                     deactivatingSparseCheckout = true;
                     paths = Collections.singletonList("/*");
                 } else if (!coreSparseCheckoutConfigEnable) { // activating sparse checkout
@@ -3264,6 +3770,56 @@ public class CliGitAPIImpl extends LegacyCompatibleGitAPIImpl {
                             "Could not write sparse checkout file " + sparseCheckoutFile.getAbsolutePath(), e);
                 }
 
+                setLfsFetchOptions(paths);
+
+                try {
+                    launchCommand("read-tree", "-mu", "HEAD");
+                } catch (GitException e) {
+                    // normal return code if sparse checkout path did never exist on the current checkout branch
+                    if (!e.getMessage().contains("returned status code 128:")) {
+                        throw e;
+                    }
+                }
+
+                if (deactivatingSparseCheckout) {
+                    launchCommand("config", "core.sparsecheckout", "false");
+                }
+            }
+
+            /* Restores the full working tree and index, then hands the sparse checkout config back to .git/config */
+            private void leaveConeMode() throws GitException, InterruptedException {
+                launchCommand("sparse-checkout", "disable");
+                launchCommand("config", "--worktree", "--unset-all", "core.sparsecheckout");
+                launchCommand("config", "--worktree", "--unset-all", "core.sparsecheckoutcone");
+                launchCommand("config", "core.sparsecheckout", "false");
+            }
+
+            /* git sparse-checkout writes the cone patterns, enables cone mode and updates the working tree */
+            private void coneSparseCheckout(@NonNull List<String> paths) throws GitException, InterruptedException {
+                ArgumentListBuilder args = new ArgumentListBuilder();
+                args.add("sparse-checkout", "set", "--cone");
+                args.add(USE_SPARSE_INDEX ? "--sparse-index" : "--no-sparse-index");
+                args.add("--");
+                for (String path : paths) {
+                    String directory = coneDirectory(environment.expand(path));
+                    if (!directory.isEmpty()) {
+                        args.add(directory);
+                    }
+                }
+
+                setLfsFetchOptions(paths);
+
+                launchCommand(args);
+            }
+
+            /* Cone mode takes directories, accept the "/dir/" and "/dir/*" patterns of non-cone mode */
+            private String coneDirectory(String path) {
+                String directory = StringUtils.removeStart(path, "/");
+                directory = StringUtils.removeEnd(directory, "/*");
+                return StringUtils.removeEnd(directory, "/");
+            }
+
+            private void setLfsFetchOptions(@NonNull List<String> paths) throws GitException, InterruptedException {
                 if (lfsRemote != null) {
                     // Currently git-lfs doesn't support commas in "fetchinclude" and "fetchexclude".
                     // (see https://github.com/git-lfs/git-lfs/issues/2264)
@@ -3285,19 +3841,6 @@ public class CliGitAPIImpl extends LegacyCompatibleGitAPIImpl {
                         setLfsFetchOption("lfs.fetchexclude", lfsExcludePaths);
                     }
                 }
-
-                try {
-                    launchCommand("read-tree", "-mu", "HEAD");
-                } catch (GitException e) {
-                    // normal return code if sparse checkout path did never exist on the current checkout branch
-                    if (!e.getMessage().contains("returned status code 128:")) {
-                        throw e;
-                    }
-                }
-
-                if (deactivatingSparseCheckout) {
-                    launchCommand("config", "core.sparsecheckout", "false");
-                }
             }
 
             private void setLfsFetchOption(String key, String value) throws GitException, InterruptedException {
@@ -3348,18 +3891,14 @@ public class CliGitAPIImpl extends LegacyCompatibleGitAPIImpl {
     @Override
     public List<IndexEntry> lsTree(String treeIsh, boolean recursive) throws GitException, InterruptedException {
         List<IndexEntry> entries = new ArrayList<>();
-        String result = launchCommand("ls-tree", recursive ? "-r" : null, treeIsh);
-
-        BufferedReader rdr = new BufferedReader(new StringReader(result));
-        String line;
-        try {
-            while ((line = rdr.readLine()) != null) {
-                String[] entry = line.split("\\s+");
-                entries.add(new IndexEntry(entry[0], entry[1], entry[2], entry[3]));
-            }
-        } catch (IOException e) {
-            throw new GitException("Error parsing ls tree", e);
-        }
+        launchCommandLines(
+                line -> {
+                    String[] entry = line.split("\\s+");
+                    entries.add(new IndexEntry(entry[0], entry[1], entry[2], entry[3]));
+                },
+                "ls-tree",
+                recursive ? "-r" : null,
+                treeIsh);
 
         return entries;
     }
@@ -3443,21 +3982,11 @@ public class CliGitAPIImpl extends LegacyCompatibleGitAPIImpl {
                     args.add(refspec);
                 }
 
-                String result = launchCommand(args);
-                BufferedReader rdr = new BufferedReader(new StringReader(result));
-                String line;
-
                 if (out == null) {
                     throw new GitException("RevListCommand requires a value for 'to'");
                 }
-                try {
-                    while ((line = rdr.readLine()) != null) {
-                        // Add the SHA1
-                        out.add(ObjectId.fromString(line));
-                    }
-                } catch (IOException e) {
-                    throw new GitException("Error parsing rev list", e);
-                }
+                // Add each SHA1 as it is reported, rev-list output may be very large
+                launchCommandLines(line -> out.add(ObjectId.fromString(line)), args);
             }
         };
     }
@@ -3496,6 +4025,10 @@ public class CliGitAPIImpl extends LegacyCompatibleGitAPIImpl {
         if (commit == null) {
             return false;
         }
+        CatFileBatch.Result object = catFile(commit.name() + "^{commit}", false);
+        if (object != null) {
+            return !object.isMissing();
+        }
         try {
             // Use revList_() directly in order to pass .nowalk(true) which
             // allows us to bypass the unnecessary revision walk when we
@@ -3563,6 +4096,13 @@ public class CliGitAPIImpl extends LegacyCompatibleGitAPIImpl {
     @Override
     public void clearCredentials() {
         this.credentials.clear();
+        CredentialFileCache cache;
+        synchronized (this) {
+            cache = credentialFileCache;
+        }
+        if (cache != null) {
+            cache.clear();
+        }
     }
 
     /** {@inheritDoc} */
@@ -3593,6 +4133,34 @@ public class CliGitAPIImpl extends LegacyCompatibleGitAPIImpl {
         }
     }
 
+    /* Remote from which a partial clone fetches its missing objects */
+    private record PromisorRemote(String name, String url) {}
+
+    /* Reads the configuration rather than running git config, it is checked before each fetch and checkout */
+    @CheckForNull
+    private PromisorRemote promisorRemote() {
+        if (!new File(workspace, ".git").exists()) {
+            return null;
+        }
+        try (Repository repo = getRepository()) {
+            Config config = repo.getConfig();
+            String name = config.getString("extensions", null, "partialclone");
+            if (name == null) {
+                for (String remote : config.getSubsections("remote")) {
+                    if (config.getBoolean("remote", remote, "promisor", false)) {
+                        name = remote;
+                        break;
+                    }
+                }
+            }
+            String url = name == null ? null : config.getString("remote", name, "url");
+            return url == null ? null : new PromisorRemote(name, url);
+        } catch (GitException | IllegalArgumentException e) {
+            LOGGER.log(Level.FINE, "Failed to read the promisor remote of " + workspace, e);
+            return null;
+        }
+    }
+
     /**
      * Returns the {@link org.eclipse.jgit.lib.Repository} used by this git instance.
      *
@@ -3625,8 +4193,8 @@ public class CliGitAPIImpl extends LegacyCompatibleGitAPIImpl {
     @Override
     public Set<String> getRemoteTagNames(String tagPattern) throws GitException {
         try {
-            ArgumentListBuilder args = new ArgumentListBuilder();
-            args.add("ls-remote", "--tags");
+            ArgumentListBuilder args = lsRemoteArgs();
+            args.add("--tags");
             String remoteUrl = getRemoteUrl("origin");
             if (remoteUrl != null) {
                 addCheckedRemoteUrl(args, remoteUrl);
@@ -3655,17 +4223,10 @@ public class CliGitAPIImpl extends LegacyCompatibleGitAPIImpl {
             ArgumentListBuilder args = new ArgumentListBuilder();
             args.add("tag", "-l", tagPattern);
 
-            String result = launchCommandIn(args, workspace);
-
             Set<String> tags = new HashSet<>();
-            BufferedReader rdr = new BufferedReader(new StringReader(result));
-            String tag;
-            while ((tag = rdr.readLine()) != null) {
-                // Add the SHA1
-                tags.add(tag);
-            }
+            launchCommandLines(tags::add, args);
             return tags;
-        } catch (GitException | IOException | InterruptedException e) {
+        } catch (GitException | InterruptedException e) {
             throw new GitException("Error retrieving tag names", e);
         }
     }
@@ -3673,6 +4234,12 @@ public class CliGitAPIImpl extends LegacyCompatibleGitAPIImpl {
     /** {@inheritDoc} */
     @Override
     public String getTagMessage(String tagName) throws GitException, InterruptedException {
+        if (StringUtils.containsNone(tagName, "*?[\\")) {
+            CatFileBatch.Result object = catFile(Constants.R_TAGS + tagName, true);
+            if (object != null && !object.isMissing()) {
+                return objectMessage(object.getContent());
+            }
+        }
         // 10000 lines of tag message "ought to be enough for anybody"
         String out = launchCommand("tag", "-l", tagName, "-n10000");
         // Strip the leading four spaces which git prefixes multi-line messages with
@@ -3694,6 +4261,12 @@ public class CliGitAPIImpl extends LegacyCompatibleGitAPIImpl {
     @Override
     public boolean refExists(String refName) throws GitException, InterruptedException {
         refName = refName.replace(' ', '_');
+        if (refName.startsWith(Constants.R_REFS) && isPlainRefName(refName)) {
+            CatFileBatch.Result object = catFile(refName, false);
+            if (object != null) {
+                return !object.isMissing();
+            }
+        }
         try {
             launchCommand("show-ref", refName);
             return true; // If show-ref returned zero, ref exists.
@@ -3722,15 +4295,10 @@ public class CliGitAPIImpl extends LegacyCompatibleGitAPIImpl {
             refPrefix = refPrefix.replace(' ', '_');
         }
         try {
-            String result = launchCommand("for-each-ref", "--format=%(refname)", refPrefix);
             Set<String> refs = new HashSet<>();
-            BufferedReader rdr = new BufferedReader(new StringReader(result));
-            String ref;
-            while ((ref = rdr.readLine()) != null) {
-                refs.add(ref);
-            }
+            launchCommandLines(refs::add, "for-each-ref", "--format=%(refname)", refPrefix);
             return refs;
-        } catch (GitException | IOException e) {
+        } catch (GitException e) {
             throw new GitException("Error retrieving refs with prefix " + refPrefix, e);
         }
     }
@@ -3738,7 +4306,16 @@ public class CliGitAPIImpl extends LegacyCompatibleGitAPIImpl {
     /** {@inheritDoc} */
     @Override
     public Map<String, ObjectId> getHeadRev(String url) throws GitException, InterruptedException {
-        ArgumentListBuilder args = new ArgumentListBuilder("ls-remote");
+        if (AdvertisedRefsCache.get().isEnabled()) {
+            Map<String, ObjectId> heads = new HashMap<>();
+            for (Map.Entry<String, ObjectId> ref : advertisedRefs(url).getRefs().entrySet()) {
+                if (ref.getKey().startsWith(Constants.R_HEADS)) {
+                    heads.put(ref.getKey(), ref.getValue());
+                }
+            }
+            return heads;
+        }
+        ArgumentListBuilder args = lsRemoteArgs();
         args.add("-h");
         addCheckedRemoteUrl(args, url);
 
@@ -3765,10 +4342,22 @@ public class CliGitAPIImpl extends LegacyCompatibleGitAPIImpl {
     @Override
     public ObjectId getHeadRev(String url, String branchSpec) throws GitException, InterruptedException {
         final String branchName = extractBranchNameFromBranchSpec(branchSpec);
-        ArgumentListBuilder args = new ArgumentListBuilder("ls-remote");
-        if (!branchName.startsWith("refs/tags/")) {
-            args.add("-h");
+        if (AdvertisedRefsCache.get().isEnabled()) {
+            AdvertisedRefs refs = advertisedRefs(url);
+            // JENKINS-23299 - tag SHA1 needs to be converted to commit SHA1
+            boolean tag = branchName.startsWith("refs/tags/");
+            Map<String, ObjectId> candidates = tag ? refs.getPeeled() : refs.getRefs();
+            RefGlob glob = RefGlob.lsRemote(branchName);
+            for (Map.Entry<String, ObjectId> ref : candidates.entrySet()) {
+                if ((tag || ref.getKey().startsWith(Constants.R_HEADS)) && glob.matches(ref.getKey())) {
+                    return ref.getValue();
+                }
+            }
+            return null;
         }
+        ArgumentListBuilder args = lsRemoteArgs();
+        // Only the refs of one namespace can match, ask the server to list only those
+        args.add(branchName.startsWith("refs/tags/") ? "-t" : "-h");
 
         StandardCredentials cred = credentials.get(url);
         if (cred == null) {
@@ -3790,13 +4379,50 @@ public class CliGitAPIImpl extends LegacyCompatibleGitAPIImpl {
     @Override
     public Map<String, ObjectId> getRemoteReferences(String url, String pattern, boolean headsOnly, boolean tagsOnly)
             throws GitException, InterruptedException {
-        ArgumentListBuilder args = new ArgumentListBuilder("ls-remote");
+        if (AdvertisedRefsCache.get().isEnabled()) {
+            AdvertisedRefs refs = advertisedRefs(url);
+            Map<String, ObjectId> references = new HashMap<>();
+            RefGlob glob = pattern == null ? null : RefGlob.lsRemote(pattern);
+            for (Map.Entry<String, ObjectId> ref : refs.getRefs().entrySet()) {
+                String refName = ref.getKey();
+                if (isListedRef(refName, headsOnly, tagsOnly) && (glob == null || glob.matches(refName))) {
+                    references.putIfAbsent(refName, ref.getValue());
+                }
+            }
+            for (Map.Entry<String, ObjectId> ref : refs.getPeeled().entrySet()) {
+                String refName = ref.getKey();
+                if (!isListedRef(refName, headsOnly, tagsOnly)
+                        || (glob != null && !glob.matches(refName + "^{}"))) {
+                    continue;
+                }
+                if (refName.startsWith("refs/tags")) {
+                    // get peeled object id for annotated tag
+                    references.put(refName, ref.getValue());
+                } else {
+                    references.putIfAbsent(refName + "^{}", ref.getValue());
+                }
+            }
+            return references;
+        }
+        ArgumentListBuilder args = lsRemoteArgs();
         if (headsOnly) {
             args.add("-h");
         }
         if (tagsOnly) {
             args.add("-t");
         }
+        if (!headsOnly && !tagsOnly && pattern != null) {
+            /*
+             * A pattern in the branch or tag namespace only matches refs of that namespace, unless a ref
+             * elsewhere ends with the whole pattern, like refs/notes/refs/heads/x. Ask the server to list
+             * only the refs of the namespace.
+             */
+            if (pattern.startsWith(Constants.R_HEADS)) {
+                args.add("-h");
+            } else if (pattern.startsWith(Constants.R_TAGS)) {
+                args.add("-t");
+            }
+        }
         addCheckedRemoteUrl(args, url);
         if (pattern != null) {
             args.add(pattern);
@@ -3835,10 +4461,17 @@ public class CliGitAPIImpl extends LegacyCompatibleGitAPIImpl {
     public Map<String, String> getRemoteSymbolicReferences(String url, String pattern)
             throws GitException, InterruptedException {
         Map<String, String> references = new HashMap<>();
-        if (isAtLeastVersion(2, 8, 0, 0)) {
+        if (isAtLeastVersion(2, 8, 0, 0) && AdvertisedRefsCache.get().isEnabled()) {
+            RefGlob glob = pattern == null ? null : RefGlob.lsRemote(pattern);
+            for (Map.Entry<String, String> symref : advertisedRefs(url).getSymrefs().entrySet()) {
+                if (glob == null || glob.matches(symref.getKey())) {
+                    references.put(symref.getKey(), symref.getValue());
+                }
+            }
+        } else if (isAtLeastVersion(2, 8, 0, 0)) {
             // --symref is only understood by ls-remote starting from git 2.8.0
             // https://github.com/git/git/blob/afd6726309/Documentation/RelNotes/2.8.0.txt#L72-L73
-            ArgumentListBuilder args = new ArgumentListBuilder("ls-remote");
+            ArgumentListBuilder args = lsRemoteArgs();
             args.add("--symref");
             addCheckedRemoteUrl(args, url);
             if (pattern != null) {
@@ -3864,6 +4497,50 @@ public class CliGitAPIImpl extends LegacyCompatibleGitAPIImpl {
         return references;
     }
 
+    /** {@inheritDoc} */
+    @Override
+    public AdvertisedRefs getAdvertisedRefs(String url, String pattern) throws GitException, InterruptedException {
+        return advertisedRefs(url).filter(pattern);
+    }
+
+    /* All refs advertised by url, from one ls-remote unless cached */
+    private AdvertisedRefs advertisedRefs(String url) throws GitException, InterruptedException {
+        StandardCredentials cred = credentials.get(url);
+        if (cred == null) {
+            cred = defaultCredentials;
+        }
+        StandardCredentials finalCred = cred;
+        return AdvertisedRefsCache.get().refs(url, cred, () -> {
+            ArgumentListBuilder args = lsRemoteArgs();
+            if (isAtLeastVersion(2, 8, 0, 0)) {
+                args.add("--symref");
+            }
+            addCheckedRemoteUrl(args, url);
+            return AdvertisedRefs.parseLsRemote(launchCommandWithCredentials(args, null, finalCred, url));
+        });
+    }
+
+    /*
+     * ls-remote command which uses wire protocol version 2 if enabled. Before git 2.20, ls-remote sent its
+     * patterns as ref prefixes with protocol version 2, which omitted refs matching a pattern.
+     */
+    private ArgumentListBuilder lsRemoteArgs() {
+        ArgumentListBuilder args = new ArgumentListBuilder();
+        if (USE_PROTOCOL_V2 && isAtLeastVersion(2, 20, 0, 0)) {
+            args.add("-c", "protocol.version=2");
+        }
+        return args.add("ls-remote");
+    }
+
+    /* True if ls-remote lists refName when called with -h for headsOnly and -t for tagsOnly */
+    private static boolean isListedRef(String refName, boolean headsOnly, boolean tagsOnly) {
+        if (!headsOnly && !tagsOnly) {
+            return true;
+        }
+        return (headsOnly && refName.startsWith(Constants.R_HEADS))
+                || (tagsOnly && refName.startsWith(Constants.R_TAGS));
+    }
+
     //
     //
     // Legacy Implementation of IGitAPI
@@ -3918,13 +4595,13 @@ public class CliGitAPIImpl extends LegacyCompatibleGitAPIImpl {
     @Override
     public List<Branch> getBranchesContaining(String revspec, boolean allBranches)
             throws GitException, InterruptedException {
-        final String commandOutput;
+        final Set<Branch> branches;
         if (allBranches) {
-            commandOutput = launchCommand("branch", "-a", "-v", "--no-abbrev", "--contains", revspec);
+            branches = launchBranchCommand("branch", "-a", "-v", "--no-abbrev", "--contains", revspec);
         } else {
-            commandOutput = launchCommand("branch", "-v", "--no-abbrev", "--contains", revspec);
+            branches = launchBranchCommand("branch", "-v", "--no-abbrev", "--contains", revspec);
         }
-        return new ArrayList<>(parseBranches(commandOutput));
+        return new ArrayList<>(branches);
     }
 
     /** {@inheritDoc} */
@@ -4046,6 +4723,8 @@ public class CliGitAPIImpl extends LegacyCompatibleGitAPIImpl {
     @Override
     public boolean maintenance(String task) throws InterruptedException {
         boolean isExecuted = true;
+        // Maintenance deletes repacked packs, which the cat-file processes may hold open
+        closeCatFileBatches();
         try {
             listener.getLogger().println("Git maintenance " + task + " started on " + workspace.getName());
             long startTime = System.currentTimeMillis();
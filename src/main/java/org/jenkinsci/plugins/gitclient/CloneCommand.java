@@ -114,4 +114,20 @@ public interface CloneCommand extends GitCommand {
      * @return a {@link org.jenkinsci.plugins.gitclient.CloneCommand} object.
      */
     CloneCommand depth(Integer depth);
+
+    /**
+     * Omit the objects excluded by a partial clone filter, such as <code>blob:none</code> to clone commits and
+     * trees but no file contents, <code>blob:limit=1m</code> to omit files larger than a megabyte, or
+     * <code>tree:0</code> to clone only commits. Command line git records the remote as promisor remote of the
+     * partial clone and fetches the omitted objects from it when they are needed, for example by a checkout.
+     * JGit does not support partial clones and clones all objects.
+     *
+     * @param filter filter spec of <code>git clone --filter</code>, null for no filter
+     * @return a {@link org.jenkinsci.plugins.gitclient.CloneCommand} object.
+     * @throws IllegalArgumentException if the filter is not a valid filter spec
+     * @since 6.7.0
+     */
+    default CloneCommand filter(String filter) {
+        throw new UnsupportedOperationException(getClass().getName() + " does not support partial clone filters");
+    }
 }
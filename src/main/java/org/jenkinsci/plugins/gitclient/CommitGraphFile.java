@@ -0,0 +1,403 @@
+package org.jenkinsci.plugins.gitclient;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.eclipse.jgit.lib.AnyObjectId;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.ObjectId;
+
+/**
+ * Read only view of the commit-graph that command line git writes with
+ * <code>git commit-graph write</code> or
+ * <code>git maintenance run --task=commit-graph</code>.
+ * <p>
+ * The graph lists commits sorted by object id with their parents and their
+ * generation number, the length of the longest path from the commit to a
+ * root commit. A commit never reaches a commit of the same or a higher
+ * generation, which lets reachability walks stop early.
+ * <p>
+ * Like command line git, the single <code>objects/info/commit-graph</code>
+ * file is preferred and the split chain listed in
+ * <code>objects/info/commit-graphs/commit-graph-chain</code> is read
+ * otherwise. Each file of a chain is a layer holding the commits added since
+ * the layers below it, and parents are numbered across all layers, so a
+ * position here is the position in the concatenation of the layers, lowest
+ * layer first.
+ * <p>
+ * The files are memory mapped and shared until they change, so they do not
+ * use heap memory. On Windows, where a mapped file cannot be replaced by git
+ * until the mapping is garbage collected, they are read into memory and not
+ * shared.
+ *
+ * @see <a href="https://git-scm.com/docs/gitformat-commit-graph">commit-graph format</a>
+ */
+final class CommitGraphFile {
+
+    private static final Logger LOGGER = Logger.getLogger(CommitGraphFile.class.getName());
+
+    /** Parent position of a commit without (further) parents. */
+    private static final int NO_PARENT = 0x70000000;
+
+    private static final int SIGNATURE = 0x43475048; // "CGPH"
+    private static final int CHUNK_OID_FANOUT = 0x4f494446; // "OIDF"
+    private static final int CHUNK_OID_LOOKUP = 0x4f49444c; // "OIDL"
+    private static final int CHUNK_COMMIT_DATA = 0x43444154; // "CDAT"
+    private static final int CHUNK_EXTRA_EDGES = 0x45444745; // "EDGE"
+    private static final int COMMIT_DATA_WIDTH = Constants.OBJECT_ID_LENGTH + 16;
+    private static final int MAX_CACHED_LAYERS = 64;
+    private static final boolean MAP_FILES = File.pathSeparatorChar != ';';
+
+    private static final Map<Path, Layer> LAYERS = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Path, Layer> eldest) {
+            return size() > MAX_CACHED_LAYERS;
+        }
+    };
+
+    private final Layer[] layers;
+    /* Position of the first commit of each layer, followed by the number of commits */
+    private final int[] offsets;
+
+    private CommitGraphFile(List<Layer> layers) throws IOException {
+        this.layers = layers.toArray(new Layer[0]);
+        this.offsets = new int[layers.size() + 1];
+        long count = 0;
+        for (int i = 0; i < layers.size(); i++) {
+            offsets[i] = (int) count;
+            count += layers.get(i).commitCount;
+            if (count > Integer.MAX_VALUE) {
+                throw new IOException("commit-graph too large: " + count);
+            }
+        }
+        offsets[layers.size()] = (int) count;
+    }
+
+    /**
+     * Returns the commit-graph of an object directory, or null if it has none
+     * or it cannot be read.
+     *
+     * @param objectDirectory <code>objects</code> directory of a repository
+     * @return commit-graph, null if none
+     */
+    @CheckForNull
+    static CommitGraphFile forObjectDirectory(@NonNull File objectDirectory) {
+        Path info = objectDirectory.toPath().resolve("info");
+        Path file = info.resolve("commit-graph");
+        try {
+            Layer single = layer(file);
+            if (single != null) {
+                return new CommitGraphFile(List.of(single));
+            }
+            file = info.resolve("commit-graphs").resolve("commit-graph-chain");
+            List<Layer> chain = chain(file);
+            return chain.isEmpty() ? null : new CommitGraphFile(chain);
+        } catch (IOException | RuntimeException e) {
+            LOGGER.log(Level.FINE, "Ignoring unreadable commit-graph " + file, e);
+            return null;
+        }
+    }
+
+    /* The layers of a split commit-graph, lowest first, up to the first layer that is missing */
+    private static List<Layer> chain(Path chainFile) throws IOException {
+        List<String> hashes;
+        try {
+            hashes = Files.readAllLines(chainFile, StandardCharsets.US_ASCII);
+        } catch (NoSuchFileException e) {
+            return List.of();
+        }
+        List<Layer> layers = new ArrayList<>(hashes.size());
+        for (String hash : hashes) {
+            if (!ObjectId.isId(hash.trim())) {
+                throw new IOException("invalid commit-graph chain entry '" + hash + "'");
+            }
+            // Layers only reference the layers below them, so the layers read so far are complete
+            Layer layer = layer(chainFile.resolveSibling("graph-" + hash.trim() + ".graph"));
+            if (layer == null) {
+                LOGGER.log(Level.FINE, "Commit-graph chain {0} lists the missing layer {1}", new Object[] {
+                    chainFile, hash
+                });
+                break;
+            }
+            layers.add(layer);
+        }
+        return layers;
+    }
+
+    @CheckForNull
+    private static Layer layer(Path file) throws IOException {
+        BasicFileAttributes attributes;
+        try {
+            attributes = Files.readAttributes(file, BasicFileAttributes.class);
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+        synchronized (LAYERS) {
+            Layer cached = LAYERS.get(file);
+            if (cached != null && cached.matches(attributes)) {
+                return cached;
+            }
+        }
+        Layer layer;
+        try {
+            layer = new Layer(read(file, attributes.size()), attributes);
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+        if (MAP_FILES) {
+            synchronized (LAYERS) {
+                LAYERS.put(file, layer);
+            }
+        }
+        return layer;
+    }
+
+    private static ByteBuffer read(Path file, long size) throws IOException {
+        if (size > Integer.MAX_VALUE) {
+            throw new IOException("commit-graph too large: " + size);
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (MAP_FILES) {
+                return channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            }
+            ByteBuffer heap = ByteBuffer.allocate((int) size);
+            while (heap.hasRemaining() && channel.read(heap) >= 0) {
+                // read the whole file
+            }
+            return heap.flip();
+        }
+    }
+
+    /**
+     * Returns the number of commits in the graph.
+     *
+     * @return number of commits
+     */
+    int size() {
+        return offsets[layers.length];
+    }
+
+    /**
+     * Returns the position of a commit in the graph.
+     *
+     * @param id object id of the commit
+     * @return position, or -1 if the commit is not in the graph
+     */
+    int find(@NonNull AnyObjectId id) {
+        for (int i = layers.length - 1; i >= 0; i--) {
+            int position = layers[i].find(id);
+            if (position >= 0) {
+                return offsets[i] + position;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the object id of the commit at a position.
+     *
+     * @param position position of the commit
+     * @return object id
+     */
+    @NonNull
+    ObjectId objectId(int position) {
+        int layer = layerOf(position);
+        return layers[layer].objectId(position - offsets[layer]);
+    }
+
+    /**
+     * Returns the generation number of the commit at a position, 0 if the
+     * file was written without generation numbers.
+     *
+     * @param position position of the commit
+     * @return generation number
+     */
+    int generation(int position) {
+        int layer = layerOf(position);
+        return layers[layer].generation(position - offsets[layer]);
+    }
+
+    /**
+     * Returns the commit time of the commit at a position.
+     *
+     * @param position position of the commit
+     * @return commit time in seconds since the epoch
+     */
+    long commitTime(int position) {
+        int layer = layerOf(position);
+        return layers[layer].commitTime(position - offsets[layer]);
+    }
+
+    /**
+     * Returns the positions of the parents of the commit at a position.
+     *
+     * @param position position of the commit
+     * @return positions of the parents, in order
+     */
+    @NonNull
+    int[] parents(int position) {
+        // Parent positions of a layer already count the commits of the layers below it
+        int layer = layerOf(position);
+        return layers[layer].parents(position - offsets[layer]);
+    }
+
+    private int layerOf(int position) {
+        if (position < 0 || position >= size()) {
+            throw new IndexOutOfBoundsException("commit-graph position " + position + " out of range");
+        }
+        int layer = layers.length - 1;
+        while (offsets[layer] > position) {
+            layer--;
+        }
+        return layer;
+    }
+
+    /* One commit-graph file, valid while the file keeps its size and modification time */
+    private static final class Layer {
+        private final FileTime lastModified;
+        private final long length;
+        /* Shared by readers, only absolute get methods are used */
+        private final ByteBuffer buffer;
+        private final int commitCount;
+        private final int fanoutOffset;
+        private final int lookupOffset;
+        private final int dataOffset;
+        private final int edgeOffset;
+
+        Layer(ByteBuffer buffer, BasicFileAttributes attributes) throws IOException {
+            this.buffer = buffer;
+            this.lastModified = attributes.lastModifiedTime();
+            this.length = attributes.size();
+            if (buffer.limit() < 8 || buffer.getInt(0) != SIGNATURE) {
+                throw new IOException("not a commit-graph file");
+            }
+            if (buffer.get(4) != 1 || buffer.get(5) != 1) {
+                throw new IOException("unsupported commit-graph version " + buffer.get(4) + " hash " + buffer.get(5));
+            }
+            int chunks = buffer.get(6) & 0xff;
+            int fanout = -1;
+            int lookup = -1;
+            int data = -1;
+            int edges = -1;
+            for (int i = 0; i < chunks; i++) {
+                int entry = 8 + i * 12;
+                int id = buffer.getInt(entry);
+                long offset = buffer.getLong(entry + 4);
+                if (offset < 0 || offset >= buffer.limit()) {
+                    throw new IOException("commit-graph chunk offset out of range");
+                }
+                switch (id) {
+                    case CHUNK_OID_FANOUT -> fanout = (int) offset;
+                    case CHUNK_OID_LOOKUP -> lookup = (int) offset;
+                    case CHUNK_COMMIT_DATA -> data = (int) offset;
+                    case CHUNK_EXTRA_EDGES -> edges = (int) offset;
+                    default -> {
+                        // Bloom filters, base graphs and generation data v2 are not needed
+                    }
+                }
+            }
+            if (fanout < 0 || lookup < 0 || data < 0) {
+                throw new IOException("commit-graph is missing a required chunk");
+            }
+            this.fanoutOffset = fanout;
+            this.lookupOffset = lookup;
+            this.dataOffset = data;
+            this.edgeOffset = edges;
+            this.commitCount = buffer.getInt(fanoutOffset + 255 * 4);
+            if (commitCount < 0
+                    || (long) lookupOffset + (long) commitCount * Constants.OBJECT_ID_LENGTH > buffer.limit()
+                    || (long) dataOffset + (long) commitCount * COMMIT_DATA_WIDTH > buffer.limit()) {
+                throw new IOException("commit-graph is truncated");
+            }
+        }
+
+        boolean matches(BasicFileAttributes attributes) {
+            return length == attributes.size() && lastModified.equals(attributes.lastModifiedTime());
+        }
+
+        int find(AnyObjectId id) {
+            int first = id.getFirstByte();
+            int low = first == 0 ? 0 : buffer.getInt(fanoutOffset + (first - 1) * 4);
+            int high = buffer.getInt(fanoutOffset + first * 4);
+            byte[] raw = new byte[Constants.OBJECT_ID_LENGTH];
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                buffer.get(lookupOffset + middle * Constants.OBJECT_ID_LENGTH, raw);
+                int cmp = id.compareTo(raw, 0);
+                if (cmp == 0) {
+                    return middle;
+                } else if (cmp < 0) {
+                    high = middle;
+                } else {
+                    low = middle + 1;
+                }
+            }
+            return -1;
+        }
+
+        ObjectId objectId(int position) {
+            byte[] raw = new byte[Constants.OBJECT_ID_LENGTH];
+            buffer.get(lookupOffset + position * Constants.OBJECT_ID_LENGTH, raw);
+            return ObjectId.fromRaw(raw);
+        }
+
+        int generation(int position) {
+            return buffer.getInt(dataOffset + position * COMMIT_DATA_WIDTH + 28) >>> 2;
+        }
+
+        long commitTime(int position) {
+            int entry = dataOffset + position * COMMIT_DATA_WIDTH;
+            return ((buffer.getInt(entry + 28) & 0x3L) << 32) | (buffer.getInt(entry + 32) & 0xffffffffL);
+        }
+
+        int[] parents(int position) {
+            int entry = dataOffset + position * COMMIT_DATA_WIDTH + Constants.OBJECT_ID_LENGTH;
+            int first = buffer.getInt(entry);
+            if (first == NO_PARENT) {
+                return new int[0];
+            }
+            int second = buffer.getInt(entry + 4);
+            if (second == NO_PARENT) {
+                return new int[] {first};
+            }
+            if ((second & 0x80000000) == 0) {
+                return new int[] {first, second};
+            }
+            if (edgeOffset < 0) {
+                throw new IllegalStateException("commit-graph has no extra edges chunk");
+            }
+            // Octopus merge, the remaining parents are listed in the extra edges chunk
+            int[] parents = new int[4];
+            parents[0] = first;
+            int count = 1;
+            int edge = edgeOffset + (second & 0x7fffffff) * 4;
+            int value;
+            do {
+                value = buffer.getInt(edge);
+                edge += 4;
+                if (count == parents.length) {
+                    parents = Arrays.copyOf(parents, count * 2);
+                }
+                parents[count++] = value & 0x7fffffff;
+            } while ((value & 0x80000000) == 0);
+            return Arrays.copyOf(parents, count);
+        }
+    }
+}
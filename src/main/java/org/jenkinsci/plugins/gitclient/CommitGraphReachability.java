@@ -0,0 +1,345 @@
+package org.jenkinsci.plugins.gitclient;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import org.eclipse.jgit.internal.storage.file.ObjectDirectory;
+import org.eclipse.jgit.lib.AnyObjectId;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectReader;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevWalk;
+
+/**
+ * Reachability queries answered from the commit-graph of a repository.
+ * <p>
+ * Commits in the {@link CommitGraphFile} are visited by position, without
+ * parsing commit objects, and walks skip every commit whose generation
+ * number shows that it cannot reach the commit searched for. Commits newer
+ * than the graph, typically fetched since it was written, are parsed from
+ * the object database. The graph is closed under ancestry, so a walk never
+ * leaves the graph once it entered it.
+ * <p>
+ * Instances are used by one thread and closed after use.
+ */
+final class CommitGraphReachability implements AutoCloseable {
+
+    private static final byte UNKNOWN = 0;
+    private static final byte PENDING = 1;
+    private static final byte REACHES = 2;
+    private static final byte UNREACHABLE = 3;
+
+    private static final int FIRST = 1;
+    private static final int SECOND = 2;
+    private static final int STALE = 4;
+
+    private final CommitGraphFile graph;
+    private final RevWalk walk;
+
+    private CommitGraphReachability(CommitGraphFile graph, ObjectReader reader) {
+        this.graph = graph;
+        this.walk = new RevWalk(reader);
+        this.walk.setRetainBody(false);
+    }
+
+    /**
+     * Returns a reachability engine for a repository, or null if the
+     * repository has no commit-graph or disabled it with
+     * <code>core.commitGraph=false</code>.
+     *
+     * @param repo repository
+     * @param reader reader of the repository, used for commits newer than the graph
+     * @return reachability engine, null if the repository has no usable commit-graph
+     */
+    @CheckForNull
+    static CommitGraphReachability open(@NonNull Repository repo, @NonNull ObjectReader reader) {
+        if (!repo.getConfig().getBoolean("core", "commitGraph", true)
+                || !(repo.getObjectDatabase() instanceof ObjectDirectory objects)) {
+            return null;
+        }
+        CommitGraphFile graph = CommitGraphFile.forObjectDirectory(objects.getDirectory());
+        return graph == null ? null : new CommitGraphReachability(graph, reader);
+    }
+
+    /**
+     * Finds which tips reach <code>target</code>.
+     *
+     * @param target commit searched for
+     * @param tips commits to search from
+     * @return indices of the tips which reach the target, a tip reaches itself
+     * @throws IOException if a commit newer than the graph cannot be parsed
+     */
+    @NonNull
+    BitSet containing(@NonNull AnyObjectId target, @NonNull List<? extends AnyObjectId> tips) throws IOException {
+        Query query = new Query(target);
+        BitSet containing = new BitSet(tips.size());
+        for (int i = 0; i < tips.size(); i++) {
+            if (query.reaches(tips.get(i))) {
+                containing.set(i);
+            }
+        }
+        return containing;
+    }
+
+    /**
+     * Finds the best common ancestor of two commits, the way
+     * <code>git merge-base</code> does: ancestors are painted down from both
+     * commits in generation order until only ancestors of a common ancestor
+     * remain.
+     *
+     * @param first first commit
+     * @param second second commit
+     * @return the merge base with the latest commit time, null if the commits have no common ancestor
+     * @throws IOException if a commit newer than the graph cannot be parsed
+     */
+    @CheckForNull
+    ObjectId mergeBase(@NonNull AnyObjectId first, @NonNull AnyObjectId second) throws IOException {
+        if (first.equals(second)) {
+            return first.copy();
+        }
+        Map<Object, Node> nodes = new HashMap<>();
+        PriorityQueue<Node> queue = new PriorityQueue<>(Comparator.comparingInt((Node n) -> n.generation)
+                .thenComparingLong(n -> n.commitTime)
+                .reversed());
+        Node a = node(nodes, first);
+        Node b = node(nodes, second);
+        a.flags |= FIRST;
+        b.flags |= SECOND;
+        // Number of queue entries whose commit is not STALE, the search ends when only STALE ones remain
+        int active = 0;
+        active += enqueue(queue, a);
+        active += enqueue(queue, b);
+
+        List<Node> bases = new ArrayList<>();
+        while (active > 0) {
+            Node n = queue.poll();
+            n.queued--;
+            if ((n.flags & STALE) == 0) {
+                active--;
+            }
+            int flags = n.flags & (FIRST | SECOND | STALE);
+            if (flags == (FIRST | SECOND)) {
+                if (!n.base) {
+                    n.base = true;
+                    bases.add(n);
+                }
+                flags |= STALE;
+            }
+            for (Node parent : parents(nodes, n)) {
+                if ((parent.flags & flags) != flags) {
+                    if ((flags & STALE) != 0 && (parent.flags & STALE) == 0) {
+                        active -= parent.queued;
+                    }
+                    parent.flags |= flags;
+                    active += enqueue(queue, parent);
+                }
+            }
+        }
+
+        // Commits newer than the graph are ordered by commit time only, which can find redundant bases
+        Node best = null;
+        for (Node base : bases) {
+            boolean redundant = false;
+            for (Node other : bases) {
+                if (other != base && new Query(base.id()).reaches(other.id())) {
+                    redundant = true;
+                    break;
+                }
+            }
+            if (!redundant && (best == null || base.commitTime > best.commitTime)) {
+                best = base;
+            }
+        }
+        return best == null ? null : best.id();
+    }
+
+    @Override
+    public void close() {
+        walk.close();
+    }
+
+    /* Queues a node, returns 1 if it adds an entry which is not STALE */
+    private static int enqueue(PriorityQueue<Node> queue, Node node) {
+        queue.add(node);
+        node.queued++;
+        return (node.flags & STALE) == 0 ? 1 : 0;
+    }
+
+    private Node node(Map<Object, Node> nodes, AnyObjectId id) throws IOException {
+        int position = graph.find(id);
+        if (position >= 0) {
+            return graphNode(nodes, position);
+        }
+        RevCommit commit = walk.parseCommit(id);
+        Node node = nodes.get(commit);
+        if (node == null) {
+            node = new Node(-1, commit, Integer.MAX_VALUE, commit.getCommitTime());
+            nodes.put(commit, node);
+        }
+        return node;
+    }
+
+    private Node graphNode(Map<Object, Node> nodes, int position) {
+        return nodes.computeIfAbsent(
+                position, p -> new Node(position, null, graph.generation(position), graph.commitTime(position)));
+    }
+
+    private List<Node> parents(Map<Object, Node> nodes, Node node) throws IOException {
+        List<Node> parents = new ArrayList<>(2);
+        if (node.position >= 0) {
+            for (int parent : graph.parents(node.position)) {
+                parents.add(graphNode(nodes, parent));
+            }
+        } else {
+            for (RevCommit parent : node.commit.getParents()) {
+                parents.add(node(nodes, parent));
+            }
+        }
+        return parents;
+    }
+
+    /* A commit visited by the merge base search, in the graph if position >= 0 */
+    private final class Node {
+        final int position;
+        final RevCommit commit;
+        final int generation;
+        final long commitTime;
+        int flags;
+        /* Number of entries of this node in the queue */
+        int queued;
+        boolean base;
+
+        Node(int position, RevCommit commit, int generation, long commitTime) {
+            this.position = position;
+            this.commit = commit;
+            this.generation = generation;
+            this.commitTime = commitTime;
+        }
+
+        ObjectId id() {
+            return position >= 0 ? graph.objectId(position) : commit.copy();
+        }
+    }
+
+    /* Memoized "reaches target" answers of the commits visited while searching for one target */
+    private final class Query {
+        private final ObjectId target;
+        private final int targetPosition;
+        private final int targetGeneration;
+        private final byte[] states;
+        private final Map<RevCommit, Byte> newerStates = new HashMap<>();
+
+        Query(AnyObjectId target) {
+            this.target = target.copy();
+            this.targetPosition = graph.find(target);
+            this.targetGeneration = targetPosition >= 0 ? graph.generation(targetPosition) : 0;
+            // A commit outside the graph is never reached from inside the graph
+            this.states = targetPosition >= 0 ? new byte[graph.size()] : null;
+        }
+
+        boolean reaches(AnyObjectId tip) throws IOException {
+            int position = graph.find(tip);
+            if (position >= 0) {
+                return reaches(position);
+            }
+            return reaches(walk.parseCommit(tip));
+        }
+
+        /* Depth first walk of commits newer than the graph, parsed from the object database */
+        private boolean reaches(RevCommit start) throws IOException {
+            Deque<RevCommit> stack = new ArrayDeque<>();
+            stack.push(start);
+            while (!stack.isEmpty()) {
+                RevCommit commit = stack.peek();
+                byte state = newerStates.getOrDefault(commit, UNKNOWN);
+                if (state >= REACHES) {
+                    stack.pop();
+                } else if (commit.equals(target)) {
+                    newerStates.put(commit, REACHES);
+                    stack.pop();
+                } else if (state == UNKNOWN) {
+                    newerStates.put(commit, PENDING);
+                    walk.parseHeaders(commit);
+                    for (RevCommit parent : commit.getParents()) {
+                        if (graph.find(parent) < 0) {
+                            stack.push(parent);
+                        }
+                    }
+                } else {
+                    boolean reaches = false;
+                    for (RevCommit parent : commit.getParents()) {
+                        int position = graph.find(parent);
+                        reaches = position >= 0 ? reaches(position) : newerStates.getOrDefault(parent, UNKNOWN) == REACHES;
+                        if (reaches) {
+                            break;
+                        }
+                    }
+                    newerStates.put(commit, reaches ? REACHES : UNREACHABLE);
+                    stack.pop();
+                }
+            }
+            return newerStates.getOrDefault(start, UNKNOWN) == REACHES;
+        }
+
+        /* Depth first walk of commits in the graph, skipping commits of a lower generation than the target */
+        private boolean reaches(int start) {
+            if (states == null) {
+                return false;
+            }
+            int[] stack = new int[64];
+            int size = 0;
+            stack[size++] = start;
+            while (size > 0) {
+                int position = stack[size - 1];
+                byte state = states[position];
+                if (state >= REACHES) {
+                    size--;
+                } else if (position == targetPosition) {
+                    states[position] = REACHES;
+                    size--;
+                } else if (cannotReach(position)) {
+                    states[position] = UNREACHABLE;
+                    size--;
+                } else if (state == UNKNOWN) {
+                    states[position] = PENDING;
+                    for (int parent : graph.parents(position)) {
+                        if (states[parent] == UNKNOWN) {
+                            if (size == stack.length) {
+                                stack = Arrays.copyOf(stack, size * 2);
+                            }
+                            stack[size++] = parent;
+                        }
+                    }
+                } else {
+                    byte result = UNREACHABLE;
+                    for (int parent : graph.parents(position)) {
+                        if (states[parent] == REACHES) {
+                            result = REACHES;
+                            break;
+                        }
+                    }
+                    states[position] = result;
+                    size--;
+                }
+            }
+            return states[start] == REACHES;
+        }
+
+        /* Generation numbers strictly decrease from a commit to its parents, 0 means unknown */
+        private boolean cannotReach(int position) {
+            int generation = graph.generation(position);
+            return targetGeneration > 0 && generation > 0 && generation <= targetGeneration;
+        }
+    }
+}
@@ -64,4 +64,20 @@ public interface FetchCommand extends GitCommand {
      * @return a {@link org.jenkinsci.plugins.gitclient.CloneCommand} object.
      */
     FetchCommand depth(Integer depth);
+
+    /**
+     * Omit the objects excluded by a partial clone filter, such as <code>blob:none</code> to fetch commits and
+     * trees but no file contents, <code>blob:limit=1m</code> to omit files larger than a megabyte, or
+     * <code>tree:0</code> to fetch only commits. Command line git fetches the omitted objects when they are
+     * needed, for example by a checkout. JGit does not support partial clones and fetches all objects.
+     * Has no effect if the remote does not support filters.
+     *
+     * @param filter filter spec of <code>git fetch --filter</code>, null for no filter
+     * @return a {@link org.jenkinsci.plugins.gitclient.FetchCommand} object.
+     * @throws IllegalArgumentException if the filter is not a valid filter spec
+     * @since 6.7.0
+     */
+    default FetchCommand filter(String filter) {
+        throw new UnsupportedOperationException(getClass().getName() + " does not support partial clone filters");
+    }
 }
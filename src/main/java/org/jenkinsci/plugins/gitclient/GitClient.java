@@ -660,6 +660,28 @@ public interface GitClient {
     Map<String, String> getRemoteSymbolicReferences(String remoteRepoUrl, String pattern)
             throws GitException, InterruptedException;
 
+    /**
+     * List references, peeled annotated tags and symbolic references of a remote repository from a single
+     * advertisement. Equivalent to <code>git ls-remote --symref &lt;repository&gt; [&lt;refs&gt;]</code>, so the
+     * remote repository is contacted once instead of once for
+     * {@link #getRemoteReferences(String, String, boolean, boolean)} and once for
+     * {@link #getRemoteSymbolicReferences(String, String)}.
+     *
+     * @param remoteRepoUrl Remote repository URL.
+     * @param pattern       Only references matching the given pattern are returned, null for all references.
+     * @return advertised references. Symbolic references are empty if the remote does not report them or if the
+     * command line git version does not support reporting them.
+     * @throws hudson.plugins.git.GitException if underlying git operation fails.
+     * @throws java.lang.InterruptedException  if interrupted.
+     * @since 6.7.0
+     */
+    default AdvertisedRefs getAdvertisedRefs(String remoteRepoUrl, String pattern)
+            throws GitException, InterruptedException {
+        return AdvertisedRefs.of(
+                getRemoteReferences(remoteRepoUrl, pattern, false, false),
+                getRemoteSymbolicReferences(remoteRepoUrl, pattern));
+    }
+
     /**
      * Retrieve commit object that is direct child for <code>revName</code> revision reference.
      *
@@ -1017,6 +1039,19 @@ public interface GitClient {
      */
     void config(ConfigLevel configLevel, String key, String value) throws GitException, InterruptedException;
 
+    /**
+     * Returns a {@link QueryBatch} which records read-only queries and
+     * answers them together. When this client runs on an agent, the
+     * queries are answered with a single remote call rather than one
+     * remote call per query.
+     *
+     * @return a {@link org.jenkinsci.plugins.gitclient.QueryBatch} object.
+     * @since 6.7.0
+     */
+    default QueryBatch queryBatch() {
+        return new QueryBatch(this);
+    }
+
     /**
      * Level of git configuration that will be adjusted by configuration changes.
      *
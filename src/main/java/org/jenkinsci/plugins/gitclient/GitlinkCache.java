@@ -0,0 +1,101 @@
+package org.jenkinsci.plugins.gitclient;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.plugins.git.IndexEntry;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import org.eclipse.jgit.lib.AnyObjectId;
+import org.eclipse.jgit.lib.ObjectId;
+
+/**
+ * Gitlinks (submodule entries) found in trees, shared by all git clients of
+ * this JVM.
+ * <p>
+ * A tree id names the content of the tree, so the gitlinks found in a tree
+ * never change and can be reused by any repository containing the tree.
+ * Finding the submodules of a commit which shares most of its trees with a
+ * commit already scanned then only reads the trees which changed. At most
+ * {@link #MAX_TREES} trees are kept, the least recently used are evicted
+ * first.
+ */
+final class GitlinkCache {
+
+    /**
+     * Maximum number of trees in the cache.
+     */
+    static final int MAX_TREES = Math.max(1, Integer.getInteger(GitlinkCache.class.getName() + ".maxTrees", 10000));
+
+    private static final GitlinkCache INSTANCE = new GitlinkCache(MAX_TREES);
+
+    /**
+     * Submodule entry of a tree.
+     *
+     * @param path path of the submodule relative to the tree
+     * @param id commit of the submodule
+     */
+    record Gitlink(@NonNull String path, @NonNull ObjectId id) {}
+
+    private final Map<ObjectId, List<Gitlink>> trees;
+
+    GitlinkCache(int maxTrees) {
+        this.trees = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<ObjectId, List<Gitlink>> eldest) {
+                return size() > maxTrees;
+            }
+        };
+    }
+
+    static GitlinkCache get() {
+        return INSTANCE;
+    }
+
+    /**
+     * Returns the gitlinks found in <code>tree</code> and its subtrees, or
+     * null if the tree is not cached.
+     *
+     * @param tree id of the tree
+     * @return gitlinks of the tree, null if unknown
+     */
+    @CheckForNull
+    synchronized List<Gitlink> get(@NonNull AnyObjectId tree) {
+        return trees.get(tree);
+    }
+
+    /**
+     * Records the gitlinks found in <code>tree</code> and its subtrees.
+     *
+     * @param tree id of the tree
+     * @param gitlinks gitlinks of the tree
+     * @return the unmodifiable list of gitlinks which was recorded
+     */
+    @NonNull
+    synchronized List<Gitlink> put(@NonNull AnyObjectId tree, @NonNull List<Gitlink> gitlinks) {
+        List<Gitlink> recorded = gitlinks.isEmpty() ? List.of() : List.copyOf(gitlinks);
+        trees.put(tree.copy(), recorded);
+        return recorded;
+    }
+
+    /* Number of cached trees, for tests */
+    synchronized int size() {
+        return trees.size();
+    }
+
+    /**
+     * Converts gitlinks to the entries returned by {@link GitClient#getSubmodules(String)}.
+     *
+     * @param gitlinks gitlinks of a tree
+     * @return new index entries, one for each gitlink
+     */
+    @NonNull
+    static List<IndexEntry> toIndexEntries(@NonNull List<Gitlink> gitlinks) {
+        List<IndexEntry> entries = new ArrayList<>(gitlinks.size());
+        for (Gitlink gitlink : gitlinks) {
+            entries.add(new IndexEntry("160000", "commit", gitlink.id().name(), gitlink.path()));
+        }
+        return entries;
+    }
+}
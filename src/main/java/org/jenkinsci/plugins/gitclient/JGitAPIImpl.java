@@ -17,7 +17,9 @@ import static org.jenkinsci.plugins.gitclient.CliGitAPIImpl.TIMEOUT_LOG_PREFIX;
 import com.cloudbees.jenkins.plugins.sshcredentials.SSHUserPrivateKey;
 import com.cloudbees.plugins.credentials.common.StandardCredentials;
 import com.cloudbees.plugins.credentials.common.StandardUsernameCredentials;
+import com.cloudbees.plugins.credentials.common.StandardUsernamePasswordCredentials;
 import com.cloudbees.plugins.credentials.common.UsernameCredentials;
+import edu.umd.cs.findbugs.annotations.CheckForNull;
 import edu.umd.cs.findbugs.annotations.NonNull;
 import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
 import hudson.FilePath;
@@ -30,6 +32,7 @@ import hudson.plugins.git.GitObject;
 import hudson.plugins.git.IndexEntry;
 import hudson.plugins.git.Revision;
 import hudson.util.Secret;
+import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
@@ -43,18 +46,21 @@ import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Collection;
+import java.util.BitSet;
 import java.util.Collections;
-import java.util.Comparator;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.HexFormat;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
+import java.util.TreeMap;
 import java.util.function.Predicate;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -71,7 +77,6 @@ import org.eclipse.jgit.api.CreateBranchCommand.SetupUpstreamMode;
 import org.eclipse.jgit.api.FetchCommand;
 import org.eclipse.jgit.api.Git;
 import org.eclipse.jgit.api.ListBranchCommand;
-import org.eclipse.jgit.api.LsRemoteCommand;
 import org.eclipse.jgit.api.MergeCommand.FastForwardMode;
 import org.eclipse.jgit.api.MergeResult;
 import org.eclipse.jgit.api.RebaseCommand.Operation;
@@ -85,18 +90,23 @@ import org.eclipse.jgit.api.errors.CanceledException;
 import org.eclipse.jgit.api.errors.CheckoutConflictException;
 import org.eclipse.jgit.api.errors.GitAPIException;
 import org.eclipse.jgit.api.errors.JGitInternalException;
+import org.eclipse.jgit.diff.DiffConfig;
 import org.eclipse.jgit.diff.DiffEntry;
 import org.eclipse.jgit.diff.DiffEntry.ChangeType;
 import org.eclipse.jgit.diff.RenameDetector;
+import org.eclipse.jgit.errors.ConfigInvalidException;
 import org.eclipse.jgit.errors.InvalidPatternException;
 import org.eclipse.jgit.errors.LockFailedException;
 import org.eclipse.jgit.errors.NotSupportedException;
 import org.eclipse.jgit.errors.TransportException;
 import org.eclipse.jgit.fnmatch.FileNameMatcher;
-import org.eclipse.jgit.internal.storage.file.FileRepository;
+import org.eclipse.jgit.internal.storage.dfs.DfsRepositoryDescription;
+import org.eclipse.jgit.internal.storage.dfs.InMemoryRepository;
 import org.eclipse.jgit.internal.transport.ssh.OpenSshConfigFile;
+import org.eclipse.jgit.lib.AnyObjectId;
 import org.eclipse.jgit.lib.Config;
 import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.FileMode;
 import org.eclipse.jgit.lib.ObjectId;
 import org.eclipse.jgit.lib.ObjectLoader;
 import org.eclipse.jgit.lib.ObjectReader;
@@ -107,11 +117,11 @@ import org.eclipse.jgit.lib.RefUpdate;
 import org.eclipse.jgit.lib.Repository;
 import org.eclipse.jgit.lib.RepositoryBuilder;
 import org.eclipse.jgit.lib.StoredConfig;
+import org.eclipse.jgit.lib.SubmoduleConfig;
 import org.eclipse.jgit.merge.MergeStrategy;
 import org.eclipse.jgit.notes.Note;
 import org.eclipse.jgit.revwalk.RevCommit;
 import org.eclipse.jgit.revwalk.RevFlag;
-import org.eclipse.jgit.revwalk.RevFlagSet;
 import org.eclipse.jgit.revwalk.RevObject;
 import org.eclipse.jgit.revwalk.RevSort;
 import org.eclipse.jgit.revwalk.RevTree;
@@ -127,6 +137,7 @@ import org.eclipse.jgit.transport.RefSpec;
 import org.eclipse.jgit.transport.RemoteConfig;
 import org.eclipse.jgit.transport.RemoteRefUpdate;
 import org.eclipse.jgit.transport.SshConstants;
+import org.eclipse.jgit.transport.SshSessionFactory;
 import org.eclipse.jgit.transport.SshTransport;
 import org.eclipse.jgit.transport.TagOpt;
 import org.eclipse.jgit.transport.Transport;
@@ -134,11 +145,17 @@ import org.eclipse.jgit.transport.TransportHttp;
 import org.eclipse.jgit.transport.URIish;
 import org.eclipse.jgit.transport.sshd.SshdSessionFactory;
 import org.eclipse.jgit.transport.sshd.SshdSessionFactoryBuilder;
+import org.eclipse.jgit.treewalk.CanonicalTreeParser;
+import org.eclipse.jgit.treewalk.EmptyTreeIterator;
 import org.eclipse.jgit.treewalk.TreeWalk;
 import org.eclipse.jgit.treewalk.filter.TreeFilter;
+import org.eclipse.jgit.util.FS;
+import org.eclipse.jgit.util.SystemReader;
+import org.jenkinsci.plugins.gitclient.cgit.GitCommandsExecutor;
 import org.jenkinsci.plugins.gitclient.jgit.PreemptiveAuthHttpClientConnectionFactory;
 import org.jenkinsci.plugins.gitclient.jgit.SmartCredentialsProvider;
 import org.jenkinsci.plugins.gitclient.verifier.HostKeyVerifierFactory;
+import org.jenkinsci.plugins.gitclient.verifier.ManuallyProvidedKeyVerifier;
 
 /**
  * GitClient pure Java implementation using JGit.
@@ -164,6 +181,15 @@ public class JGitAPIImpl extends LegacyCompatibleGitAPIImpl {
 
     public static final String SSH_CONFIG_PATH = JGitAPIImpl.class + ".sshConfigPath";
 
+    /**
+     * Use wire protocol version 2 to list remote refs, so that the server
+     * only lists the refs which may match the requested pattern. Use
+     * '-Dorg.jenkinsci.plugins.gitclient.JGitAPIImpl.useProtocolV2=false'
+     * to use the protocol version of the git configuration.
+     */
+    private static final boolean USE_PROTOCOL_V2 =
+            Boolean.parseBoolean(System.getProperty(JGitAPIImpl.class.getName() + ".useProtocolV2", "true"));
+
     JGitAPIImpl(File workspace, TaskListener listener) {
         /* If workspace is null, then default to current directory to match
          * CliGitAPIImpl behavior */
@@ -268,6 +294,56 @@ public class JGitAPIImpl extends LegacyCompatibleGitAPIImpl {
         return builder.build(null);
     }
 
+    /**
+     * Returns the SSH session factory of a transport. Its sessions are taken
+     * from the process wide {@link SshSessionPool}, unless pooling is disabled
+     * or the host keys are provided with this client.
+     */
+    private SshSessionFactory sshSessionFactory(@NonNull final HostKeyVerifierFactory hostKeyVerifierFactory) {
+        SshSessionPool pool = SshSessionPool.get();
+        if (!pool.isEnabled() || hostKeyVerifierFactory instanceof ManuallyProvidedKeyVerifier) {
+            return buildSshdSessionFactory(hostKeyVerifierFactory);
+        }
+        return pool.sessionFactory(
+                sshFingerprint(hostKeyVerifierFactory), () -> buildSshdSessionFactory(hostKeyVerifierFactory));
+    }
+
+    /* Hash of everything an SSH session built by buildSshdSessionFactory depends on */
+    private String sshFingerprint(HostKeyVerifierFactory hostKeyVerifierFactory) {
+        List<String> parts = new ArrayList<>();
+        parts.add(hostKeyVerifierFactory.getClass().getName());
+        parts.add(hostKeyVerifierFactory.getKnownHostsFile().getAbsolutePath());
+        parts.add(SystemProperties.getString(SSH_CONFIG_PATH));
+        for (Map.Entry<String, StandardCredentials> entry : new TreeMap<>(getProvider().getCredentials()).entrySet()) {
+            StandardCredentials credentials = entry.getValue();
+            if (credentials == null) {
+                continue;
+            }
+            parts.add(entry.getKey());
+            parts.add(credentials.getClass().getName());
+            parts.add(credentials.getId());
+            if (credentials instanceof UsernameCredentials usernameCredentials) {
+                parts.add(usernameCredentials.getUsername());
+            }
+            if (credentials instanceof SSHUserPrivateKey privateKey) {
+                parts.addAll(privateKey.getPrivateKeys());
+                parts.add(Secret.toString(privateKey.getPassphrase()));
+            } else if (credentials instanceof StandardUsernamePasswordCredentials password) {
+                parts.add(Secret.toString(password.getPassword()));
+            }
+        }
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            for (String part : parts) {
+                digest.update(String.valueOf(part).getBytes(StandardCharsets.UTF_8));
+                digest.update((byte) 0);
+            }
+            return HexFormat.of().formatHex(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
     private static class JenkinsOpenSshConfigFile extends OpenSshConfigFile {
 
         private String userName;
@@ -381,6 +457,7 @@ public class JGitAPIImpl extends LegacyCompatibleGitAPIImpl {
             private String branch;
             private boolean deleteBranch;
             private List<String> sparseCheckoutPaths = Collections.emptyList();
+            private boolean sparseCheckoutCone;
 
             @Override
             public CheckoutCommand ref(String ref) {
@@ -406,6 +483,12 @@ public class JGitAPIImpl extends LegacyCompatibleGitAPIImpl {
                 return this;
             }
 
+            @Override
+            public CheckoutCommand sparseCheckoutCone(boolean cone) {
+                this.sparseCheckoutCone = cone;
+                return this;
+            }
+
             @Override
             public CheckoutCommand timeout(Integer timeout) {
                 // noop in jgit
@@ -430,9 +513,9 @@ public class JGitAPIImpl extends LegacyCompatibleGitAPIImpl {
             @Override
             public void execute() throws GitException {
 
-                if (!sparseCheckoutPaths.isEmpty()) {
-                    listener.getLogger().println("[ERROR] JGit doesn't support sparse checkout.");
-                    throw new UnsupportedOperationException("not implemented yet");
+                if (!sparseCheckoutPaths.isEmpty() || isSparseCheckout()) {
+                    doSparseCheckout(ref, branch, deleteBranch, sparseCheckoutPaths, sparseCheckoutCone);
+                    return;
                 }
 
                 if (branch == null) {
@@ -532,6 +615,96 @@ public class JGitAPIImpl extends LegacyCompatibleGitAPIImpl {
         }
     }
 
+    private boolean isSparseCheckout() throws GitException {
+        try (Repository repo = getRepository()) {
+            return JGitSparseCheckout.isEnabled(repo);
+        }
+    }
+
+    /* Sets the refs like doCheckout and doCheckoutWithResetAndRetry, but writes only the files of the sparse checkout */
+    private void doSparseCheckout(String ref, String branch, boolean deleteBranch, List<String> paths, boolean cone)
+            throws GitException {
+        try (Repository repo = getRepository()) {
+            String name = ref;
+            if (branch != null && deleteBranch) {
+                RefUpdate refUpdate = repo.updateRef(R_HEADS + branch);
+                refUpdate.setNewObjectId(repo.resolve(ref));
+                switch (refUpdate.forceUpdate()) {
+                    case NOT_ATTEMPTED:
+                    case LOCK_FAILURE:
+                    case REJECTED:
+                    case REJECTED_CURRENT_BRANCH:
+                    case IO_FAILURE:
+                    case RENAMED:
+                        throw new GitException("Could not update " + branch + " to " + ref);
+                }
+                name = branch;
+            } else if (branch != null) {
+                git(repo).branchCreate().setName(branch).setStartPoint(ref).setForce(true).call();
+                name = branch;
+            } else if (repo.resolve(name) == null) {
+                String matchingRemoteBranch = null;
+                for (String remote : repo.getRemoteNames()) {
+                    String candidate = R_REMOTES + remote + "/" + name;
+                    if (repo.exactRef(candidate) != null) {
+                        if (matchingRemoteBranch != null) {
+                            throw new GitException("Found more than one matching remote tracking branches for  "
+                                    + name + " : " + List.of(matchingRemoteBranch, candidate));
+                        }
+                        matchingRemoteBranch = candidate;
+                    }
+                }
+                if (matchingRemoteBranch == null) {
+                    throw new GitException("No matching revision for " + name + " found.");
+                }
+                listener.getLogger()
+                        .format(
+                                "[WARNING] Automatically creating a local branch '%s' tracking remote branch '%s'",
+                                name, removeStart(matchingRemoteBranch, R_REMOTES));
+                git(repo)
+                        .branchCreate()
+                        .setName(name)
+                        .setStartPoint(matchingRemoteBranch)
+                        .setUpstreamMode(SetupUpstreamMode.SET_UPSTREAM)
+                        .call();
+            }
+
+            ObjectId commit = repo.resolve(name + "^{commit}");
+            if (commit == null) {
+                throw new GitException("No matching revision for " + name + " found.");
+            }
+            JGitSparseCheckout sparseCheckout = new JGitSparseCheckout(repo, paths, cone);
+            sparseCheckout.checkout(commit);
+            sparseCheckout.save(paths, cone);
+
+            // like the JGit checkout command, HEAD is attached to a local branch and detached otherwise
+            Ref target = repo.findRef(name);
+            boolean attach = target != null && target.getName().startsWith(R_HEADS);
+            RefUpdate head = repo.updateRef(Constants.HEAD, !attach);
+            head.setRefLogMessage("checkout: moving to " + name, false);
+            RefUpdate.Result result;
+            if (attach) {
+                result = head.link(target.getName());
+            } else {
+                head.setNewObjectId(commit);
+                result = head.forceUpdate();
+            }
+            switch (result) {
+                case NOT_ATTEMPTED:
+                case LOCK_FAILURE:
+                case REJECTED:
+                case REJECTED_CURRENT_BRANCH:
+                case IO_FAILURE:
+                case RENAMED:
+                    throw new GitException("Could not update HEAD to " + name);
+            }
+        } catch (LockFailedException e) {
+            throw new GitLockFailedException("Could not lock repository. Please try again", e);
+        } catch (IOException | GitAPIException e) {
+            throw new GitException("Could not checkout " + (branch == null ? ref : branch), e);
+        }
+    }
+
     private void doCheckout(String ref, String branch) throws GitException {
         try (Repository repo = getRepository()) {
             git(repo)
@@ -678,6 +851,10 @@ public class JGitAPIImpl extends LegacyCompatibleGitAPIImpl {
     static final int MAX_TIMEOUT = 1 << 15; // Avoid JGit integer overflow
 
     private void setTransportTimeout(TransportCommand transport, String operationName, Integer timeoutInMinutes) {
+        transport.setTimeout(transportTimeoutSeconds(operationName, timeoutInMinutes));
+    }
+
+    private int transportTimeoutSeconds(String operationName, Integer timeoutInMinutes) {
         if (timeoutInMinutes == null) {
             /* Use the default timeout */
             timeoutInMinutes = TIMEOUT;
@@ -705,8 +882,8 @@ public class JGitAPIImpl extends LegacyCompatibleGitAPIImpl {
                             + operationName);
         }
 
-        transport.setTimeout(timeoutInSeconds);
         listener.getLogger().println(" > JGit " + operationName + TIMEOUT_LOG_PREFIX + timeoutInMinutes);
+        return timeoutInSeconds;
     }
 
     /**
@@ -742,6 +919,7 @@ public class JGitAPIImpl extends LegacyCompatibleGitAPIImpl {
             private Integer timeout;
             private boolean tags = true;
             private Integer depth = 1;
+            private String filter;
 
             @Override
             public org.jenkinsci.plugins.gitclient.FetchCommand from(URIish remote, List<RefSpec> refspecs) {
@@ -786,8 +964,15 @@ public class JGitAPIImpl extends LegacyCompatibleGitAPIImpl {
                 return this;
             }
 
+            @Override
+            public org.jenkinsci.plugins.gitclient.FetchCommand filter(String filter) {
+                this.filter = PartialCloneFilter.check(filter);
+                return this;
+            }
+
             @Override
             public void execute() throws GitException {
+                warnIgnoredFilter(filter, "fetching");
                 try (Repository repo = getRepository()) {
                     Git git = git(repo);
 
@@ -970,7 +1155,7 @@ public class JGitAPIImpl extends LegacyCompatibleGitAPIImpl {
     private TransportConfigCallback getTransportConfigCallback() {
         return transport -> {
             if (transport instanceof SshTransport sshTransport) {
-                sshTransport.setSshSessionFactory(buildSshdSessionFactory(this.hostKeyVerifierFactory));
+                sshTransport.setSshSessionFactory(sshSessionFactory(this.hostKeyVerifierFactory));
             } else if (transport instanceof TransportHttp transportHttp) {
                 transportHttp.setHttpConnectionFactory(new PreemptiveAuthHttpClientConnectionFactory(getProvider()));
             } else if (transport instanceof org.eclipse.jgit.transport.TransportAmazonS3) {
@@ -980,9 +1165,46 @@ public class JGitAPIImpl extends LegacyCompatibleGitAPIImpl {
         };
     }
 
+    /**
+     * Transport configuration for commands running concurrently. All the
+     * transports it configures share one SSH session factory and one HTTP
+     * connection factory, instead of creating them for each transport.
+     */
+    private final class SharedTransportConfig implements TransportConfigCallback, AutoCloseable {
+        private final PreemptiveAuthHttpClientConnectionFactory httpConnectionFactory =
+                new PreemptiveAuthHttpClientConnectionFactory(getProvider());
+        private SshSessionFactory sshSessionFactory;
+
+        @Override
+        public void configure(Transport transport) {
+            if (transport instanceof SshTransport sshTransport) {
+                sshTransport.setSshSessionFactory(sshSessionFactory());
+            } else if (transport instanceof TransportHttp transportHttp) {
+                transportHttp.setHttpConnectionFactory(httpConnectionFactory);
+            } else if (transport instanceof org.eclipse.jgit.transport.TransportAmazonS3) {
+                // SECURITY-3590 safety measure - see unsupportedProtocol() for details
+                throw new GitException("Unsupported protocol in URL");
+            }
+        }
+
+        private synchronized SshSessionFactory sshSessionFactory() {
+            if (sshSessionFactory == null) {
+                sshSessionFactory = JGitAPIImpl.this.sshSessionFactory(getHostKeyFactory());
+            }
+            return sshSessionFactory;
+        }
+
+        @Override
+        public synchronized void close() {
+            if (sshSessionFactory instanceof SshdSessionFactory sshdSessionFactory) {
+                sshdSessionFactory.close();
+            }
+        }
+    }
+
     private void decorateTransport(Transport tn) {
         if (tn instanceof SshTransport transport) {
-            transport.setSshSessionFactory(buildSshdSessionFactory(getHostKeyFactory()));
+            transport.setSshSessionFactory(sshSessionFactory(getHostKeyFactory()));
         } else if (tn instanceof TransportHttp transportHttp) {
             transportHttp.setHttpConnectionFactory(new PreemptiveAuthHttpClientConnectionFactory(getProvider()));
         } else if (tn instanceof org.eclipse.jgit.transport.TransportAmazonS3) {
@@ -999,40 +1221,52 @@ public class JGitAPIImpl extends LegacyCompatibleGitAPIImpl {
             throw new GitException("unsupported protocol in URL " + url);
         }
         Map<String, ObjectId> references = new HashMap<>();
-        String regexPattern = null;
-        if (pattern != null) {
-            regexPattern = createRefRegexFromGlob(pattern);
-        }
-        try (Repository repo = openDummyRepository()) {
-            LsRemoteCommand lsRemote = new LsRemoteCommand(repo);
-            if (headsOnly) {
-                lsRemote.setHeads(headsOnly);
-            }
-            if (tagsOnly) {
-                lsRemote.setTags(tagsOnly);
-            }
-            lsRemote.setRemote(url);
-            lsRemote.setCredentialsProvider(getProvider());
-            lsRemote.setTransportConfigCallback(getTransportConfigCallback());
-            setTransportTimeout(lsRemote, "ls-remote", TIMEOUT);
-            Collection<Ref> refs = lsRemote.call();
-            for (final Ref r : refs) {
-                final String refName = r.getName();
-                final ObjectId refObjectId = r.getPeeledObjectId() != null ? r.getPeeledObjectId() : r.getObjectId();
-                if (regexPattern != null) {
-                    if (refName.matches(regexPattern)) {
-                        references.put(refName, refObjectId);
-                    }
-                } else {
-                    references.put(refName, refObjectId);
+        RefGlob glob = pattern == null ? null : RefGlob.ref(pattern);
+        if (AdvertisedRefsCache.get().isEnabled()) {
+            AdvertisedRefs advertised = advertisedRefs(url);
+            for (Map.Entry<String, ObjectId> ref : advertised.getRefs().entrySet()) {
+                final String refName = ref.getKey();
+                if (isListedRef(refName, headsOnly, tagsOnly) && (glob == null || glob.matches(refName))) {
+                    references.put(refName, advertised.getPeeled().getOrDefault(refName, ref.getValue()));
                 }
             }
-        } catch (JGitInternalException | GitAPIException | IOException e) {
-            throw new GitException(e);
+            return references;
+        }
+        for (final Ref r : lsRefs(url, RefGlob.refPrefixes(glob, headsOnly, tagsOnly))) {
+            final String refName = r.getName();
+            final ObjectId refObjectId = r.getPeeledObjectId() != null ? r.getPeeledObjectId() : r.getObjectId();
+            if (isListedRef(refName, headsOnly, tagsOnly) && (glob == null || glob.matches(refName))) {
+                references.put(refName, refObjectId);
+            }
         }
         return references;
     }
 
+    /* True if ls-remote lists refName when asked for the heads with headsOnly and the tags with tagsOnly */
+    private static boolean isListedRef(String refName, boolean headsOnly, boolean tagsOnly) {
+        return (!headsOnly && !tagsOnly)
+                || (headsOnly && refName.startsWith(Constants.R_HEADS))
+                || (tagsOnly && refName.startsWith(Constants.R_TAGS));
+    }
+
+    /*
+     * Refs listed by the remote repository. A server which supports protocol version 2 only lists the refs
+     * starting with one of refPrefixes, or all refs if there is none. Other servers list all refs.
+     */
+    private List<Ref> lsRefs(String url, List<String> refPrefixes) throws GitException {
+        try (Repository repo = openDummyRepository();
+                Transport tn = Transport.open(repo, url)) {
+            getTransportConfigCallback().configure(tn);
+            tn.setCredentialsProvider(getProvider());
+            tn.setTimeout(transportTimeoutSeconds("ls-remote", TIMEOUT));
+            try (FetchConnection c = tn.openFetch(Collections.emptyList(), refPrefixes.toArray(new String[0]))) {
+                return new ArrayList<>(c.getRefs());
+            }
+        } catch (IOException | URISyntaxException e) {
+            throw new GitException(e);
+        }
+    }
+
     @Override
     public Map<String, String> getRemoteSymbolicReferences(String url, String pattern)
             throws GitException, InterruptedException {
@@ -1040,71 +1274,49 @@ public class JGitAPIImpl extends LegacyCompatibleGitAPIImpl {
         if (unsupportedProtocol(url)) {
             throw new GitException("unsupported protocol in URL " + url);
         }
-        String regexPattern = null;
-        if (pattern != null) {
-            regexPattern = replaceGlobCharsWithRegExChars(pattern);
-        }
-        if (regexPattern != null && !HEAD.matches(regexPattern)) {
+        RefGlob glob = pattern == null ? null : RefGlob.name(pattern);
+        if (glob != null && !glob.matches(HEAD)) {
             return references;
         }
-        try (Repository repo = openDummyRepository()) {
-            LsRemoteCommand lsRemote = new LsRemoteCommand(repo);
-            lsRemote.setRemote(url);
-            lsRemote.setCredentialsProvider(getProvider());
-            lsRemote.setTransportConfigCallback(getTransportConfigCallback());
-            setTransportTimeout(lsRemote, "ls-remote", TIMEOUT);
-            Collection<Ref> refs = lsRemote.call();
-            for (final Ref r : refs) {
-                if (!r.isSymbolic()) { // Skip reference if it is not symbolic
-                    continue;
+        if (AdvertisedRefsCache.get().isEnabled()) {
+            for (Map.Entry<String, String> symref : advertisedRefs(url).getSymrefs().entrySet()) {
+                if (glob == null || glob.matches(symref.getKey())) {
+                    references.put(symref.getKey(), symref.getValue());
                 }
-                if (regexPattern == null) {
-                    references.put(r.getName(), r.getTarget().getName());
-                } else if (r.getName().matches(regexPattern)) {
-                    references.put(r.getName(), r.getTarget().getName());
-                } // else do not return symbolic references with names that do not match pattern
             }
-        } catch (GitAPIException | IOException e) {
-            throw new GitException(e);
+            return references;
+        }
+        for (final Ref r : lsRefs(url, RefGlob.refPrefixes(glob, false, false))) {
+            if (!r.isSymbolic()) { // Skip reference if it is not symbolic
+                continue;
+            }
+            if (glob == null || glob.matches(r.getName())) {
+                references.put(r.getName(), r.getTarget().getName());
+            } // else do not return symbolic references with names that do not match pattern
         }
         return references;
     }
 
-    /* Adapted from https://stackoverflow.com/questions/1247772/is-there-an-equivalent-of-java-util-regex-for-glob-type-patterns */
-    private String createRefRegexFromGlob(String glob) {
-        StringBuilder out = new StringBuilder();
-        out.append('^');
-        if (!glob.startsWith("refs/")) {
-            out.append(".*/");
+    /** {@inheritDoc} */
+    @Override
+    public AdvertisedRefs getAdvertisedRefs(String url, String pattern) throws GitException, InterruptedException {
+        if (unsupportedProtocol(url)) {
+            throw new GitException("unsupported protocol in URL " + url);
         }
-        out.append(replaceGlobCharsWithRegExChars(glob));
-        out.append('$');
-        return out.toString();
+        return advertisedRefs(url).filter(pattern);
     }
 
-    private String replaceGlobCharsWithRegExChars(String glob) {
-        StringBuilder out = new StringBuilder();
-        for (int i = 0; i < glob.length(); ++i) {
-            final char c = glob.charAt(i);
-            switch (c) {
-                case '*':
-                    out.append(".*");
-                    break;
-                case '?':
-                    out.append('.');
-                    break;
-                case '.':
-                    out.append("\\.");
-                    break;
-                case '\\':
-                    out.append("\\\\");
-                    break;
-                default:
-                    out.append(c);
-                    break;
-            }
+    /* All refs advertised by url, from one ls-remote unless cached */
+    private AdvertisedRefs advertisedRefs(String url) throws GitException {
+        StandardCredentials cred = getProvider().getCredentials(url);
+        try {
+            return AdvertisedRefsCache.get().refs(url, cred, () -> {
+                return AdvertisedRefs.fromRefs(lsRefs(url, List.of()));
+            });
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new GitException(e);
         }
-        return out.toString();
     }
 
     /** {@inheritDoc} */
@@ -1113,15 +1325,25 @@ public class JGitAPIImpl extends LegacyCompatibleGitAPIImpl {
         if (unsupportedProtocol(remoteRepoUrl)) {
             throw new GitException("unsupported protocol in URL " + remoteRepoUrl);
         }
+        if (AdvertisedRefsCache.get().isEnabled()) {
+            RefGlob glob = RefGlob.ref(extractBranchNameFromBranchSpec(branchSpec));
+            AdvertisedRefs advertised = advertisedRefs(remoteRepoUrl);
+            for (Map.Entry<String, ObjectId> ref : advertised.getRefs().entrySet()) {
+                if (glob.matches(ref.getKey())) {
+                    return advertised.getPeeled().getOrDefault(ref.getKey(), ref.getValue());
+                }
+            }
+            return null;
+        }
         try (Repository repo = openDummyRepository();
                 final Transport tn = Transport.open(repo, new URIish(remoteRepoUrl))) {
-            final String branchName = extractBranchNameFromBranchSpec(branchSpec);
-            String regexBranch = createRefRegexFromGlob(branchName);
+            RefGlob glob = RefGlob.ref(extractBranchNameFromBranchSpec(branchSpec));
             decorateTransport(tn);
             tn.setCredentialsProvider(getProvider());
-            try (FetchConnection c = tn.openFetch()) {
+            String[] refPrefixes = RefGlob.refPrefixes(glob, false, false).toArray(new String[0]);
+            try (FetchConnection c = tn.openFetch(Collections.emptyList(), refPrefixes)) {
                 for (final Ref r : c.getRefs()) {
-                    if (r.getName().matches(regexBranch)) {
+                    if (glob.matches(r.getName())) {
                         return r.getPeeledObjectId() != null ? r.getPeeledObjectId() : r.getObjectId();
                     }
                 }
@@ -1133,12 +1355,39 @@ public class JGitAPIImpl extends LegacyCompatibleGitAPIImpl {
     }
 
     /**
-     * Creates a empty dummy {@link Repository} to keep JGit happy where it wants a valid {@link Repository} operation
-     * for remote objects.
+     * Creates an empty in memory {@link Repository} to keep JGit happy where it wants a valid {@link Repository}
+     * operation for remote objects. Nothing is written to disk. Its configuration is a copy of the user and system
+     * git configuration, which a repository on disk would inherit and transports read, and selects protocol
+     * version 2 unless disabled.
      */
     private Repository openDummyRepository() throws IOException {
-        final File tempDir = Util.createTempDir();
-        return new FileRepositoryImpl(tempDir, tempDir);
+        InMemoryRepository repo = new InMemoryRepository.Builder()
+                .setRepositoryDescription(new DfsRepositoryDescription("remote"))
+                .setFS(FS.DETECTED)
+                .build();
+        try {
+            Config userConfig = SystemReader.getInstance().getUserConfig();
+            Config config = repo.getConfig();
+            for (String section : userConfig.getSections()) {
+                copyConfigSection(userConfig, config, section, null);
+                for (String subsection : userConfig.getSubsections(section)) {
+                    copyConfigSection(userConfig, config, section, subsection);
+                }
+            }
+            if (USE_PROTOCOL_V2) {
+                config.setInt("protocol", null, "version", 2);
+            }
+        } catch (ConfigInvalidException e) {
+            repo.close();
+            throw new IOException(e);
+        }
+        return repo;
+    }
+
+    private static void copyConfigSection(Config from, Config to, String section, String subsection) {
+        for (String name : from.getNames(section, subsection, true)) {
+            to.setStringList(section, subsection, name, Arrays.asList(from.getStringList(section, subsection, name)));
+        }
     }
 
     /** {@inheritDoc} */
@@ -1162,7 +1411,8 @@ public class JGitAPIImpl extends LegacyCompatibleGitAPIImpl {
     @Override
     public Repository getRepository() throws GitException {
         try {
-            return new RepositoryBuilder().setWorkTree(workspace).build();
+            // Shared with other calls for this workspace, closing it releases this use
+            return RepositoryPool.get().open(workspace);
         } catch (IOException e) {
             throw new GitException(e);
         }
@@ -1290,6 +1540,7 @@ public class JGitAPIImpl extends LegacyCompatibleGitAPIImpl {
             private ObjectReader or = repo.newObjectReader();
             private RevWalk walk = new RevWalk(or);
             private Writer out;
+            private EntryConsumer consumer;
             private boolean hasIncludedRev = false;
 
             @Override
@@ -1339,6 +1590,12 @@ public class JGitAPIImpl extends LegacyCompatibleGitAPIImpl {
                 return this;
             }
 
+            @Override
+            public ChangelogCommand entries(@NonNull EntryConsumer consumer) {
+                this.consumer = consumer;
+                return this;
+            }
+
             @Override
             public ChangelogCommand max(int n) {
                 walk.setRevFilter(MaxCountRevFilter.create(n));
@@ -1364,23 +1621,31 @@ public class JGitAPIImpl extends LegacyCompatibleGitAPIImpl {
              * files will remain open.
              */
             @Override
-            public void execute() throws GitException {
-                if (out == null) {
+            public void execute() throws GitException, InterruptedException {
+                if (out == null && consumer == null) {
                     throw new IllegalStateException(); // Match CliGitAPIImpl
                 }
-                try (PrintWriter pw = new PrintWriter(out, false)) {
-                    RawFormatter formatter = new RawFormatter();
+                try (Writer w = consumer == null ? new BufferedWriter(out) : Writer.nullWriter();
+                        RawFormatter formatter = new RawFormatter(repo, or)) {
                     if (!hasIncludedRev) {
                         /* If no rev has been included, assume HEAD */
                         this.includes("HEAD");
                     }
+                    if (ParallelChangelog.THREADS > 1) {
+                        executeParallel(w);
+                        return;
+                    }
                     for (RevCommit commit : walk) {
                         // git log --raw --no-merges doesn't show merge commits
                         if (commit.getParentCount() > 1) {
                             continue;
                         }
 
-                        formatter.format(commit, null, pw, true);
+                        if (consumer != null) {
+                            consumer.accept(ChangelogEntry.fromCommit(commit, formatter.diff(commit, null, true)));
+                        } else {
+                            formatter.format(commit, null, w, true);
+                        }
                     }
                 } catch (IOException e) {
                     throw new GitException(
@@ -1389,13 +1654,66 @@ public class JGitAPIImpl extends LegacyCompatibleGitAPIImpl {
                     closeResources();
                 }
             }
+
+            /* Same output as the loop of execute, the commits are diffed by the threads of ParallelChangelog */
+            private void executeParallel(Writer w) throws IOException, InterruptedException {
+                if (consumer != null) {
+                    addCommits(new ParallelChangelog<>(
+                            repo,
+                            (formatter, commit) ->
+                                    ChangelogEntry.fromCommit(commit, formatter.diff(commit, null, true)),
+                            consumer::accept));
+                } else {
+                    addCommits(new ParallelChangelog<>(
+                            repo,
+                            (formatter, commit) -> {
+                                StringWriter formatted = new StringWriter();
+                                formatter.format(commit, null, formatted, true);
+                                return formatted.toString();
+                            },
+                            w::write));
+                }
+            }
+
+            private <T> void addCommits(ParallelChangelog<T> parallel) throws IOException, InterruptedException {
+                try (parallel) {
+                    for (RevCommit commit : walk) {
+                        // git log --raw --no-merges doesn't show merge commits
+                        if (commit.getParentCount() <= 1) {
+                            parallel.add(commit);
+                        }
+                    }
+                    parallel.finish();
+                }
+            }
         };
     }
 
     /**
      * Formats {@link RevCommit}.
+     * <p>
+     * One tree walk and rename detector are reused for all the commits of a
+     * walk, and the fields of each commit are written directly to the writer.
+     * Close the formatter at the end of the walk.
      */
-    class RawFormatter {
+    static class RawFormatter implements AutoCloseable {
+        /* Message and diff entries end with the line separator of PrintWriter.println */
+        private static final String EOL = System.lineSeparator();
+
+        private final ObjectReader or;
+        private final TreeWalk tw;
+        private final RenameDetector rd;
+        private final FastDateFormat iso = FastDateFormat.getInstance(ISO_8601);
+        private final char[] hex = new char[Constants.OBJECT_ID_STRING_LENGTH];
+
+        RawFormatter(Repository repo, ObjectReader or) {
+            this.or = or;
+            this.tw = new TreeWalk(or);
+            this.tw.setRecursive(true);
+            this.tw.setFilter(TreeFilter.ANY_DIFF);
+            this.rd = new RenameDetector(or, repo.getConfig().get(DiffConfig.KEY));
+        }
+
         private boolean hasNewPath(DiffEntry d) {
             return d.getChangeType() == ChangeType.COPY || d.getChangeType() == ChangeType.RENAME;
         }
@@ -1428,92 +1746,126 @@ public class JGitAPIImpl extends LegacyCompatibleGitAPIImpl {
          *      Optional parent commit to produce the diff against. This only matters
          *      for merge commits and git-log behaves differently with respect to this.
          */
-        @SuppressFBWarnings(
-                value = "VA_FORMAT_STRING_USES_NEWLINE",
-                justification = "Windows git implementation requires specific line termination")
-        void format(RevCommit commit, RevCommit parent, PrintWriter pw, Boolean useRawOutput)
-                throws GitException, IOException {
+        void format(RevCommit commit, RevCommit parent, Writer w, boolean useRawOutput) throws IOException {
+            w.write("commit ");
+            commit.copyTo(hex, w);
             if (parent != null) {
-                pw.printf("commit %s (from %s)\n", commit.name(), parent.name());
-            } else {
-                pw.printf("commit %s\n", commit.name());
+                w.write(" (from ");
+                parent.copyTo(hex, w);
+                w.write(')');
             }
-
-            pw.printf("tree %s\n", commit.getTree().name());
+            w.write("\ntree ");
+            commit.getTree().copyTo(hex, w);
+            w.write('\n');
             for (RevCommit p : commit.getParents()) {
-                pw.printf("parent %s\n", p.name());
+                w.write("parent ");
+                p.copyTo(hex, w);
+                w.write('\n');
             }
-            FastDateFormat iso = FastDateFormat.getInstance(ISO_8601);
-            PersonIdent a = commit.getAuthorIdent();
-            pw.printf("author %s <%s> %s\n", a.getName(), a.getEmailAddress(), iso.format(a.getWhen()));
-            PersonIdent c = commit.getCommitterIdent();
-            pw.printf("committer %s <%s> %s\n", c.getName(), c.getEmailAddress(), iso.format(c.getWhen()));
+            writeIdent(w, "author ", commit.getAuthorIdent());
+            writeIdent(w, "committer ", commit.getCommitterIdent());
 
             // indent commit messages by 4 chars
             String msg = commit.getFullMessage();
-            if (msg.endsWith("\n")) {
-                msg = msg.substring(0, msg.length() - 1);
-            }
-            msg = msg.replace("\n", "\n    ");
-            msg = "\n    " + msg + "\n";
-
-            pw.println(msg);
+            int length = msg.endsWith("\n") ? msg.length() - 1 : msg.length();
+            int lineStart = 0;
+            for (int eol = msg.indexOf('\n'); eol >= 0 && eol < length; eol = msg.indexOf('\n', lineStart)) {
+                w.write("\n    ");
+                w.write(msg, lineStart, eol - lineStart);
+                lineStart = eol + 1;
+            }
+            w.write("\n    ");
+            w.write(msg, lineStart, length - lineStart);
+            w.write('\n');
+            w.write(EOL);
 
             // see man git-diff-tree for the format
-            try (Repository repo = getRepository();
-                    ObjectReader or = repo.newObjectReader();
-                    TreeWalk tw = new TreeWalk(or)) {
-                if (parent != null) {
-                    /* Caller provided a parent commit, use it */
-                    tw.reset(parent.getTree(), commit.getTree());
-                } else {
-                    if (commit.getParentCount() > 0) {
-                        /* Caller failed to provide parent, but a parent
-                         * is available, so use the parent in the walk
-                         */
-                        tw.reset(commit.getParent(0).getTree(), commit.getTree());
-                    } else {
-                        /* First commit in repo has 0 parent count, but
-                         * the TreeWalk requires exactly two nodes for its
-                         * walk.  Use the same node twice to satisfy
-                         * TreeWalk. See JENKINS-22343 for details.
-                         */
-                        tw.reset(commit.getTree(), commit.getTree());
+            if (useRawOutput) {
+                for (DiffEntry diff : diff(commit, parent, false)) {
+                    w.write(':');
+                    writeMode(w, diff.getOldMode().getBits());
+                    w.write(' ');
+                    writeMode(w, diff.getNewMode().getBits());
+                    w.write(' ');
+                    w.write(diff.getOldId().name());
+                    w.write(' ');
+                    w.write(diff.getNewId().name());
+                    w.write(' ');
+                    w.write(statusOf(diff));
+                    w.write('\t');
+                    w.write(diff.getChangeType() == ChangeType.ADD ? diff.getNewPath() : diff.getOldPath());
+                    if (hasNewPath(diff)) {
+                        w.write(' ');
+                        w.write(diff.getNewPath()); // copied to
                     }
+                    w.write(EOL);
+                    w.write(EOL);
                 }
-                tw.setRecursive(true);
-                tw.setFilter(TreeFilter.ANY_DIFF);
+            }
+        }
 
-                final RenameDetector rd = new RenameDetector(repo);
+        /**
+         * Computes the changes of a commit, with renames detected.
+         *
+         * @param commit
+         *      Commit to diff.
+         * @param parent
+         *      Optional parent commit to diff against, the first parent if null.
+         * @param showRoot
+         *      Whether a root commit adds all its files, as in git-log, or has no changes.
+         */
+        List<DiffEntry> diff(RevCommit commit, RevCommit parent, boolean showRoot) throws IOException {
+            if (parent != null) {
+                /* Caller provided a parent commit, use it */
+                tw.reset(parent.getTree(), commit.getTree());
+            } else if (commit.getParentCount() > 0) {
+                /* Caller failed to provide parent, but a parent
+                 * is available, so use the parent in the walk
+                 */
+                tw.reset(commit.getParent(0).getTree(), commit.getTree());
+            } else if (showRoot) {
+                tw.reset();
+                tw.addTree(new EmptyTreeIterator());
+                tw.addTree(commit.getTree());
+            } else {
+                /* First commit in repo has 0 parent count, but
+                 * the TreeWalk requires exactly two nodes for its
+                 * walk.  Use the same node twice to satisfy
+                 * TreeWalk. See JENKINS-22343 for details.
+                 */
+                tw.reset(commit.getTree(), commit.getTree());
+            }
 
-                rd.reset();
-                rd.addAll(DiffEntry.scan(tw));
-                List<DiffEntry> diffs;
-                try {
-                    diffs = rd.compute(or, null);
-                } catch (CanceledException e) {
-                    throw new IOException(e);
-                }
-                if (useRawOutput) {
-                    for (DiffEntry diff : diffs) {
-                        pw.printf(
-                                ":%06o %06o %s %s %s\t%s",
-                                diff.getOldMode().getBits(),
-                                diff.getNewMode().getBits(),
-                                diff.getOldId().name(),
-                                diff.getNewId().name(),
-                                statusOf(diff),
-                                diff.getChangeType() == ChangeType.ADD ? diff.getNewPath() : diff.getOldPath());
-
-                        if (hasNewPath(diff)) {
-                            pw.printf(" %s", diff.getNewPath()); // copied to
-                        }
-                        pw.println();
-                        pw.println();
-                    }
-                }
+            rd.reset();
+            rd.addAll(DiffEntry.scan(tw));
+            try {
+                return rd.compute(or, null);
+            } catch (CanceledException e) {
+                throw new IOException(e);
             }
         }
+
+        private void writeIdent(Writer w, String header, PersonIdent ident) throws IOException {
+            w.write(header);
+            w.write(ident.getName());
+            w.write(" <");
+            w.write(ident.getEmailAddress());
+            w.write("> ");
+            iso.format(ident.getWhen(), w);
+            w.write('\n');
+        }
+
+        /* Six digit octal file mode, as %06o */
+        private void writeMode(Writer w, int bits) throws IOException {
+            for (int shift = 15; shift >= 0; shift -= 3) {
+                w.write('0' + ((bits >>> shift) & 7));
+            }
+        }
+
+        @Override
+        public void close() {
+            tw.close();
+        }
     }
 
     /**
@@ -1547,6 +1899,15 @@ public class JGitAPIImpl extends LegacyCompatibleGitAPIImpl {
         this.clean(false);
     }
 
+    /* JGit cannot read a repository with missing objects, so it cannot use a partial clone */
+    private void warnIgnoredFilter(String filter, String operation) {
+        if (filter != null) {
+            listener.getLogger()
+                    .println("[WARNING] JGit does not support partial clone, ignoring filter '" + filter + "' and "
+                            + operation + " all objects");
+        }
+    }
+
     /**
      * clone_.
      *
@@ -1564,6 +1925,7 @@ public class JGitAPIImpl extends LegacyCompatibleGitAPIImpl {
             private boolean tags = true;
             private List<RefSpec> refspecs;
             private Integer depth = 1;
+            private String filter;
 
             @Override
             public CloneCommand url(String url) {
@@ -1638,6 +2000,12 @@ public class JGitAPIImpl extends LegacyCompatibleGitAPIImpl {
                 return this;
             }
 
+            @Override
+            public CloneCommand filter(String filter) {
+                this.filter = PartialCloneFilter.check(filter);
+                return this;
+            }
+
             private RepositoryBuilder newRepositoryBuilder() {
                 RepositoryBuilder builder = new RepositoryBuilder();
                 builder.setGitDir(new File(workspace, Constants.DOT_GIT)).readEnvironment();
@@ -1650,7 +2018,9 @@ public class JGitAPIImpl extends LegacyCompatibleGitAPIImpl {
                     if (unsupportedProtocol(url)) {
                         throw new GitException("unsupported protocol in URL " + url);
                     }
+                    warnIgnoredFilter(filter, "cloning");
                     // the directory needs to be clean or else JGit complains
+                    RepositoryPool.get().invalidate(workspace);
                     if (workspace.exists()) {
                         Util.deleteContentsRecursive(workspace);
                     }
@@ -1953,22 +2323,38 @@ public class JGitAPIImpl extends LegacyCompatibleGitAPIImpl {
         try (Repository repo = getRepository();
                 ObjectReader or = repo.newObjectReader();
                 RevWalk w = new RevWalk(or)) {
-            List<IndexEntry> r = new ArrayList<>();
-
             RevTree t = w.parseTree(repo.resolve(treeIsh));
-            SubmoduleWalk walk = new SubmoduleWalk(repo);
-            walk.setTree(t);
-            walk.setRootTree(t);
-            while (walk.next()) {
-                r.add(new IndexEntry(walk));
-            }
-
-            return r;
+            return GitlinkCache.toIndexEntries(gitlinks(or, t));
         } catch (IOException e) {
             throw new GitException(e);
         }
     }
 
+    /**
+     * Finds the gitlinks of a tree. Subtrees already scanned, in this or any
+     * other repository, are answered from {@link GitlinkCache} without
+     * reading them, so only trees which changed since a previous scan are read.
+     */
+    private static List<GitlinkCache.Gitlink> gitlinks(ObjectReader reader, AnyObjectId tree) throws IOException {
+        List<GitlinkCache.Gitlink> cached = GitlinkCache.get().get(tree);
+        if (cached != null) {
+            return cached;
+        }
+        List<GitlinkCache.Gitlink> found = new ArrayList<>();
+        for (CanonicalTreeParser entries = new CanonicalTreeParser(null, reader, tree); !entries.eof(); entries.next()) {
+            int mode = entries.getEntryRawMode();
+            if (FileMode.GITLINK.equals(mode)) {
+                found.add(new GitlinkCache.Gitlink(entries.getEntryPathString(), entries.getEntryObjectId()));
+            } else if (FileMode.TREE.equals(mode)) {
+                String directory = entries.getEntryPathString();
+                for (GitlinkCache.Gitlink gitlink : gitlinks(reader, entries.getEntryObjectId())) {
+                    found.add(new GitlinkCache.Gitlink(directory + "/" + gitlink.path(), gitlink.id()));
+                }
+            }
+        }
+        return GitlinkCache.get().put(tree, found);
+    }
+
     /** {@inheritDoc} */
     @Override
     public void addSubmodule(String remoteURL, String subdir) throws GitException {
@@ -2484,16 +2870,15 @@ public class JGitAPIImpl extends LegacyCompatibleGitAPIImpl {
 
             List<String> r = new ArrayList<>();
             StringWriter sw = new StringWriter();
-            RawFormatter f = new RawFormatter();
-            try (PrintWriter pw = new PrintWriter(sw)) {
+            try (RawFormatter f = new RawFormatter(repo, or)) {
                 for (RevCommit c : w) {
                     // do not duplicate merge commits unless using raw output
                     if (c.getParentCount() <= 1 || !useRawOutput) {
-                        f.format(c, null, pw, useRawOutput);
+                        f.format(c, null, sw, useRawOutput);
                     } else {
                         // the effect of the -m option, which makes the diff produce for each parent of a merge commit
                         for (RevCommit p : c.getParents()) {
-                            f.format(c, p, pw, useRawOutput);
+                            f.format(c, p, sw, useRawOutput);
                         }
                     }
 
@@ -2545,6 +2930,7 @@ public class JGitAPIImpl extends LegacyCompatibleGitAPIImpl {
             private boolean remoteTracking = false;
             private String ref = null;
             private Integer timeout;
+            private int threads = 1;
 
             @Override
             public org.jenkinsci.plugins.gitclient.SubmoduleUpdateCommand recursive(boolean recursive) {
@@ -2595,16 +2981,7 @@ public class JGitAPIImpl extends LegacyCompatibleGitAPIImpl {
 
             @Override
             public org.jenkinsci.plugins.gitclient.SubmoduleUpdateCommand threads(int threads) {
-                // TODO: I have no idea if JGit can update submodules in parallel
-                // It might work, or it might blow up horribly. This probably depends on
-                // whether JGit relies on any global/shared state. Since I have no
-                // experience with JGit, I'm leaving this unimplemented for the time
-                // being. But if some brave soul wants to test this, feel free to provide
-                // an implementation similar to the one in the CliGitAPIImpl class using
-                // an ExecutorService.
-                listener.getLogger()
-                        .println(
-                                "[WARNING] JGit doesn't support updating submodules in parallel. This flag is ignored");
+                this.threads = threads;
                 return this;
             }
 
@@ -2625,22 +3002,64 @@ public class JGitAPIImpl extends LegacyCompatibleGitAPIImpl {
                     throw new UnsupportedOperationException("not implemented yet");
                 }
 
-                try (Repository repo = getRepository()) {
-                    SubmoduleUpdateCommand update = git(repo).submoduleUpdate();
-                    update.setCredentialsProvider(getProvider());
-                    update.setTransportConfigCallback(getTransportConfigCallback());
-                    setTransportTimeout(update, "update", timeout);
-                    update.call();
-                    if (recursive) {
-                        for (JGitAPIImpl sub : submodules()) {
-                            /* Intentionally using the deprecated method because the replacement method is not serializable. */
-                            sub.submoduleUpdate(recursive);
-                        }
-                    }
-                } catch (IOException | GitAPIException e) {
+                // Every submodule, at any depth, is updated by a command of its
+                // own. The commands share the credentials provider and the
+                // transport factories of this client.
+                try (SharedTransportConfig transportConfig = new SharedTransportConfig()) {
+                    new GitCommandsExecutor(threads, listener)
+                            .invokeNested(updateCommands(workspace, transportConfig));
+                } catch (IOException e) {
                     throw new GitException(e);
                 }
             }
+
+            /* Commands updating each submodule of the repository in workTree */
+            private List<GitCommandsExecutor.NestedCommand> updateCommands(
+                    File workTree, TransportConfigCallback transportConfig) throws IOException {
+                List<GitCommandsExecutor.NestedCommand> commands = new ArrayList<>();
+                try (Repository repo = RepositoryPool.get().open(workTree);
+                        SubmoduleWalk generator = SubmoduleWalk.forIndex(repo)) {
+                    while (generator.next()) {
+                        String path = generator.getPath();
+                        File directory = generator.getDirectory();
+                        String host = submoduleHost(generator);
+                        commands.add(new GitCommandsExecutor.NestedCommand() {
+                            @Override
+                            public List<GitCommandsExecutor.NestedCommand> call()
+                                    throws IOException, GitAPIException {
+                                try (Repository parent = RepositoryPool.get().open(workTree)) {
+                                    SubmoduleUpdateCommand update =
+                                            git(parent).submoduleUpdate().addPath(path);
+                                    update.setCredentialsProvider(getProvider());
+                                    update.setTransportConfigCallback(transportConfig);
+                                    setTransportTimeout(update, "update", timeout);
+                                    update.call();
+                                }
+                                if (recursive && new File(directory, Constants.DOT_GIT_MODULES).isFile()) {
+                                    return updateCommands(directory, transportConfig);
+                                }
+                                return Collections.emptyList();
+                            }
+
+                            @Override
+                            public String getHost() {
+                                return host;
+                            }
+                        });
+                    }
+                }
+                return commands;
+            }
+
+            @CheckForNull
+            private String submoduleHost(SubmoduleWalk generator) {
+                try {
+                    String url = generator.getConfigUrl();
+                    return url == null ? null : new URIish(url).getHost();
+                } catch (IOException | ConfigInvalidException | URISyntaxException e) {
+                    return null;
+                }
+            }
         };
     }
 
@@ -2682,12 +3101,14 @@ public class JGitAPIImpl extends LegacyCompatibleGitAPIImpl {
      * "git branch --contains=X" is a pretty plain traversal. We walk the commit graph until we find the target
      * revision we want.
      *
-     * Doing this individually for every branch is too expensive, so we use flags to track multiple branches
-     * at once. JGit gives us 24 bits of flags, so we divide up all the branches to batches of 24, then
-     * perform a graph walk. For flags to carry correctly over from children to parents, all the children
-     * must be visited before we see the parent. This requires a topological sorting order. In addition,
-     * we want kind of a "breadth first search" to avoid going down a part of the graph that's not terribly
-     * interesting and topo sort helps with that, too (imagine the following commit graph,
+     * Doing this individually for every branch is too expensive, so all branches are tracked in a single walk.
+     * Every commit carries a {@link BitSet} of the branches whose history contains it. Each branch head starts
+     * with its own bit, and the set of a commit is merged into the sets of its parents when the commit is
+     * visited. For sets to carry correctly over from children to parents, all the children must be visited
+     * before we see the parent. This requires a topological sorting order. Once the target is visited, its set
+     * names every branch containing it. Unlike {@link RevFlag}s, bit sets have no limit on the number of
+     * branches. In addition, we want kind of a "breadth first search" to avoid going down a part of the graph
+     * that's not terribly interesting and topo sort helps with that, too (imagine the following commit graph,
      * and compute "git branch --contains=t"; we don't want to visit all the way to c1 before visiting c.)
      *
      *
@@ -2696,8 +3117,11 @@ public class JGitAPIImpl extends LegacyCompatibleGitAPIImpl {
      *                                                      --&gt; t ------
      *
      * <p>
-     * Since we reuse {@link RevWalk}, it'd be nice to flag commits reachable from 't' as uninteresting
-     * and keep them across resets, but I'm not sure how to do it.
+     * Commits reachable from the parents of 't' cannot contain 't', so they are marked uninteresting and
+     * the walk never visits them.
+     * <p>
+     * When command line git wrote a commit-graph for the repository, {@link CommitGraphReachability} answers
+     * instead, skipping every commit whose generation number is not higher than the generation of 't'.
      */
     @Override
     public List<Branch> getBranchesContaining(String revspec, boolean allBranches)
@@ -2714,57 +3138,69 @@ public class JGitAPIImpl extends LegacyCompatibleGitAPIImpl {
             }
             RevCommit target = walk.parseCommit(id);
 
-            // we can track up to 23 flags at a time in JGit, so that's how many branches we will traverse in every
-            // iteration.  Changed from 24 to 23 in JGit 7.5.0 with the additional of the global UNSHALLOW
-            final int MAX_FLAGS = 23;
-            List<RevFlag> flags = new ArrayList<>(MAX_FLAGS);
-            for (int i = 0; i < MAX_FLAGS; i++) {
-                flags.add(walk.newFlag("branch" + i));
-            }
-            walk.carry(flags);
-
-            List<Branch> result = new ArrayList<>(); // we'll built up the return value in here
-
             List<Ref> branches = getAllBranchRefs(allBranches);
-            while (!branches.isEmpty()) {
-                List<Ref> batch = branches.subList(0, Math.min(flags.size(), branches.size()));
-                branches = branches.subList(batch.size(), branches.size()); // remaining
 
-                walk.reset();
-                int idx = 0;
-                for (Ref r : batch) {
-                    RevCommit c = walk.parseCommit(r.getObjectId());
-                    walk.markStart(c);
-                    c.add(flags.get(idx));
-                    idx++;
+            try (CommitGraphReachability reachability = CommitGraphReachability.open(repo, or)) {
+                if (reachability != null) {
+                    List<ObjectId> heads = new ArrayList<>(branches.size());
+                    for (Ref branch : branches) {
+                        heads.add(walk.parseCommit(branch.getObjectId()));
+                    }
+                    return toBranches(branches, reachability.containing(target, heads));
                 }
+            }
 
-                // anything reachable from the target commit in question is not worth traversing.
-                for (RevCommit p : target.getParents()) {
-                    walk.markUninteresting(p);
-                }
+            // Branches containing each commit that is yet to be visited, by index in 'branches'.
+            // Sets are shared between commits, so they are replaced when merged and never modified.
+            Map<RevCommit, BitSet> containedBy = new HashMap<>();
+            for (int i = 0; i < branches.size(); i++) {
+                RevCommit head = walk.parseCommit(branches.get(i).getObjectId());
+                BitSet branch = new BitSet();
+                branch.set(i);
+                containedBy.merge(head, branch, JGitAPIImpl::union);
+                walk.markStart(head);
+            }
 
-                for (RevCommit c : walk) {
-                    if (c.equals(target)) {
-                        break;
-                    }
-                }
+            // anything reachable from the target commit in question is not worth traversing.
+            for (RevCommit p : target.getParents()) {
+                walk.markUninteresting(p);
+            }
 
-                idx = 0;
-                for (Ref r : batch) {
-                    if (target.has(flags.get(idx))) {
-                        result.add(new Branch(r));
-                    }
-                    idx++;
+            BitSet containing = new BitSet();
+            for (RevCommit c : walk) {
+                BitSet bits = containedBy.remove(c);
+                if (bits == null) {
+                    continue;
+                }
+                if (c.equals(target)) {
+                    containing = bits;
+                    break;
+                }
+                for (RevCommit p : c.getParents()) {
+                    containedBy.merge(p, bits, JGitAPIImpl::union);
                 }
             }
 
-            return result;
+            return toBranches(branches, containing);
         } catch (IOException e) {
             throw new GitException(e);
         }
     }
 
+    private static List<Branch> toBranches(List<Ref> branches, BitSet selected) {
+        List<Branch> result = new ArrayList<>(selected.cardinality());
+        for (int i = selected.nextSetBit(0); i >= 0; i = selected.nextSetBit(i + 1)) {
+            result.add(new Branch(branches.get(i)));
+        }
+        return result;
+    }
+
+    private static BitSet union(BitSet a, BitSet b) {
+        BitSet union = (BitSet) a.clone();
+        union.or(b);
+        return union;
+    }
+
     private List<Ref> getAllBranchRefs(boolean originBranches) throws GitException {
         List<Ref> branches = new ArrayList<>();
         try (Repository repo = getRepository()) {
@@ -2792,6 +3228,11 @@ public class JGitAPIImpl extends LegacyCompatibleGitAPIImpl {
                 ObjectReader or = repo.newObjectReader();
                 RevWalk walk = new RevWalk(or)) {
             walk.setRetainBody(false); // we don't need the body for this computation
+            try (CommitGraphReachability reachability = CommitGraphReachability.open(repo, or)) {
+                if (reachability != null) {
+                    return reachability.mergeBase(walk.parseCommit(id1), walk.parseCommit(id2));
+                }
+            }
             walk.setRevFilter(RevFilter.MERGE_BASE);
 
             walk.markStart(walk.parseCommit(id1));
@@ -2949,146 +3390,28 @@ public class JGitAPIImpl extends LegacyCompatibleGitAPIImpl {
      * <p>
      * The basic structure of the algorithm is as follows. We walk the commit graph,
      * find tags, and mark commits that are reachable from those tags. The marking
-     * uses flags given by JGit, so there's a fairly small upper bound in the number of tags
-     * we can keep track of.
+     * uses a bit mask per walked commit, one bit for each of the 10 candidate tags that C Git
+     * keeps track of. Tagged commits come from a {@link TagIndex} which is updated incrementally
+     * between calls.
      *
      * <p>
      * As we walk commits, we count commits that each tag doesn't contain.
      * We call it "depth", following the variable name in C Git.
-     * As we walk further and find enough tags, we go into wind-down mode and only walk
-     * to the point of accurately determining all the depths.
+     * Once enough tags are found, only the depth of the best tag is completed, from the pack
+     * bitmaps when the repository has them. See {@link JGitDescribe}.
      */
     @Override
     public String describe(String tip) throws GitException, InterruptedException {
         try (Repository repo = getRepository()) {
-            final ObjectReader or = repo.newObjectReader();
-            final RevWalk w = new RevWalk(or); // How to dispose of this ?
-            w.setRetainBody(false);
-
-            Map<ObjectId, Ref> tags = new HashMap<>();
-            for (Ref r : repo.getRefDatabase().getRefsByPrefix(R_TAGS)) {
-                ObjectId key = repo.getRefDatabase().peel(r).getPeeledObjectId();
-                if (key == null) {
-                    key = r.getObjectId();
-                }
-                tags.put(key, r);
-            }
-
-            final RevFlagSet allFlags = new RevFlagSet(); // combined flags of all the Candidate instances
-
-            /**
-             * Tracks the depth of each tag as we find them.
-             */
-            class Candidate {
-                final Ref tag;
-                final RevFlag flag;
-
-                /**
-                 * This field number of commits that are reachable from the tip but
-                 * not reachable from the tag.
-                 */
-                int depth;
-
-                Candidate(RevCommit commit, Ref tag) {
-                    this.tag = tag;
-                    this.flag = w.newFlag(tag.getName());
-                    // we'll mark all the nodes reachable from this tag accordingly
-                    allFlags.add(flag);
-                    w.carry(flag);
-                    commit.add(flag);
-                    commit.carry(flag);
-                }
-
-                /**
-                 * Does this tag contains the given commit?
-                 */
-                public boolean reaches(RevCommit c) {
-                    return c.has(flag);
-                }
-
-                public String describe(ObjectId tip) throws IOException {
-                    return "%s-%d-g%s"
-                            .formatted(
-                                    tag.getName().substring(R_TAGS.length()),
-                                    depth,
-                                    or.abbreviate(tip).name());
-                }
-            }
-            List<Candidate> candidates = new ArrayList<>(); // all the candidates we find
-
             ObjectId tipId = repo.resolve(tip);
-
-            Ref lucky = tags.get(tipId);
-            if (lucky != null) {
-                return lucky.getName().substring(R_TAGS.length());
-            }
-
-            w.markStart(w.parseCommit(tipId));
-
-            int maxCandidates = 10;
-
-            int seen = 0; // commit seen thus far
-            RevCommit c;
-            while ((c = w.next()) != null) {
-                if (!c.hasAny(allFlags)) {
-                    // if a tag already dominates this commit,
-                    // then there's no point in picking a tag on this commit
-                    // since the one that dominates it is always more preferable
-                    Ref t = tags.get(c);
-                    if (t != null) {
-                        Candidate cd = new Candidate(c, t);
-                        candidates.add(cd);
-                        cd.depth = seen;
-                    }
-                }
-
-                // if the newly discovered commit isn't reachable from a tag that we've seen
-                // it counts toward the total depth.
-                for (Candidate cd : candidates) {
-                    if (!cd.reaches(c)) {
-                        cd.depth++;
-                    }
-                }
-
-                // if we have search going for enough tags, we wil start closing down.
-                // JGit can only give us a finite number of bits, so we can't track
-                // all tags even if we wanted to.
-                if (candidates.size() >= maxCandidates) {
-                    break;
-                }
-
-                // TODO: if all the commits in the queue of RevWalk has allFlags
-                // there's no point in continuing search as we'll not discover any more
-                // tags. But RevWalk doesn't expose this.
-
-                seen++;
-            }
-
-            // at this point we aren't adding any more tags to our search,
-            // but we still need to count all the depths correctly.
-            while ((c = w.next()) != null) {
-                if (c.hasAll(allFlags)) {
-                    // no point in visiting further from here, so cut the search here
-                    for (RevCommit p : c.getParents()) {
-                        p.add(RevFlag.SEEN);
-                    }
-                } else {
-                    for (Candidate cd : candidates) {
-                        if (!cd.reaches(c)) {
-                            cd.depth++;
-                        }
-                    }
-                }
+            if (tipId == null) {
+                throw new GitException("Not a valid object name " + tip);
             }
-
-            if (candidates.isEmpty()) {
+            String description = JGitDescribe.describe(repo, tipId);
+            if (description == null) {
                 throw new GitException("No tags can describe " + tip);
             }
-
-            // if all the nodes are dominated by all the tags, the walk stops
-            candidates.sort(Comparator.comparingInt((Candidate o) -> o.depth));
-
-            return candidates.get(0).describe(tipId);
+            return description;
         } catch (IOException e) {
             throw new GitException(e);
         }
@@ -3247,10 +3570,88 @@ public class JGitAPIImpl extends LegacyCompatibleGitAPIImpl {
         return peeledTags;
     }
 
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The <code>gc</code>, <code>commit-graph</code> and <code>incremental-repack</code> tasks run on the JGit
+     * object database, the <code>prefetch</code> task fetches the branches of every remote into
+     * <code>refs/prefetch/</code>. The <code>loose-objects</code> task is not supported.
+     */
     @Override
     public boolean maintenance(String task) {
-        listener.getLogger().println("JGIT doesn't support git maintenance. Use CLIGIT to execute maintenance tasks.");
-        return false;
+        boolean isExecuted = true;
+        try (Repository repo = getRepository()) {
+            listener.getLogger().println("Git maintenance " + task + " started on " + workspace.getName());
+            long startTime = System.currentTimeMillis();
+            switch (task) {
+                case "gc":
+                    new JGitMaintenance(repo).gc();
+                    break;
+                case "commit-graph":
+                    new JGitMaintenance(repo).writeCommitGraph();
+                    break;
+                case "incremental-repack":
+                    new JGitMaintenance(repo).incrementalRepack();
+                    break;
+                case "prefetch":
+                    prefetch(repo);
+                    break;
+                case "loose-objects":
+                    listener.getLogger()
+                            .println("JGIT doesn't support the loose-objects maintenance task."
+                                    + " Use CLIGIT to execute it.");
+                    return false;
+                default:
+                    String message = "Invalid git maintenance task " + task + ".";
+                    listener.getLogger().println(message);
+                    throw new GitException(message);
+            }
+            long endTime = System.currentTimeMillis();
+            listener.getLogger()
+                    .println("Git maintenance task " + task + " finished on " + workspace.getName() + " in "
+                            + (endTime - startTime) + "ms.");
+        } catch (GitException | GitAPIException | IOException | JGitInternalException e) {
+            isExecuted = false;
+            listener.getLogger().println("Error executing " + task + " maintenance task");
+            listener.getLogger().println("Mainteance task " + task + " error message: " + e.getMessage());
+        }
+        return isExecuted;
+    }
+
+    /* Fetches the branches of every remote into refs/prefetch/, without updating remote tracking branches */
+    private void prefetch(Repository repo) throws GitException {
+        List<RemoteConfig> remotes;
+        try {
+            remotes = RemoteConfig.getAllRemoteConfigs(repo.getConfig());
+        } catch (URISyntaxException e) {
+            throw new GitException(e);
+        }
+        List<String> failed = new ArrayList<>();
+        for (RemoteConfig remote : remotes) {
+            List<RefSpec> refSpecs = JGitMaintenance.prefetchRefSpecs(remote.getFetchRefSpecs());
+            if (refSpecs.isEmpty()) {
+                continue;
+            }
+            try {
+                FetchCommand fetch = git(repo)
+                        .fetch()
+                        .setRemote(remote.getName())
+                        .setRefSpecs(refSpecs)
+                        .setTagOpt(TagOpt.NO_TAGS)
+                        .setRemoveDeletedRefs(true)
+                        .setRecurseSubmodules(SubmoduleConfig.FetchRecurseSubmodulesMode.NO)
+                        .setCredentialsProvider(getProvider())
+                        .setTransportConfigCallback(getTransportConfigCallback());
+                setTransportTimeout(fetch, "fetch", TIMEOUT);
+                fetch.call();
+            } catch (GitAPIException | JGitInternalException e) {
+                listener.getLogger().println("Prefetch of remote " + remote.getName() + " failed: " + e.getMessage());
+                failed.add(remote.getName());
+            }
+        }
+        if (!failed.isEmpty()) {
+            throw new GitException("Prefetch failed for remotes " + String.join(", ", failed));
+        }
     }
 
     /** {@inheritDoc} */
@@ -3285,24 +3686,4 @@ public class JGitAPIImpl extends LegacyCompatibleGitAPIImpl {
             throw new GitException(e);
         }
     }
-
-    private static class FileRepositoryImpl extends FileRepository {
-
-        private final File tempDir;
-
-        public FileRepositoryImpl(File gitDir, File tempDir) throws IOException {
-            super(gitDir);
-            this.tempDir = tempDir;
-        }
-
-        @Override
-        public void close() {
-            super.close();
-            try {
-                Util.deleteRecursive(tempDir);
-            } catch (IOException e) {
-                // ignore
-            }
-        }
-    }
 }
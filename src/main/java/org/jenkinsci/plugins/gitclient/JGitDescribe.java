@@ -0,0 +1,294 @@
+package org.jenkinsci.plugins.gitclient;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import java.io.IOException;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import org.eclipse.jgit.errors.MissingObjectException;
+import org.eclipse.jgit.lib.AnyObjectId;
+import org.eclipse.jgit.lib.BitmapIndex;
+import org.eclipse.jgit.lib.BitmapObject;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.NullProgressMonitor;
+import org.eclipse.jgit.lib.ObjectReader;
+import org.eclipse.jgit.lib.PersonIdent;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.BitmapWalker;
+import org.eclipse.jgit.revwalk.ObjectWalk;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevWalk;
+
+/**
+ * <code>git describe --tags</code> for {@link JGitAPIImpl}.
+ * <p>
+ * Candidates are searched the way command line git searches them. The
+ * history of the commit is walked in commit date order until
+ * {@value #MAX_CANDIDATES} tagged commits were found, counting for each
+ * candidate the walked commits which it does not reach, and the candidate
+ * with the fewest such commits wins. Each commit of the walk carries a bit
+ * mask of the candidates reaching it instead of one
+ * {@link org.eclipse.jgit.revwalk.RevFlag} per candidate. Tagged commits are
+ * looked up in the {@link TagIndex} of the repository.
+ * <p>
+ * Only the depth of the winning candidate is completed once the search
+ * stopped, by continuing the walk until every queued commit is reachable from
+ * the tagged commit. When {@link #USE_BITMAPS} is set and the repository has
+ * pack bitmaps, the depth is instead the number of commits in the bitmap of
+ * the described commit which are not in the bitmap of the tagged commit. That
+ * count is exact, while the walk of git also counts commits reachable from the
+ * tag which it visits early because of clock skew or equal commit dates, so
+ * the two may differ on such histories.
+ */
+final class JGitDescribe {
+
+    /**
+     * Number of candidates searched, the default of <code>git describe</code>.
+     */
+    static final int MAX_CANDIDATES = 10;
+
+    /**
+     * True if the depth of the winning candidate is computed from pack bitmaps when available.
+     */
+    static final boolean USE_BITMAPS = Boolean.getBoolean(JGitDescribe.class.getName() + ".useBitmaps");
+
+    /* Newest commit first, commits of the same date in the order they were queued, as git does */
+    private static final Comparator<DescribeCommit> BY_DATE =
+            Comparator.comparingInt((DescribeCommit c) -> c.getCommitTime()).reversed().thenComparingLong(c -> c.order);
+
+    private final TagIndex tags;
+    private final ObjectReader reader;
+    private final DescribeWalk walk;
+    /* Keeps the bodies of the tags it parses, which hold the tagger */
+    private final RevWalk tagWalk;
+    private final PriorityQueue<DescribeCommit> queue = new PriorityQueue<>(BY_DATE);
+    private long queued;
+
+    private JGitDescribe(TagIndex tags, ObjectReader reader, DescribeWalk walk, RevWalk tagWalk) {
+        this.tags = tags;
+        this.reader = reader;
+        this.walk = walk;
+        this.tagWalk = tagWalk;
+    }
+
+    /**
+     * Describes a commit with the closest tag reaching it.
+     *
+     * @param repo repository
+     * @param commitish commit, or a tag of a commit
+     * @return the tag name if the commit is tagged, otherwise the tag name,
+     *     the number of commits not reachable from the tag and the abbreviated
+     *     commit id; null if no tag reaches the commit
+     * @throws IOException if the history cannot be read
+     */
+    @CheckForNull
+    static String describe(@NonNull Repository repo, @NonNull AnyObjectId commitish) throws IOException {
+        TagIndex tags = TagIndex.of(repo);
+        try (ObjectReader reader = repo.newObjectReader();
+                DescribeWalk walk = new DescribeWalk(reader);
+                RevWalk tagWalk = new RevWalk(reader)) {
+            return new JGitDescribe(tags, reader, walk, tagWalk).describe(commitish);
+        }
+    }
+
+    private String describe(AnyObjectId commitish) throws IOException {
+        DescribeCommit commit = (DescribeCommit) walk.parseCommit(commitish);
+        TagIndex.Tag exact = bestTag(commit);
+        if (exact != null) {
+            return exact.shortName();
+        }
+
+        List<Candidate> candidates = new ArrayList<>(MAX_CANDIDATES);
+        int annotated = 0;
+        DescribeCommit gaveUpOn = null;
+        int seen = 0;
+        commit.seen = true;
+        enqueue(commit);
+        while (!queue.isEmpty()) {
+            DescribeCommit c = queue.poll();
+            seen++;
+            TagIndex.Tag tag = bestTag(c);
+            if (tag != null) {
+                if (candidates.size() == MAX_CANDIDATES) {
+                    gaveUpOn = c;
+                    break;
+                }
+                Candidate candidate = new Candidate(tag, c, 1 << candidates.size(), seen - 1);
+                c.within |= candidate.flag;
+                candidates.add(candidate);
+                if (tag.annotated()) {
+                    annotated++;
+                }
+            }
+            for (Candidate candidate : candidates) {
+                if ((c.within & candidate.flag) == 0) {
+                    candidate.depth++;
+                }
+            }
+            // Stop if the last remaining path is already covered by the best candidates
+            if (annotated > 0 && queue.isEmpty() && (c.within & bestFlags(candidates)) == bestFlags(candidates)) {
+                break;
+            }
+            enqueueParents(c);
+        }
+        if (candidates.isEmpty()) {
+            return null;
+        }
+
+        // Stable sort, candidates of the same depth stay in the order they were found
+        candidates.sort(Comparator.comparingInt((Candidate c) -> c.depth));
+        Candidate best = candidates.get(0);
+        if (gaveUpOn != null) {
+            enqueue(gaveUpOn);
+        }
+        if (!queue.isEmpty()) {
+            Integer depth = USE_BITMAPS ? bitmapDepth(commit, best.commit) : null;
+            best.depth = depth != null ? depth : best.depth + finishDepth(best);
+        }
+        return "%s-%d-g%s".formatted(best.tag.shortName(), best.depth, reader.abbreviate(commit).name());
+    }
+
+    /* Flags of the candidates of the lowest depth */
+    private static int bestFlags(List<Candidate> candidates) {
+        int bestDepth = Integer.MAX_VALUE;
+        int bestFlags = 0;
+        for (Candidate candidate : candidates) {
+            if (candidate.depth < bestDepth) {
+                bestDepth = candidate.depth;
+                bestFlags = candidate.flag;
+            } else if (candidate.depth == bestDepth) {
+                bestFlags |= candidate.flag;
+            }
+        }
+        return bestFlags;
+    }
+
+    /* Continues the walk until only commits reachable from the candidate remain */
+    private int finishDepth(Candidate best) throws IOException {
+        int depth = 0;
+        while (!queue.isEmpty()) {
+            DescribeCommit c = queue.poll();
+            if ((c.within & best.flag) != 0) {
+                if (queue.stream().allMatch(q -> (q.within & best.flag) != 0)) {
+                    break;
+                }
+            } else {
+                depth++;
+            }
+            enqueueParents(c);
+        }
+        return depth;
+    }
+
+    /* Number of commits reachable from the commit but not from the tagged commit, null without bitmaps */
+    @CheckForNull
+    private Integer bitmapDepth(AnyObjectId commit, AnyObjectId tagged) throws IOException {
+        BitmapIndex bitmapIndex = reader.getBitmapIndex();
+        if (bitmapIndex == null) {
+            return null;
+        }
+        BitmapIndex.BitmapBuilder reachable = reachable(bitmapIndex, commit);
+        reachable.andNot(reachable(bitmapIndex, tagged));
+        int depth = 0;
+        for (BitmapObject object : reachable) {
+            if (object.getType() == Constants.OBJ_COMMIT) {
+                depth++;
+            }
+        }
+        return depth;
+    }
+
+    private BitmapIndex.BitmapBuilder reachable(BitmapIndex bitmapIndex, AnyObjectId commit) throws IOException {
+        try (ObjectWalk objectWalk = new ObjectWalk(reader)) {
+            return new BitmapWalker(objectWalk, bitmapIndex, NullProgressMonitor.INSTANCE)
+                    .findObjects(List.of(commit.copy()), null, true);
+        }
+    }
+
+    private void enqueue(DescribeCommit commit) {
+        commit.order = queued++;
+        queue.add(commit);
+    }
+
+    private void enqueueParents(DescribeCommit commit) throws IOException {
+        for (RevCommit p : commit.getParents()) {
+            DescribeCommit parent = (DescribeCommit) p;
+            if (!parent.seen) {
+                try {
+                    walk.parseHeaders(parent);
+                } catch (MissingObjectException e) {
+                    // Parent beyond the boundary of a shallow clone
+                    continue;
+                }
+                parent.seen = true;
+                enqueue(parent);
+            }
+            parent.within |= commit.within;
+        }
+    }
+
+    /* Annotated tags are preferred to lightweight tags, then the most recent annotated tag, as git does */
+    @CheckForNull
+    private TagIndex.Tag bestTag(AnyObjectId commit) throws IOException {
+        List<TagIndex.Tag> candidates = tags.tags(commit);
+        TagIndex.Tag best = null;
+        for (TagIndex.Tag tag : candidates) {
+            if (best == null
+                    || (tag.annotated() && !best.annotated())
+                    || (tag.annotated() && taggerDate(tag).isAfter(taggerDate(best)))) {
+                best = tag;
+            }
+        }
+        return best;
+    }
+
+    private Instant taggerDate(TagIndex.Tag tag) throws IOException {
+        PersonIdent tagger = tagWalk.parseTag(tag.id()).getTaggerIdent();
+        return tagger == null ? Instant.EPOCH : tagger.getWhenAsInstant();
+    }
+
+    private static final class Candidate {
+        final TagIndex.Tag tag;
+        final RevCommit commit;
+        final int flag;
+
+        /* Number of walked commits which are not reachable from the tagged commit */
+        int depth;
+
+        Candidate(TagIndex.Tag tag, RevCommit commit, int flag, int depth) {
+            this.tag = tag;
+            this.commit = commit;
+            this.flag = flag;
+            this.depth = depth;
+        }
+    }
+
+    private static final class DescribeWalk extends RevWalk {
+        DescribeWalk(ObjectReader reader) {
+            super(reader);
+            setRetainBody(false);
+        }
+
+        @Override
+        protected RevCommit createCommit(AnyObjectId id) {
+            return new DescribeCommit(id);
+        }
+    }
+
+    private static final class DescribeCommit extends RevCommit {
+        /* Candidates reaching this commit */
+        int within;
+
+        boolean seen;
+
+        /* Position in the walk, orders commits of the same date */
+        long order;
+
+        DescribeCommit(AnyObjectId id) {
+            super(id);
+        }
+    }
+}
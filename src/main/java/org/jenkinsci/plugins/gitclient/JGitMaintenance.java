@@ -0,0 +1,365 @@
+package org.jenkinsci.plugins.gitclient;
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.plugins.git.GitException;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.eclipse.jgit.api.errors.GitAPIException;
+import org.eclipse.jgit.internal.storage.commitgraph.CommitGraphWriter;
+import org.eclipse.jgit.internal.storage.commitgraph.GraphCommits;
+import org.eclipse.jgit.internal.storage.file.LockFile;
+import org.eclipse.jgit.internal.storage.file.ObjectDirectory;
+import org.eclipse.jgit.internal.storage.file.Pack;
+import org.eclipse.jgit.internal.storage.file.PackFile;
+import org.eclipse.jgit.internal.storage.file.PackIndex;
+import org.eclipse.jgit.internal.storage.pack.PackExt;
+import org.eclipse.jgit.internal.storage.pack.PackWriter;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.NullProgressMonitor;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectReader;
+import org.eclipse.jgit.lib.Ref;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevObject;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.eclipse.jgit.storage.pack.PackConfig;
+import org.eclipse.jgit.transport.RefSpec;
+
+/**
+ * The object database tasks of <code>git maintenance run</code>, implemented
+ * with JGit for agents which do not use command line git.
+ * <p>
+ * The <code>incremental-repack</code> task combines every pack except the
+ * largest one into a single new pack, reusing the deltas stored in the
+ * combined packs. Like <code>git multi-pack-index expire</code>, the combined
+ * packs are deleted by a later run, after a grace period which lets running
+ * readers finish with them. Packs with a <code>.keep</code> file are never
+ * combined.
+ */
+final class JGitMaintenance {
+
+    private static final Logger LOGGER = Logger.getLogger(JGitMaintenance.class.getName());
+
+    private static final String PREFETCH_REFS = Constants.R_REFS + "prefetch/";
+
+    /** Time during which packs whose objects were combined into another pack are kept. */
+    static final long EXPIRE_GRACE_SECONDS = Long.getLong(JGitMaintenance.class.getName() + ".expireGrace", 3600L);
+
+    private final Repository repo;
+    private final ObjectDirectory objects;
+    private final Duration expireGrace;
+
+    JGitMaintenance(@NonNull Repository repo) {
+        this(repo, Duration.ofSeconds(EXPIRE_GRACE_SECONDS));
+    }
+
+    JGitMaintenance(@NonNull Repository repo, @NonNull Duration expireGrace) {
+        if (!(repo.getObjectDatabase() instanceof ObjectDirectory objectDirectory)) {
+            throw new GitException("Git maintenance requires a file based repository");
+        }
+        this.repo = repo;
+        this.objects = objectDirectory;
+        this.expireGrace = expireGrace;
+    }
+
+    /**
+     * Runs the JGit garbage collector. The collector replaces every pack, so
+     * a multi-pack-index written by command line git is deleted.
+     *
+     * @throws GitAPIException if garbage collection fails
+     * @throws IOException if the multi-pack-index cannot be deleted
+     */
+    void gc() throws GitAPIException, IOException {
+        org.eclipse.jgit.api.Git.wrap(repo).gc().call();
+        Files.deleteIfExists(multiPackIndexFile().toPath());
+    }
+
+    /**
+     * Writes <code>objects/info/commit-graph</code> for the commits reachable
+     * from all refs, nothing is written for a repository without commits.
+     *
+     * @throws IOException if the commit-graph cannot be written
+     */
+    void writeCommitGraph() throws IOException {
+        Set<ObjectId> tips = new HashSet<>();
+        try (RevWalk walk = new RevWalk(repo)) {
+            for (Ref ref : repo.getRefDatabase().getRefs()) {
+                ObjectId id = ref.getObjectId();
+                if (id == null) {
+                    continue;
+                }
+                RevObject object = walk.peel(walk.parseAny(id));
+                if (object instanceof RevCommit) {
+                    tips.add(object.copy());
+                }
+            }
+        }
+        if (tips.isEmpty()) {
+            return;
+        }
+        GraphCommits commits;
+        try (RevWalk walk = new RevWalk(repo)) {
+            commits = GraphCommits.fromWalk(NullProgressMonitor.INSTANCE, tips, walk);
+        }
+        File info = new File(objects.getDirectory(), "info");
+        Files.createDirectories(info.toPath());
+        LockFile lock = new LockFile(new File(info, "commit-graph"));
+        if (!lock.lock()) {
+            throw new IOException("Unable to lock " + new File(info, "commit-graph"));
+        }
+        try {
+            try (OutputStream out = lock.getOutputStream()) {
+                new CommitGraphWriter(commits).write(NullProgressMonitor.INSTANCE, out);
+            }
+            if (!lock.commit()) {
+                throw new IOException("Unable to write " + new File(info, "commit-graph"));
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Combines all packs except the largest one into a single pack. The
+     * combined packs are kept for readers which opened them, a later run
+     * deletes them once the packs holding their objects are older than the
+     * grace period.
+     *
+     * @return number of packs which were combined, 0 if there were fewer than two small packs
+     * @throws IOException if the packs cannot be read or written
+     */
+    int incrementalRepack() throws IOException {
+        List<Pack> packs = new ArrayList<>();
+        for (Pack pack : objects.getPacks()) {
+            if (!pack.shouldBeKept()) {
+                packs.add(pack);
+            }
+        }
+        packs.sort(Comparator.comparingLong((Pack p) -> p.getPackFile().length()).reversed());
+        if (expireCombinedPacks(packs)) {
+            // A multi-pack-index written by command line git may list the deleted packs
+            Files.deleteIfExists(multiPackIndexFile().toPath());
+        }
+        int combined = 0;
+        if (packs.size() > 2) {
+            List<Pack> small = packs.subList(1, packs.size());
+            combine(small);
+            combined = small.size();
+        }
+        return combined;
+    }
+
+    /*
+     * Removes the packs whose objects are all held by other packs from the list, and deletes those whose objects
+     * are held by packs older than the grace period. Returns true if a pack was deleted.
+     */
+    private boolean expireCombinedPacks(List<Pack> packs) throws IOException {
+        long cutoff = System.currentTimeMillis() - expireGrace.toMillis();
+        List<Pack> holders = new ArrayList<>(objects.getPacks());
+        boolean deleted = false;
+        // Smallest first, a pack whose objects are held by other packs holds no objects for the packs after it
+        for (int i = packs.size() - 1; i >= 0; i--) {
+            Pack pack = packs.get(i);
+            long heldSince = heldSince(pack, holders);
+            if (heldSince < 0) {
+                continue;
+            }
+            holders.remove(pack);
+            packs.remove(i);
+            if (heldSince <= cutoff && delete(pack)) {
+                deleted = true;
+            }
+        }
+        return deleted;
+    }
+
+    /* Latest modification time of the other packs holding the objects of a pack, -1 if it holds an object alone */
+    private static long heldSince(Pack pack, List<Pack> holders) throws IOException {
+        long heldSince = 0;
+        for (PackIndex.MutableEntry entry : pack) {
+            ObjectId id = entry.toObjectId();
+            Pack holder = null;
+            for (Pack other : holders) {
+                if (other != pack && other.hasObject(id)) {
+                    holder = other;
+                    break;
+                }
+            }
+            if (holder == null) {
+                return -1;
+            }
+            heldSince = Math.max(heldSince, holder.getPackFile().lastModified());
+        }
+        return heldSince;
+    }
+
+    /* Writes the objects of the packs into a new pack, returns the name of the new pack */
+    private String combine(List<Pack> packs) throws IOException {
+        try (ObjectReader reader = repo.newObjectReader();
+                RevWalk walk = new RevWalk(reader);
+                PackWriter writer = new PackWriter(new PackConfig(repo), reader)) {
+            List<RevObject> toPack = new ArrayList<>();
+            for (Pack pack : packs) {
+                Map<Long, Integer> types = new HashMap<>();
+                try (FileChannel channel = FileChannel.open(pack.getPackFile().toPath(), StandardOpenOption.READ)) {
+                    for (PackIndex.MutableEntry entry : pack) {
+                        ObjectId id = entry.toObjectId();
+                        // Objects stored in more than one pack are written once
+                        if (walk.lookupOrNull(id) == null) {
+                            int type = objectType(channel, pack, entry.getOffset(), types, reader);
+                            toPack.add(walk.lookupAny(id, type));
+                        }
+                    }
+                }
+            }
+            writer.preparePack(toPack.iterator());
+            ObjectId name = writer.computeName();
+            File packDirectory = objects.getPackDirectory();
+            PackFile packFile = new PackFile(packDirectory, name, PackExt.PACK);
+            if (packFile.exists()) {
+                return packFile.getId();
+            }
+            File tmpPack = File.createTempFile("incremental_", ".pack_tmp", packDirectory);
+            File tmpIndex = new File(packDirectory, tmpPack.getName().replace(".pack_tmp", ".idx_tmp"));
+            try {
+                try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(tmpPack.toPath()))) {
+                    writer.writePack(NullProgressMonitor.INSTANCE, NullProgressMonitor.INSTANCE, out);
+                }
+                try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(tmpIndex.toPath()))) {
+                    writer.writeIndex(out);
+                }
+                // Readers find packs by their index, it is moved last
+                Files.move(tmpPack.toPath(), packFile.toPath(), StandardCopyOption.ATOMIC_MOVE);
+                Files.move(tmpIndex.toPath(), packFile.create(PackExt.INDEX).toPath(), StandardCopyOption.ATOMIC_MOVE);
+            } finally {
+                Files.deleteIfExists(tmpPack.toPath());
+                Files.deleteIfExists(tmpIndex.toPath());
+            }
+            objects.openPack(packFile);
+            return packFile.getId();
+        }
+    }
+
+    /*
+     * Returns the type of the pack entry at an offset from the entry headers, without inflating the object. Deltas
+     * take the type of their base, bases are followed within the pack and the types found are remembered by offset.
+     */
+    private static int objectType(
+            FileChannel channel, Pack pack, long offset, Map<Long, Integer> types, ObjectReader reader)
+            throws IOException {
+        List<Long> deltas = new ArrayList<>();
+        // Type and size, then a delta base offset or a delta base id
+        ByteBuffer header = ByteBuffer.allocate(48);
+        long position = offset;
+        Integer type;
+        while ((type = types.get(position)) == null) {
+            header.clear();
+            while (header.hasRemaining() && channel.read(header, position + header.position()) > 0) {
+                // read the entry header
+            }
+            header.flip();
+            int c = header.get() & 0xff;
+            int entryType = (c >> 4) & 7;
+            while ((c & 0x80) != 0) {
+                c = header.get() & 0xff;
+            }
+            if (entryType == Constants.OBJ_OFS_DELTA) {
+                c = header.get() & 0xff;
+                long base = c & 0x7f;
+                while ((c & 0x80) != 0) {
+                    c = header.get() & 0xff;
+                    base = ((base + 1) << 7) | (c & 0x7f);
+                }
+                deltas.add(position);
+                position -= base;
+            } else if (entryType == Constants.OBJ_REF_DELTA) {
+                byte[] raw = new byte[Constants.OBJECT_ID_LENGTH];
+                header.get(raw);
+                ObjectId base = ObjectId.fromRaw(raw);
+                deltas.add(position);
+                position = pack.getIndex().findOffset(base);
+                if (position < 0) {
+                    // Not expected, fetched thin packs are completed with their bases
+                    type = reader.open(base).getType();
+                    break;
+                }
+            } else if (entryType >= Constants.OBJ_COMMIT && entryType <= Constants.OBJ_TAG) {
+                type = entryType;
+                types.put(position, type);
+                break;
+            } else {
+                throw new IOException(
+                        "Invalid pack entry type " + entryType + " at offset " + position + " of " + pack.getPackFile());
+            }
+        }
+        for (Long delta : deltas) {
+            types.put(delta, type);
+        }
+        return type;
+    }
+
+    /* Deletes a pack whose objects are held by other packs, the index is deleted last */
+    private static boolean delete(Pack pack) {
+        pack.close();
+        PackFile packFile = pack.getPackFile();
+        try {
+            Files.deleteIfExists(packFile.toPath());
+            Files.deleteIfExists(packFile.create(PackExt.BITMAP_INDEX).toPath());
+            Files.deleteIfExists(packFile.create(PackExt.REVERSE_INDEX).toPath());
+            Files.deleteIfExists(packFile.create(PackExt.INDEX).toPath());
+            return true;
+        } catch (IOException e) {
+            // Typically an open file on Windows, the pack is deleted by the next repack
+            LOGGER.log(Level.FINE, "Unable to delete combined pack " + packFile, e);
+            return false;
+        }
+    }
+
+    private File multiPackIndexFile() {
+        return new File(objects.getPackDirectory(), "multi-pack-index");
+    }
+
+    /**
+     * Returns the refspecs of the <code>prefetch</code> task for the fetch
+     * refspecs of a remote. Like <code>git fetch --prefetch</code>, the
+     * destinations move below <code>refs/prefetch/</code> so that remote
+     * tracking branches are not updated, and tags are not fetched.
+     *
+     * @param fetchRefSpecs fetch refspecs of a remote
+     * @return refspecs updating <code>refs/prefetch/</code>
+     */
+    @NonNull
+    static List<RefSpec> prefetchRefSpecs(@NonNull List<RefSpec> fetchRefSpecs) {
+        List<RefSpec> refSpecs = new ArrayList<>();
+        for (RefSpec refSpec : fetchRefSpecs) {
+            String destination = refSpec.getDestination();
+            if (refSpec.isNegative()
+                    || destination == null
+                    || !destination.startsWith(Constants.R_REFS)
+                    || destination.startsWith(Constants.R_TAGS)) {
+                continue;
+            }
+            refSpecs.add(refSpec.setForceUpdate(true)
+                    .setDestination(PREFETCH_REFS + destination.substring(Constants.R_REFS.length())));
+        }
+        return refSpecs;
+    }
+}
@@ -0,0 +1,460 @@
+package org.jenkinsci.plugins.gitclient;
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import org.eclipse.jgit.dircache.Checkout;
+import org.eclipse.jgit.dircache.DirCache;
+import org.eclipse.jgit.dircache.DirCacheBuilder;
+import org.eclipse.jgit.dircache.DirCacheCheckout.CheckoutMetadata;
+import org.eclipse.jgit.dircache.DirCacheEntry;
+import org.eclipse.jgit.ignore.FastIgnoreRule;
+import org.eclipse.jgit.internal.storage.file.LockFile;
+import org.eclipse.jgit.lib.ConfigConstants;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.FileMode;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectReader;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.lib.StoredConfig;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.eclipse.jgit.treewalk.TreeWalk;
+import org.eclipse.jgit.treewalk.TreeWalk.OperationType;
+import org.eclipse.jgit.util.NB;
+
+/**
+ * Sparse checkout of a commit with JGit, which itself always checks out every
+ * file of a commit.
+ * <p>
+ * The index is rebuilt from the tree of the commit. Only the files selected by
+ * the sparse checkout patterns are written to the working tree, tracked files
+ * outside of the patterns are removed, and the index entries of the files
+ * which are not checked out get the skip-worktree bit, so that neither JGit nor
+ * command line git report them as deleted. JGit has no setter for the
+ * skip-worktree bit, it is set by rewriting the index JGit wrote. The patterns
+ * and <code>core.sparseCheckout</code> are written like
+ * <code>git sparse-checkout</code> does, so command line git applies the same
+ * sparse checkout to the workspace.
+ * <p>
+ * Patterns are either <code>.gitignore</code> style patterns of the non-cone
+ * mode, or the directories of the cone mode. In cone mode, subtrees outside of
+ * every cone are added to the index without being read.
+ */
+final class JGitSparseCheckout {
+
+    private static final String SPARSE_CHECKOUT_FILE = "info/sparse-checkout";
+    private static final String SPARSE_CHECKOUT = "sparseCheckout";
+    private static final String SPARSE_CHECKOUT_CONE = "sparseCheckoutCone";
+
+    private static final int ENTRY_FLAGS = 60;
+    private static final int EXTENDED = 0x4000;
+    private static final int SKIP_WORKTREE = 0x4000;
+
+    private final Repository repo;
+    private final Matcher matcher;
+
+    /**
+     * Creates the sparse checkout of a repository.
+     *
+     * @param repo repository with a working tree
+     * @param paths sparse checkout patterns, or directories in cone mode, empty to check out all files
+     * @param cone whether the paths are the directories of a cone mode sparse checkout
+     */
+    JGitSparseCheckout(@NonNull Repository repo, @NonNull List<String> paths, boolean cone) {
+        this.repo = repo;
+        if (paths.isEmpty()) {
+            this.matcher = new Matcher() {
+                @Override
+                public boolean includes(String path) {
+                    return true;
+                }
+
+                @Override
+                public boolean mayInclude(String directory) {
+                    return true;
+                }
+            };
+        } else {
+            this.matcher = cone ? new ConeMatcher(paths) : new PatternMatcher(paths);
+        }
+    }
+
+    /**
+     * Checks if a previous checkout of the repository was sparse.
+     *
+     * @param repo repository with a working tree
+     * @return whether <code>core.sparseCheckout</code> is enabled
+     */
+    static boolean isEnabled(@NonNull Repository repo) {
+        return repo.getConfig().getBoolean(ConfigConstants.CONFIG_CORE_SECTION, null, SPARSE_CHECKOUT, false);
+    }
+
+    /**
+     * Checks out the files of a commit selected by the patterns, overwriting local changes like
+     * <code>git checkout -f</code>. HEAD is not changed.
+     *
+     * @param commit commit to check out
+     * @throws IOException if the index or working tree cannot be updated
+     */
+    void checkout(@NonNull ObjectId commit) throws IOException {
+        File workTree = repo.getWorkTree();
+        DirCache previous = repo.readDirCache();
+        DirCache index = repo.lockDirCache();
+        List<String> skipped = new ArrayList<>();
+        try (ObjectReader reader = repo.newObjectReader();
+                RevWalk walk = new RevWalk(reader);
+                TreeWalk tw = new TreeWalk(repo, reader)) {
+            Checkout checkout = new Checkout(repo).setRecursiveDeletion(true);
+            DirCacheBuilder builder = index.builder();
+            tw.setOperationType(OperationType.CHECKOUT_OP);
+            tw.addTree(walk.parseCommit(commit).getTree());
+            while (tw.next()) {
+                String path = tw.getPathString();
+                FileMode mode = tw.getFileMode(0);
+                if (mode == FileMode.TREE) {
+                    if (matcher.mayInclude(path)) {
+                        tw.enterSubtree();
+                    } else {
+                        // cone mode, no file of the subtree is checked out
+                        builder.addTree(tw.getRawPath(), DirCacheEntry.STAGE_0, reader, tw.getObjectId(0));
+                        skipped.add(path + "/");
+                    }
+                    continue;
+                }
+                DirCacheEntry entry = new DirCacheEntry(path);
+                entry.setFileMode(mode);
+                entry.setObjectId(tw.getObjectId(0));
+                if (!matcher.includes(path)) {
+                    skipped.add(path);
+                } else if (!isUpToDate(previous.getEntry(path), entry, new File(workTree, path))) {
+                    if (mode == FileMode.GITLINK) {
+                        checkout.checkoutGitlink(entry, path);
+                    } else {
+                        checkout.checkout(
+                                entry,
+                                new CheckoutMetadata(
+                                        tw.getEolStreamType(OperationType.CHECKOUT_OP),
+                                        tw.getFilterCommand(Constants.ATTR_FILTER_TYPE_SMUDGE)),
+                                reader,
+                                path);
+                    }
+                }
+                builder.add(entry);
+            }
+            builder.finish();
+            removeUncheckedFiles(previous, index, workTree);
+            index.write();
+            if (!index.commit()) {
+                throw new IOException("Could not commit the index of " + workTree);
+            }
+        } finally {
+            index.unlock();
+        }
+        markSkipWorktree(skipped);
+    }
+
+    /* A file which was checked out with the same content and was not changed since */
+    private static boolean isUpToDate(DirCacheEntry previous, DirCacheEntry entry, File file) {
+        if (previous == null
+                || previous.isSkipWorkTree()
+                || previous.isSmudged()
+                || !previous.getObjectId().equals(entry.getObjectId())
+                || previous.getRawMode() != entry.getRawMode()
+                || entry.getFileMode() == FileMode.GITLINK
+                || !file.isFile()
+                || file.length() != previous.getLength()
+                || file.lastModified() != previous.getLastModifiedInstant().toEpochMilli()) {
+            return false;
+        }
+        entry.setLength(previous.getLength());
+        entry.setLastModified(previous.getLastModifiedInstant());
+        return true;
+    }
+
+    /* Tracked files which are not part of the new sparse checkout, like git sparse-checkout untracked files are kept */
+    private void removeUncheckedFiles(DirCache previous, DirCache index, File workTree) throws IOException {
+        for (int i = 0; i < previous.getEntryCount(); i++) {
+            DirCacheEntry entry = previous.getEntry(i);
+            String path = entry.getPathString();
+            if (entry.isSkipWorkTree() || (index.findEntry(path) >= 0 && matcher.includes(path))) {
+                continue;
+            }
+            File file = new File(workTree, path);
+            if (file.isDirectory() && entry.getFileMode() != FileMode.GITLINK) {
+                continue;
+            }
+            Files.deleteIfExists(file.toPath());
+            for (File dir = file.getParentFile(); !dir.equals(workTree); dir = dir.getParentFile()) {
+                String[] children = dir.list();
+                if (children == null || children.length > 0 || !dir.delete()) {
+                    break;
+                }
+            }
+        }
+    }
+
+    /**
+     * Sets the skip-worktree bit of index entries. Entries of index version 2 have no extended flags, the index is
+     * written in version 3. Index version 4, which JGit writes with <code>feature.manyFiles</code> or
+     * <code>index.version=4</code>, stays in version 4: its paths are compressed against the path of the previous
+     * entry, so they are copied unchanged.
+     */
+    private void markSkipWorktree(List<String> skipped) throws IOException {
+        if (skipped.isEmpty()) {
+            return;
+        }
+        Set<String> files = new HashSet<>();
+        TreeSet<String> directories = new TreeSet<>();
+        for (String path : skipped) {
+            (path.endsWith("/") ? directories : files).add(path);
+        }
+        File indexFile = repo.getIndexFile();
+        LockFile lock = new LockFile(indexFile);
+        if (!lock.lock()) {
+            throw new IOException("Could not lock " + indexFile);
+        }
+        try {
+            byte[] in = Files.readAllBytes(indexFile.toPath());
+            int version = NB.decodeInt32(in, 4);
+            if (version < 2 || version > 4) {
+                throw new IOException("Unsupported index version " + version + " of " + indexFile);
+            }
+            boolean compressedPaths = version == 4;
+            ByteArrayOutputStream out = new ByteArrayOutputStream(in.length + in.length / 16);
+            out.write(in, 0, 4);
+            out.write(new byte[] {0, 0, 0, (byte) Math.max(version, 3)}, 0, 4);
+            out.write(in, 8, 4);
+            int entries = NB.decodeInt32(in, 8);
+            int pos = 12;
+            byte[] path = new byte[0];
+            for (int i = 0; i < entries; i++) {
+                int flags = NB.decodeUInt16(in, pos + ENTRY_FLAGS);
+                int nameStart = pos + ENTRY_FLAGS + ((flags & EXTENDED) != 0 ? 4 : 2);
+                int extendedFlags = (flags & EXTENDED) != 0 ? NB.decodeUInt16(in, pos + ENTRY_FLAGS + 2) : 0;
+                int suffixStart = nameStart;
+                int strip = 0;
+                if (compressedPaths) {
+                    // Number of bytes removed from the end of the previous path, a varint as git encodes it
+                    int c = in[suffixStart++] & 0xff;
+                    strip = c & 0x7f;
+                    while ((c & 0x80) != 0) {
+                        c = in[suffixStart++] & 0xff;
+                        strip = ((strip + 1) << 7) | (c & 0x7f);
+                    }
+                }
+                int nameEnd = suffixStart;
+                while (in[nameEnd] != 0) {
+                    nameEnd++;
+                }
+                if (compressedPaths) {
+                    byte[] previousPath = path;
+                    path = Arrays.copyOf(previousPath, previousPath.length - strip + nameEnd - suffixStart);
+                    System.arraycopy(
+                            in, suffixStart, path, previousPath.length - strip, nameEnd - suffixStart);
+                } else {
+                    path = Arrays.copyOfRange(in, nameStart, nameEnd);
+                }
+                String pathString = new String(path, StandardCharsets.UTF_8);
+                if (files.contains(pathString) || isBelow(directories, pathString)) {
+                    extendedFlags |= SKIP_WORKTREE;
+                }
+                out.write(in, pos, ENTRY_FLAGS);
+                writeUInt16(out, extendedFlags != 0 ? flags | EXTENDED : flags & ~EXTENDED);
+                if (extendedFlags != 0) {
+                    writeUInt16(out, extendedFlags);
+                }
+                if (compressedPaths) {
+                    // Entries of version 4 are not padded, the path ends with a single NUL
+                    out.write(in, nameStart, nameEnd + 1 - nameStart);
+                    pos = nameEnd + 1;
+                } else {
+                    out.write(in, nameStart, nameEnd - nameStart);
+                    int length = ENTRY_FLAGS + (extendedFlags != 0 ? 4 : 2) + nameEnd - nameStart;
+                    out.write(new byte[8 - length % 8], 0, 8 - length % 8);
+                    pos += ((nameEnd - pos) / 8 + 1) * 8;
+                }
+            }
+            out.write(in, pos, in.length - Constants.OBJECT_ID_LENGTH - pos);
+            byte[] content = out.toByteArray();
+            try (OutputStream lockOut = lock.getOutputStream()) {
+                lockOut.write(content);
+                lockOut.write(Constants.newMessageDigest().digest(content));
+            }
+            if (!lock.commit()) {
+                throw new IOException("Could not write " + indexFile);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private static boolean isBelow(TreeSet<String> directories, String path) {
+        String directory = directories.floor(path);
+        return directory != null && path.startsWith(directory);
+    }
+
+    private static void writeUInt16(ByteArrayOutputStream out, int value) {
+        out.write(value >>> 8);
+        out.write(value);
+    }
+
+    /**
+     * Records the sparse checkout in the repository configuration, or disables it if all files are checked out.
+     *
+     * @param paths sparse checkout patterns, or directories in cone mode, empty if sparse checkout is disabled
+     * @param cone whether the paths are the directories of a cone mode sparse checkout
+     * @throws IOException if the configuration or the sparse checkout file cannot be written
+     */
+    void save(@NonNull List<String> paths, boolean cone) throws IOException {
+        StoredConfig config = repo.getConfig();
+        config.setBoolean(ConfigConstants.CONFIG_CORE_SECTION, null, SPARSE_CHECKOUT, !paths.isEmpty());
+        if (cone && !paths.isEmpty()) {
+            config.setBoolean(ConfigConstants.CONFIG_CORE_SECTION, null, SPARSE_CHECKOUT_CONE, true);
+        } else {
+            config.unset(ConfigConstants.CONFIG_CORE_SECTION, null, SPARSE_CHECKOUT_CONE);
+        }
+        config.save();
+        if (paths.isEmpty()) {
+            return;
+        }
+        File file = new File(repo.getDirectory(), SPARSE_CHECKOUT_FILE);
+        Files.createDirectories(file.getParentFile().toPath());
+        List<String> lines = cone ? ((ConeMatcher) matcher).patterns() : paths;
+        Files.write(file.toPath(), lines, StandardCharsets.UTF_8);
+    }
+
+    /* Sparse checkout patterns, matched against a path before its parent directories */
+    private interface Matcher {
+        boolean includes(String path);
+
+        /* false if no file below the directory is included */
+        boolean mayInclude(String directory);
+    }
+
+    /* .gitignore style patterns of the non-cone mode, the last pattern matching a path decides */
+    private static final class PatternMatcher implements Matcher {
+        private final List<FastIgnoreRule> rules = new ArrayList<>();
+
+        PatternMatcher(List<String> patterns) {
+            for (String pattern : patterns) {
+                FastIgnoreRule rule = new FastIgnoreRule(pattern);
+                if (!rule.isEmpty()) {
+                    rules.add(rule);
+                }
+            }
+            Collections.reverse(rules);
+        }
+
+        @Override
+        public boolean includes(String path) {
+            boolean directory = false;
+            for (String p = path; ; directory = true) {
+                for (FastIgnoreRule rule : rules) {
+                    if (rule.isMatch(p, directory, true)) {
+                        return rule.getResult();
+                    }
+                }
+                int slash = p.lastIndexOf('/');
+                if (slash < 0) {
+                    return false;
+                }
+                p = p.substring(0, slash);
+            }
+        }
+
+        @Override
+        public boolean mayInclude(String directory) {
+            return true;
+        }
+    }
+
+    /*
+     * Cone mode: every file of a cone directory and its subdirectories, and the
+     * files directly inside the parent directories of a cone and the root.
+     */
+    private static final class ConeMatcher implements Matcher {
+        private final Set<String> cones = new TreeSet<>();
+        private final Set<String> parents = new TreeSet<>();
+
+        ConeMatcher(List<String> directories) {
+            for (String directory : directories) {
+                String cone = directory;
+                while (cone.startsWith("/")) {
+                    cone = cone.substring(1);
+                }
+                if (cone.endsWith("/*")) {
+                    cone = cone.substring(0, cone.length() - 2);
+                }
+                while (cone.endsWith("/")) {
+                    cone = cone.substring(0, cone.length() - 1);
+                }
+                if (cone.isEmpty()) {
+                    continue;
+                }
+                cones.add(cone);
+                for (int slash = cone.indexOf('/'); slash > 0; slash = cone.indexOf('/', slash + 1)) {
+                    parents.add(cone.substring(0, slash));
+                }
+            }
+        }
+
+        private boolean inCone(String directory) {
+            for (String d = directory; ; ) {
+                if (cones.contains(d)) {
+                    return true;
+                }
+                int slash = d.lastIndexOf('/');
+                if (slash < 0) {
+                    return false;
+                }
+                d = d.substring(0, slash);
+            }
+        }
+
+        @Override
+        public boolean includes(String path) {
+            int slash = path.lastIndexOf('/');
+            if (slash < 0) {
+                return true;
+            }
+            String directory = path.substring(0, slash);
+            return parents.contains(directory) || inCone(directory);
+        }
+
+        @Override
+        public boolean mayInclude(String directory) {
+            return parents.contains(directory) || inCone(directory);
+        }
+
+        /* The sparse-checkout file written by git sparse-checkout set --cone */
+        List<String> patterns() {
+            List<String> patterns = new ArrayList<>();
+            patterns.add("/*");
+            patterns.add("!/*/");
+            for (String parent : parents) {
+                if (!inCone(parent)) {
+                    patterns.add("/" + parent + "/");
+                    patterns.add("!/" + parent + "/*/");
+                }
+            }
+            for (String cone : cones) {
+                int slash = cone.lastIndexOf('/');
+                if (slash < 0 || !inCone(cone.substring(0, slash))) {
+                    patterns.add("/" + cone + "/");
+                }
+            }
+            return patterns;
+        }
+    }
+}
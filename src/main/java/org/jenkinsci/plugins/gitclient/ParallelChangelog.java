@@ -0,0 +1,187 @@
+package org.jenkinsci.plugins.gitclient;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.ForkJoinWorkerThread;
+import org.eclipse.jgit.lib.ObjectReader;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.RevCommit;
+
+/**
+ * Diffs the commits of a JGit changelog on several threads.
+ * <p>
+ * Commits are added in the order of the walk and grouped into batches of
+ * {@link #BATCH_SIZE}. Each batch is processed by a task of a shared fork/join
+ * pool with its own object reader and {@link JGitAPIImpl.RawFormatter}, so
+ * rename detection of different commits runs concurrently. Results are passed
+ * to the sink on the calling thread in the order the commits were added, so
+ * the output is the same as that of the serial loop. At most two batches per
+ * thread are in flight; adding a commit waits for the oldest batch when the
+ * limit is reached.
+ * <p>
+ * Disabled unless {@link #THREADS} is greater than one.
+ *
+ * @param <T> result of one commit
+ */
+final class ParallelChangelog<T> implements AutoCloseable {
+
+    /**
+     * Number of threads diffing changelog commits, 1 to diff on the calling thread.
+     */
+    static final int THREADS = Math.max(1, Integer.getInteger(ParallelChangelog.class.getName() + ".threads", 1));
+
+    /**
+     * Number of commits processed by one task.
+     */
+    static final int BATCH_SIZE = 64;
+
+    private static ForkJoinPool pool;
+
+    /**
+     * Processes one commit with the formatter of the task.
+     *
+     * @param <T> result of the commit
+     */
+    @FunctionalInterface
+    interface Step<T> {
+        T apply(JGitAPIImpl.RawFormatter formatter, RevCommit commit) throws IOException;
+    }
+
+    /**
+     * Receives the results of the commits, in order.
+     *
+     * @param <T> result of one commit
+     */
+    @FunctionalInterface
+    interface Sink<T> {
+        void accept(T result) throws IOException;
+    }
+
+    private final Repository repo;
+    private final Step<T> step;
+    private final Sink<T> sink;
+    private final int maxInFlight;
+    private final Deque<Batch<T>> inFlight = new ArrayDeque<>();
+    private List<RevCommit> batch = new ArrayList<>(BATCH_SIZE);
+
+    ParallelChangelog(Repository repo, Step<T> step, Sink<T> sink) {
+        this.repo = repo;
+        this.step = step;
+        this.sink = sink;
+        this.maxInFlight = 2 * THREADS;
+    }
+
+    private static synchronized ForkJoinPool pool() {
+        if (pool == null) {
+            pool = new ForkJoinPool(
+                    THREADS,
+                    p -> {
+                        ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(p);
+                        thread.setName("JGit changelog " + thread.getPoolIndex());
+                        return thread;
+                    },
+                    null,
+                    false);
+        }
+        return pool;
+    }
+
+    /**
+     * Adds the next commit of the changelog.
+     *
+     * @param commit commit of the walk, with its parents parsed
+     * @throws IOException if a previous commit could not be processed
+     * @throws InterruptedException if interrupted while waiting for a batch
+     */
+    void add(RevCommit commit) throws IOException, InterruptedException {
+        batch.add(commit);
+        if (batch.size() == BATCH_SIZE) {
+            submit();
+            while (inFlight.size() >= maxInFlight) {
+                drain();
+            }
+        }
+    }
+
+    /**
+     * Processes the remaining commits and passes all results to the sink.
+     *
+     * @throws IOException if a commit could not be processed or the sink failed
+     * @throws InterruptedException if interrupted while waiting for a batch
+     */
+    void finish() throws IOException, InterruptedException {
+        if (!batch.isEmpty()) {
+            submit();
+        }
+        while (!inFlight.isEmpty()) {
+            drain();
+        }
+    }
+
+    private void submit() {
+        Batch<T> next = new Batch<>(batch);
+        batch = new ArrayList<>(BATCH_SIZE);
+        next.task = pool().submit(() -> next.process(repo, step));
+        inFlight.add(next);
+    }
+
+    private void drain() throws IOException, InterruptedException {
+        Batch<T> done = inFlight.poll();
+        try {
+            done.task.get();
+        } catch (ExecutionException e) {
+            throw new IOException(e.getCause());
+        }
+        if (done.failure instanceof IOException ioe) {
+            throw ioe;
+        }
+        if (done.failure instanceof RuntimeException re) {
+            throw re;
+        }
+        for (T result : done.results) {
+            sink.accept(result);
+        }
+    }
+
+    /**
+     * Cancels the batches which were not passed to the sink.
+     */
+    @Override
+    public void close() {
+        for (Batch<T> pending : inFlight) {
+            pending.task.cancel(false);
+        }
+        inFlight.clear();
+        batch.clear();
+    }
+
+    /* Failures are kept by the batch, fork/join tasks would rethrow a copy wrapped in a RuntimeException */
+    private static final class Batch<T> {
+        private final List<RevCommit> commits;
+        private final List<T> results;
+        private ForkJoinTask<?> task;
+        private Exception failure;
+
+        Batch(List<RevCommit> commits) {
+            this.commits = commits;
+            this.results = new ArrayList<>(commits.size());
+        }
+
+        void process(Repository repo, Step<T> step) {
+            try (ObjectReader reader = repo.newObjectReader();
+                    JGitAPIImpl.RawFormatter formatter = new JGitAPIImpl.RawFormatter(repo, reader)) {
+                for (RevCommit commit : commits) {
+                    results.add(step.apply(formatter, commit));
+                }
+            } catch (IOException | RuntimeException e) {
+                failure = e;
+            }
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package org.jenkinsci.plugins.gitclient;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import java.util.regex.Pattern;
+
+/**
+ * Object filters of a partial clone, the <code>--filter</code> argument of
+ * <code>git clone</code> and <code>git fetch</code>.
+ * <p>
+ * A partial clone omits the objects excluded by the filter, command line git
+ * fetches them from the promisor remote when they are needed, for example by
+ * a checkout. JGit cannot read a repository with missing objects, it fetches
+ * all objects and ignores the filter.
+ */
+final class PartialCloneFilter {
+
+    /* Filters described in git-rev-list(1), combine:<filter>+<filter> joins URL encoded filters */
+    private static final Pattern FILTER = Pattern.compile("blob:none"
+            + "|blob:limit=[0-9]+[kmgKMG]?"
+            + "|tree:[0-9]+"
+            + "|object:type=(?:blob|tree|commit|tag)"
+            + "|sparse:oid=[\\w./:^~@{}-]+"
+            + "|combine:[\\w.:=%+-]+");
+
+    private PartialCloneFilter() {}
+
+    /**
+     * Checks a filter before it is passed to git.
+     *
+     * @param filter filter such as <code>blob:none</code>, <code>blob:limit=1m</code> or <code>tree:0</code>,
+     *     null or empty for no filter
+     * @return the filter, null for no filter
+     * @throws IllegalArgumentException if the filter is not supported by git
+     */
+    @CheckForNull
+    static String check(@CheckForNull String filter) {
+        if (filter == null || filter.isEmpty()) {
+            return null;
+        }
+        if (!FILTER.matcher(filter).matches()) {
+            throw new IllegalArgumentException("Invalid partial clone filter '" + filter + "'");
+        }
+        return filter;
+    }
+}
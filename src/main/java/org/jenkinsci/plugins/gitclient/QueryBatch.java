@@ -0,0 +1,330 @@
+package org.jenkinsci.plugins.gitclient;
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.plugins.git.Branch;
+import hudson.plugins.git.GitException;
+import hudson.plugins.git.IndexEntry;
+import java.io.Serial;
+import java.io.Serializable;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import org.eclipse.jgit.lib.ObjectId;
+
+/**
+ * Read-only queries of a {@link GitClient} which are answered together.
+ * <p>
+ * Each query method records a query and returns a {@link Result} which
+ * holds its answer once {@link #execute()} has been called. When the
+ * client runs on an agent, all the recorded queries are answered with a
+ * single remote call instead of one remote call per query.
+ * <pre>
+ * QueryBatch batch = git.queryBatch();
+ * QueryBatch.Result&lt;String&gt; url = batch.getRemoteUrl("origin");
+ * QueryBatch.Result&lt;ObjectId&gt; head = batch.revParse("HEAD");
+ * batch.execute();
+ * if (url.get() != null) { ... head.get() ... }
+ * </pre>
+ * A query that fails does not prevent the others from being answered, its
+ * {@link Result#get()} throws the failure instead.
+ *
+ * @since 6.7.0
+ */
+public class QueryBatch {
+
+    /**
+     * Answer of a query, available after {@link QueryBatch#execute()}.
+     *
+     * @param <T> type of the answer
+     */
+    public static final class Result<T> {
+        private boolean done;
+        private Object value;
+        private Exception failure;
+
+        private Result() {}
+
+        /**
+         * Returns the answer of the query.
+         *
+         * @return the answer of the query
+         * @throws hudson.plugins.git.GitException if the query failed
+         * @throws IllegalStateException if the batch has not been executed
+         */
+        @SuppressWarnings("unchecked")
+        public T get() throws GitException {
+            if (!done) {
+                throw new IllegalStateException("QueryBatch has not been executed");
+            }
+            if (failure instanceof RuntimeException e) {
+                throw e;
+            }
+            if (failure != null) {
+                throw new GitException(failure);
+            }
+            return (T) value;
+        }
+
+        private void complete(Outcome outcome) {
+            value = outcome.value;
+            failure = outcome.failure;
+            done = true;
+        }
+    }
+
+    /**
+     * Answer of one query as transferred from the agent.
+     */
+    static final class Outcome implements Serializable {
+        private final Object value;
+        private final Exception failure;
+
+        private Outcome(Object value, Exception failure) {
+            this.value = value;
+            this.failure = failure;
+        }
+
+        @Serial
+        private static final long serialVersionUID = 1L;
+    }
+
+    private final GitClient client;
+    private final List<RemoteGitImpl.Invocation> queries = new ArrayList<>();
+    private final List<Result<?>> results = new ArrayList<>();
+    private boolean executed;
+
+    /**
+     * Constructor for a batch of queries answered by <code>client</code>.
+     *
+     * @param client answers the queries
+     */
+    QueryBatch(@NonNull GitClient client) {
+        this.client = client;
+    }
+
+    /**
+     * Queries {@link GitClient#hasGitRepo()}.
+     *
+     * @return answer of the query
+     */
+    public Result<Boolean> hasGitRepo() {
+        return add("hasGitRepo");
+    }
+
+    /**
+     * Queries {@link GitClient#getRemoteUrl(String)}.
+     *
+     * @param name name of the remote
+     * @return answer of the query
+     */
+    public Result<String> getRemoteUrl(String name) {
+        return add("getRemoteUrl", String.class, name);
+    }
+
+    /**
+     * Queries {@link GitClient#revParse(String)}.
+     *
+     * @param revName revision to resolve
+     * @return answer of the query
+     */
+    public Result<ObjectId> revParse(String revName) {
+        return add("revParse", String.class, revName);
+    }
+
+    /**
+     * Queries {@link GitClient#isCommitInRepo(ObjectId)}.
+     *
+     * @param commit commit to look up
+     * @return answer of the query
+     */
+    public Result<Boolean> isCommitInRepo(ObjectId commit) {
+        return add("isCommitInRepo", ObjectId.class, commit);
+    }
+
+    /**
+     * Queries {@link GitClient#getBranches()}.
+     *
+     * @return answer of the query
+     */
+    public Result<Set<Branch>> getBranches() {
+        return add("getBranches");
+    }
+
+    /**
+     * Queries {@link GitClient#getRemoteBranches()}.
+     *
+     * @return answer of the query
+     */
+    public Result<Set<Branch>> getRemoteBranches() {
+        return add("getRemoteBranches");
+    }
+
+    /**
+     * Queries {@link GitClient#getBranchesContaining(String, boolean)}.
+     *
+     * @param revspec commit which the branches must contain
+     * @param allBranches true to include remote branches
+     * @return answer of the query
+     */
+    public Result<List<Branch>> getBranchesContaining(String revspec, boolean allBranches) {
+        return add("getBranchesContaining", String.class, revspec, boolean.class, allBranches);
+    }
+
+    /**
+     * Queries {@link GitClient#tagExists(String)}.
+     *
+     * @param tagName name of the tag
+     * @return answer of the query
+     */
+    public Result<Boolean> tagExists(String tagName) {
+        return add("tagExists", String.class, tagName);
+    }
+
+    /**
+     * Queries {@link GitClient#getTagMessage(String)}.
+     *
+     * @param tagName name of the tag
+     * @return answer of the query
+     */
+    public Result<String> getTagMessage(String tagName) {
+        return add("getTagMessage", String.class, tagName);
+    }
+
+    /**
+     * Queries {@link GitClient#getTagNames(String)}.
+     *
+     * @param tagPattern pattern of tag names
+     * @return answer of the query
+     */
+    public Result<Set<String>> getTagNames(String tagPattern) {
+        return add("getTagNames", String.class, tagPattern);
+    }
+
+    /**
+     * Queries {@link GitClient#refExists(String)}.
+     *
+     * @param refName name of the ref
+     * @return answer of the query
+     */
+    public Result<Boolean> refExists(String refName) {
+        return add("refExists", String.class, refName);
+    }
+
+    /**
+     * Queries {@link GitClient#getRefNames(String)}.
+     *
+     * @param refPrefix prefix of ref names
+     * @return answer of the query
+     */
+    public Result<Set<String>> getRefNames(String refPrefix) {
+        return add("getRefNames", String.class, refPrefix);
+    }
+
+    /**
+     * Queries {@link GitClient#revList(String)}.
+     *
+     * @param ref starting point of the revision list
+     * @return answer of the query
+     */
+    public Result<List<ObjectId>> revList(String ref) {
+        return add("revList", String.class, ref);
+    }
+
+    /**
+     * Queries {@link GitClient#describe(String)}.
+     *
+     * @param commitIsh commit to describe
+     * @return answer of the query
+     */
+    public Result<String> describe(String commitIsh) {
+        return add("describe", String.class, commitIsh);
+    }
+
+    /**
+     * Queries {@link GitClient#hasGitModules()}.
+     *
+     * @return answer of the query
+     */
+    public Result<Boolean> hasGitModules() {
+        return add("hasGitModules");
+    }
+
+    /**
+     * Queries {@link GitClient#getSubmodules(String)}.
+     *
+     * @param treeIsh tree in which to look for submodules
+     * @return answer of the query
+     */
+    public Result<List<IndexEntry>> getSubmodules(String treeIsh) {
+        return add("getSubmodules", String.class, treeIsh);
+    }
+
+    /**
+     * Answer all recorded queries. A batch can only be executed once.
+     *
+     * @throws hudson.plugins.git.GitException if the queries could not be sent to the agent
+     * @throws java.lang.InterruptedException if interrupted
+     */
+    public void execute() throws GitException, InterruptedException {
+        if (executed) {
+            throw new IllegalStateException("QueryBatch has already been executed");
+        }
+        executed = true;
+        List<Outcome> outcomes = answer(queries);
+        for (int i = 0; i < results.size(); i++) {
+            results.get(i).complete(outcomes.get(i));
+        }
+    }
+
+    /* Answer the queries in this JVM. RemoteGitImpl answers them on the agent instead. */
+    List<Outcome> answer(List<RemoteGitImpl.Invocation> queries) throws GitException, InterruptedException {
+        return answer(client, queries);
+    }
+
+    static List<Outcome> answer(Object target, List<RemoteGitImpl.Invocation> queries)
+            throws GitException, InterruptedException {
+        List<Outcome> outcomes = new ArrayList<>(queries.size());
+        for (RemoteGitImpl.Invocation query : queries) {
+            try {
+                outcomes.add(new Outcome(query.invoke(target), null));
+            } catch (InvocationTargetException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof InterruptedException ie) {
+                    throw ie;
+                }
+                if (cause instanceof Exception failure) {
+                    outcomes.add(new Outcome(null, failure));
+                } else {
+                    throw new GitException(cause);
+                }
+            } catch (IllegalAccessException e) {
+                throw new GitException(e);
+            }
+        }
+        return outcomes;
+    }
+
+    private <T> Result<T> add(String methodName, Object... typesAndArgs) {
+        if (executed) {
+            throw new IllegalStateException("QueryBatch has already been executed");
+        }
+        Class<?>[] types = new Class<?>[typesAndArgs.length / 2];
+        Object[] args = new Object[types.length];
+        for (int i = 0; i < types.length; i++) {
+            types[i] = (Class<?>) typesAndArgs[2 * i];
+            args[i] = typesAndArgs[2 * i + 1];
+        }
+        Method method;
+        try {
+            method = GitClient.class.getMethod(methodName, types);
+        } catch (NoSuchMethodException e) {
+            throw new IllegalStateException("No GitClient method for query " + methodName, e);
+        }
+        queries.add(new RemoteGitImpl.Invocation(method, args));
+        Result<T> result = new Result<>();
+        results.add(result);
+        return result;
+    }
+}
@@ -0,0 +1,279 @@
+package org.jenkinsci.plugins.gitclient;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+import org.eclipse.jgit.lib.Constants;
+
+/**
+ * Compiled glob pattern which selects refs by name.
+ * <p>
+ * A remote may advertise hundreds of thousands of refs, for example the
+ * <code>refs/changes/*</code> of a Gerrit server. Matching each of them with
+ * {@link String#matches(String)} compiles the pattern again for every ref.
+ * A glob is compiled once, and recently used globs are cached because
+ * branch sources query the same patterns on every scan. Globs without
+ * wildcards are compared as strings. Otherwise the literal start and end
+ * of the glob reject most ref names before the regular expression is
+ * evaluated.
+ */
+final class RefGlob {
+
+    private static final int CACHE_SIZE = 256;
+
+    @SuppressWarnings("serial")
+    private static final Map<Key, RefGlob> CACHE = Collections.synchronizedMap(new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Key, RefGlob> eldest) {
+            return size() > CACHE_SIZE;
+        }
+    });
+
+    /* Characters other than '*' and '?' with a meaning in the regular expressions of JGitAPIImpl globs */
+    private static final String REGEX_CHARS = "[](){}+^$|";
+
+    private enum Syntax {
+        LS_REMOTE,
+        REF,
+        NAME
+    }
+
+    /* Part of the ref name which the glob must match */
+    private enum Anchor {
+        /** The whole name. */
+        FULL,
+        /** The end of the name following a '/'. */
+        AFTER_SLASH,
+        /** The whole name or the end of the name following a '/'. */
+        TAIL
+    }
+
+    private record Key(Syntax syntax, String glob) {}
+
+    private final Anchor anchor;
+    /* The glob if it has no wildcard */
+    @CheckForNull
+    private final String literal;
+    /* Literal text every matching name starts with */
+    @NonNull
+    private final String prefix;
+    /* Literal text every matching name ends with */
+    @NonNull
+    private final String suffix;
+
+    @CheckForNull
+    private final Pattern pattern;
+
+    private RefGlob(
+            Anchor anchor, @CheckForNull String literal, String prefix, String suffix, @CheckForNull String regex) {
+        this.anchor = anchor;
+        this.literal = literal;
+        this.prefix = prefix;
+        this.suffix = suffix;
+        this.pattern = literal == null ? Pattern.compile(regex) : null;
+    }
+
+    /**
+     * Returns the glob of <code>git ls-remote &lt;repository&gt; &lt;pattern&gt;</code>:
+     * it matches the end of the ref name at a path component boundary,
+     * '*' and '?' are wildcards and '\' escapes the next character.
+     *
+     * @param glob ls-remote pattern
+     * @return compiled glob
+     */
+    @NonNull
+    static RefGlob lsRemote(@NonNull String glob) {
+        return CACHE.computeIfAbsent(new Key(Syntax.LS_REMOTE, glob), RefGlob::compile);
+    }
+
+    /**
+     * Returns the glob of a ref or branch name given to JGitAPIImpl: a glob
+     * starting with <code>refs/</code> matches the whole ref name, any other
+     * glob matches the end of the name following a '/'.
+     *
+     * @param glob ref name glob
+     * @return compiled glob
+     */
+    @NonNull
+    static RefGlob ref(@NonNull String glob) {
+        return CACHE.computeIfAbsent(new Key(Syntax.REF, glob), RefGlob::compile);
+    }
+
+    /**
+     * Returns the glob of a name given to JGitAPIImpl which must match the
+     * whole name, such as a symbolic ref.
+     *
+     * @param glob name glob
+     * @return compiled glob
+     */
+    @NonNull
+    static RefGlob name(@NonNull String glob) {
+        return CACHE.computeIfAbsent(new Key(Syntax.NAME, glob), RefGlob::compile);
+    }
+
+    /**
+     * True if the ref name matches the glob.
+     *
+     * @param refName name of the ref
+     * @return true if the name matches
+     */
+    boolean matches(@NonNull String refName) {
+        if (literal != null) {
+            return switch (anchor) {
+                case FULL -> refName.equals(literal);
+                case AFTER_SLASH -> endsWithComponent(refName, literal);
+                case TAIL -> refName.equals(literal) || endsWithComponent(refName, literal);
+            };
+        }
+        return refName.startsWith(prefix)
+                && refName.endsWith(suffix)
+                && pattern.matcher(refName).matches();
+    }
+
+    /**
+     * Returns the literal text every matching ref name starts with.
+     *
+     * @return start of every matching name, null if a matching name may start with anything
+     */
+    @CheckForNull
+    String refPrefix() {
+        if (anchor != Anchor.FULL) {
+            return null;
+        }
+        String start = literal != null ? literal : prefix;
+        return start.isEmpty() ? null : start;
+    }
+
+    /**
+     * Returns the <code>ref-prefix</code> arguments of a protocol version 2
+     * <code>ls-refs</code> request which lists the refs matching
+     * <code>glob</code> in the namespaces selected by <code>headsOnly</code>
+     * and <code>tagsOnly</code>. The server may list more refs, like a server
+     * which does not support protocol version 2, so the refs it lists must
+     * still be matched.
+     *
+     * @param glob glob the ref names must match, null for any name
+     * @param headsOnly list only the refs in <code>refs/heads/</code>
+     * @param tagsOnly list only the refs in <code>refs/tags/</code>
+     * @return prefixes of the listed refs, empty to list all refs
+     */
+    @NonNull
+    static List<String> refPrefixes(@CheckForNull RefGlob glob, boolean headsOnly, boolean tagsOnly) {
+        List<String> namespaces = new ArrayList<>();
+        if (headsOnly) {
+            namespaces.add(Constants.R_HEADS);
+        }
+        if (tagsOnly) {
+            namespaces.add(Constants.R_TAGS);
+        }
+        String globPrefix = glob == null ? null : glob.refPrefix();
+        if (globPrefix == null) {
+            return namespaces;
+        }
+        if (namespaces.isEmpty()) {
+            return List.of(globPrefix);
+        }
+        List<String> prefixes = new ArrayList<>();
+        for (String namespace : namespaces) {
+            if (globPrefix.startsWith(namespace)) {
+                prefixes.add(globPrefix);
+            } else if (namespace.startsWith(globPrefix)) {
+                prefixes.add(namespace);
+            }
+        }
+        // No ref of the namespaces can match, an empty list would ask for all refs
+        return prefixes.isEmpty() ? namespaces : prefixes;
+    }
+
+    private static boolean endsWithComponent(String refName, String name) {
+        int start = refName.length() - name.length();
+        return start > 0 && refName.charAt(start - 1) == '/' && refName.endsWith(name);
+    }
+
+    private static RefGlob compile(Key key) {
+        String glob = key.glob();
+        if (key.syntax() == Syntax.LS_REMOTE) {
+            return compileLsRemote(glob);
+        }
+        Anchor anchor = key.syntax() == Syntax.NAME || glob.startsWith("refs/") ? Anchor.FULL : Anchor.AFTER_SLASH;
+        StringBuilder regex = new StringBuilder(anchor == Anchor.FULL ? "" : ".*/");
+        for (int i = 0; i < glob.length(); ++i) {
+            final char c = glob.charAt(i);
+            switch (c) {
+                case '*':
+                    regex.append(".*");
+                    break;
+                case '?':
+                    regex.append('.');
+                    break;
+                case '.':
+                    regex.append("\\.");
+                    break;
+                case '\\':
+                    regex.append("\\\\");
+                    break;
+                default:
+                    regex.append(c);
+                    break;
+            }
+        }
+        if (indexOfAny(glob, REGEX_CHARS) >= 0) {
+            // Other characters of the glob are regular expression syntax, nothing is known to be literal
+            return new RefGlob(anchor, null, "", "", regex.toString());
+        }
+        int first = indexOfAny(glob, "*?");
+        if (first < 0) {
+            return new RefGlob(anchor, glob, "", "", null);
+        }
+        int last = Math.max(glob.lastIndexOf('*'), glob.lastIndexOf('?'));
+        String prefix = anchor == Anchor.FULL ? glob.substring(0, first) : "";
+        return new RefGlob(anchor, null, prefix, glob.substring(last + 1), regex.toString());
+    }
+
+    private static RefGlob compileLsRemote(String glob) {
+        StringBuilder regex = new StringBuilder("(?:.*/)?");
+        StringBuilder literal = new StringBuilder();
+        boolean wildcard = false;
+        for (int i = 0; i < glob.length(); i++) {
+            char c = glob.charAt(i);
+            switch (c) {
+                case '*':
+                case '?':
+                    wildcard = true;
+                    literal.setLength(0);
+                    regex.append(c == '*' ? ".*" : ".");
+                    break;
+                case '\\':
+                    if (i + 1 < glob.length()) {
+                        c = glob.charAt(++i);
+                    }
+                    literal.append(c);
+                    regex.append(Pattern.quote(String.valueOf(c)));
+                    break;
+                default:
+                    literal.append(c);
+                    regex.append(Pattern.quote(String.valueOf(c)));
+                    break;
+            }
+        }
+        if (!wildcard) {
+            return new RefGlob(Anchor.TAIL, literal.toString(), "", "", null);
+        }
+        // literal is the text after the last wildcard
+        return new RefGlob(Anchor.TAIL, null, "", literal.toString(), regex.toString());
+    }
+
+    private static int indexOfAny(String s, String chars) {
+        for (int i = 0; i < s.length(); i++) {
+            if (chars.indexOf(s.charAt(i)) >= 0) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
@@ -86,10 +86,17 @@ class RemoteGitImpl implements GitClient, hudson.plugins.git.IGitAPI, Serializab
                 if (args[i] instanceof Writer writer) {
                     args[i] = new RemoteWriter(writer);
                 }
+                if (args[i] instanceof ChangelogCommand.EntryConsumer consumer) {
+                    args[i] = new RemoteEntryConsumer(consumer);
+                }
             }
         }
 
         public void replay(Object target) throws InvocationTargetException, IllegalAccessException {
+            invoke(target);
+        }
+
+        Object invoke(Object target) throws InvocationTargetException, IllegalAccessException {
             OUTER:
             for (Method m : target.getClass().getMethods()) {
                 if (m.getName().equals(methodName) && m.getParameterTypes().length == parameterTypes.length) {
@@ -100,8 +107,7 @@ class RemoteGitImpl implements GitClient, hudson.plugins.git.IGitAPI, Serializab
                         }
                     }
                     // matched
-                    m.invoke(target, args);
-                    return;
+                    return m.invoke(target, args);
                 }
             }
             throw new IllegalStateException(
@@ -112,6 +118,30 @@ class RemoteGitImpl implements GitClient, hudson.plugins.git.IGitAPI, Serializab
         private static final long serialVersionUID = 1L;
     }
 
+    /**
+     * Passes the changelog entries read on the agent to the consumer on the controller.
+     */
+    private static class RemoteEntryConsumer implements ChangelogCommand.EntryConsumer, Serializable {
+        private final transient ChangelogCommand.EntryConsumer consumer;
+
+        RemoteEntryConsumer(ChangelogCommand.EntryConsumer consumer) {
+            this.consumer = consumer;
+        }
+
+        @Override
+        public void accept(@NonNull ChangelogEntry entry) throws IOException {
+            consumer.accept(entry);
+        }
+
+        @Serial
+        private Object writeReplace() {
+            return Channel.currentOrFail().export(ChangelogCommand.EntryConsumer.class, consumer);
+        }
+
+        @Serial
+        private static final long serialVersionUID = 1L;
+    }
+
     private <T extends GitCommand> T command(Class<T> type) {
         return type.cast(Proxy.newProxyInstance(
                 type.getClassLoader(), new Class[] {type}, new CommandInvocationHandler(type, this)));
@@ -188,6 +218,49 @@ class RemoteGitImpl implements GitClient, hudson.plugins.git.IGitAPI, Serializab
         }
     }
 
+    /**
+     * Answers all the queries of a {@link QueryBatch} with a single call to the agent.
+     *
+     * @return a {@link org.jenkinsci.plugins.gitclient.QueryBatch} object.
+     */
+    @Override
+    public QueryBatch queryBatch() {
+        return new QueryBatch(proxy) {
+            @Override
+            List<QueryBatch.Outcome> answer(List<Invocation> queries) throws GitException, InterruptedException {
+                try {
+                    return channel.call(new QueryBatchMasterToSlaveCallable(proxy, queries));
+                } catch (IOException e) {
+                    throw new GitException(e);
+                }
+            }
+        };
+    }
+
+    private static class QueryBatchMasterToSlaveCallable
+            extends jenkins.security.MasterToSlaveCallable<List<QueryBatch.Outcome>, GitException> {
+        private final GitClient proxy;
+        private final List<Invocation> queries;
+
+        QueryBatchMasterToSlaveCallable(GitClient proxy, List<Invocation> queries) {
+            this.proxy = proxy;
+            this.queries = new ArrayList<>(queries);
+        }
+
+        @Override
+        public List<QueryBatch.Outcome> call() throws GitException {
+            try {
+                // proxy is the local GitClient once this callable is on the agent
+                return QueryBatch.answer(proxy, queries);
+            } catch (InterruptedException e) {
+                throw new GitException(e);
+            }
+        }
+
+        @Serial
+        private static final long serialVersionUID = 1L;
+    }
+
     private OutputStream wrap(OutputStream os) {
         return new RemoteOutputStream(os);
     }
@@ -669,6 +742,13 @@ class RemoteGitImpl implements GitClient, hudson.plugins.git.IGitAPI, Serializab
         return proxy.getRemoteSymbolicReferences(remoteRepoUrl, pattern);
     }
 
+    /** {@inheritDoc} */
+    @Override
+    public AdvertisedRefs getAdvertisedRefs(String remoteRepoUrl, String pattern)
+            throws GitException, InterruptedException {
+        return proxy.getAdvertisedRefs(remoteRepoUrl, pattern);
+    }
+
     /** {@inheritDoc} */
     @Override
     public ObjectId revParse(String revName) throws GitException, InterruptedException {
@@ -0,0 +1,200 @@
+package org.jenkinsci.plugins.gitclient;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.util.DaemonThreadFactory;
+import hudson.util.NamingThreadFactory;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.lib.RepositoryBuilder;
+
+/**
+ * Pool of open JGit {@link Repository} instances, keyed by workspace.
+ * <p>
+ * Opening a repository reads its configuration and scans its packs, and the
+ * open pack files are what JGit's window and delta base caches refer to.
+ * {@link JGitAPIImpl} opens a repository in almost every method, so it
+ * shares one instance per workspace through this pool. Each
+ * {@link #open(File)} increments the use count of the shared instance and
+ * each {@link Repository#close()} by the caller decrements it.
+ * <p>
+ * A pooled instance is replaced when the pack directory changes, or when
+ * the git directory is deleted and created again. Cached refs are refreshed
+ * when packed-refs changes. Loose refs are revalidated by JGit on every
+ * read. The pool releases a repository that has not been opened for
+ * {@link #IDLE_TIMEOUT_SECONDS} seconds, so that open files do not keep a
+ * workspace from being deleted.
+ */
+final class RepositoryPool {
+
+    private static final Logger LOGGER = Logger.getLogger(RepositoryPool.class.getName());
+
+    /**
+     * Seconds an unused repository is kept open. Zero disables pooling.
+     * Disabled by default on Windows, where open pack files prevent
+     * deletion of the workspace.
+     */
+    static final long IDLE_TIMEOUT_SECONDS = Long.getLong(
+            RepositoryPool.class.getName() + ".idleTimeout", File.pathSeparatorChar == ';' ? 0L : 10L);
+
+    private static final RepositoryPool INSTANCE = new RepositoryPool(TimeUnit.SECONDS.toMillis(IDLE_TIMEOUT_SECONDS));
+
+    private static final ScheduledExecutorService SWEEPER = Executors.newSingleThreadScheduledExecutor(
+            new NamingThreadFactory(new DaemonThreadFactory(), "RepositoryPool.sweeper"));
+
+    private final long idleTimeoutMillis;
+    private final Map<File, Entry> entries = new HashMap<>();
+    private ScheduledFuture<?> sweep;
+
+    RepositoryPool(long idleTimeoutMillis) {
+        this.idleTimeoutMillis = idleTimeoutMillis;
+    }
+
+    static RepositoryPool get() {
+        return INSTANCE;
+    }
+
+    /**
+     * Returns the repository of <code>workspace</code>. The caller must close it.
+     *
+     * @param workspace working tree of the repository
+     * @return repository, shared with other callers if pooled
+     * @throws IOException if the repository cannot be opened
+     */
+    @NonNull
+    Repository open(@NonNull File workspace) throws IOException {
+        if (idleTimeoutMillis <= 0) {
+            return build(workspace);
+        }
+        File key = workspace.toPath().toAbsolutePath().normalize().toFile();
+        long now = System.currentTimeMillis();
+        synchronized (this) {
+            Entry entry = entries.get(key);
+            Signature current = entry == null ? null : Signature.read(entry.repository.getDirectory());
+            if (entry != null && (current == null || !entry.signature.samePacks(current))) {
+                entries.remove(key);
+                entry.repository.close();
+                entry = null;
+            }
+            if (entry == null) {
+                Repository repository = build(workspace);
+                Signature signature = Signature.read(repository.getDirectory());
+                if (signature == null) {
+                    // Not a repository yet, nothing worth keeping
+                    return repository;
+                }
+                entry = new Entry(repository, signature);
+                entries.put(key, entry);
+                scheduleSweep();
+            } else if (!entry.signature.samePackedRefs(current)) {
+                entry.repository.getRefDatabase().refresh();
+                entry.signature = current;
+            }
+            entry.lastUsed = now;
+            entry.repository.incrementOpen();
+            return entry.repository;
+        }
+    }
+
+    /**
+     * Release every pooled repository of <code>workspace</code>, for example
+     * before its git directory is replaced.
+     *
+     * @param workspace working tree of the repository
+     */
+    synchronized void invalidate(@NonNull File workspace) {
+        Entry entry = entries.remove(workspace.toPath().toAbsolutePath().normalize().toFile());
+        if (entry != null) {
+            entry.repository.close();
+        }
+    }
+
+    /* Number of pooled repositories, for tests */
+    synchronized int size() {
+        return entries.size();
+    }
+
+    synchronized void sweep(long now) {
+        Iterator<Entry> it = entries.values().iterator();
+        while (it.hasNext()) {
+            Entry entry = it.next();
+            if (now - entry.lastUsed >= idleTimeoutMillis) {
+                it.remove();
+                LOGGER.log(Level.FINE, "Releasing idle repository {0}", entry.repository.getDirectory());
+                entry.repository.close();
+            }
+        }
+        sweep = null;
+        scheduleSweep();
+    }
+
+    private void scheduleSweep() {
+        if (sweep == null && !entries.isEmpty()) {
+            sweep = SWEEPER.schedule(
+                    () -> sweep(System.currentTimeMillis()), idleTimeoutMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private static Repository build(File workspace) throws IOException {
+        return new RepositoryBuilder().setWorkTree(workspace).build();
+    }
+
+    private static final class Entry {
+        final Repository repository;
+        Signature signature;
+        long lastUsed;
+
+        Entry(Repository repository, Signature signature) {
+            this.repository = repository;
+            this.signature = signature;
+        }
+    }
+
+    /**
+     * Identity of a git directory and the state of its packs and packed refs.
+     */
+    private record Signature(
+            Object gitDirKey, long packDirModified, long packedRefsModified, long packedRefsLength) {
+
+        @CheckForNull
+        static Signature read(File gitDir) {
+            File objects = new File(gitDir, "objects");
+            if (!objects.isDirectory()) {
+                return null;
+            }
+            BasicFileAttributes attributes;
+            try {
+                attributes = Files.readAttributes(gitDir.toPath(), BasicFileAttributes.class);
+            } catch (IOException e) {
+                return null;
+            }
+            Object gitDirKey = attributes.fileKey() != null ? attributes.fileKey() : attributes.creationTime();
+            File packedRefs = new File(gitDir, "packed-refs");
+            return new Signature(
+                    gitDirKey,
+                    new File(objects, "pack").lastModified(),
+                    packedRefs.lastModified(),
+                    packedRefs.length());
+        }
+
+        boolean samePacks(Signature other) {
+            return gitDirKey.equals(other.gitDirKey) && packDirModified == other.packDirModified;
+        }
+
+        boolean samePackedRefs(Signature other) {
+            return packedRefsModified == other.packedRefsModified && packedRefsLength == other.packedRefsLength;
+        }
+    }
+}
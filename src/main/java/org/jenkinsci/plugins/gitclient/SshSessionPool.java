@@ -0,0 +1,376 @@
+package org.jenkinsci.plugins.gitclient;
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.util.DaemonThreadFactory;
+import hudson.util.NamingThreadFactory;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.eclipse.jgit.errors.TransportException;
+import org.eclipse.jgit.transport.CredentialsProvider;
+import org.eclipse.jgit.transport.FtpChannel;
+import org.eclipse.jgit.transport.RemoteSession;
+import org.eclipse.jgit.transport.RemoteSession2;
+import org.eclipse.jgit.transport.SshSessionFactory;
+import org.eclipse.jgit.transport.URIish;
+import org.eclipse.jgit.transport.sshd.SshdSession;
+import org.eclipse.jgit.util.FS;
+
+/**
+ * Process wide pool of authenticated SSH sessions used by JGit transports.
+ * <p>
+ * Every JGit transport asks its {@link SshSessionFactory} for a session, and
+ * a new factory connects, exchanges keys and authenticates each time. The
+ * pool keeps sessions open after the transport releases them, keyed by host,
+ * port, user and a fingerprint of the credentials, so that a fetch which
+ * follows an ls-remote of the same repository reuses the authenticated
+ * connection. Each git command runs in its own channel, a session is shared
+ * by up to {@link #MAX_CHANNELS_PER_SESSION} concurrent commands and at most
+ * {@link #MAX_SESSIONS_PER_HOST} sessions are pooled for a key. A command
+ * which finds all of them busy gets a session of its own, closed when it is
+ * released. Sessions and session factories which have not been used for
+ * {@link #IDLE_TIMEOUT_SECONDS} seconds are closed.
+ */
+final class SshSessionPool {
+
+    private static final Logger LOGGER = Logger.getLogger(SshSessionPool.class.getName());
+
+    /**
+     * Seconds an unused SSH session is kept open. Zero disables pooling,
+     * each transport then connects with a new session factory.
+     */
+    static final long IDLE_TIMEOUT_SECONDS = Long.getLong(SshSessionPool.class.getName() + ".idleTimeout", 60L);
+
+    /** Sessions pooled for one host, port, user and credential. */
+    static final int MAX_SESSIONS_PER_HOST =
+            Math.max(1, Integer.getInteger(SshSessionPool.class.getName() + ".maxSessionsPerHost", 4));
+
+    /**
+     * Concurrent commands in one session. OpenSSH allows 10 channels per
+     * connection unless <code>MaxSessions</code> is changed.
+     */
+    static final int MAX_CHANNELS_PER_SESSION =
+            Math.max(1, Integer.getInteger(SshSessionPool.class.getName() + ".maxChannelsPerSession", 8));
+
+    private static final SshSessionPool INSTANCE = new SshSessionPool(
+            TimeUnit.SECONDS.toMillis(IDLE_TIMEOUT_SECONDS), MAX_SESSIONS_PER_HOST, MAX_CHANNELS_PER_SESSION);
+
+    private static final ScheduledExecutorService SWEEPER = Executors.newSingleThreadScheduledExecutor(
+            new NamingThreadFactory(new DaemonThreadFactory(), "SshSessionPool.sweeper"));
+
+    private final long idleTimeoutMillis;
+    private final int maxSessionsPerHost;
+    private final int maxChannelsPerSession;
+    private final Map<String, Client> clients = new HashMap<>();
+    private final Map<SessionKey, List<PooledSession>> sessions = new HashMap<>();
+    private ScheduledFuture<?> sweep;
+
+    SshSessionPool(long idleTimeoutMillis, int maxSessionsPerHost, int maxChannelsPerSession) {
+        this.idleTimeoutMillis = idleTimeoutMillis;
+        this.maxSessionsPerHost = maxSessionsPerHost;
+        this.maxChannelsPerSession = maxChannelsPerSession;
+    }
+
+    static SshSessionPool get() {
+        return INSTANCE;
+    }
+
+    boolean isEnabled() {
+        return idleTimeoutMillis > 0;
+    }
+
+    /**
+     * Returns a session factory which takes its sessions from the pool.
+     * <p>
+     * The factory created by <code>factory</code> connects new sessions. It
+     * is created when the first session for <code>credentials</code> is
+     * needed and shared by all sessions with the same credentials.
+     *
+     * @param credentials fingerprint of everything the sessions depend on:
+     *     keys, user names, passwords, host key verification and ssh configuration
+     * @param factory creates the factory which connects sessions
+     * @return session factory, released sessions are returned to the pool
+     */
+    @NonNull
+    SshSessionFactory sessionFactory(
+            @NonNull String credentials, @NonNull Supplier<? extends SshSessionFactory> factory) {
+        return new PooledSessionFactory(credentials, factory);
+    }
+
+    /* Number of pooled sessions, for tests */
+    synchronized int size() {
+        int size = 0;
+        for (List<PooledSession> pooled : sessions.values()) {
+            size += pooled.size();
+        }
+        return size;
+    }
+
+    private RemoteSession acquire(
+            PooledSessionFactory owner, URIish uri, CredentialsProvider credentialsProvider, FS fs, int tms)
+            throws TransportException {
+        SessionKey key = new SessionKey(uri.getHost(), uri.getPort(), uri.getUser(), owner.credentials);
+        Client client;
+        synchronized (this) {
+            PooledSession session = idleOrLeastBusy(sessions.get(key));
+            if (session != null) {
+                session.channels++;
+                return new Lease(session);
+            }
+            client = clients.computeIfAbsent(owner.credentials, c -> new Client());
+            client.connecting++;
+        }
+        PooledSession session = null;
+        try {
+            SshSessionFactory factory = client.factory(owner.factory);
+            session = new PooledSession(key, factory, factory.getSession(uri, credentialsProvider, fs, tms));
+        } finally {
+            synchronized (this) {
+                client.connecting--;
+                client.lastUsed = System.currentTimeMillis();
+                if (session != null) {
+                    List<PooledSession> pooled = sessions.get(key);
+                    session.pooled = pooled == null || pooled.size() < maxSessionsPerHost;
+                    if (session.pooled) {
+                        sessions.computeIfAbsent(key, k -> new ArrayList<>()).add(session);
+                        LOGGER.log(Level.FINE, "Pooling SSH session to {0}:{1}", new Object[] {key.host, key.port});
+                    }
+                    session.channels++;
+                    client.sessions++;
+                }
+                scheduleSweep();
+            }
+        }
+        if (session.remote instanceof SshdSession sshdSession) {
+            PooledSession pooledSession = session;
+            sshdSession.addCloseListener(closed -> closed(pooledSession));
+        }
+        return new Lease(session);
+    }
+
+    private PooledSession idleOrLeastBusy(List<PooledSession> pooled) {
+        PooledSession best = null;
+        if (pooled != null) {
+            for (PooledSession session : pooled) {
+                if (session.channels < maxChannelsPerSession && (best == null || session.channels < best.channels)) {
+                    best = session;
+                }
+            }
+        }
+        return best;
+    }
+
+    private void release(PooledSession session) {
+        boolean disconnect;
+        synchronized (this) {
+            session.channels--;
+            session.lastUsed = System.currentTimeMillis();
+            disconnect = !session.pooled && !session.closed && session.channels == 0;
+            if (disconnect) {
+                session.closed = true;
+                clients.get(session.key.credentials).sessions--;
+            }
+            scheduleSweep();
+        }
+        if (disconnect) {
+            disconnect(session);
+        }
+    }
+
+    /* The server or the network closed the connection */
+    private synchronized void closed(PooledSession session) {
+        if (session.closed) {
+            return;
+        }
+        session.closed = true;
+        clients.get(session.key.credentials).sessions--;
+        if (session.pooled) {
+            List<PooledSession> pooled = sessions.get(session.key);
+            if (pooled != null) {
+                pooled.remove(session);
+                if (pooled.isEmpty()) {
+                    sessions.remove(session.key);
+                }
+            }
+        }
+    }
+
+    void sweep(long now) {
+        List<PooledSession> idleSessions = new ArrayList<>();
+        List<SshSessionFactory> idleFactories = new ArrayList<>();
+        synchronized (this) {
+            Iterator<List<PooledSession>> lists = sessions.values().iterator();
+            while (lists.hasNext()) {
+                List<PooledSession> pooled = lists.next();
+                Iterator<PooledSession> it = pooled.iterator();
+                while (it.hasNext()) {
+                    PooledSession session = it.next();
+                    if (session.channels == 0 && now - session.lastUsed >= idleTimeoutMillis) {
+                        it.remove();
+                        session.closed = true;
+                        clients.get(session.key.credentials).sessions--;
+                        idleSessions.add(session);
+                    }
+                }
+                if (pooled.isEmpty()) {
+                    lists.remove();
+                }
+            }
+            Iterator<Client> it = clients.values().iterator();
+            while (it.hasNext()) {
+                Client client = it.next();
+                if (client.sessions == 0 && client.connecting == 0 && now - client.lastUsed >= idleTimeoutMillis) {
+                    it.remove();
+                    if (client.factory != null) {
+                        idleFactories.add(client.factory);
+                    }
+                }
+            }
+            sweep = null;
+            scheduleSweep();
+        }
+        for (PooledSession session : idleSessions) {
+            LOGGER.log(Level.FINE, "Closing idle SSH session to {0}:{1}", new Object[] {
+                session.key.host, session.key.port
+            });
+            disconnect(session);
+        }
+        for (SshSessionFactory factory : idleFactories) {
+            if (factory instanceof AutoCloseable closeable) {
+                try {
+                    closeable.close();
+                } catch (Exception e) {
+                    LOGGER.log(Level.FINE, "Failed to close SSH session factory", e);
+                }
+            }
+        }
+    }
+
+    private void scheduleSweep() {
+        if (sweep == null && !clients.isEmpty()) {
+            sweep = SWEEPER.schedule(
+                    () -> sweep(System.currentTimeMillis()), idleTimeoutMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private static void disconnect(PooledSession session) {
+        try {
+            session.factory.releaseSession(session.remote);
+        } catch (RuntimeException e) {
+            LOGGER.log(Level.FINE, "Failed to close SSH session", e);
+        }
+    }
+
+    private record SessionKey(String host, int port, String user, String credentials) {}
+
+    /**
+     * Session factory of one credential, shared by its sessions.
+     */
+    private static final class Client {
+        private SshSessionFactory factory;
+        int sessions;
+        int connecting;
+        long lastUsed;
+
+        synchronized SshSessionFactory factory(Supplier<? extends SshSessionFactory> supplier) {
+            if (factory == null) {
+                factory = supplier.get();
+            }
+            return factory;
+        }
+    }
+
+    private static final class PooledSession {
+        final SessionKey key;
+        final SshSessionFactory factory;
+        final RemoteSession remote;
+        boolean pooled;
+        boolean closed;
+        int channels;
+        long lastUsed;
+
+        PooledSession(SessionKey key, SshSessionFactory factory, RemoteSession remote) {
+            this.key = key;
+            this.factory = factory;
+            this.remote = remote;
+        }
+    }
+
+    private final class PooledSessionFactory extends SshSessionFactory {
+        final String credentials;
+        final Supplier<? extends SshSessionFactory> factory;
+
+        PooledSessionFactory(String credentials, Supplier<? extends SshSessionFactory> factory) {
+            this.credentials = credentials;
+            this.factory = factory;
+        }
+
+        @Override
+        public RemoteSession getSession(URIish uri, CredentialsProvider credentialsProvider, FS fs, int tms)
+                throws TransportException {
+            return acquire(this, uri, credentialsProvider, fs, tms);
+        }
+
+        @Override
+        public String getType() {
+            return "pooled";
+        }
+
+        @Override
+        public void releaseSession(RemoteSession session) {
+            session.disconnect();
+        }
+    }
+
+    /**
+     * Use of a pooled session by one transport. Disconnecting it returns the
+     * session to the pool.
+     */
+    private final class Lease implements RemoteSession2 {
+        private final PooledSession session;
+        private boolean released;
+
+        Lease(PooledSession session) {
+            this.session = session;
+        }
+
+        @Override
+        public Process exec(String commandName, int timeout) throws IOException {
+            return session.remote.exec(commandName, timeout);
+        }
+
+        @Override
+        public Process exec(String commandName, Map<String, String> environment, int timeout) throws IOException {
+            if (session.remote instanceof RemoteSession2 remote) {
+                return remote.exec(commandName, environment, timeout);
+            }
+            return session.remote.exec(commandName, timeout);
+        }
+
+        @Override
+        public FtpChannel getFtpChannel() {
+            return session.remote.getFtpChannel();
+        }
+
+        @Override
+        public void disconnect() {
+            synchronized (this) {
+                if (released) {
+                    return;
+                }
+                released = true;
+            }
+            release(session);
+        }
+    }
+}
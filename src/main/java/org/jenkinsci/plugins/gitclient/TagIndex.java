@@ -0,0 +1,173 @@
+package org.jenkinsci.plugins.gitclient;
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import org.eclipse.jgit.lib.AnyObjectId;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.Ref;
+import org.eclipse.jgit.lib.RefDatabase;
+import org.eclipse.jgit.lib.Repository;
+
+/**
+ * Tags of a repository by the object they point to, shared by all git
+ * clients of this JVM.
+ * <p>
+ * Peeling an annotated tag reads the tag object unless <code>packed-refs</code>
+ * records the peeled id, which costs seconds in repositories with tens of
+ * thousands of tags. The index of a repository is kept after use and updated
+ * from the current tag refs, only the tags which were created or moved since
+ * the previous update are peeled. Indexes of at most
+ * {@link #MAX_REPOSITORIES} repositories are kept, the least recently used
+ * are evicted first. An index is immutable, an update returns a new index.
+ */
+final class TagIndex {
+
+    /**
+     * Maximum number of repositories whose tag index is kept.
+     */
+    static final int MAX_REPOSITORIES =
+            Math.max(1, Integer.getInteger(TagIndex.class.getName() + ".maxRepositories", 16));
+
+    private static final TagIndex EMPTY = new TagIndex(Map.of(), Map.of());
+
+    private static final Map<File, TagIndex> INDEXES = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<File, TagIndex> eldest) {
+            return size() > MAX_REPOSITORIES;
+        }
+    };
+
+    /**
+     * Tag of the index.
+     *
+     * @param name full name of the tag ref
+     * @param id object id of the tag ref
+     * @param target id of the object the tag points to, after peeling annotated tags
+     * @param annotated true if the tag ref names an annotated tag object
+     */
+    record Tag(@NonNull String name, @NonNull ObjectId id, @NonNull ObjectId target, boolean annotated) {
+
+        /**
+         * Returns the name of the tag without the <code>refs/tags/</code> prefix.
+         *
+         * @return short name of the tag
+         */
+        @NonNull
+        String shortName() {
+            return name.substring(Constants.R_TAGS.length());
+        }
+    }
+
+    private final Map<String, Tag> byName;
+    private final Map<ObjectId, List<Tag>> byTarget;
+
+    private TagIndex(Map<String, Tag> byName, Map<ObjectId, List<Tag>> byTarget) {
+        this.byName = byName;
+        this.byTarget = byTarget;
+    }
+
+    /**
+     * Returns the up to date tag index of a repository.
+     *
+     * @param repo repository
+     * @return tag index reflecting the current tag refs
+     * @throws IOException if the refs cannot be read or a tag cannot be peeled
+     */
+    @NonNull
+    static TagIndex of(@NonNull Repository repo) throws IOException {
+        File directory = repo.getDirectory();
+        TagIndex previous = EMPTY;
+        if (directory != null) {
+            synchronized (INDEXES) {
+                previous = INDEXES.getOrDefault(directory, EMPTY);
+            }
+        }
+        TagIndex index = previous.update(repo.getRefDatabase());
+        if (directory != null && index != previous) {
+            synchronized (INDEXES) {
+                INDEXES.put(directory, index);
+            }
+        }
+        return index;
+    }
+
+    /**
+     * Returns an index of the current tag refs, reusing the peeled ids of
+     * the tags which did not change.
+     *
+     * @param refDatabase refs of the repository
+     * @return this index if no tag changed, otherwise a new index
+     * @throws IOException if the refs cannot be read or a tag cannot be peeled
+     */
+    @NonNull
+    TagIndex update(@NonNull RefDatabase refDatabase) throws IOException {
+        List<Ref> refs = refDatabase.getRefsByPrefix(Constants.R_TAGS);
+        if (isCurrent(refs)) {
+            return this;
+        }
+        Map<String, Tag> names = new HashMap<>();
+        Map<ObjectId, List<Tag>> targets = new HashMap<>();
+        for (Ref ref : refs) {
+            ObjectId id = ref.getObjectId();
+            if (id == null) {
+                continue;
+            }
+            Tag tag = byName.get(ref.getName());
+            if (tag == null || !tag.id().equals(id)) {
+                ObjectId peeled = refDatabase.peel(ref).getPeeledObjectId();
+                tag = new Tag(ref.getName(), id, peeled == null ? id : peeled, peeled != null);
+            }
+            names.put(tag.name(), tag);
+            // Refs are listed in name order, so are the tags of a target
+            targets.computeIfAbsent(tag.target(), target -> new ArrayList<>(1)).add(tag);
+        }
+        return new TagIndex(names, targets);
+    }
+
+    private boolean isCurrent(List<Ref> refs) {
+        if (refs.size() != byName.size()) {
+            return false;
+        }
+        for (Ref ref : refs) {
+            Tag tag = byName.get(ref.getName());
+            if (tag == null || !tag.id().equals(ref.getObjectId())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns the tags pointing to an object.
+     *
+     * @param target id of a commit or of another tagged object
+     * @return tags pointing to the object in name order, empty if none
+     */
+    @NonNull
+    List<Tag> tags(@NonNull AnyObjectId target) {
+        return byTarget.getOrDefault(target, List.of());
+    }
+
+    /**
+     * Returns the number of tags in the index.
+     *
+     * @return number of tags
+     */
+    int size() {
+        return byName.size();
+    }
+
+    /* Only for tests */
+    static void clear() {
+        synchronized (INDEXES) {
+            INDEXES.clear();
+        }
+    }
+}
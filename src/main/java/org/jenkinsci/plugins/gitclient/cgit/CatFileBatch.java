@@ -0,0 +1,304 @@
+package org.jenkinsci.plugins.gitclient.cgit;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.EnvVars;
+import hudson.Launcher;
+import hudson.Proc;
+import hudson.util.ArgumentListBuilder;
+import hudson.util.DaemonThreadFactory;
+import hudson.util.NamingThreadFactory;
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.eclipse.jgit.lib.ObjectId;
+
+/**
+ * Long-lived <code>git cat-file --batch-check</code> or
+ * <code>git cat-file --batch</code> process.
+ * <p>
+ * Each query writes one object name to the standard input of the process and
+ * reads the answer from its standard output, so resolving a revision costs a
+ * pipe round-trip instead of starting a new git process. The process is
+ * started on the first query and stopped after it has been idle for
+ * {@link #IDLE_TIMEOUT_SECONDS} seconds, or when {@link #close()} is called.
+ * A process which does not answer a query within the timeout is killed.
+ * <p>
+ * Git re-reads loose refs and rescans packs for objects it cannot find, so
+ * refs and objects written by other git commands after the process started
+ * are visible to later queries.
+ */
+public class CatFileBatch implements AutoCloseable {
+
+    private static final Logger LOGGER = Logger.getLogger(CatFileBatch.class.getName());
+
+    /**
+     * Seconds a batch process may stay idle before it is stopped.
+     */
+    public static final long IDLE_TIMEOUT_SECONDS = Long.getLong(CatFileBatch.class.getName() + ".idleTimeout", 60L);
+
+    private static final ScheduledExecutorService REAPER = Executors.newSingleThreadScheduledExecutor(
+            new NamingThreadFactory(new DaemonThreadFactory(), "CatFileBatch.reaper"));
+
+    /**
+     * Answer of the batch process for one object name.
+     */
+    public static final class Result {
+        private final ObjectId id;
+        private final String type;
+        private final long size;
+        private final byte[] content;
+
+        private Result(ObjectId id, String type, long size, byte[] content) {
+            this.id = id;
+            this.type = type;
+            this.size = size;
+            this.content = content;
+        }
+
+        /**
+         * Returns true if the name did not resolve to an object.
+         *
+         * @return true if the name did not resolve to an object
+         */
+        public boolean isMissing() {
+            return id == null;
+        }
+
+        /**
+         * Returns the object id, null if missing.
+         *
+         * @return the object id
+         */
+        @CheckForNull
+        public ObjectId getId() {
+            return id;
+        }
+
+        /**
+         * Returns the object type ("commit", "tag", "tree" or "blob"), null if missing.
+         *
+         * @return the object type
+         */
+        @CheckForNull
+        public String getType() {
+            return type;
+        }
+
+        /**
+         * Returns the object size in bytes.
+         *
+         * @return the object size
+         */
+        public long getSize() {
+            return size;
+        }
+
+        /**
+         * Returns the raw object content, null unless read by a <code>--batch</code> process.
+         *
+         * @return the object content
+         */
+        @CheckForNull
+        public byte[] getContent() {
+            return content == null ? null : content.clone();
+        }
+    }
+
+    private final Launcher launcher;
+    private final ArgumentListBuilder command;
+    private final File workDir;
+    private final EnvVars env;
+    private final Charset charset;
+    private final boolean contents;
+    private final int timeout;
+
+    private Proc process;
+    private OutputStream stdin;
+    private InputStream stdout;
+    private ScheduledFuture<?> idleStop;
+
+    /**
+     * Constructor for a batch process that is not yet started.
+     *
+     * @param launcher launcher used to start the process
+     * @param gitCommand git executable followed by any arguments that must precede "cat-file"
+     * @param workDir working directory of the process, preferably the git directory so that an idle process
+     *     does not keep a workspace in use
+     * @param env environment of the process
+     * @param charset character set used for object names and headers
+     * @param contents true to run <code>--batch</code> and read object content, false to run <code>--batch-check</code>
+     * @param timeout minutes to wait for the answer to a query before the process is killed
+     */
+    public CatFileBatch(
+            @NonNull Launcher launcher,
+            @NonNull ArgumentListBuilder gitCommand,
+            File workDir,
+            @NonNull EnvVars env,
+            @NonNull Charset charset,
+            boolean contents,
+            int timeout) {
+        this.launcher = launcher;
+        this.command = gitCommand.clone().add("cat-file", contents ? "--batch" : "--batch-check");
+        this.workDir = workDir;
+        this.env = env;
+        this.charset = charset;
+        this.contents = contents;
+        this.timeout = timeout;
+    }
+
+    /**
+     * Resolve <code>name</code> with the batch process.
+     *
+     * @param name any object name accepted by git rev-parse, for example a SHA1, a ref or "tag^{commit}"
+     * @return the answer of the batch process, {@link Result#isMissing()} if the name does not resolve
+     * @throws IOException if the batch process cannot be started, fails or times out, the process is stopped
+     * @throws IllegalArgumentException if name cannot be passed on a single line
+     */
+    @NonNull
+    public synchronized Result query(@NonNull String name) throws IOException {
+        if (name.indexOf('\n') >= 0 || name.indexOf('\r') >= 0) {
+            throw new IllegalArgumentException("Object name must be a single line: " + name);
+        }
+        if (idleStop != null) {
+            idleStop.cancel(false);
+            idleStop = null;
+        }
+        ScheduledFuture<?> timeoutKill = null;
+        try {
+            if (process == null) {
+                start();
+            }
+            // The reads below block while holding the lock, the process is killed without it
+            Proc p = process;
+            timeoutKill = REAPER.schedule(() -> kill(p), timeout, TimeUnit.MINUTES);
+            stdin.write((name + "\n").getBytes(charset));
+            stdin.flush();
+            Result result = readResult();
+            idleStop = REAPER.schedule(this::close, IDLE_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            return result;
+        } catch (IOException | RuntimeException e) {
+            close();
+            if (timeoutKill != null && timeoutKill.isDone()) {
+                throw new IOException("git cat-file did not answer " + name + " within " + timeout + " minutes", e);
+            }
+            throw e;
+        } finally {
+            if (timeoutKill != null) {
+                timeoutKill.cancel(false);
+            }
+        }
+    }
+
+    /**
+     * Returns true if the batch process is running.
+     *
+     * @return true if the batch process is running
+     */
+    public synchronized boolean isRunning() {
+        return process != null;
+    }
+
+    /**
+     * Stop the batch process. A later query starts a new one.
+     */
+    @Override
+    public synchronized void close() {
+        if (idleStop != null) {
+            idleStop.cancel(false);
+            idleStop = null;
+        }
+        if (process == null) {
+            return;
+        }
+        Proc p = process;
+        process = null;
+        try {
+            // End of input makes cat-file exit
+            stdin.close();
+        } catch (IOException e) {
+            LOGGER.log(Level.FINE, "Error closing cat-file input", e);
+        }
+        kill(p);
+        stdin = null;
+        stdout = null;
+    }
+
+    private static void kill(Proc p) {
+        try {
+            p.kill();
+        } catch (IOException e) {
+            LOGGER.log(Level.FINE, "Error stopping cat-file", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void start() throws IOException {
+        Launcher.ProcStarter starter = launcher.launch()
+                .cmds(command.toCommandArray())
+                .envs(env)
+                .writeStdin()
+                .readStdout()
+                .stderr(OutputStream.nullOutputStream());
+        if (workDir != null) {
+            starter.pwd(workDir);
+        }
+        process = starter.start();
+        stdin = process.getStdin();
+        stdout = new BufferedInputStream(process.getStdout());
+        LOGGER.log(Level.FINE, "Started {0} in {1}", new Object[] {command, workDir});
+    }
+
+    private Result readResult() throws IOException {
+        String header = readLine();
+        // "<sha1> <type> <size>" or "<name> missing" or "<name> ambiguous"
+        if (header.endsWith(" missing") || header.endsWith(" ambiguous")) {
+            return new Result(null, null, 0, null);
+        }
+        int typeStart = header.indexOf(' ');
+        int sizeStart = header.lastIndexOf(' ');
+        if (typeStart < 0 || typeStart == sizeStart || !ObjectId.isId(header.substring(0, typeStart))) {
+            throw new IOException("Unexpected cat-file output: " + header);
+        }
+        ObjectId id = ObjectId.fromString(header.substring(0, typeStart));
+        String type = header.substring(typeStart + 1, sizeStart);
+        long size;
+        try {
+            size = Long.parseLong(header.substring(sizeStart + 1));
+        } catch (NumberFormatException e) {
+            throw new IOException("Unexpected cat-file output: " + header, e);
+        }
+        byte[] content = null;
+        if (contents) {
+            content = stdout.readNBytes(Math.toIntExact(size));
+            if (content.length != size || stdout.read() != '\n') {
+                throw new EOFException("Truncated cat-file output for " + id.name());
+            }
+        }
+        return new Result(id, type, size, content);
+    }
+
+    private String readLine() throws IOException {
+        ByteArrayOutputStream line = new ByteArrayOutputStream(64);
+        int b;
+        while ((b = stdout.read()) != '\n') {
+            if (b < 0) {
+                throw new EOFException("cat-file exited unexpectedly");
+            }
+            line.write(b);
+        }
+        return line.toString(charset);
+    }
+}
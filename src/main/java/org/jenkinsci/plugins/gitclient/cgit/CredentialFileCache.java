@@ -0,0 +1,277 @@
+package org.jenkinsci.plugins.gitclient.cgit;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.util.DaemonThreadFactory;
+import hudson.util.NamingThreadFactory;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Credential files of one git client, reused by its authenticated commands.
+ * <p>
+ * Command line git reads credentials from files: the private key and its
+ * passphrase, or the user name and password, and the GIT_SSH and askpass
+ * scripts which refer to them. A build which fetches, lists remote refs
+ * and pulls LFS objects with the same credentials used to write, label and
+ * delete those files for every command. The cache writes them once per
+ * credential and counts the commands using them. Files which no command
+ * uses are overwritten with zeros and deleted, by default as soon as the
+ * last command using them completes. Reuse across commands is opt-in: with
+ * an {@link #IDLE_TIMEOUT_SECONDS} above zero, unused files are kept on disk
+ * for that many seconds. {@link #clear()} deletes them at once, or as soon
+ * as the last command using them completes.
+ */
+public class CredentialFileCache {
+
+    private static final Logger LOGGER = Logger.getLogger(CredentialFileCache.class.getName());
+
+    /**
+     * Seconds unused credential files are kept. Zero, the default, deletes
+     * them as soon as the command using them completes.
+     *
+     * Use '-Dorg.jenkinsci.plugins.gitclient.cgit.CredentialFileCache.idleTimeout=60'
+     * to reuse credential files of commands run within 60 seconds.
+     */
+    public static final long IDLE_TIMEOUT_SECONDS =
+            Long.getLong(CredentialFileCache.class.getName() + ".idleTimeout", 0L);
+
+    private static final ScheduledExecutorService REAPER = Executors.newSingleThreadScheduledExecutor(
+            new NamingThreadFactory(new DaemonThreadFactory(), "CredentialFileCache.reaper"));
+
+    /**
+     * Writes the files of a credential.
+     */
+    @FunctionalInterface
+    public interface Writer {
+
+        /**
+         * Writes the files. Files already written are expected to be
+         * deleted by the writer if it fails.
+         *
+         * @return files written and the environment which refers to them
+         * @throws IOException if a file cannot be written
+         * @throws InterruptedException if interrupted
+         */
+        @NonNull
+        CredentialFiles write() throws IOException, InterruptedException;
+    }
+
+    /**
+     * Files written for a credential and the environment variables which
+     * pass them to git.
+     */
+    public static final class CredentialFiles {
+        private final List<Path> files;
+        private final Map<String, String> environment;
+        private int references;
+        private long lastUsed;
+        private boolean released;
+
+        public CredentialFiles(@NonNull List<Path> files, @NonNull Map<String, String> environment) {
+            this.files = new ArrayList<>(files);
+            this.environment = Collections.unmodifiableMap(new HashMap<>(environment));
+        }
+
+        /**
+         * Returns the environment variables to add to the git command.
+         *
+         * @return environment variables referring to the files
+         */
+        @NonNull
+        public Map<String, String> getEnvironment() {
+            return environment;
+        }
+
+        private boolean exist() {
+            for (Path file : files) {
+                if (!Files.exists(file)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    private final long idleTimeoutMillis;
+    private final Map<Key, CredentialFiles> entries = new HashMap<>();
+    private ScheduledFuture<?> sweep;
+
+    public CredentialFileCache() {
+        this(TimeUnit.SECONDS.toMillis(IDLE_TIMEOUT_SECONDS));
+    }
+
+    CredentialFileCache(long idleTimeoutMillis) {
+        this.idleTimeoutMillis = idleTimeoutMillis;
+    }
+
+    /**
+     * Returns the files of <code>credentials</code>, written by
+     * <code>writer</code> unless they are already cached. The caller must
+     * {@link #release(CredentialFiles)} them once the command completed.
+     *
+     * @param credentials credentials the files are written for, compared by identity
+     * @param variant distinguishes files written differently for the same credentials
+     * @param writer writes the files when they are not cached
+     * @return files of the credentials
+     * @throws IOException if the files cannot be written
+     * @throws InterruptedException if interrupted
+     */
+    @NonNull
+    public synchronized CredentialFiles acquire(
+            @NonNull Object credentials, @NonNull String variant, @NonNull Writer writer)
+            throws IOException, InterruptedException {
+        Key key = new Key(credentials, variant);
+        CredentialFiles cached = entries.get(key);
+        if (cached != null && !cached.exist()) {
+            // Someone deleted the temporary directory, write them again
+            entries.remove(key);
+            retire(cached);
+            cached = null;
+        }
+        if (cached == null) {
+            cached = writer.write();
+            entries.put(key, cached);
+        }
+        cached.references++;
+        return cached;
+    }
+
+    /**
+     * Releases files returned by {@link #acquire(Object, String, Writer)}.
+     *
+     * @param files files no longer used by the caller
+     */
+    public synchronized void release(@NonNull CredentialFiles files) {
+        files.references--;
+        files.lastUsed = System.currentTimeMillis();
+        if (files.references > 0) {
+            return;
+        }
+        if (idleTimeoutMillis <= 0 || !entries.containsValue(files)) {
+            entries.values().remove(files);
+            retire(files);
+        } else {
+            scheduleSweep();
+        }
+    }
+
+    /**
+     * Deletes all files, immediately if unused, otherwise when the last
+     * command using them completes.
+     */
+    public synchronized void clear() {
+        Collection<CredentialFiles> cleared = new ArrayList<>(entries.values());
+        entries.clear();
+        for (CredentialFiles files : cleared) {
+            retire(files);
+        }
+    }
+
+    /* Number of cached credentials, for tests */
+    synchronized int size() {
+        return entries.size();
+    }
+
+    synchronized void sweep(long now) {
+        Iterator<CredentialFiles> it = entries.values().iterator();
+        while (it.hasNext()) {
+            CredentialFiles files = it.next();
+            if (files.references == 0 && now - files.lastUsed >= idleTimeoutMillis) {
+                it.remove();
+                retire(files);
+            }
+        }
+        sweep = null;
+        scheduleSweep();
+    }
+
+    private void scheduleSweep() {
+        if (sweep == null && !entries.isEmpty()) {
+            sweep = REAPER.schedule(() -> sweep(System.currentTimeMillis()), idleTimeoutMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /* Wipe files no longer cached, unless a command still uses them */
+    private static void retire(CredentialFiles files) {
+        if (files.references == 0 && !files.released) {
+            files.released = true;
+            wipe(files.files);
+        }
+    }
+
+    /**
+     * Overwrites each file with zeros, then deletes it.
+     *
+     * @param files files to delete, null elements are ignored
+     */
+    public static void wipe(@NonNull Collection<Path> files) {
+        for (Path file : files) {
+            wipe(file);
+        }
+    }
+
+    private static void wipe(@CheckForNull Path file) {
+        if (file == null) {
+            return;
+        }
+        try {
+            long size = Files.exists(file) ? Files.size(file) : 0;
+            if (size > 0) {
+                // Private keys are written read only
+                file.toFile().setWritable(true, true);
+                try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+                    ByteBuffer zeros = ByteBuffer.allocate((int) Math.min(size, 8192));
+                    long position = 0;
+                    while (position < size) {
+                        zeros.clear();
+                        zeros.limit((int) Math.min(zeros.capacity(), size - position));
+                        position += channel.write(zeros, position);
+                    }
+                    channel.force(false);
+                }
+            }
+        } catch (IOException e) {
+            LOGGER.log(Level.FINE, "temp file " + file + " not overwritten", e);
+        }
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "temp file " + file + " not deleted", e);
+        }
+    }
+
+    /**
+     * Credentials compared by identity, so that credentials which were
+     * replaced are never answered with the files of the previous secret.
+     */
+    private record Key(Object credentials, String variant) {
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Key other && credentials == other.credentials && variant.equals(other.variant);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * System.identityHashCode(credentials) + variant.hashCode();
+        }
+    }
+}
@@ -1,86 +1,214 @@
 package org.jenkinsci.plugins.gitclient.cgit;
 
 import com.google.common.util.concurrent.MoreExecutors;
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
 import hudson.model.TaskListener;
 import hudson.plugins.git.GitException;
 import hudson.util.DaemonThreadFactory;
-import hudson.util.ExceptionCatchingThreadFactory;
 import hudson.util.NamingThreadFactory;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
 import java.util.concurrent.Callable;
 import java.util.concurrent.CompletionService;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorCompletionService;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
-import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 /**
  * This executor can invoke multiple git commands in parallel using threads.
  * <p>
- * If threads = 1 the caller thread is used.
+ * If threads = 1 the caller thread is used. Otherwise the commands run on
+ * threads shared by all executors, which are created as needed and kept
+ * for reuse while idle, and <code>threads</code> commands of one invocation
+ * run at the same time.
  * If a git command fails, invocation of all running and not yet started commands is stopped.
+ * <p>
+ * A {@link NestedCommand} may discover further commands when it completes,
+ * like the update of a submodule which finds the nested submodules of that
+ * submodule. Those are scheduled as soon as they are discovered, so the
+ * whole tree of submodules is updated in parallel rather than one level at
+ * a time. Commands which name a host can be limited to
+ * {@link #MAX_COMMANDS_PER_HOST} concurrent commands per host across all
+ * executors.
  */
 public class GitCommandsExecutor {
 
+    /**
+     * Maximum number of commands running at the same time against one host.
+     * Zero, the default, does not limit them.
+     *
+     * Use '-Dorg.jenkinsci.plugins.gitclient.cgit.GitCommandsExecutor.maxCommandsPerHost=4'
+     * to run at most 4 commands against the same host at the same time.
+     */
+    static final int MAX_COMMANDS_PER_HOST =
+            Math.max(0, Integer.getInteger(GitCommandsExecutor.class.getName() + ".maxCommandsPerHost", 0));
+
+    /* Poll interval while every pending command waits for a host permit */
+    private static final long HOST_PERMIT_WAIT_MILLIS = 100;
+
+    /* Threads only, each invocation limits its own commands to its number of threads */
+    private static final ExecutorService POOL = new ThreadPoolExecutor(
+            0,
+            Integer.MAX_VALUE,
+            60L,
+            TimeUnit.SECONDS,
+            new SynchronousQueue<>(),
+            new NamingThreadFactory(new DaemonThreadFactory(), GitCommandsExecutor.class.getSimpleName()));
+
+    private static final Map<String, Semaphore> HOST_PERMITS = new ConcurrentHashMap<>();
+
     private final int threads;
     private final TaskListener listener;
+    private final int maxCommandsPerHost;
+    private final Map<String, Semaphore> hostPermits;
 
     public GitCommandsExecutor(int threads, TaskListener listener) {
+        this(threads, listener, MAX_COMMANDS_PER_HOST, HOST_PERMITS);
+    }
+
+    /* Limits the commands per host of this executor only, for tests */
+    GitCommandsExecutor(int threads, TaskListener listener, int maxCommandsPerHost) {
+        this(threads, listener, maxCommandsPerHost, new ConcurrentHashMap<>());
+    }
+
+    private GitCommandsExecutor(
+            int threads, TaskListener listener, int maxCommandsPerHost, Map<String, Semaphore> hostPermits) {
         this.threads = Math.max(1, threads);
         this.listener = listener;
+        this.maxCommandsPerHost = maxCommandsPerHost;
+        this.hostPermits = hostPermits;
+    }
+
+    /**
+     * A git command which returns the commands which could only be found
+     * once it completed, for example the nested submodules of an updated
+     * submodule.
+     */
+    @FunctionalInterface
+    public interface NestedCommand {
+
+        /**
+         * Runs the command.
+         *
+         * @return commands to run after this one, empty if none
+         * @throws Exception if the command fails
+         */
+        @NonNull
+        Collection<? extends NestedCommand> call() throws Exception;
+
+        /**
+         * Returns the host this command connects to.
+         *
+         * @return host name, or null if the command is not limited per host
+         */
+        @CheckForNull
+        default String getHost() {
+            return null;
+        }
     }
 
     public <T> void invokeAll(Collection<Callable<T>> commands) throws GitException, InterruptedException {
-        ExecutorService executorService = null;
+        List<NestedCommand> nestedCommands = new ArrayList<>(commands.size());
+        for (Callable<T> command : commands) {
+            nestedCommands.add(() -> {
+                command.call();
+                return List.of();
+            });
+        }
+        invokeNested(nestedCommands);
+    }
+
+    /**
+     * Invoke <code>commands</code> and every command they return, until no
+     * commands remain.
+     *
+     * @param commands commands to run first
+     * @throws GitException if a command fails
+     * @throws InterruptedException if interrupted
+     */
+    public void invokeNested(Collection<? extends NestedCommand> commands) throws GitException, InterruptedException {
+        ExecutorService executorService = threads == 1 ? MoreExecutors.newDirectExecutorService() : POOL;
+        CompletionService<Collection<? extends NestedCommand>> completionService =
+                new ExecutorCompletionService<>(executorService);
+        List<NestedCommand> pending = new ArrayList<>(commands);
+        Map<Future<Collection<? extends NestedCommand>>, Running> running = new HashMap<>();
         try {
-            if (threads == 1) {
-                executorService = MoreExecutors.newDirectExecutorService();
-            } else {
-                ThreadFactory threadFactory = new ExceptionCatchingThreadFactory(
-                        new NamingThreadFactory(new DaemonThreadFactory(), GitCommandsExecutor.class.getSimpleName()));
-                executorService = Executors.newFixedThreadPool(threads, threadFactory);
-            }
-            invokeAll(executorService, commands);
-        } finally {
-            if (executorService != null) {
-                executorService.shutdownNow();
-                if (!executorService.awaitTermination(10, TimeUnit.SECONDS)) {
-                    listener.getLogger().println("[WARNING] Threads did not terminate properly");
+            while (!pending.isEmpty() || !running.isEmpty()) {
+                boolean waitingForHost = submitPendingCommands(completionService, pending, running);
+                Future<Collection<? extends NestedCommand>> result = waitingForHost
+                        ? completionService.poll(HOST_PERMIT_WAIT_MILLIS, TimeUnit.MILLISECONDS)
+                        : completionService.take();
+                if (result != null) {
+                    running.remove(result);
+                    // Depth first, as git submodule update --recursive does
+                    pending.addAll(0, checkResult(result));
                 }
             }
+        } finally {
+            stop(running);
         }
     }
 
-    private <T> void invokeAll(ExecutorService executorService, Collection<Callable<T>> commands)
-            throws GitException, InterruptedException {
-        CompletionService<T> completionService = new ExecutorCompletionService<>(executorService);
-        Iterator<Callable<T>> remainingCommands = commands.iterator();
-        int nCommands = commands.size();
-
-        for (int i = 0; i < threads && i < nCommands; i++) {
-            submitRemainingCommand(completionService, remainingCommands);
-        }
-
-        for (int i = 0; i < nCommands; i++) {
-            checkResult(completionService.take());
-            submitRemainingCommand(completionService, remainingCommands);
+    /* Returns true if a pending command could not start because its host is busy */
+    private boolean submitPendingCommands(
+            CompletionService<Collection<? extends NestedCommand>> completionService,
+            List<NestedCommand> pending,
+            Map<Future<Collection<? extends NestedCommand>>, Running> running) {
+        boolean waitingForHost = false;
+        Iterator<NestedCommand> remainingCommands = pending.iterator();
+        while (running.size() < threads && remainingCommands.hasNext()) {
+            NestedCommand command = remainingCommands.next();
+            Semaphore hostPermits = hostPermits(command.getHost());
+            if (hostPermits != null && !hostPermits.tryAcquire()) {
+                waitingForHost = true;
+                continue;
+            }
+            remainingCommands.remove();
+            Running task = new Running(command, hostPermits);
+            running.put(completionService.submit(task), task);
         }
+        return waitingForHost;
     }
 
-    private <T> void submitRemainingCommand(
-            CompletionService<T> completionService, Iterator<Callable<T>> remainingCommands) {
-        if (remainingCommands.hasNext()) {
-            completionService.submit(remainingCommands.next());
+    private void stop(Map<Future<Collection<? extends NestedCommand>>, Running> running) {
+        if (running.isEmpty()) {
+            return;
+        }
+        for (Running task : running.values()) {
+            task.stop();
+        }
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        try {
+            for (Future<Collection<? extends NestedCommand>> result : running.keySet()) {
+                try {
+                    result.get(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+                } catch (ExecutionException e) {
+                    // Only the first failure is reported
+                }
+            }
+        } catch (TimeoutException e) {
+            listener.getLogger().println("[WARNING] Threads did not terminate properly");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
         }
     }
 
-    private <T> void checkResult(Future<T> result) throws GitException, InterruptedException {
+    private <T> T checkResult(Future<T> result) throws GitException, InterruptedException {
         try {
-            result.get();
+            return result.get();
         } catch (ExecutionException e) {
             Throwable cause = e.getCause();
             if (cause instanceof InterruptedException) {
@@ -90,4 +218,64 @@ public class GitCommandsExecutor {
             }
         }
     }
+
+    @CheckForNull
+    private Semaphore hostPermits(@CheckForNull String host) {
+        if (maxCommandsPerHost <= 0 || host == null || host.isEmpty()) {
+            return null;
+        }
+        return hostPermits.computeIfAbsent(
+                host.toLowerCase(Locale.ROOT), h -> new Semaphore(maxCommandsPerHost, true));
+    }
+
+    /**
+     * A command submitted to the pool, which can be stopped whether or not
+     * it has started. A command started after it was stopped runs with its
+     * thread interrupted, the same as a pool which was shut down.
+     */
+    private static final class Running implements Callable<Collection<? extends NestedCommand>> {
+        private final NestedCommand command;
+
+        @CheckForNull
+        private final Semaphore hostPermits;
+
+        private Thread runner;
+        private boolean stopped;
+
+        Running(NestedCommand command, @CheckForNull Semaphore hostPermits) {
+            this.command = command;
+            this.hostPermits = hostPermits;
+        }
+
+        @Override
+        public Collection<? extends NestedCommand> call() throws Exception {
+            synchronized (this) {
+                runner = Thread.currentThread();
+                if (stopped) {
+                    runner.interrupt();
+                }
+            }
+            try {
+                return command.call();
+            } finally {
+                synchronized (this) {
+                    runner = null;
+                    if (stopped) {
+                        // Do not leave the interrupt to the next task of the pool thread
+                        Thread.interrupted();
+                    }
+                }
+                if (hostPermits != null) {
+                    hostPermits.release();
+                }
+            }
+        }
+
+        synchronized void stop() {
+            stopped = true;
+            if (runner != null) {
+                runner.interrupt();
+            }
+        }
+    }
 }
@@ -0,0 +1,159 @@
+package org.jenkinsci.plugins.gitclient.cgit;
+
+import hudson.plugins.git.GitException;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+
+/**
+ * Output stream which splits the bytes written to it into records and passes
+ * each record to a {@link RecordConsumer} as soon as the record is complete.
+ * <p>
+ * Only the record currently being assembled is held in memory, so the memory
+ * used to process the output of a git command does not depend on the total
+ * size of that output.
+ * <p>
+ * Git output is copied into this stream from a separate thread. A failure of
+ * the consumer is therefore not thrown from {@link #write(int)}. The failure is
+ * recorded, the remaining output is drained and discarded so that the git
+ * process is never blocked on a full pipe, and the failure is reported by
+ * {@link #checkFailure()} once the process has completed.
+ */
+public class RecordOutputStream extends OutputStream {
+
+    /**
+     * Receives the records of a git command output, one at a time.
+     */
+    @FunctionalInterface
+    public interface RecordConsumer {
+        /**
+         * Process one record of output.
+         *
+         * @param record record content, without its terminator
+         * @throws IOException if the record cannot be processed
+         */
+        void accept(String record) throws IOException;
+    }
+
+    /* Release the buffer after an unusually long record rather than keep its capacity */
+    private static final int RETAINED_BUFFER_SIZE = 64 * 1024;
+
+    private final byte separator;
+    private final Charset charset;
+    private final RecordConsumer consumer;
+    private ByteArrayOutputStream buffer = new ByteArrayOutputStream(256);
+    private Exception failure;
+    private long records;
+
+    private RecordOutputStream(byte separator, Charset charset, RecordConsumer consumer) {
+        this.separator = separator;
+        this.charset = charset;
+        this.consumer = consumer;
+    }
+
+    /**
+     * Stream which passes each newline terminated line to the consumer. A
+     * trailing carriage return is removed from each line.
+     *
+     * @param charset character set of the git output
+     * @param consumer receives each line
+     * @return stream to receive git output
+     */
+    public static RecordOutputStream lines(Charset charset, RecordConsumer consumer) {
+        return new RecordOutputStream((byte) '\n', charset, consumer);
+    }
+
+    /**
+     * Stream which passes each NUL terminated record to the consumer, as
+     * produced by git commands called with {@code -z}.
+     *
+     * @param charset character set of the git output
+     * @param consumer receives each record
+     * @return stream to receive git output
+     */
+    public static RecordOutputStream nulTerminated(Charset charset, RecordConsumer consumer) {
+        return new RecordOutputStream((byte) 0, charset, consumer);
+    }
+
+    @Override
+    public synchronized void write(int b) {
+        if ((byte) b == separator) {
+            emit();
+        } else {
+            buffer.write(b);
+        }
+    }
+
+    @Override
+    public synchronized void write(byte[] b, int off, int len) {
+        int start = off;
+        int end = off + len;
+        for (int i = off; i < end; i++) {
+            if (b[i] == separator) {
+                buffer.write(b, start, i - start);
+                emit();
+                start = i + 1;
+            }
+        }
+        buffer.write(b, start, end - start);
+    }
+
+    /**
+     * Pass any unterminated final record to the consumer.
+     */
+    @Override
+    public synchronized void close() {
+        if (buffer.size() > 0) {
+            emit();
+        }
+    }
+
+    /**
+     * Number of records passed to the consumer so far.
+     *
+     * @return count of records
+     */
+    public synchronized long getRecordCount() {
+        return records;
+    }
+
+    /**
+     * Throw the first failure reported by the consumer, if any.
+     *
+     * @throws IOException if the consumer failed with an IOException
+     * @throws GitException if the consumer failed with a GitException or another unchecked exception
+     */
+    public synchronized void checkFailure() throws IOException {
+        if (failure instanceof IOException ioe) {
+            throw ioe;
+        }
+        if (failure instanceof GitException ge) {
+            throw ge;
+        }
+        if (failure != null) {
+            throw new GitException("Error parsing git output", failure);
+        }
+    }
+
+    private void emit() {
+        String record = buffer.toString(charset);
+        if (buffer.size() > RETAINED_BUFFER_SIZE) {
+            buffer = new ByteArrayOutputStream(256);
+        } else {
+            buffer.reset();
+        }
+        if (failure != null) {
+            return;
+        }
+        if (separator == '\n' && record.endsWith("\r")) {
+            record = record.substring(0, record.length() - 1);
+        }
+        try {
+            records++;
+            consumer.accept(record);
+        } catch (IOException | RuntimeException e) {
+            failure = e;
+        }
+    }
+}
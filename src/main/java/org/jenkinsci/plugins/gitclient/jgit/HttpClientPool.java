@@ -0,0 +1,337 @@
+package org.jenkinsci.plugins.gitclient.jgit;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.net.ssl.HostnameVerifier;
+import org.apache.http.HttpClientConnection;
+import org.apache.http.HttpHost;
+import org.apache.http.client.HttpClient;
+import org.apache.http.config.Registry;
+import org.apache.http.config.RegistryBuilder;
+import org.apache.http.conn.ConnectionPoolTimeoutException;
+import org.apache.http.conn.ConnectionRequest;
+import org.apache.http.conn.HttpClientConnectionManager;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.conn.socket.ConnectionSocketFactory;
+import org.apache.http.conn.socket.PlainConnectionSocketFactory;
+import org.apache.http.conn.ssl.SSLConnectionSocketFactory;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.HttpClientBuilder;
+import org.apache.http.impl.conn.BasicHttpClientConnectionManager;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.pool.PoolStats;
+import org.apache.http.protocol.HttpContext;
+import org.apache.http.ssl.SSLContexts;
+
+/**
+ * HTTP clients shared by all {@link PreemptiveAuthHttpClientConnection}s of
+ * the JVM, one per proxy and hostname verifier.
+ * <p>
+ * A smart HTTP fetch sends at least two requests, info/refs and the
+ * upload-pack POST, each through a new connection object. Each client keeps
+ * its connections open in a bounded {@link PoolingHttpClientConnectionManager},
+ * so that following requests to the same host skip the TCP and TLS
+ * handshakes. The bounds limit the connections kept for reuse, not the
+ * concurrent requests: a request made while all pooled connections of its
+ * route are in use, such as a clone downloading its pack, opens a connection
+ * of its own which is closed after the request. Connections are kept alive for the time the server allows, at
+ * most {@link #IDLE_TIMEOUT_SECONDS} seconds, and closed by the eviction
+ * thread of the client when idle for that long. Credentials, timeouts and
+ * redirects are request settings, so clients with different credentials
+ * share the pool. Connections authenticated with NTLM are only reused for
+ * the same user.
+ */
+final class HttpClientPool {
+
+    private static final Logger LOGGER = Logger.getLogger(HttpClientPool.class.getName());
+
+    /**
+     * Seconds an idle connection is kept open. Zero disables pooling, each
+     * connection object then uses a new client.
+     */
+    static final long IDLE_TIMEOUT_SECONDS = Long.getLong(HttpClientPool.class.getName() + ".idleTimeout", 30L);
+
+    /** Pooled connections of one client. */
+    static final int MAX_CONNECTIONS =
+            Math.max(1, Integer.getInteger(HttpClientPool.class.getName() + ".maxConnections", 50));
+
+    /** Pooled connections of one client to the same host, port and scheme. */
+    static final int MAX_CONNECTIONS_PER_ROUTE =
+            Math.max(1, Integer.getInteger(HttpClientPool.class.getName() + ".maxConnectionsPerRoute", 10));
+
+    private static final HttpClientPool INSTANCE = new HttpClientPool(
+            TimeUnit.SECONDS.toMillis(IDLE_TIMEOUT_SECONDS), MAX_CONNECTIONS, MAX_CONNECTIONS_PER_ROUTE);
+
+    private final long idleTimeoutMillis;
+    private final int maxConnections;
+    private final int maxConnectionsPerRoute;
+    private final Map<Key, Entry> clients = new HashMap<>();
+
+    HttpClientPool(long idleTimeoutMillis, int maxConnections, int maxConnectionsPerRoute) {
+        this.idleTimeoutMillis = idleTimeoutMillis;
+        this.maxConnections = maxConnections;
+        this.maxConnectionsPerRoute = maxConnectionsPerRoute;
+    }
+
+    static HttpClientPool get() {
+        return INSTANCE;
+    }
+
+    /**
+     * Returns the client for a proxy and hostname verifier.
+     * <p>
+     * Verifiers are compared by class, JGit creates a new instance of the
+     * same stateless verifier for each connection.
+     *
+     * @param proxy proxy of the requests, null to connect directly
+     * @param hostnameVerifier verifier of TLS host names, null for the default verifier
+     * @return client shared with other connections using the same proxy and verifier
+     */
+    @NonNull
+    HttpClient client(@CheckForNull HttpHost proxy, @CheckForNull HostnameVerifier hostnameVerifier) {
+        if (idleTimeoutMillis <= 0) {
+            return builder(proxy, hostnameVerifier).build();
+        }
+        Key key = new Key(proxy, hostnameVerifier == null ? null : hostnameVerifier.getClass());
+        synchronized (this) {
+            Entry entry = clients.get(key);
+            if (entry == null) {
+                entry = create(proxy, hostnameVerifier);
+                clients.put(key, entry);
+                LOGGER.log(Level.FINE, "Created pooled HTTP client for proxy {0}", proxy);
+            }
+            return entry.client;
+        }
+    }
+
+    /**
+     * Returns the connection statistics of all clients.
+     *
+     * @return connections leased, including unpooled ones, available for reuse and waited for, and the maximum
+     */
+    @NonNull
+    synchronized PoolStats stats() {
+        int leased = 0;
+        int pending = 0;
+        int available = 0;
+        int max = 0;
+        for (Entry entry : clients.values()) {
+            PoolStats stats = entry.manager.pool.getTotalStats();
+            leased += stats.getLeased() + entry.manager.unpooledLeases();
+            pending += stats.getPending();
+            available += stats.getAvailable();
+            max += stats.getMax();
+        }
+        return new PoolStats(leased, pending, available, max);
+    }
+
+    private Entry create(HttpHost proxy, HostnameVerifier hostnameVerifier) {
+        SSLConnectionSocketFactory sslSocketFactory = hostnameVerifier == null
+                ? SSLConnectionSocketFactory.getSocketFactory()
+                : new SSLConnectionSocketFactory(SSLContexts.createDefault(), hostnameVerifier);
+        Registry<ConnectionSocketFactory> registry = RegistryBuilder.<ConnectionSocketFactory>create()
+                .register("http", PlainConnectionSocketFactory.getSocketFactory())
+                .register("https", sslSocketFactory)
+                .build();
+        PoolingHttpClientConnectionManager pool = new PoolingHttpClientConnectionManager(registry);
+        pool.setMaxTotal(maxConnections);
+        pool.setDefaultMaxPerRoute(maxConnectionsPerRoute);
+        OverflowConnectionManager manager =
+                new OverflowConnectionManager(pool, registry, maxConnections, maxConnectionsPerRoute);
+        HttpClient client = builder(proxy, hostnameVerifier)
+                .setConnectionManager(manager)
+                .setKeepAliveStrategy((response, context) -> {
+                    long keepAlive = DefaultConnectionKeepAliveStrategy.INSTANCE.getKeepAliveDuration(response, context);
+                    return keepAlive < 0 ? idleTimeoutMillis : Math.min(keepAlive, idleTimeoutMillis);
+                })
+                .evictExpiredConnections()
+                .evictIdleConnections(idleTimeoutMillis, TimeUnit.MILLISECONDS)
+                .build();
+        return new Entry(client, manager);
+    }
+
+    private static HttpClientBuilder builder(HttpHost proxy, HostnameVerifier hostnameVerifier) {
+        HttpClientBuilder builder = HttpClientBuilder.create();
+        if (proxy != null) {
+            builder.setProxy(proxy);
+        }
+        if (hostnameVerifier != null) {
+            builder.setSSLHostnameVerifier(hostnameVerifier);
+        }
+        return builder;
+    }
+
+    private record Key(HttpHost proxy, Class<?> hostnameVerifier) {}
+
+    private record Entry(HttpClient client, OverflowConnectionManager manager) {}
+
+    /*
+     * Leases pooled connections while the pool has room for the route, and an unpooled connection otherwise, so
+     * that no request waits for a pooled connection. Leases are counted here rather than asked from the pool,
+     * which only counts a lease once the connection request is completed.
+     */
+    static final class OverflowConnectionManager implements HttpClientConnectionManager {
+        private final PoolingHttpClientConnectionManager pool;
+        private final Registry<ConnectionSocketFactory> registry;
+        private final int maxConnections;
+        private final int maxConnectionsPerRoute;
+        private final Map<HttpRoute, Integer> pooledLeases = new HashMap<>();
+        private int pooledLeaseCount;
+        /* Route of each leased pooled connection, manager of each leased unpooled connection */
+        private final Map<HttpClientConnection, HttpRoute> pooled = new IdentityHashMap<>();
+        private final Map<HttpClientConnection, BasicHttpClientConnectionManager> unpooled = new IdentityHashMap<>();
+
+        OverflowConnectionManager(
+                PoolingHttpClientConnectionManager pool,
+                Registry<ConnectionSocketFactory> registry,
+                int maxConnections,
+                int maxConnectionsPerRoute) {
+            this.pool = pool;
+            this.registry = registry;
+            this.maxConnections = maxConnections;
+            this.maxConnectionsPerRoute = maxConnectionsPerRoute;
+        }
+
+        synchronized int unpooledLeases() {
+            return unpooled.size();
+        }
+
+        @Override
+        public ConnectionRequest requestConnection(HttpRoute route, Object state) {
+            synchronized (this) {
+                int routeLeases = pooledLeases.getOrDefault(route, 0);
+                if (routeLeases < maxConnectionsPerRoute && pooledLeaseCount < maxConnections) {
+                    pooledLeases.put(route, routeLeases + 1);
+                    pooledLeaseCount++;
+                    return lease(pool.requestConnection(route, state), route, null);
+                }
+            }
+            LOGGER.log(Level.FINE, "All pooled HTTP connections to {0} are in use, opening another one", route);
+            BasicHttpClientConnectionManager manager = new BasicHttpClientConnectionManager(registry);
+            return lease(manager.requestConnection(route, state), route, manager);
+        }
+
+        /* Records the connection of a completed request, and returns the lease of a failed one */
+        private ConnectionRequest lease(
+                ConnectionRequest request, HttpRoute route, @CheckForNull BasicHttpClientConnectionManager manager) {
+            return new ConnectionRequest() {
+                @Override
+                public HttpClientConnection get(long timeout, TimeUnit timeUnit)
+                        throws InterruptedException, ExecutionException, ConnectionPoolTimeoutException {
+                    HttpClientConnection connection;
+                    try {
+                        connection = request.get(timeout, timeUnit);
+                    } catch (InterruptedException
+                            | ExecutionException
+                            | ConnectionPoolTimeoutException
+                            | RuntimeException e) {
+                        released(route, manager);
+                        throw e;
+                    }
+                    synchronized (OverflowConnectionManager.this) {
+                        if (manager == null) {
+                            pooled.put(connection, route);
+                        } else {
+                            unpooled.put(connection, manager);
+                        }
+                    }
+                    return connection;
+                }
+
+                @Override
+                public boolean cancel() {
+                    boolean cancelled = request.cancel();
+                    if (cancelled) {
+                        released(route, manager);
+                    }
+                    return cancelled;
+                }
+            };
+        }
+
+        private void released(HttpRoute route, @CheckForNull BasicHttpClientConnectionManager manager) {
+            if (manager != null) {
+                manager.shutdown();
+                return;
+            }
+            synchronized (this) {
+                pooledLeases.computeIfPresent(route, (r, leases) -> leases > 1 ? leases - 1 : null);
+                pooledLeaseCount--;
+            }
+        }
+
+        private synchronized HttpClientConnectionManager managerOf(HttpClientConnection connection) {
+            BasicHttpClientConnectionManager manager = unpooled.get(connection);
+            return manager == null ? pool : manager;
+        }
+
+        @Override
+        public void releaseConnection(
+                HttpClientConnection connection, Object newState, long validDuration, TimeUnit timeUnit) {
+            HttpRoute route;
+            BasicHttpClientConnectionManager manager;
+            synchronized (this) {
+                route = pooled.remove(connection);
+                manager = unpooled.remove(connection);
+            }
+            if (manager != null) {
+                manager.releaseConnection(connection, newState, validDuration, timeUnit);
+                released(null, manager);
+            } else {
+                pool.releaseConnection(connection, newState, validDuration, timeUnit);
+                if (route != null) {
+                    released(route, null);
+                }
+            }
+        }
+
+        @Override
+        public void connect(HttpClientConnection connection, HttpRoute route, int connectTimeout, HttpContext context)
+                throws IOException {
+            managerOf(connection).connect(connection, route, connectTimeout, context);
+        }
+
+        @Override
+        public void upgrade(HttpClientConnection connection, HttpRoute route, HttpContext context)
+                throws IOException {
+            managerOf(connection).upgrade(connection, route, context);
+        }
+
+        @Override
+        public void routeComplete(HttpClientConnection connection, HttpRoute route, HttpContext context)
+                throws IOException {
+            managerOf(connection).routeComplete(connection, route, context);
+        }
+
+        @Override
+        public void closeIdleConnections(long idleTime, TimeUnit timeUnit) {
+            pool.closeIdleConnections(idleTime, timeUnit);
+        }
+
+        @Override
+        public void closeExpiredConnections() {
+            pool.closeExpiredConnections();
+        }
+
+        @Override
+        public void shutdown() {
+            pool.shutdown();
+            List<BasicHttpClientConnectionManager> managers;
+            synchronized (this) {
+                managers = new ArrayList<>(unpooled.values());
+                unpooled.clear();
+            }
+            managers.forEach(BasicHttpClientConnectionManager::shutdown);
+        }
+    }
+}
@@ -42,6 +42,7 @@
  */
 package org.jenkinsci.plugins.gitclient.jgit;
 
+import java.io.Closeable;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
@@ -54,18 +55,16 @@ import java.net.URL;
 import java.security.KeyManagementException;
 import java.security.NoSuchAlgorithmException;
 import java.security.SecureRandom;
-import java.security.cert.X509Certificate;
 import java.util.Collections;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.TreeMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 import javax.net.ssl.HostnameVerifier;
 import javax.net.ssl.KeyManager;
 import javax.net.ssl.SSLContext;
-import javax.net.ssl.SSLException;
-import javax.net.ssl.SSLSession;
-import javax.net.ssl.SSLSocket;
 import javax.net.ssl.TrustManager;
 import org.apache.http.Header;
 import org.apache.http.HeaderElement;
@@ -83,8 +82,9 @@ import org.apache.http.client.methods.HttpGet;
 import org.apache.http.client.methods.HttpPost;
 import org.apache.http.client.methods.HttpPut;
 import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.client.protocol.HttpClientContext;
+import org.apache.http.entity.BufferedHttpEntity;
 import org.apache.http.impl.client.BasicCredentialsProvider;
-import org.apache.http.impl.client.HttpClientBuilder;
 import org.apache.http.impl.client.SystemDefaultCredentialsProvider;
 import org.eclipse.jgit.transport.CredentialItem;
 import org.eclipse.jgit.transport.URIish;
@@ -98,6 +98,8 @@ import org.eclipse.jgit.util.TemporaryBuffer;
  * authenticate preemptively.
  */
 public class PreemptiveAuthHttpClientConnection implements HttpConnection {
+    private static final Logger LOGGER = Logger.getLogger(PreemptiveAuthHttpClientConnection.class.getName());
+
     private static final String SLASH = "/";
 
     HttpClient client;
@@ -122,8 +124,7 @@ public class PreemptiveAuthHttpClientConnection implements HttpConnection {
 
     private Boolean followRedirects;
 
-    @Deprecated
-    private org.apache.http.conn.ssl.X509HostnameVerifier hostnameverifier;
+    private HostnameVerifier hostnameVerifier;
 
     SSLContext ctx;
 
@@ -172,64 +173,59 @@ public class PreemptiveAuthHttpClientConnection implements HttpConnection {
 
     private HttpClient getClient() {
         if (client == null) {
-            final HttpClientBuilder builder = HttpClientBuilder.create();
-            CredentialItem.Username u = new CredentialItem.Username();
-            CredentialItem.Password p = new CredentialItem.Password();
-            final URIish serviceUri;
-            try {
-                serviceUri = new URIish(urlStr);
-            } catch (final URISyntaxException e) {
-                throw new Error(e);
-            }
-            final HttpHost targetHost =
-                    new HttpHost(serviceUri.getHost(), serviceUri.getPort(), serviceUri.getScheme());
-
-            CredentialsProvider clientCredentialsProvider = new SystemDefaultCredentialsProvider();
-            if (credentialsProvider != null && credentialsProvider.supports(u, p)) {
-                URIish uri = serviceUri;
-                while (uri != null) {
-                    if (credentialsProvider.get(uri, u, p)) {
-                        final String userName = u.getValue();
-                        final String password = new String(p.getValue());
-                        p.clear();
-                        final Credentials credentials = createNTCredentials(userName, password);
-                        final AuthScope authScope = new AuthScope(targetHost);
-                        clientCredentialsProvider = new BasicCredentialsProvider();
-                        clientCredentialsProvider.setCredentials(authScope, credentials);
-                        break;
-                    }
-                    uri = goUp(uri);
-                }
-            }
-            builder.setDefaultCredentialsProvider(clientCredentialsProvider);
+            isUsingProxy = proxy != null && !Proxy.NO_PROXY.equals(proxy);
+            client = HttpClientPool.get().client(proxyHost(proxy), hostnameVerifier);
+        }
 
-            if (proxy != null && !Proxy.NO_PROXY.equals(proxy)) {
-                isUsingProxy = true;
-                configureProxy(builder, proxy);
-            }
+        return client;
+    }
 
-            final RequestConfig.Builder requestConfigBuilder = RequestConfig.custom();
-            if (readTimeout != null) {
-                requestConfigBuilder.setSocketTimeout(readTimeout);
-            }
-            if (timeout != null) {
-                requestConfigBuilder.setConnectTimeout(timeout);
-            }
-            if (followRedirects != null) {
-                requestConfigBuilder.setRedirectsEnabled(followRedirects);
+    /* Credentials are a request setting, the client and its connections are shared */
+    private HttpClientContext createContext() {
+        CredentialItem.Username u = new CredentialItem.Username();
+        CredentialItem.Password p = new CredentialItem.Password();
+        final URIish serviceUri;
+        try {
+            serviceUri = new URIish(urlStr);
+        } catch (final URISyntaxException e) {
+            throw new Error(e);
+        }
+        final HttpHost targetHost = new HttpHost(serviceUri.getHost(), serviceUri.getPort(), serviceUri.getScheme());
+
+        CredentialsProvider clientCredentialsProvider = new SystemDefaultCredentialsProvider();
+        if (credentialsProvider != null && credentialsProvider.supports(u, p)) {
+            URIish uri = serviceUri;
+            while (uri != null) {
+                if (credentialsProvider.get(uri, u, p)) {
+                    final String userName = u.getValue();
+                    final String password = new String(p.getValue());
+                    p.clear();
+                    final Credentials credentials = createNTCredentials(userName, password);
+                    final AuthScope authScope = new AuthScope(targetHost);
+                    clientCredentialsProvider = new BasicCredentialsProvider();
+                    clientCredentialsProvider.setCredentials(authScope, credentials);
+                    break;
+                }
+                uri = goUp(uri);
             }
-            requestConfigBuilder.setAuthenticationEnabled(true);
-            final RequestConfig requestConfig = requestConfigBuilder.build();
-
-            builder.setDefaultRequestConfig(requestConfig);
+        }
 
-            if (hostnameverifier != null) {
-                builder.setSSLHostnameVerifier(hostnameverifier);
-            }
-            client = builder.build();
+        final RequestConfig.Builder requestConfigBuilder = RequestConfig.custom();
+        if (readTimeout != null) {
+            requestConfigBuilder.setSocketTimeout(readTimeout);
+        }
+        if (timeout != null) {
+            requestConfigBuilder.setConnectTimeout(timeout);
+        }
+        if (followRedirects != null) {
+            requestConfigBuilder.setRedirectsEnabled(followRedirects);
         }
+        requestConfigBuilder.setAuthenticationEnabled(true);
 
-        return client;
+        final HttpClientContext context = HttpClientContext.create();
+        context.setCredentialsProvider(clientCredentialsProvider);
+        context.setRequestConfig(requestConfigBuilder.build());
+        return context;
     }
 
     static NTCredentials createNTCredentials(final String userName, final String password) {
@@ -258,16 +254,16 @@ public class PreemptiveAuthHttpClientConnection implements HttpConnection {
         return new NTCredentials(user, password, null, domain);
     }
 
-    private static void configureProxy(final HttpClientBuilder builder, final Proxy proxy) {
+    private static HttpHost proxyHost(final Proxy proxy) {
         if (proxy != null && !Proxy.NO_PROXY.equals(proxy)) {
             final SocketAddress socketAddress = proxy.address();
             if (socketAddress instanceof InetSocketAddress inetSocketAddress) {
                 final String proxyHost = inetSocketAddress.getHostName();
                 final int proxyPort = inetSocketAddress.getPort();
-                final HttpHost httpHost = new HttpHost(proxyHost, proxyPort);
-                builder.setProxy(httpHost);
+                return new HttpHost(proxyHost, proxyPort);
             }
         }
+        return null;
     }
 
     private SSLContext getSSLContext() {
@@ -312,11 +308,30 @@ public class PreemptiveAuthHttpClientConnection implements HttpConnection {
                 if (req instanceof HttpEntityEnclosingRequest eReq) {
                     eReq.setEntity(entity);
                 }
-                resp = getClient().execute(req);
+                resp = getClient().execute(req, createContext());
                 entity.getBuffer().close();
                 entity = null;
             } else {
-                resp = getClient().execute(req);
+                resp = getClient().execute(req, createContext());
+            }
+            HttpEntity responseEntity = resp.getEntity();
+            if (resp.getStatusLine().getStatusCode() >= 300 && responseEntity != null) {
+                // JGit may not read the body of an error, read it now to return the connection to the pool
+                resp.setEntity(new BufferedHttpEntity(responseEntity));
+            }
+        }
+    }
+
+    /*
+     * Returns the pooled connection of a response whose body was not read to the end, JGit drops connections
+     * without closing their input stream when it fails. The connection is closed instead of being reused.
+     */
+    void release() {
+        if (resp instanceof Closeable closeable) {
+            try {
+                closeable.close();
+            } catch (IOException e) {
+                LOGGER.log(Level.FINE, "Error releasing the connection to " + urlStr, e);
             }
         }
     }
@@ -456,41 +471,8 @@ public class PreemptiveAuthHttpClientConnection implements HttpConnection {
     }
 
     @Override
-    public void setHostnameVerifier(final HostnameVerifier hostnameverifier) {
-        this.hostnameverifier = new X509HostnameVerifierImpl(hostnameverifier);
-    }
-
-    @Deprecated
-    private static class X509HostnameVerifierImpl implements org.apache.http.conn.ssl.X509HostnameVerifier {
-
-        private final HostnameVerifier hostnameverifier;
-
-        public X509HostnameVerifierImpl(HostnameVerifier hostnameverifier) {
-            this.hostnameverifier = hostnameverifier;
-        }
-
-        @Override
-        public boolean verify(String hostname, SSLSession session) {
-            return hostnameverifier.verify(hostname, session);
-        }
-
-        @Override
-        public void verify(String host, String[] cns, String[] subjectAlts) throws SSLException {
-            throw new UnsupportedOperationException("Unsupported hostname verifier called for " + host);
-        }
-
-        @Override
-        public void verify(String host, X509Certificate cert) throws SSLException {
-            throw new UnsupportedOperationException(
-                    "Unsupported hostname verifier called for " + host + " with X.509 certificate");
-        }
-
-        @Override
-        public void verify(String host, SSLSocket ssl) throws IOException {
-            if (!hostnameverifier.verify(host, ssl.getSession())) {
-                throw new IOException();
-            }
-        }
+    public void setHostnameVerifier(final HostnameVerifier hostnameVerifier) {
+        this.hostnameVerifier = hostnameVerifier;
     }
 
     @Override
@@ -3,10 +3,15 @@ package org.jenkinsci.plugins.gitclient.jgit;
 import java.io.IOException;
 import java.net.Proxy;
 import java.net.URL;
+import java.security.GeneralSecurityException;
+import java.util.ArrayList;
+import java.util.List;
+import org.apache.http.pool.PoolStats;
 import org.eclipse.jgit.transport.http.HttpConnection;
-import org.eclipse.jgit.transport.http.HttpConnectionFactory;
+import org.eclipse.jgit.transport.http.HttpConnectionFactory2;
+import org.eclipse.jgit.util.HttpSupport;
 
-public class PreemptiveAuthHttpClientConnectionFactory implements HttpConnectionFactory {
+public class PreemptiveAuthHttpClientConnectionFactory implements HttpConnectionFactory2 {
 
     private static final String NEED_CREDENTIALS_PROVIDER =
             "The " + PreemptiveAuthHttpClientConnectionFactory.class.getName()
@@ -28,7 +33,51 @@ public class PreemptiveAuthHttpClientConnectionFactory implements HttpConnection
         return innerCreate(url, null);
     }
 
+    @Override
+    public GitSession newSession() {
+        return new Session();
+    }
+
+    /**
+     * Returns the statistics of the HTTP connections shared by the
+     * connections of all factories: connections in use, idle connections
+     * kept alive for reuse, requests waiting for a connection and the
+     * maximum number of connections.
+     *
+     * @return statistics of the shared connection pools
+     * @since 6.7.0
+     */
+    public static PoolStats getConnectionPoolStats() {
+        return HttpClientPool.get().stats();
+    }
+
     protected HttpConnection innerCreate(final URL url, final Proxy proxy) {
         return new PreemptiveAuthHttpClientConnection(this.provider, url.toString(), proxy);
     }
+
+    /* Connections of one transport, whose pooled connections are returned when JGit closes the transport */
+    static final class Session implements GitSession {
+        private final List<PreemptiveAuthHttpClientConnection> connections = new ArrayList<>();
+
+        @Override
+        public synchronized HttpConnection configure(HttpConnection connection, boolean sslVerify)
+                throws IOException, GeneralSecurityException {
+            // What the transport does itself for factories without sessions
+            if (!sslVerify && "https".equals(connection.getURL().getProtocol())) {
+                HttpSupport.disableSslVerify(connection);
+            }
+            if (connection instanceof PreemptiveAuthHttpClientConnection preemptiveAuthConnection) {
+                connections.add(preemptiveAuthConnection);
+            }
+            return connection;
+        }
+
+        @Override
+        public synchronized void close() {
+            for (PreemptiveAuthHttpClientConnection connection : connections) {
+                connection.release();
+            }
+            connections.clear();
+        }
+    }
 }
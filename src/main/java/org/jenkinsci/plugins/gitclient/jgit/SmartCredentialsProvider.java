@@ -4,6 +4,7 @@ import com.cloudbees.plugins.credentials.common.PasswordCredentials;
 import com.cloudbees.plugins.credentials.common.StandardCredentials;
 import com.cloudbees.plugins.credentials.common.StandardUsernameCredentials;
 import com.cloudbees.plugins.credentials.common.UsernameCredentials;
+import edu.umd.cs.findbugs.annotations.CheckForNull;
 import hudson.model.TaskListener;
 import java.net.URI;
 import java.net.URISyntaxException;
@@ -70,6 +71,20 @@ public class SmartCredentialsProvider extends CredentialsProvider {
         return credentialsMap;
     }
 
+    /**
+     * Returns the credentials used for a url: the credentials added for the
+     * url, otherwise the default credentials.
+     *
+     * @param url the url of the remote repository.
+     * @return the credentials, or null if none
+     * @since 6.7.0
+     */
+    @CheckForNull
+    public StandardCredentials getCredentials(String url) {
+        StandardCredentials c = specificCredentials.get(normalizeURI(url));
+        return c != null ? c : defaultCredentials;
+    }
+
     /**
      * Adds credentials to be used when there are not url specific credentials defined.
      *
@@ -0,0 +1,163 @@
+package jmh.benchmark;
+
+import hudson.EnvVars;
+import hudson.model.TaskListener;
+import hudson.plugins.git.IGitAPI;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import jenkins.benchmark.jmh.JmhBenchmark;
+import org.eclipse.jgit.internal.storage.commitgraph.CommitGraphWriter;
+import org.eclipse.jgit.internal.storage.commitgraph.GraphCommits;
+import org.eclipse.jgit.internal.storage.file.FileRepository;
+import org.eclipse.jgit.lib.CommitBuilder;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.NullProgressMonitor;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectInserter;
+import org.eclipse.jgit.lib.PersonIdent;
+import org.eclipse.jgit.lib.RefUpdate;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.lib.TreeFormatter;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.jenkinsci.plugins.gitclient.Git;
+import org.jenkinsci.plugins.gitclient.GitClient;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * A JMH micro-benchmark performance test, it compares the JGit merge base and branches containing queries with
+ * and without a commit-graph file. Without the file, JGitAPIImpl parses every commit it walks from the pack.
+ * With the file, the walks read parents and generation numbers from the commit-graph and skip the commits
+ * which cannot reach the target.
+ */
+@JmhBenchmark
+public class CommitGraphReachabilityBenchmark {
+
+    @State(Scope.Thread)
+    public static class RepoState {
+
+        @Param({"100000", "1200000"})
+        int commitCount;
+
+        @Param({"false", "true"})
+        boolean commitGraph;
+
+        final FolderForBenchmark tmp = new FolderForBenchmark();
+        GitClient gitClient;
+        History history;
+
+        /**
+         * Create a repository with a mainline of commitCount commits, where a side branch of a few commits is
+         * merged every 100 commits, and 50 branches which fork from random points of the mainline.
+         */
+        @Setup(Level.Trial)
+        public void setup() throws Exception {
+            tmp.before();
+            File gitDir = tmp.newFolder();
+            gitClient = Git.with(TaskListener.NULL, new EnvVars())
+                    .in(gitDir)
+                    .using("jgit")
+                    .getClient();
+            gitClient.init_().workspace(gitDir.getAbsolutePath()).execute();
+            history = gitClient.withRepository((repo, channel) -> createHistory(repo, commitCount, commitGraph));
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() {
+            tmp.after();
+        }
+    }
+
+    record History(ObjectId target, ObjectId firstBranch, ObjectId secondBranch) {}
+
+    private static History createHistory(Repository repo, int commitCount, boolean commitGraph) throws IOException {
+        Random random = new Random(42L);
+        List<ObjectId> mainline = new ArrayList<>(commitCount);
+        List<ObjectId> branches = new ArrayList<>();
+        int[] time = {1_500_000_000};
+        // One pack instead of a loose object per commit
+        try (ObjectInserter inserter = ((FileRepository) repo).getObjectDatabase().newPackInserter()) {
+            ObjectId tree = inserter.insert(new TreeFormatter());
+            ObjectId parent = null;
+            for (int i = 0; i < commitCount; i++) {
+                if (parent != null && i % 100 == 99) {
+                    ObjectId side = parent;
+                    for (int s = 0; s < 3; s++) {
+                        side = commit(inserter, tree, time, "side " + i + " commit " + s, side);
+                    }
+                    parent = commit(inserter, tree, time, "merge " + i, parent, side);
+                } else {
+                    parent = commit(inserter, tree, time, "mainline " + i, parent);
+                }
+                mainline.add(parent);
+            }
+            for (int b = 0; b < 50; b++) {
+                ObjectId head = mainline.get(random.nextInt(mainline.size()));
+                for (int i = 0; i < 3; i++) {
+                    head = commit(inserter, tree, time, "branch " + b + " commit " + i, head);
+                }
+                updateRef(repo, Constants.R_HEADS + "branch-" + b, head);
+                branches.add(head);
+            }
+            inserter.flush();
+            updateRef(repo, Constants.R_HEADS + "main", parent);
+        }
+        if (commitGraph) {
+            Set<ObjectId> tips = new HashSet<>(branches);
+            tips.add(mainline.get(mainline.size() - 1));
+            writeCommitGraph(repo, tips);
+        }
+        return new History(mainline.get(mainline.size() / 2), branches.get(0), branches.get(1));
+    }
+
+    private static void writeCommitGraph(Repository repo, Set<ObjectId> tips) throws IOException {
+        File info = new File(repo.getDirectory(), "objects/info");
+        Files.createDirectories(info.toPath());
+        try (RevWalk walk = new RevWalk(repo);
+                OutputStream out = Files.newOutputStream(new File(info, "commit-graph").toPath())) {
+            GraphCommits commits = GraphCommits.fromWalk(NullProgressMonitor.INSTANCE, tips, walk);
+            new CommitGraphWriter(commits).write(NullProgressMonitor.INSTANCE, out);
+        }
+    }
+
+    private static ObjectId commit(
+            ObjectInserter inserter, ObjectId tree, int[] time, String message, ObjectId... parents)
+            throws IOException {
+        PersonIdent ident = new PersonIdent("Benchmark", "benchmark@example.com", (time[0]++) * 1000L, 0);
+        CommitBuilder builder = new CommitBuilder();
+        builder.setTreeId(tree);
+        for (ObjectId parent : parents) {
+            if (parent != null) {
+                builder.addParentId(parent);
+            }
+        }
+        builder.setAuthor(ident);
+        builder.setCommitter(ident);
+        builder.setMessage(message);
+        return inserter.insert(builder);
+    }
+
+    private static void updateRef(Repository repo, String name, ObjectId id) throws IOException {
+        RefUpdate update = repo.updateRef(name);
+        update.setNewObjectId(id);
+        update.forceUpdate();
+    }
+
+    @Benchmark
+    public void branchesContaining(RepoState state, Blackhole blackhole) throws Exception {
+        blackhole.consume(state.gitClient.getBranchesContaining(state.history.target().name(), false));
+    }
+
+    @Benchmark
+    public void mergeBase(RepoState state, Blackhole blackhole) throws Exception {
+        IGitAPI git = (IGitAPI) state.gitClient;
+        blackhole.consume(git.mergeBase(state.history.firstBranch(), state.history.secondBranch()));
+    }
+}
@@ -0,0 +1,172 @@
+package jmh.benchmark;
+
+import hudson.EnvVars;
+import hudson.model.TaskListener;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import jenkins.benchmark.jmh.JmhBenchmark;
+import org.eclipse.jgit.lib.CommitBuilder;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectInserter;
+import org.eclipse.jgit.lib.ObjectReader;
+import org.eclipse.jgit.lib.PersonIdent;
+import org.eclipse.jgit.lib.Ref;
+import org.eclipse.jgit.lib.RefUpdate;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.lib.TreeFormatter;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevFlag;
+import org.eclipse.jgit.revwalk.RevSort;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.jenkinsci.plugins.gitclient.Git;
+import org.jenkinsci.plugins.gitclient.GitClient;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * A JMH micro-benchmark performance test, it compares the single pass bit set walk used by
+ * JGitAPIImpl.getBranchesContaining with the previous implementation, which walked the history once for every
+ * batch of 23 branches tracked with RevFlags.
+ */
+@JmhBenchmark
+public class GitClientBranchesContainingBenchmark {
+
+    @State(Scope.Thread)
+    public static class RepoState {
+
+        @Param({"50", "500", "5000"})
+        int branchCount;
+
+        final FolderForBenchmark tmp = new FolderForBenchmark();
+        GitClient gitClient;
+        ObjectId target;
+
+        /**
+         * Create a repository with a history of 2000 commits and branchCount branches which fork from random
+         * points of that history. Each branch adds a few commits of its own.
+         */
+        @Setup(Level.Trial)
+        public void setup() throws Exception {
+            tmp.before();
+            File gitDir = tmp.newFolder();
+            gitClient = Git.with(TaskListener.NULL, new EnvVars())
+                    .in(gitDir)
+                    .using("jgit")
+                    .getClient();
+            gitClient.init_().workspace(gitDir.getAbsolutePath()).execute();
+            target = gitClient.withRepository((repo, channel) -> createHistory(repo, branchCount));
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() {
+            tmp.after();
+        }
+    }
+
+    private static ObjectId createHistory(Repository repo, int branchCount) throws IOException {
+        Random random = new Random(42L);
+        PersonIdent ident = new PersonIdent("Benchmark", "benchmark@example.com");
+        List<ObjectId> mainline = new ArrayList<>();
+        try (ObjectInserter inserter = repo.newObjectInserter()) {
+            ObjectId tree = inserter.insert(new TreeFormatter());
+            ObjectId parent = null;
+            for (int i = 0; i < 2000; i++) {
+                parent = commit(inserter, tree, ident, "mainline " + i, parent);
+                mainline.add(parent);
+            }
+            for (int b = 0; b < branchCount; b++) {
+                ObjectId head = mainline.get(random.nextInt(mainline.size()));
+                for (int i = 0; i < 3; i++) {
+                    head = commit(inserter, tree, ident, "branch " + b + " commit " + i, head);
+                }
+                updateRef(repo, Constants.R_HEADS + "branch-" + b, head);
+            }
+            inserter.flush();
+            updateRef(repo, Constants.R_HEADS + "main", parent);
+        }
+        return mainline.get(mainline.size() / 2);
+    }
+
+    private static ObjectId commit(
+            ObjectInserter inserter, ObjectId tree, PersonIdent ident, String message, ObjectId parent)
+            throws IOException {
+        CommitBuilder builder = new CommitBuilder();
+        builder.setTreeId(tree);
+        if (parent != null) {
+            builder.setParentId(parent);
+        }
+        builder.setAuthor(ident);
+        builder.setCommitter(ident);
+        builder.setMessage(message);
+        return inserter.insert(builder);
+    }
+
+    private static void updateRef(Repository repo, String name, ObjectId id) throws IOException {
+        RefUpdate update = repo.updateRef(name);
+        update.setNewObjectId(id);
+        update.forceUpdate();
+    }
+
+    @Benchmark
+    public void singlePassBitSetWalk(RepoState state, Blackhole blackhole) throws Exception {
+        blackhole.consume(state.gitClient.getBranchesContaining(state.target.name(), false));
+    }
+
+    @Benchmark
+    public void batchedRevFlagWalk(RepoState state, Blackhole blackhole) throws Exception {
+        blackhole.consume(state.gitClient.withRepository((repo, channel) -> batchedContaining(repo, state.target)));
+    }
+
+    /* The getBranchesContaining implementation that preceded the single pass walk */
+    private static List<Ref> batchedContaining(Repository repo, ObjectId id) throws IOException {
+        try (ObjectReader or = repo.newObjectReader();
+                RevWalk walk = new RevWalk(or)) {
+            walk.setRetainBody(false);
+            walk.sort(RevSort.TOPO);
+            RevCommit target = walk.parseCommit(id);
+
+            final int MAX_FLAGS = 23;
+            List<RevFlag> flags = new ArrayList<>(MAX_FLAGS);
+            for (int i = 0; i < MAX_FLAGS; i++) {
+                flags.add(walk.newFlag("branch" + i));
+            }
+            walk.carry(flags);
+
+            List<Ref> result = new ArrayList<>();
+            List<Ref> branches = repo.getRefDatabase().getRefsByPrefix(Constants.R_HEADS);
+            while (!branches.isEmpty()) {
+                List<Ref> batch = branches.subList(0, Math.min(flags.size(), branches.size()));
+                branches = branches.subList(batch.size(), branches.size());
+
+                walk.reset();
+                int idx = 0;
+                for (Ref r : batch) {
+                    RevCommit c = walk.parseCommit(r.getObjectId());
+                    walk.markStart(c);
+                    c.add(flags.get(idx));
+                    idx++;
+                }
+                for (RevCommit p : target.getParents()) {
+                    walk.markUninteresting(p);
+                }
+                for (RevCommit c : walk) {
+                    if (c.equals(target)) {
+                        break;
+                    }
+                }
+                idx = 0;
+                for (Ref r : batch) {
+                    if (target.has(flags.get(idx))) {
+                        result.add(r);
+                    }
+                    idx++;
+                }
+            }
+            return result;
+        }
+    }
+}
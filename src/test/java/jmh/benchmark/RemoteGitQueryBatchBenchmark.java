@@ -0,0 +1,137 @@
+package jmh.benchmark;
+
+import hudson.EnvVars;
+import hudson.model.TaskListener;
+import hudson.remoting.Channel;
+import hudson.remoting.ChannelBuilder;
+import hudson.remoting.FastPipedInputStream;
+import hudson.remoting.FastPipedOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import jenkins.benchmark.jmh.JmhBenchmark;
+import jenkins.security.MasterToSlaveCallable;
+import org.jenkinsci.plugins.gitclient.Git;
+import org.jenkinsci.plugins.gitclient.GitClient;
+import org.jenkinsci.plugins.gitclient.QueryBatch;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * A JMH micro-benchmark performance test, it compares read-only queries of a GitClient on the other side of a
+ * remoting channel made one call at a time with the same queries sent as a single QueryBatch. The channel is a
+ * local loopback, so the difference is the cost of the extra round-trips without any network latency.
+ */
+@JmhBenchmark
+public class RemoteGitQueryBatchBenchmark {
+
+    @State(Scope.Thread)
+    public static class ChannelState {
+
+        @Param({"git", "jgit"})
+        String gitExe;
+
+        final FolderForBenchmark tmp = new FolderForBenchmark();
+        ExecutorService executor;
+        Channel controller;
+        Channel agent;
+        GitClient remoteClient;
+
+        @Setup(Level.Trial)
+        public void setup() throws Exception {
+            tmp.before();
+            File gitDir = tmp.newFolder();
+            createRepository(gitDir);
+
+            executor = Executors.newCachedThreadPool();
+            FastPipedInputStream controllerIn = new FastPipedInputStream();
+            FastPipedInputStream agentIn = new FastPipedInputStream();
+            FastPipedOutputStream controllerOut = new FastPipedOutputStream(agentIn);
+            FastPipedOutputStream agentOut = new FastPipedOutputStream(controllerIn);
+            Future<Channel> controllerChannel = executor.submit(
+                    () -> new ChannelBuilder("controller", executor).build(controllerIn, controllerOut));
+            Future<Channel> agentChannel =
+                    executor.submit(() -> new ChannelBuilder("agent", executor).build(agentIn, agentOut));
+            controller = controllerChannel.get();
+            agent = agentChannel.get();
+
+            // The client is created on the agent side and returned as a remote proxy, as Git.getClient() does
+            remoteClient = controller.call(new CreateClient(gitDir, gitExe));
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() throws Exception {
+            controller.close();
+            agent.close();
+            executor.shutdownNow();
+            tmp.after();
+        }
+
+        private void createRepository(File gitDir) throws Exception {
+            GitClient client = Git.with(TaskListener.NULL, new EnvVars())
+                    .in(gitDir)
+                    .using("jgit")
+                    .getClient();
+            client.init_().workspace(gitDir.getAbsolutePath()).execute();
+            client.setRemoteUrl("origin", "https://github.com/jenkinsci/git-client-plugin");
+            Files.writeString(new File(gitDir, "file.txt").toPath(), "content");
+            client.add("file.txt");
+            client.setAuthor("Benchmark", "benchmark@example.com");
+            client.setCommitter("Benchmark", "benchmark@example.com");
+            client.commit("Initial commit");
+        }
+    }
+
+    private static class CreateClient extends MasterToSlaveCallable<GitClient, IOException> {
+        private final File gitDir;
+        private final String gitExe;
+
+        CreateClient(File gitDir, String gitExe) {
+            this.gitDir = gitDir;
+            this.gitExe = gitExe;
+        }
+
+        @Override
+        public GitClient call() throws IOException {
+            try {
+                return Git.with(TaskListener.NULL, new EnvVars())
+                        .in(gitDir)
+                        .using(gitExe)
+                        .getClient();
+            } catch (InterruptedException e) {
+                throw new IOException(e);
+            }
+        }
+    }
+
+    @Benchmark
+    public void separateCalls(ChannelState state, Blackhole blackhole) throws Exception {
+        GitClient git = state.remoteClient;
+        blackhole.consume(git.hasGitRepo());
+        blackhole.consume(git.getRemoteUrl("origin"));
+        blackhole.consume(git.revParse("HEAD"));
+        blackhole.consume(git.getBranches());
+        blackhole.consume(git.refExists("refs/remotes/origin/main"));
+        blackhole.consume(git.getTagNames("*"));
+    }
+
+    @Benchmark
+    public void queryBatch(ChannelState state, Blackhole blackhole) throws Exception {
+        QueryBatch batch = state.remoteClient.queryBatch();
+        QueryBatch.Result<?>[] results = {
+            batch.hasGitRepo(),
+            batch.getRemoteUrl("origin"),
+            batch.revParse("HEAD"),
+            batch.getBranches(),
+            batch.refExists("refs/remotes/origin/main"),
+            batch.getTagNames("*")
+        };
+        batch.execute();
+        for (QueryBatch.Result<?> result : results) {
+            blackhole.consume(result.get());
+        }
+    }
+}
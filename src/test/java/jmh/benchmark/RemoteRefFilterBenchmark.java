@@ -0,0 +1,101 @@
+package jmh.benchmark;
+
+import hudson.EnvVars;
+import hudson.model.TaskListener;
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import jenkins.benchmark.jmh.JmhBenchmark;
+import org.eclipse.jgit.lib.ObjectId;
+import org.jenkinsci.plugins.gitclient.Git;
+import org.jenkinsci.plugins.gitclient.GitClient;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * A JMH micro-benchmark performance test, it measures how fast the remote ref queries of a GitClient select the
+ * refs matching a pattern from a large advertisement, such as the refs/changes/* of a Gerrit server. The
+ * advertisement cache is enabled and warm, so the benchmark measures the glob matching rather than the transport.
+ */
+@JmhBenchmark
+@Fork(jvmArgsAppend = "-Dorg.jenkinsci.plugins.gitclient.AdvertisedRefsCache.ttl=3600")
+public class RemoteRefFilterBenchmark {
+
+    @State(Scope.Thread)
+    public static class RepoState {
+
+        @Param({"git", "jgit"})
+        String gitExe;
+
+        @Param({"10000", "100000"})
+        int refCount;
+
+        @Param({"refs/heads/*", "*/master", "refs/changes/*/1"})
+        String pattern;
+
+        final FolderForBenchmark tmp = new FolderForBenchmark();
+        GitClient gitClient;
+        String remoteUrl;
+
+        /**
+         * Create a repository with a single commit, a few branches and tags, and refCount change refs which all
+         * point to the commit, then load its advertisement into the cache.
+         */
+        @Setup(Level.Trial)
+        public void setup() throws Exception {
+            tmp.before();
+            File remoteDir = tmp.newFolder();
+            GitClient remote = Git.with(TaskListener.NULL, new EnvVars())
+                    .in(remoteDir)
+                    .using("jgit")
+                    .getClient();
+            remote.init_().workspace(remoteDir.getAbsolutePath()).execute();
+            Files.writeString(new File(remoteDir, "file.txt").toPath(), "content");
+            remote.add("file.txt");
+            remote.setAuthor("Benchmark", "benchmark@example.com");
+            remote.setCommitter("Benchmark", "benchmark@example.com");
+            remote.commit("Initial commit");
+            writePackedRefs(new File(remoteDir, ".git"), remote.revParse("HEAD"), refCount);
+            remoteUrl = remoteDir.getAbsolutePath();
+
+            File gitDir = tmp.newFolder();
+            gitClient = Git.with(TaskListener.NULL, new EnvVars())
+                    .in(gitDir)
+                    .using(gitExe)
+                    .getClient();
+            gitClient.getRemoteReferences(remoteUrl, null, false, false);
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() {
+            tmp.after();
+        }
+    }
+
+    private static void writePackedRefs(File gitDir, ObjectId commit, int refCount) throws IOException {
+        String id = commit.name();
+        try (Writer out = Files.newBufferedWriter(new File(gitDir, "packed-refs").toPath(), StandardCharsets.UTF_8)) {
+            out.write("# pack-refs with: peeled\n");
+            for (int b = 0; b < 20; b++) {
+                out.write(id + " refs/heads/feature-" + b + "\n");
+                out.write(id + " refs/heads/feature-" + b + "/master\n");
+                out.write(id + " refs/tags/v" + b + ".0\n");
+            }
+            for (int change = 1; change <= refCount; change++) {
+                out.write(id + " refs/changes/" + String.format("%02d", change % 100) + "/" + change + "/1\n");
+            }
+        }
+    }
+
+    @Benchmark
+    public void getRemoteReferences(RepoState state, Blackhole blackhole) throws Exception {
+        blackhole.consume(state.gitClient.getRemoteReferences(state.remoteUrl, state.pattern, false, false));
+    }
+
+    @Benchmark
+    public void getHeadRev(RepoState state, Blackhole blackhole) throws Exception {
+        blackhole.consume(state.gitClient.getHeadRev(state.remoteUrl, "master"));
+    }
+}
@@ -0,0 +1,190 @@
+package org.jenkinsci.plugins.gitclient;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.hasEntry;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.sameInstance;
+
+import com.cloudbees.plugins.credentials.CredentialsDescriptor;
+import com.cloudbees.plugins.credentials.CredentialsScope;
+import com.cloudbees.plugins.credentials.common.StandardUsernamePasswordCredentials;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.util.Secret;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.eclipse.jgit.lib.ObjectId;
+import org.junit.jupiter.api.Test;
+
+class AdvertisedRefsCacheTest {
+
+    private static final String MASTER = "8f3b0f2c1a6e4d5b9c7a8e9f0a1b2c3d4e5f6a7b";
+    private static final String TAG = "1111111111111111111111111111111111111111";
+    private static final String TAGGED = "2222222222222222222222222222222222222222";
+
+    private static final String LS_REMOTE = "ref: refs/heads/master\tHEAD\n"
+            + MASTER + "\tHEAD\n"
+            + MASTER + "\trefs/heads/master\n"
+            + TAG + "\trefs/tags/v1.0\n"
+            + TAGGED + "\trefs/tags/v1.0^{}\n";
+
+    private final AtomicInteger loads = new AtomicInteger();
+
+    private AdvertisedRefs load() {
+        loads.incrementAndGet();
+        return AdvertisedRefs.parseLsRemote(LS_REMOTE);
+    }
+
+    @Test
+    void refsAreReusedWithinTtl() throws Exception {
+        AdvertisedRefsCache cache = new AdvertisedRefsCache(60_000L, 10);
+        AdvertisedRefs first = cache.get("https://example.com/repo.git", "id", this::load);
+        AdvertisedRefs second = cache.get("https://example.com/repo/", "id", this::load);
+
+        assertThat(second, is(sameInstance(first)));
+        assertThat(loads.get(), is(1));
+    }
+
+    @Test
+    void otherCredentialsLoadSeparately() throws Exception {
+        AdvertisedRefsCache cache = new AdvertisedRefsCache(60_000L, 10);
+        cache.get("https://example.com/repo.git", "id", this::load);
+        cache.get("https://example.com/repo.git", null, this::load);
+
+        assertThat(loads.get(), is(2));
+        assertThat(cache.size(), is(2));
+    }
+
+    @Test
+    void credentialsWithTheSameIdAndAnotherSecretLoadSeparately() throws Exception {
+        AdvertisedRefsCache cache = new AdvertisedRefsCache(60_000L, 10);
+        // Credentials of two folders, with the same id
+        AdvertisedRefs first = cache.refs(
+                "https://example.com/repo.git", new PasswordCredentials("user", "first-secret"), this::load);
+        AdvertisedRefs second = cache.refs(
+                "https://example.com/repo.git", new PasswordCredentials("user", "second-secret"), this::load);
+        AdvertisedRefs third = cache.refs(
+                "https://example.com/repo.git", new PasswordCredentials("user", "first-secret"), this::load);
+
+        assertThat(second, is(not(sameInstance(first))));
+        assertThat(third, is(sameInstance(first)));
+        assertThat(loads.get(), is(2));
+    }
+
+    @Test
+    void invalidatedRefsAreLoadedAgain() throws Exception {
+        AdvertisedRefsCache cache = new AdvertisedRefsCache(60_000L, 10);
+        AdvertisedRefs first = cache.get("https://example.com/repo.git", "id", this::load);
+        cache.get("https://example.com/repo.git", null, this::load);
+        cache.remove(AdvertisedRefsCache.normalize("https://example.com/repo"));
+        assertThat(cache.size(), is(0));
+
+        AdvertisedRefs second = cache.get("https://example.com/repo.git", "id", this::load);
+        assertThat(second, is(not(sameInstance(first))));
+        assertThat(loads.get(), is(3));
+    }
+
+    @Test
+    void leastRecentlyUsedRepositoryIsEvicted() throws Exception {
+        AdvertisedRefsCache cache = new AdvertisedRefsCache(60_000L, 2);
+        cache.get("https://example.com/a.git", null, this::load);
+        cache.get("https://example.com/b.git", null, this::load);
+        cache.get("https://example.com/a.git", null, this::load);
+        cache.get("https://example.com/c.git", null, this::load);
+        assertThat(cache.size(), is(2));
+        assertThat(loads.get(), is(3));
+
+        cache.get("https://example.com/a.git", null, this::load);
+        assertThat(loads.get(), is(3));
+        cache.get("https://example.com/b.git", null, this::load);
+        assertThat(loads.get(), is(4));
+    }
+
+    @Test
+    void disabledCacheAlwaysLoads() throws Exception {
+        AdvertisedRefsCache cache = new AdvertisedRefsCache(0L, 10);
+        cache.get("https://example.com/repo.git", "id", this::load);
+        cache.get("https://example.com/repo.git", "id", this::load);
+
+        assertThat(cache.isEnabled(), is(false));
+        assertThat(loads.get(), is(2));
+        assertThat(cache.size(), is(0));
+    }
+
+    @Test
+    void lsRemoteOutputIsParsed() {
+        AdvertisedRefs refs = AdvertisedRefs.parseLsRemote(LS_REMOTE);
+
+        assertThat(refs.getRefs().keySet(), contains("HEAD", "refs/heads/master", "refs/tags/v1.0"));
+        assertThat(refs.getRefs(), hasEntry("refs/tags/v1.0", ObjectId.fromString(TAG)));
+        assertThat(refs.getPeeled(), hasEntry("refs/tags/v1.0", ObjectId.fromString(TAGGED)));
+        assertThat(refs.getSymrefs(), hasEntry("HEAD", "refs/heads/master"));
+    }
+
+    @Test
+    void filteredRefsKeepPeeledTags() {
+        AdvertisedRefs refs = AdvertisedRefs.parseLsRemote(LS_REMOTE).filter("v1.*");
+
+        assertThat(refs.getRefs().keySet(), contains("refs/tags/v1.0"));
+        assertThat(refs.getPeeledRefs(), hasEntry("refs/tags/v1.0", ObjectId.fromString(TAGGED)));
+        assertThat(refs.getSymrefs().keySet(), is(empty()));
+    }
+
+    @Test
+    void lsRemotePatternsMatchTrailingPathComponents() {
+        assertThat(AdvertisedRefs.lsRemoteMatches("master", "refs/heads/master"), is(true));
+        assertThat(AdvertisedRefs.lsRemoteMatches("heads/master", "refs/heads/master"), is(true));
+        assertThat(AdvertisedRefs.lsRemoteMatches("refs/heads/master", "refs/heads/master"), is(true));
+        assertThat(AdvertisedRefs.lsRemoteMatches("aster", "refs/heads/master"), is(false));
+        assertThat(AdvertisedRefs.lsRemoteMatches("feature/*", "refs/heads/feature/a/b"), is(true));
+        assertThat(AdvertisedRefs.lsRemoteMatches("v1.?", "refs/tags/v1.0"), is(true));
+        assertThat(AdvertisedRefs.lsRemoteMatches("v1.0", "refs/tags/v1x0"), is(false));
+    }
+
+    private static class PasswordCredentials implements StandardUsernamePasswordCredentials {
+
+        private final String userName;
+        private final Secret password;
+
+        PasswordCredentials(String userName, String password) {
+            this.userName = userName;
+            this.password = Secret.fromString(password);
+        }
+
+        @Override
+        @NonNull
+        public String getDescription() {
+            return "";
+        }
+
+        @Override
+        @NonNull
+        public String getId() {
+            return "shared-id";
+        }
+
+        @Override
+        public CredentialsScope getScope() {
+            return CredentialsScope.GLOBAL;
+        }
+
+        @Override
+        @NonNull
+        public CredentialsDescriptor getDescriptor() {
+            throw new UnsupportedOperationException("Should not be called");
+        }
+
+        @Override
+        @NonNull
+        public String getUsername() {
+            return userName;
+        }
+
+        @Override
+        @NonNull
+        public Secret getPassword() {
+            return password;
+        }
+    }
+}
@@ -0,0 +1,224 @@
+package org.jenkinsci.plugins.gitclient;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.anExistingFile;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThan;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.notNullValue;
+import static org.hamcrest.Matchers.nullValue;
+
+import hudson.EnvVars;
+import hudson.model.TaskListener;
+import java.io.File;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Set;
+import org.eclipse.jgit.internal.storage.commitgraph.CommitGraphWriter;
+import org.eclipse.jgit.internal.storage.commitgraph.GraphCommits;
+import org.eclipse.jgit.lib.CommitBuilder;
+import org.eclipse.jgit.lib.NullProgressMonitor;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectInserter;
+import org.eclipse.jgit.lib.ObjectReader;
+import org.eclipse.jgit.lib.PersonIdent;
+import org.eclipse.jgit.lib.RefUpdate;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.lib.TreeFormatter;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class CommitGraphReachabilityTest {
+
+    @TempDir
+    private File workspace;
+
+    private Repository repo;
+    private ObjectId emptyTree;
+    private int time = 1_600_000_000;
+
+    /*
+     * c1 - c2 - c3 ------- merge      octopus merges c3, f2 and c1
+     *        \           /
+     *         f1 ------ f2            unrelated has no parent
+     */
+    private ObjectId c1;
+    private ObjectId c2;
+    private ObjectId c3;
+    private ObjectId f1;
+    private ObjectId f2;
+    private ObjectId merge;
+    private ObjectId octopus;
+    private ObjectId unrelated;
+
+    @BeforeEach
+    void createHistory() throws Exception {
+        repo = org.eclipse.jgit.api.Git.init()
+                .setDirectory(workspace)
+                .call()
+                .getRepository();
+        try (ObjectInserter inserter = repo.newObjectInserter()) {
+            emptyTree = inserter.insert(new TreeFormatter());
+            c1 = commit(inserter);
+            c2 = commit(inserter, c1);
+            f1 = commit(inserter, c2);
+            c3 = commit(inserter, c2);
+            f2 = commit(inserter, f1);
+            merge = commit(inserter, c3, f2);
+            octopus = commit(inserter, c3, f2, c1);
+            unrelated = commit(inserter);
+            inserter.flush();
+        }
+    }
+
+    @AfterEach
+    void closeRepository() {
+        repo.close();
+    }
+
+    private ObjectId commit(ObjectInserter inserter, ObjectId... parents) throws Exception {
+        PersonIdent ident = new PersonIdent("A U Thor", "author@example.com", (time++) * 1000L, 0);
+        CommitBuilder commit = new CommitBuilder();
+        commit.setTreeId(emptyTree);
+        commit.setParentIds(parents);
+        commit.setAuthor(ident);
+        commit.setCommitter(ident);
+        commit.setMessage("commit " + time);
+        return inserter.insert(commit);
+    }
+
+    private void writeCommitGraph(ObjectId... tips) throws Exception {
+        File info = new File(repo.getDirectory(), "objects/info");
+        Files.createDirectories(info.toPath());
+        try (RevWalk walk = new RevWalk(repo);
+                OutputStream out = Files.newOutputStream(new File(info, "commit-graph").toPath())) {
+            GraphCommits commits = GraphCommits.fromWalk(NullProgressMonitor.INSTANCE, Set.of(tips), walk);
+            new CommitGraphWriter(commits).write(NullProgressMonitor.INSTANCE, out);
+        }
+    }
+
+    @Test
+    void noCommitGraph() throws Exception {
+        try (ObjectReader reader = repo.newObjectReader()) {
+            assertThat(CommitGraphReachability.open(repo, reader), is(nullValue()));
+        }
+    }
+
+    @Test
+    void commitGraphIsRead() throws Exception {
+        writeCommitGraph(merge, octopus, unrelated);
+        CommitGraphFile graph = CommitGraphFile.forObjectDirectory(new File(repo.getDirectory(), "objects"));
+        assertThat(graph, is(notNullValue()));
+        assertThat(graph.size(), is(8));
+        assertThat(graph.find(ObjectId.zeroId()), is(-1));
+
+        int octopusPosition = graph.find(octopus);
+        assertThat(graph.objectId(octopusPosition), is(octopus));
+        assertThat(graph.parents(octopusPosition).length, is(3));
+        assertThat(graph.objectId(graph.parents(octopusPosition)[2]), is(c1));
+        assertThat(graph.generation(graph.find(c1)), is(1));
+        assertThat(graph.generation(graph.find(merge)), is(5));
+    }
+
+    /* Writes a layer of a split commit-graph with command line git, holding the commits reachable from the tips */
+    private void writeCommitGraphLayer(ObjectId... tips) throws Exception {
+        for (ObjectId tip : tips) {
+            RefUpdate update = repo.updateRef("refs/heads/tip-" + tip.name());
+            update.setNewObjectId(tip);
+            update.forceUpdate();
+        }
+        GitClient client = Git.with(TaskListener.NULL, new EnvVars())
+                .in(workspace)
+                .using("git")
+                .getClient();
+        new CliGitCommand(client).run("commit-graph", "write", "--reachable", "--split=no-merge");
+    }
+
+    @Test
+    void splitCommitGraphIsRead() throws Exception {
+        writeCommitGraphLayer(c3, f1);
+        writeCommitGraphLayer(merge, octopus, unrelated);
+        File objects = new File(repo.getDirectory(), "objects");
+        assertThat(new File(objects, "info/commit-graph"), is(not(anExistingFile())));
+        List<String> chain = Files.readAllLines(new File(objects, "info/commit-graphs/commit-graph-chain").toPath());
+        assertThat(chain.size(), is(2));
+
+        CommitGraphFile graph = CommitGraphFile.forObjectDirectory(objects);
+        assertThat(graph, is(notNullValue()));
+        assertThat(graph.size(), is(8));
+        // Commits of the top layer follow the commits of the base layer, parents point into both
+        assertThat(graph.find(c1), lessThan(4));
+        int octopusPosition = graph.find(octopus);
+        assertThat(octopusPosition, greaterThanOrEqualTo(4));
+        assertThat(graph.objectId(octopusPosition), is(octopus));
+        assertThat(graph.parents(octopusPosition).length, is(3));
+        assertThat(graph.objectId(graph.parents(octopusPosition)[0]), is(c3));
+        assertThat(graph.objectId(graph.parents(octopusPosition)[1]), is(f2));
+        assertThat(graph.objectId(graph.parents(octopusPosition)[2]), is(c1));
+        assertThat(graph.generation(graph.find(merge)), is(5));
+
+        assertContaining();
+        assertMergeBases();
+    }
+
+    @Test
+    void containingWithCommitGraph() throws Exception {
+        writeCommitGraph(merge, octopus, unrelated);
+        assertContaining();
+    }
+
+    @Test
+    void containingWithCommitsNewerThanCommitGraph() throws Exception {
+        writeCommitGraph(c3, f1);
+        assertContaining();
+    }
+
+    private void assertContaining() throws Exception {
+        List<ObjectId> tips = List.of(c3, f2, merge, octopus, unrelated);
+        try (ObjectReader reader = repo.newObjectReader();
+                CommitGraphReachability reachability = CommitGraphReachability.open(repo, reader)) {
+            assertThat(reachability.containing(c1, tips), is(bits(0, 1, 2, 3)));
+            assertThat(reachability.containing(f1, tips), is(bits(1, 2, 3)));
+            assertThat(reachability.containing(c3, tips), is(bits(0, 2, 3)));
+            assertThat(reachability.containing(merge, tips), is(bits(2)));
+            assertThat(reachability.containing(unrelated, tips), is(bits(4)));
+        }
+    }
+
+    @Test
+    void mergeBaseWithCommitGraph() throws Exception {
+        writeCommitGraph(merge, octopus, unrelated);
+        assertMergeBases();
+    }
+
+    @Test
+    void mergeBaseWithCommitsNewerThanCommitGraph() throws Exception {
+        writeCommitGraph(c2);
+        assertMergeBases();
+    }
+
+    private void assertMergeBases() throws Exception {
+        try (ObjectReader reader = repo.newObjectReader();
+                CommitGraphReachability reachability = CommitGraphReachability.open(repo, reader)) {
+            assertThat(reachability.mergeBase(c3, f2), is(c2));
+            assertThat(reachability.mergeBase(merge, c3), is(c3));
+            assertThat(reachability.mergeBase(merge, octopus), is(f2));
+            assertThat(reachability.mergeBase(f1, f1), is(f1));
+            assertThat(reachability.mergeBase(merge, unrelated), is(nullValue()));
+        }
+    }
+
+    private static BitSet bits(int... indices) {
+        BitSet bits = new BitSet();
+        for (int index : indices) {
+            bits.set(index);
+        }
+        return bits;
+    }
+}
@@ -7,6 +7,7 @@ import static org.hamcrest.Matchers.empty;
 import static org.hamcrest.Matchers.hasItem;
 import static org.hamcrest.Matchers.is;
 import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.nullValue;
 import static org.junit.jupiter.api.Assertions.*;
 
 import hudson.EnvVars;
@@ -31,6 +32,7 @@ import java.util.logging.Level;
 import java.util.logging.Logger;
 import org.apache.commons.lang3.StringUtils;
 import org.eclipse.jgit.api.Status;
+import org.eclipse.jgit.diff.DiffEntry;
 import org.eclipse.jgit.internal.storage.file.FileRepository;
 import org.eclipse.jgit.lib.Config;
 import org.eclipse.jgit.lib.Constants;
@@ -1756,6 +1758,46 @@ class GitAPITest {
         assertThat(changelog, not(containsString(mergeMessage)));
     }
 
+    @Test
+    void testChangelogEntries() throws Exception {
+        workspace.touch(testGitDir, "file-entries-a", "changelog entries a");
+        testGitClient.add("file-entries-a");
+        testGitClient.commit("entries-root");
+        ObjectId rootCommit = testGitClient.revParse("HEAD");
+
+        workspace.touch(testGitDir, "file-entries-a", "changelog entries a modified");
+        workspace.touch(testGitDir, "file-entries-b", "changelog entries b");
+        testGitClient.add("file-entries-a");
+        testGitClient.add("file-entries-b");
+        testGitClient.commit("entries-second");
+        ObjectId secondCommit = testGitClient.revParse("HEAD");
+
+        List<ChangelogEntry> entries = new ArrayList<>();
+        testGitClient.changelog().entries(entries::add).execute();
+
+        assertThat(entries.size(), is(2));
+        ChangelogEntry second = entries.get(0);
+        assertThat(second.getCommit(), is(secondCommit));
+        assertThat(second.getParents(), is(List.of(rootCommit)));
+        assertThat(second.getMessage(), is("entries-second"));
+        assertThat(second.getChanges().size(), is(2));
+        ChangelogEntry.Change modified = second.getChanges().get(0);
+        assertThat(modified.getType(), is(DiffEntry.ChangeType.MODIFY));
+        assertThat(modified.getOldPath(), is("file-entries-a"));
+        assertThat(modified.getNewPath(), is("file-entries-a"));
+        ChangelogEntry.Change added = second.getChanges().get(1);
+        assertThat(added.getType(), is(DiffEntry.ChangeType.ADD));
+        assertThat(added.getOldPath(), is(nullValue()));
+        assertThat(added.getNewPath(), is("file-entries-b"));
+        assertThat(added.getOldId(), is(ObjectId.zeroId()));
+
+        ChangelogEntry root = entries.get(1);
+        assertThat(root.getCommit(), is(rootCommit));
+        assertThat(root.getParents(), is(empty()));
+        assertThat(root.getChanges().size(), is(1));
+        assertThat(root.getChanges().get(0).getNewPath(), is("file-entries-a"));
+    }
+
     /**
      * inline ${@link hudson.Functions#isWindows()} to prevent a transient remote classloader issue
      */
@@ -306,4 +306,64 @@ abstract class GitAPITestUpdateCliGit extends GitAPITestUpdate {
         assertTrue(workingArea.exists("dir2"));
         assertTrue(workingArea.exists("dir3"));
     }
+
+    @Test
+    void testConeSparseCheckout() throws Exception {
+        if (!w.cgit().isAtLeastVersion(2, 35, 0, 0)) {
+            return;
+        }
+        w.init();
+        w.commitEmpty("init");
+        assertTrue(w.file("dir1/sub").mkdirs(), "mkdir dir1/sub failed");
+        w.touch("dir1/sub/file1");
+        assertTrue(w.file("dir2").mkdir(), "mkdir dir2 failed");
+        w.touch("dir2/file2");
+        w.touch("top");
+        w.git.add("dir1/sub/file1");
+        w.git.add("dir2/file2");
+        w.git.add("top");
+        w.git.commit("commit");
+
+        WorkingArea workingArea = new WorkingArea();
+        workingArea.git.clone_().url(w.repoPath()).execute();
+
+        workingArea
+                .git
+                .checkout()
+                .ref(defaultRemoteBranchName)
+                .branch(defaultBranchName)
+                .deleteBranchIfExist(true)
+                .sparseCheckoutPaths(Collections.singletonList("/dir1/"))
+                .sparseCheckoutCone(true)
+                .execute();
+        assertTrue(workingArea.exists("dir1/sub/file1"));
+        assertTrue(workingArea.exists("top"));
+        assertFalse(workingArea.exists("dir2"));
+        assertThat(workingArea.launchCommand("git", "config", "core.sparseCheckoutCone"), containsString("true"));
+
+        workingArea
+                .git
+                .checkout()
+                .ref(defaultRemoteBranchName)
+                .branch(defaultBranchName)
+                .deleteBranchIfExist(true)
+                .sparseCheckoutPaths(Collections.singletonList("dir2"))
+                .execute();
+        assertFalse(workingArea.exists("dir1"));
+        assertTrue(workingArea.exists("dir2/file2"));
+        assertFalse(workingArea.exists("top"));
+
+        workingArea
+                .git
+                .checkout()
+                .ref(defaultRemoteBranchName)
+                .branch(defaultBranchName)
+                .deleteBranchIfExist(true)
+                .sparseCheckoutPaths(Collections.emptyList())
+                .sparseCheckoutCone(true)
+                .execute();
+        assertTrue(workingArea.exists("dir1/sub/file1"));
+        assertTrue(workingArea.exists("dir2/file2"));
+        assertTrue(workingArea.exists("top"));
+    }
 }
@@ -201,6 +201,35 @@ class GitClientCloneTest {
         assertThat(new File(testGitDir, shallow), is(anExistingFile()));
     }
 
+    @Test
+    void test_clone_filter() throws Exception {
+        testGitClient
+                .clone_()
+                .url(workspace.localMirror())
+                .repositoryName("origin")
+                .filter("blob:none")
+                .execute();
+        testGitClient.checkout().ref("origin/master").branch("master").execute();
+        check_remote_url(workspace, testGitClient, "origin");
+        assertBranchesExist(testGitClient.getBranches(), "master");
+        if (gitImplName.equals("git") && workspace.cgit().isAtLeastVersion(2, 22, 0, 0)) {
+            assertThat(
+                    workspace.launchCommand("git", "config", "remote.origin.promisor"), containsString("true"));
+            assertThat(
+                    workspace.launchCommand("git", "config", "remote.origin.partialclonefilter"),
+                    containsString("blob:none"));
+        } else {
+            assertThat(handler.getMessages(), hasItem(containsString("ignoring filter 'blob:none'")));
+        }
+    }
+
+    @Test
+    void test_clone_invalid_filter() {
+        CloneCommand cmd = testGitClient.clone_().url(workspace.localMirror());
+        assertThrows(IllegalArgumentException.class, () -> cmd.filter("--upload-pack=touch"));
+        assertThrows(IllegalArgumentException.class, () -> cmd.filter("blob:limit=1x"));
+    }
+
     @Test
     void test_clone_shared() throws Exception {
         testGitClient
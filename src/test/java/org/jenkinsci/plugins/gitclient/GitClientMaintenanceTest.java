@@ -181,10 +181,7 @@ class GitClientMaintenanceTest {
                 looseObjectsSupported = false;
             }
         } else {
-            garbageCollectionSupported = false;
-            incrementalRepackSupported = false;
-            commitGraphSupported = false;
-            prefetchSupported = false;
+            // JGit runs gc, commit-graph, incremental-repack and prefetch natively
             looseObjectsSupported = false;
         }
     }
@@ -234,9 +231,6 @@ class GitClientMaintenanceTest {
     }
 
     private String getExpectedMessage(String maintenanceTask, boolean expectedResult) {
-        if (gitImplName.startsWith("jgit")) {
-            return "JGIT doesn't support git maintenance. Use CLIGIT to execute maintenance tasks.";
-        }
         return expectedResult
                 ? "Git maintenance task " + maintenanceTask + " finished"
                 : "Error executing " + maintenanceTask + " maintenance task";
@@ -245,6 +239,12 @@ class GitClientMaintenanceTest {
     @Test
     void test_loose_objects_maintenance() throws Exception {
         if (!looseObjectsSupported) {
+            if (gitClient instanceof JGitAPIImpl) {
+                assertThat(gitClient.maintenance("loose-objects"), is(false));
+                assertThat(
+                        handler.getMessages(),
+                        hasItem(startsWith("JGIT doesn't support the loose-objects maintenance task.")));
+            }
             return;
         }
 
@@ -292,7 +292,7 @@ class GitClientMaintenanceTest {
 
         // Run incremental repack maintenance task
         // Need to create pack files to use incremental repack
-        assertThat(gitClient.maintenance("gc"), is(!gitImplName.startsWith("jgit"))); // No gc on JGit maintenance
+        assertThat(gitClient.maintenance("gc"), is(true));
 
         assertThat(gitClient.maintenance(maintenanceTask), is(incrementalRepackSupported));
 
@@ -341,9 +341,7 @@ class GitClientMaintenanceTest {
         // Should always fail to execute
         assertThat(gitClient.maintenance(maintenanceTask), is(false));
 
-        String expectedMessage = gitImplName.startsWith("jgit")
-                ? "JGIT doesn't support git maintenance. Use CLIGIT to execute maintenance tasks."
-                : "Error executing invalid-maintenance-task maintenance task";
+        String expectedMessage = "Error executing invalid-maintenance-task maintenance task";
         assertThat(handler.getMessages(), hasItem(expectedMessage));
     }
 
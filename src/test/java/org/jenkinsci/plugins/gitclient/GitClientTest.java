@@ -44,6 +44,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Random;
 import java.util.Set;
+import java.util.TreeSet;
 import java.util.UUID;
 import org.apache.commons.io.FileUtils;
 import org.eclipse.jgit.api.errors.JGitInternalException;
@@ -1889,6 +1890,26 @@ class GitClientTest {
         assertTrue(srcGitClient.refExists(getSubmodulesRef));
     }
 
+    /* Lookups must see refs, tags and commits created after an earlier lookup */
+    @Test
+    void testLookupsAfterRepositoryChanges() throws Exception {
+        ObjectId commitA = commitOneFile();
+        assertThat(gitClient.revParse(defaultBranchName), is(commitA));
+        assertFalse(gitClient.refExists("refs/tags/lookup-tag"));
+
+        ObjectId commitB = commitOneFile();
+        gitClient.tag("lookup-tag", "Tag created after the first lookup");
+        assertThat(gitClient.revParse(defaultBranchName), is(commitB));
+        assertThat(gitClient.revParse("lookup-tag"), is(commitB));
+        assertTrue(gitClient.refExists("refs/tags/lookup-tag"));
+        assertTrue(gitClient.isCommitInRepo(commitB));
+        assertThat(gitClient.getTagMessage("lookup-tag"), is("Tag created after the first lookup"));
+
+        gitClient.deleteTag("lookup-tag");
+        assertFalse(gitClient.refExists("refs/tags/lookup-tag"));
+        assertThrows(GitException.class, () -> gitClient.revParse("lookup-tag"));
+    }
+
     // @Test
     public void testGetRemoteReferences() throws Exception {
         String url = repoRoot.getAbsolutePath();
@@ -2834,6 +2855,28 @@ class GitClientTest {
     /* A SHA1 that doesn't exist in src repo */
     private final String NON_EXISTENT_SHA1 = "adbadcaddadfadba11adbeefb1abbedb1adebed5";
 
+    /* More branches than JGit can track with RevFlags in a single walk */
+    @Test
+    void testGetBranchesContainingManyBranches() throws Exception {
+        ObjectId commitA = commitOneFile();
+        Set<String> expected = new TreeSet<>();
+        for (int i = 0; i < 30; i++) {
+            gitClient.branch("before-" + i);
+        }
+        ObjectId commitB = commitOneFile();
+        expected.add(defaultBranchName);
+        for (int i = 0; i < 30; i++) {
+            gitClient.branch("after-" + i);
+            expected.add("after-" + i);
+        }
+        Set<String> containingB = new TreeSet<>();
+        for (Branch branch : gitClient.getBranchesContaining(commitB.name(), false)) {
+            containingB.add(branch.getName());
+        }
+        assertThat(containingB, is(expected));
+        assertThat(gitClient.getBranchesContaining(commitA.name(), false), hasSize(61));
+    }
+
     @Test
     void testGetBranchesContainingTrue_non_existent_sha1() {
         assertThrows(GitException.class, () -> srcGitClient.getBranchesContaining(NON_EXISTENT_SHA1, true));
@@ -2942,6 +2985,30 @@ class GitClientTest {
                 () -> gitClient.getRemoteReferences("error: invalid repo URL", Constants.HEAD, false, false));
     }
 
+    @Test
+    void testGetAdvertisedRefs() throws Exception {
+        ObjectId commit = commitOneFile("A-Single-File-Commit");
+        gitClient.tag("advertised-tag", "Comment for annotated advertised-tag");
+        AdvertisedRefs refs = gitClient.getAdvertisedRefs(repoRoot.getAbsolutePath(), null);
+        assertThat(refs.getRefs(), hasEntry("refs/heads/" + defaultBranchName, commit));
+        assertThat(refs.getRefs().get("refs/tags/advertised-tag"), is(not(commit)));
+        assertThat(refs.getPeeledRefs(), hasEntry("refs/tags/advertised-tag", commit));
+        assertThat(refs.getSymrefs(), hasEntry(Constants.HEAD, "refs/heads/" + defaultBranchName));
+        assertThat(
+                refs.getPeeledRefs(),
+                is(gitClient.getRemoteReferences(repoRoot.getAbsolutePath(), null, false, false)));
+    }
+
+    @Test
+    void testGetAdvertisedRefs_with_pattern() throws Exception {
+        ObjectId commit = commitOneFile("A-Single-File-Commit");
+        gitClient.tag("advertised-tag", "Comment for annotated advertised-tag");
+        AdvertisedRefs refs = gitClient.getAdvertisedRefs(repoRoot.getAbsolutePath(), "advertised-*");
+        assertThat(refs.getPeeledRefs().keySet(), contains("refs/tags/advertised-tag"));
+        assertThat(refs.getPeeledRefs(), hasEntry("refs/tags/advertised-tag", commit));
+        assertThat(refs.getSymrefs().keySet(), hasSize(0));
+    }
+
     @Test
     void testGetTags() throws Exception {
         Set<GitObject> result = gitClient.getTags();
@@ -0,0 +1,50 @@
+package org.jenkinsci.plugins.gitclient;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+
+import hudson.plugins.git.IndexEntry;
+import java.util.List;
+import org.eclipse.jgit.lib.ObjectId;
+import org.junit.jupiter.api.Test;
+
+class GitlinkCacheTest {
+
+    private static final ObjectId TREE_A = ObjectId.fromString("1111111111111111111111111111111111111111");
+    private static final ObjectId TREE_B = ObjectId.fromString("2222222222222222222222222222222222222222");
+    private static final ObjectId TREE_C = ObjectId.fromString("3333333333333333333333333333333333333333");
+    private static final ObjectId COMMIT = ObjectId.fromString("4444444444444444444444444444444444444444");
+
+    @Test
+    void gitlinksAreCachedByTreeId() {
+        GitlinkCache cache = new GitlinkCache(10);
+        assertThat(cache.get(TREE_A), is(nullValue()));
+
+        cache.put(TREE_A, List.of(new GitlinkCache.Gitlink("modules/ntp", COMMIT)));
+        assertThat(cache.get(TREE_A.copy()), contains(new GitlinkCache.Gitlink("modules/ntp", COMMIT)));
+        assertThat(cache.get(TREE_B), is(nullValue()));
+    }
+
+    @Test
+    void leastRecentlyUsedTreeIsEvicted() {
+        GitlinkCache cache = new GitlinkCache(2);
+        cache.put(TREE_A, List.of());
+        cache.put(TREE_B, List.of());
+        cache.get(TREE_A);
+        cache.put(TREE_C, List.of());
+
+        assertThat(cache.size(), is(2));
+        assertThat(cache.get(TREE_B), is(nullValue()));
+        assertThat(cache.get(TREE_A), is(List.of()));
+    }
+
+    @Test
+    void gitlinksBecomeSubmoduleEntries() {
+        List<IndexEntry> entries =
+                GitlinkCache.toIndexEntries(List.of(new GitlinkCache.Gitlink("modules/ntp", COMMIT)));
+
+        assertThat(entries, contains(new IndexEntry("160000", "commit", COMMIT.name(), "modules/ntp")));
+    }
+}
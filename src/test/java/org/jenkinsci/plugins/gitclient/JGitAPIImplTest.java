@@ -1,6 +1,9 @@
 package org.jenkinsci.plugins.gitclient;
 
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
 import java.io.File;
+import org.junit.jupiter.api.Test;
 
 /**
  * @author <a href="mailto:nicolas.deloof@gmail.com">Nicolas De Loof</a>
@@ -16,4 +19,20 @@ class JGitAPIImplTest extends GitAPITestUpdate {
     protected String getRemoteBranchPrefix() {
         return "";
     }
+
+    @Test
+    void testSubmoduleUpdateWithThreads() throws Exception {
+        w.init();
+        w.git.clone_().url(localMirror()).repositoryName("sub2_origin").execute();
+        w.git.checkout()
+                .branch("tests/getSubmodules")
+                .ref("sub2_origin/tests/getSubmodules")
+                .deleteBranchIfExist(true)
+                .execute();
+        w.git.submoduleInit();
+        w.git.submoduleUpdate().recursive(true).threads(3).execute();
+
+        assertTrue(w.exists("modules/firewall"), "modules/firewall does not exist");
+        assertTrue(w.exists("modules/ntp"), "modules/ntp does not exist");
+    }
 }
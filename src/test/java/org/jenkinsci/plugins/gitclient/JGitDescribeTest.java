@@ -0,0 +1,126 @@
+package org.jenkinsci.plugins.gitclient;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+
+import java.io.File;
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.lib.ObjectReader;
+import org.eclipse.jgit.lib.PersonIdent;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class JGitDescribeTest {
+
+    @TempDir
+    private File workspace;
+
+    private Git git;
+    private Repository repo;
+    private int time = 1_600_000_000;
+
+    @BeforeEach
+    void createRepository() throws Exception {
+        TagIndex.clear();
+        git = Git.init().setDirectory(workspace).call();
+        repo = git.getRepository();
+    }
+
+    @AfterEach
+    void closeRepository() {
+        git.close();
+        TagIndex.clear();
+    }
+
+    private RevCommit commit(String message) throws Exception {
+        PersonIdent ident = new PersonIdent("A U Thor", "author@example.com", (time++) * 1000L, 0);
+        return git.commit()
+                .setMessage(message)
+                .setAllowEmpty(true)
+                .setAuthor(ident)
+                .setCommitter(ident)
+                .call();
+    }
+
+    private String abbreviated(RevCommit commit) throws Exception {
+        try (ObjectReader reader = repo.newObjectReader()) {
+            return reader.abbreviate(commit).name();
+        }
+    }
+
+    @Test
+    void untaggedHistoryHasNoDescription() throws Exception {
+        RevCommit commit = commit("untagged");
+
+        assertThat(JGitDescribe.describe(repo, commit), is(nullValue()));
+    }
+
+    @Test
+    void annotatedTagIsPreferredOnTaggedCommit() throws Exception {
+        RevCommit commit = commit("tagged");
+        git.tag().setName("a-lightweight").setObjectId(commit).setAnnotated(false).call();
+        git.tag().setName("z-annotated").setObjectId(commit).setAnnotated(true).setMessage("z").call();
+
+        assertThat(JGitDescribe.describe(repo, commit), is("z-annotated"));
+    }
+
+    @Test
+    void newestAnnotatedTagIsPreferred() throws Exception {
+        RevCommit tagged = commit("tagged");
+        git.tag()
+                .setName("b-newer")
+                .setObjectId(tagged)
+                .setAnnotated(true)
+                .setMessage("newer")
+                .setTagger(new PersonIdent("A U Thor", "author@example.com", (time + 10) * 1000L, 0))
+                .call();
+        git.tag()
+                .setName("a-older")
+                .setObjectId(tagged)
+                .setAnnotated(true)
+                .setMessage("older")
+                .setTagger(new PersonIdent("A U Thor", "author@example.com", time * 1000L, 0))
+                .call();
+        RevCommit commit = commit("untagged");
+
+        assertThat(JGitDescribe.describe(repo, tagged), is("b-newer"));
+        assertThat(JGitDescribe.describe(repo, commit), is("b-newer-1-g" + abbreviated(commit)));
+    }
+
+    @Test
+    void closestTagWins() throws Exception {
+        RevCommit base = commit("base");
+        git.tag().setName("v1").setObjectId(base).setAnnotated(true).setMessage("v1").call();
+        commit("one");
+        RevCommit two = commit("two");
+        git.tag().setName("v2").setObjectId(two).setAnnotated(false).call();
+        RevCommit three = commit("three");
+
+        assertThat(JGitDescribe.describe(repo, three), is("v2-1-g" + abbreviated(three)));
+        assertThat(JGitDescribe.describe(repo, two), is("v2"));
+    }
+
+    @Test
+    void depthCountsCommitsOfMergedBranches() throws Exception {
+        RevCommit base = commit("base");
+        git.tag().setName("v1").setObjectId(base).setAnnotated(true).setMessage("v1").call();
+        String main = repo.getBranch();
+        git.branchCreate().setName("topic").call();
+        commit("main one");
+        git.checkout().setName("topic").call();
+        RevCommit topic = commit("topic one");
+        commit("topic two");
+        git.checkout().setName(main).call();
+        git.merge().include(repo.resolve("topic")).setMessage("merge").call();
+        RevCommit head = repo.parseCommit(repo.resolve("HEAD"));
+
+        // main one, topic one, topic two and the merge
+        assertThat(JGitDescribe.describe(repo, head), is("v1-4-g" + abbreviated(head)));
+        assertThat(JGitDescribe.describe(repo, topic), is("v1-1-g" + abbreviated(topic)));
+    }
+}
@@ -0,0 +1,155 @@
+package org.jenkinsci.plugins.gitclient;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.notNullValue;
+import static org.hamcrest.io.FileMatchers.anExistingFile;
+
+import java.io.File;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import org.eclipse.jgit.internal.storage.file.ObjectDirectory;
+import org.eclipse.jgit.lib.CommitBuilder;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.FileMode;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectInserter;
+import org.eclipse.jgit.lib.PersonIdent;
+import org.eclipse.jgit.lib.RefUpdate;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.lib.TreeFormatter;
+import org.eclipse.jgit.revwalk.RevTree;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.eclipse.jgit.storage.file.FileRepositoryBuilder;
+import org.eclipse.jgit.transport.RefSpec;
+import org.eclipse.jgit.treewalk.TreeWalk;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class JGitMaintenanceTest {
+
+    @TempDir
+    private File workspace;
+
+    private Repository repo;
+    private ObjectDirectory objects;
+    private final List<ObjectId> commits = new ArrayList<>();
+
+    @BeforeEach
+    void createPacks() throws Exception {
+        repo = org.eclipse.jgit.api.Git.init()
+                .setDirectory(workspace)
+                .call()
+                .getRepository();
+        objects = (ObjectDirectory) repo.getObjectDatabase();
+        // One pack per fetch, the first one is the largest
+        addPack(20);
+        addPack(3);
+        addPack(2);
+        addPack(1);
+    }
+
+    @AfterEach
+    void closeRepository() {
+        repo.close();
+    }
+
+    private void addPack(int commitCount) throws Exception {
+        try (ObjectInserter inserter = objects.newPackInserter()) {
+            for (int i = 0; i < commitCount; i++) {
+                // Similar blobs, so that garbage collection stores deltas
+                TreeFormatter tree = new TreeFormatter();
+                tree.append(
+                        "file",
+                        FileMode.REGULAR_FILE,
+                        inserter.insert(
+                                Constants.OBJ_BLOB,
+                                Constants.encode("shared line\n".repeat(200) + "content " + commits.size())));
+                PersonIdent ident = new PersonIdent("A U Thor", "author@example.com", commits.size() * 1000L, 0);
+                CommitBuilder commit = new CommitBuilder();
+                commit.setTreeId(inserter.insert(tree));
+                if (!commits.isEmpty()) {
+                    commit.setParentId(commits.get(commits.size() - 1));
+                }
+                commit.setAuthor(ident);
+                commit.setCommitter(ident);
+                commit.setMessage("commit " + commits.size());
+                commits.add(inserter.insert(commit));
+            }
+            inserter.flush();
+        }
+        RefUpdate update = repo.updateRef(Constants.R_HEADS + "master");
+        update.setNewObjectId(commits.get(commits.size() - 1));
+        update.forceUpdate();
+    }
+
+    private void assertPacks(int packCount) throws Exception {
+        try (Repository reopened = new FileRepositoryBuilder()
+                        .setGitDir(repo.getDirectory())
+                        .build();
+                RevWalk walk = new RevWalk(reopened)) {
+            assertThat(((ObjectDirectory) reopened.getObjectDatabase()).getPacks().size(), is(packCount));
+            for (ObjectId commit : commits) {
+                assertThat(reopened.open(commit).getType(), is(Constants.OBJ_COMMIT));
+                RevTree tree = walk.parseCommit(commit).getTree();
+                assertThat(reopened.open(tree).getType(), is(Constants.OBJ_TREE));
+                try (TreeWalk treeWalk = TreeWalk.forPath(reopened, "file", tree)) {
+                    assertThat(reopened.open(treeWalk.getObjectId(0)).getType(), is(Constants.OBJ_BLOB));
+                }
+            }
+        }
+    }
+
+    @Test
+    void smallPacksAreCombined() throws Exception {
+        assertThat(new JGitMaintenance(repo).incrementalRepack(), is(3));
+        assertThat(new File(objects.getPackDirectory(), "multi-pack-index"), is(not(anExistingFile())));
+        // The combined packs are kept until the grace period has passed, and not combined again
+        assertPacks(5);
+        assertThat(new JGitMaintenance(repo).incrementalRepack(), is(0));
+        assertPacks(5);
+
+        // Two packs remain, the largest one and the combined one
+        assertThat(new JGitMaintenance(repo, Duration.ZERO).incrementalRepack(), is(0));
+        assertPacks(2);
+    }
+
+    @Test
+    void deltaCompressedPacksAreCombined() throws Exception {
+        // Aggressive garbage collection computes deltas instead of reusing the whole objects
+        org.eclipse.jgit.api.Git.wrap(repo).gc().setAggressive(true).call();
+        addPack(30);
+        addPack(1);
+
+        JGitMaintenance maintenance = new JGitMaintenance(repo, Duration.ZERO);
+        assertThat(maintenance.incrementalRepack(), is(2));
+        assertPacks(4);
+        assertThat(maintenance.incrementalRepack(), is(0));
+        assertPacks(2);
+    }
+
+    @Test
+    void commitGraphIsWritten() throws Exception {
+        new JGitMaintenance(repo).writeCommitGraph();
+
+        CommitGraphFile graph = CommitGraphFile.forObjectDirectory(objects.getDirectory());
+        assertThat(graph, is(notNullValue()));
+        assertThat(graph.size(), is(commits.size()));
+        assertThat(graph.generation(graph.find(commits.get(commits.size() - 1))), is(commits.size()));
+    }
+
+    @Test
+    void prefetchUpdatesPrefetchRefs() {
+        List<RefSpec> refSpecs = JGitMaintenance.prefetchRefSpecs(List.of(
+                new RefSpec("refs/heads/*:refs/remotes/origin/*"),
+                new RefSpec("+refs/tags/*:refs/tags/*"),
+                new RefSpec("refs/heads/master")));
+
+        assertThat(refSpecs, contains(new RefSpec("+refs/heads/*:refs/prefetch/remotes/origin/*")));
+    }
+}
@@ -0,0 +1,128 @@
+package org.jenkinsci.plugins.gitclient;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.is;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.dircache.DirCache;
+import org.eclipse.jgit.dircache.DirCacheEntry;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.lib.StoredConfig;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.util.NB;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class JGitSparseCheckoutTest {
+
+    @TempDir
+    private File workspace;
+
+    private Git git;
+    private Repository repo;
+    private RevCommit commit;
+
+    @BeforeEach
+    void createRepository() throws Exception {
+        git = Git.init().setDirectory(workspace).call();
+        repo = git.getRepository();
+        for (String file : List.of("top.txt", "a/a.txt", "a/b/b.txt", "a/b/c/c.txt", "d/d.md", "d/e/e.txt")) {
+            File f = new File(workspace, file);
+            Files.createDirectories(f.getParentFile().toPath());
+            Files.writeString(f.toPath(), file, StandardCharsets.UTF_8);
+            git.add().addFilepattern(file).call();
+        }
+        commit = git.commit().setMessage("files").call();
+    }
+
+    @AfterEach
+    void closeRepository() {
+        git.close();
+    }
+
+    private List<String> skipped() throws Exception {
+        List<String> skipped = new ArrayList<>();
+        DirCache index = repo.readDirCache();
+        for (int i = 0; i < index.getEntryCount(); i++) {
+            DirCacheEntry entry = index.getEntry(i);
+            if (entry.isSkipWorkTree()) {
+                skipped.add(entry.getPathString());
+            }
+        }
+        return skipped;
+    }
+
+    private boolean exists(String path) {
+        return new File(workspace, path).exists();
+    }
+
+    @Test
+    void coneChecksOutDirectoriesAndFilesOfTheirParents() throws Exception {
+        List<String> cone = List.of("a/b");
+        JGitSparseCheckout sparseCheckout = new JGitSparseCheckout(repo, cone, true);
+        sparseCheckout.checkout(commit);
+        sparseCheckout.save(cone, true);
+
+        assertThat(exists("top.txt"), is(true));
+        assertThat(exists("a/a.txt"), is(true));
+        assertThat(exists("a/b/c/c.txt"), is(true));
+        assertThat(exists("d"), is(false));
+        assertThat(skipped(), contains("d/d.md", "d/e/e.txt"));
+        assertThat(git.status().call().isClean(), is(true));
+        assertThat(JGitSparseCheckout.isEnabled(repo), is(true));
+        assertThat(
+                Files.readAllLines(new File(repo.getDirectory(), "info/sparse-checkout").toPath()),
+                contains("/*", "!/*/", "/a/", "!/a/*/", "/a/b/"));
+    }
+
+    @Test
+    void patternsSelectFiles() throws Exception {
+        new JGitSparseCheckout(repo, List.of("*.md", "!/d/e/"), false).checkout(commit);
+
+        assertThat(exists("d/d.md"), is(true));
+        assertThat(exists("top.txt"), is(false));
+        assertThat(exists("a"), is(false));
+        assertThat(skipped(), contains("a/a.txt", "a/b/b.txt", "a/b/c/c.txt", "d/e/e.txt", "top.txt"));
+        assertThat(git.status().call().isClean(), is(true));
+    }
+
+    @Test
+    void skipWorktreeIsSetInIndexVersion4() throws Exception {
+        StoredConfig config = repo.getConfig();
+        config.setBoolean("feature", null, "manyFiles", true);
+        config.save();
+        // The index version of the configuration applies to a new index, like the one of a fresh clone
+        Files.delete(repo.getIndexFile().toPath());
+
+        List<String> cone = List.of("a/b");
+        new JGitSparseCheckout(repo, cone, true).checkout(commit);
+
+        assertThat(NB.decodeInt32(Files.readAllBytes(repo.getIndexFile().toPath()), 4), is(4));
+        assertThat(skipped(), contains("d/d.md", "d/e/e.txt"));
+        assertThat(repo.readDirCache().getEntry("a/b/c/c.txt").isSkipWorkTree(), is(false));
+        assertThat(git.status().call().isClean(), is(true));
+    }
+
+    @Test
+    void emptyPathsRestoreAllFiles() throws Exception {
+        new JGitSparseCheckout(repo, List.of("d"), true).checkout(commit);
+        assertThat(exists("a/a.txt"), is(false));
+
+        JGitSparseCheckout full = new JGitSparseCheckout(repo, List.of(), false);
+        full.checkout(commit);
+        full.save(List.of(), false);
+
+        assertThat(exists("a/b/c/c.txt"), is(true));
+        assertThat(skipped().isEmpty(), is(true));
+        assertThat(JGitSparseCheckout.isEnabled(repo), is(false));
+        assertThat(git.status().call().isClean(), is(true));
+    }
+}
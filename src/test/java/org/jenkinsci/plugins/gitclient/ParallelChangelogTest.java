@@ -0,0 +1,104 @@
+package org.jenkinsci.plugins.gitclient;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.lib.ObjectReader;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class ParallelChangelogTest {
+
+    @TempDir
+    private File workspace;
+
+    private Git git;
+    private Repository repo;
+
+    @BeforeEach
+    void createRepository() throws Exception {
+        git = Git.init().setDirectory(workspace).call();
+        repo = git.getRepository();
+        // More commits than fit in the batches in flight
+        int commits = ParallelChangelog.BATCH_SIZE * (2 * ParallelChangelog.THREADS + 1) + 5;
+        for (int i = 0; i < commits; i++) {
+            String file = "file-" + (i % 7);
+            Files.writeString(new File(workspace, file).toPath(), "content " + i, StandardCharsets.UTF_8);
+            git.add().addFilepattern(file).call();
+            git.commit().setMessage("commit " + i).call();
+        }
+    }
+
+    @AfterEach
+    void closeRepository() {
+        git.close();
+    }
+
+    private List<RevCommit> commits(RevWalk walk) throws IOException {
+        walk.markStart(walk.parseCommit(repo.resolve("HEAD")));
+        List<RevCommit> commits = new ArrayList<>();
+        walk.forEach(commits::add);
+        return commits;
+    }
+
+    @Test
+    void outputIsInCommitOrder() throws Exception {
+        StringWriter serial = new StringWriter();
+        StringWriter parallel = new StringWriter();
+        try (ObjectReader reader = repo.newObjectReader();
+                RevWalk walk = new RevWalk(reader);
+                JGitAPIImpl.RawFormatter formatter = new JGitAPIImpl.RawFormatter(repo, reader);
+                ParallelChangelog<String> changelog = new ParallelChangelog<>(
+                        repo,
+                        (f, commit) -> {
+                            StringWriter formatted = new StringWriter();
+                            f.format(commit, null, formatted, true);
+                            return formatted.toString();
+                        },
+                        parallel::write)) {
+            for (RevCommit commit : commits(walk)) {
+                formatter.format(commit, null, serial, true);
+                changelog.add(commit);
+            }
+            changelog.finish();
+        }
+
+        assertThat(parallel.toString(), is(serial.toString()));
+    }
+
+    @Test
+    void failureOfACommitIsThrown() throws Exception {
+        try (RevWalk walk = new RevWalk(repo);
+                ParallelChangelog<String> changelog = new ParallelChangelog<>(
+                        repo,
+                        (f, commit) -> {
+                            if (commit.getParentCount() == 0) {
+                                throw new IOException("root commit");
+                            }
+                            return commit.name();
+                        },
+                        result -> {})) {
+            IOException e = assertThrows(IOException.class, () -> {
+                for (RevCommit commit : commits(walk)) {
+                    changelog.add(commit);
+                }
+                changelog.finish();
+            });
+            assertThat(e.getMessage(), is("root commit"));
+        }
+    }
+}
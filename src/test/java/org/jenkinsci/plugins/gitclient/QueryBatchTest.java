@@ -0,0 +1,92 @@
+package org.jenkinsci.plugins.gitclient;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import hudson.EnvVars;
+import hudson.model.TaskListener;
+import hudson.plugins.git.GitException;
+import hudson.plugins.git.IndexEntry;
+import java.io.File;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.Set;
+import org.eclipse.jgit.lib.ObjectId;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class QueryBatchTest {
+
+    @TempDir
+    private File repoRoot;
+
+    private GitClient gitClient;
+    private ObjectId head;
+
+    @BeforeEach
+    void createRepository() throws Exception {
+        gitClient = Git.with(TaskListener.NULL, new EnvVars())
+                .in(repoRoot)
+                .using("jgit")
+                .getClient();
+        gitClient.init_().workspace(repoRoot.getAbsolutePath()).execute();
+        gitClient.setRemoteUrl("origin", "https://github.com/jenkinsci/git-client-plugin");
+        Files.writeString(new File(repoRoot, "file.txt").toPath(), "content");
+        gitClient.add("file.txt");
+        gitClient.setAuthor("QueryBatchTest", "query.batch@example.com");
+        gitClient.setCommitter("QueryBatchTest", "query.batch@example.com");
+        gitClient.commit("Initial commit");
+        gitClient.tag("query-tag", "A tag message");
+        head = gitClient.revParse("HEAD");
+    }
+
+    @Test
+    void queriesAreAnsweredOnExecute() throws Exception {
+        QueryBatch batch = gitClient.queryBatch();
+        QueryBatch.Result<Boolean> hasRepo = batch.hasGitRepo();
+        QueryBatch.Result<String> url = batch.getRemoteUrl("origin");
+        QueryBatch.Result<String> missingUrl = batch.getRemoteUrl("upstream");
+        QueryBatch.Result<ObjectId> revision = batch.revParse("HEAD");
+        QueryBatch.Result<Boolean> inRepo = batch.isCommitInRepo(head);
+        QueryBatch.Result<String> message = batch.getTagMessage("query-tag");
+        QueryBatch.Result<Set<String>> tags = batch.getTagNames("query-*");
+        QueryBatch.Result<List<IndexEntry>> submodules = batch.getSubmodules("HEAD");
+
+        assertThrows(IllegalStateException.class, hasRepo::get);
+        batch.execute();
+
+        assertThat(hasRepo.get(), is(true));
+        assertThat(url.get(), is("https://github.com/jenkinsci/git-client-plugin"));
+        assertThat(missingUrl.get(), is(nullValue()));
+        assertThat(revision.get(), is(head));
+        assertThat(inRepo.get(), is(true));
+        assertThat(message.get(), is("A tag message"));
+        assertThat(tags.get(), contains("query-tag"));
+        assertThat(submodules.get(), is(empty()));
+    }
+
+    @Test
+    void failedQueryDoesNotStopOtherQueries() throws Exception {
+        QueryBatch batch = gitClient.queryBatch();
+        QueryBatch.Result<ObjectId> missing = batch.revParse("no-such-revision");
+        QueryBatch.Result<ObjectId> revision = batch.revParse("HEAD");
+        batch.execute();
+
+        assertThrows(GitException.class, missing::get);
+        assertThat(revision.get(), is(head));
+    }
+
+    @Test
+    void batchExecutesOnlyOnce() throws Exception {
+        QueryBatch batch = gitClient.queryBatch();
+        batch.hasGitRepo();
+        batch.execute();
+        assertThrows(IllegalStateException.class, batch::execute);
+        assertThrows(IllegalStateException.class, batch::hasGitModules);
+    }
+}
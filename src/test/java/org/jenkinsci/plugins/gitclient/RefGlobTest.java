@@ -0,0 +1,149 @@
+package org.jenkinsci.plugins.gitclient;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.hamcrest.Matchers.sameInstance;
+
+import java.util.List;
+import java.util.regex.Pattern;
+import org.junit.jupiter.api.Test;
+
+class RefGlobTest {
+
+    private static final List<String> REF_NAMES = List.of(
+            "HEAD",
+            "master",
+            "refs/heads/master",
+            "refs/heads/feature/master",
+            "refs/heads/feature/a/b",
+            "refs/heads/feature-1.0",
+            "refs/heads/feature-1x0",
+            "refs/heads/a+b",
+            "refs/heads/back\\slash",
+            "refs/tags/v1.0",
+            "refs/tags/v1.0^{}",
+            "refs/tags/v1x0",
+            "refs/changes/01/1001/1",
+            "refs/changes/01/1001/meta",
+            "refs/pull/12/head",
+            "/master");
+
+    private static final List<String> GLOBS = List.of(
+            "master",
+            "heads/master",
+            "refs/heads/master",
+            "aster",
+            "*",
+            "*/master",
+            "refs/heads/*",
+            "refs/heads/feature/*",
+            "feature/*",
+            "feature-1.?",
+            "refs/tags/v1.?",
+            "v1.0",
+            "refs/changes/*/meta",
+            "refs/*/head",
+            "a+b",
+            "back\\slash",
+            "back\\\\slash",
+            "HEAD",
+            "H*D",
+            "");
+
+    /* Pattern matching of AdvertisedRefs before globs were compiled */
+    private static boolean lsRemoteRegex(String pattern, String refName) {
+        StringBuilder regex = new StringBuilder(".*/");
+        for (int i = 0; i < pattern.length(); i++) {
+            char c = pattern.charAt(i);
+            switch (c) {
+                case '*' -> regex.append(".*");
+                case '?' -> regex.append('.');
+                case '\\' -> {
+                    if (i + 1 < pattern.length()) {
+                        c = pattern.charAt(++i);
+                    }
+                    regex.append(Pattern.quote(String.valueOf(c)));
+                }
+                default -> regex.append(Pattern.quote(String.valueOf(c)));
+            }
+        }
+        return ("/" + refName).matches(regex.toString());
+    }
+
+    /* Pattern matching of JGitAPIImpl before globs were compiled */
+    private static String jgitRegex(String glob) {
+        StringBuilder out = new StringBuilder();
+        for (int i = 0; i < glob.length(); ++i) {
+            final char c = glob.charAt(i);
+            switch (c) {
+                case '*' -> out.append(".*");
+                case '?' -> out.append('.');
+                case '.' -> out.append("\\.");
+                case '\\' -> out.append("\\\\");
+                default -> out.append(c);
+            }
+        }
+        return out.toString();
+    }
+
+    private static boolean jgitRefRegex(String glob, String refName) {
+        return refName.matches("^" + (glob.startsWith("refs/") ? "" : ".*/") + jgitRegex(glob) + "$");
+    }
+
+    @Test
+    void lsRemoteGlobMatchesLikeGit() {
+        for (String glob : GLOBS) {
+            for (String refName : REF_NAMES) {
+                assertThat(
+                        glob + " " + refName,
+                        RefGlob.lsRemote(glob).matches(refName),
+                        is(lsRemoteRegex(glob, refName)));
+            }
+        }
+    }
+
+    @Test
+    void refAndNameGlobsMatchLikeJGitAPIImpl() {
+        for (String glob : GLOBS) {
+            for (String refName : REF_NAMES) {
+                assertThat(glob + " " + refName, RefGlob.ref(glob).matches(refName), is(jgitRefRegex(glob, refName)));
+                assertThat(
+                        glob + " " + refName,
+                        RefGlob.name(glob).matches(refName),
+                        is(refName.matches(jgitRegex(glob))));
+            }
+        }
+    }
+
+    @Test
+    void refPrefixIsTheLiteralStartOfAnchoredGlobs() {
+        assertThat(RefGlob.ref("refs/heads/feature-*").refPrefix(), is("refs/heads/feature-"));
+        assertThat(RefGlob.ref("refs/tags/v1.0").refPrefix(), is("refs/tags/v1.0"));
+        assertThat(RefGlob.ref("refs/*/head").refPrefix(), is("refs/"));
+        assertThat(RefGlob.name("HEAD").refPrefix(), is("HEAD"));
+        assertThat(RefGlob.ref("master").refPrefix(), is(nullValue()));
+        assertThat(RefGlob.ref("refs/heads/a+b").refPrefix(), is(nullValue()));
+        assertThat(RefGlob.name("*").refPrefix(), is(nullValue()));
+        assertThat(RefGlob.lsRemote("refs/heads/*").refPrefix(), is(nullValue()));
+    }
+
+    @Test
+    void refPrefixesCombineGlobAndNamespaces() {
+        assertThat(RefGlob.refPrefixes(null, false, false), is(empty()));
+        assertThat(RefGlob.refPrefixes(null, true, true), contains("refs/heads/", "refs/tags/"));
+        assertThat(RefGlob.refPrefixes(RefGlob.ref("master"), true, false), contains("refs/heads/"));
+        assertThat(RefGlob.refPrefixes(RefGlob.ref("refs/changes/*"), false, false), contains("refs/changes/"));
+        assertThat(RefGlob.refPrefixes(RefGlob.ref("refs/tags/v*"), true, true), contains("refs/tags/v"));
+        assertThat(RefGlob.refPrefixes(RefGlob.ref("refs/*"), true, false), contains("refs/heads/"));
+        assertThat(RefGlob.refPrefixes(RefGlob.ref("refs/changes/*"), true, false), contains("refs/heads/"));
+    }
+
+    @Test
+    void globsAreCompiledOnce() {
+        assertThat(RefGlob.lsRemote("refs/heads/*"), is(sameInstance(RefGlob.lsRemote("refs/heads/*"))));
+        assertThat(RefGlob.ref("refs/heads/*"), is(sameInstance(RefGlob.ref("refs/heads/*"))));
+    }
+}
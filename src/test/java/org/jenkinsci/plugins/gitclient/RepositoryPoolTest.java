@@ -0,0 +1,77 @@
+package org.jenkinsci.plugins.gitclient;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.sameInstance;
+
+import java.io.File;
+import java.nio.file.Files;
+import org.eclipse.jgit.lib.Repository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class RepositoryPoolTest {
+
+    @TempDir
+    private File workspace;
+
+    private final RepositoryPool pool = new RepositoryPool(60_000L);
+
+    @BeforeEach
+    void createRepository() throws Exception {
+        org.eclipse.jgit.api.Git.init().setDirectory(workspace).call().close();
+    }
+
+    @Test
+    void sameRepositoryIsShared() throws Exception {
+        Repository first;
+        try (Repository repo = pool.open(workspace)) {
+            first = repo;
+        }
+        try (Repository repo = pool.open(new File(workspace, "."))) {
+            assertThat(repo, is(sameInstance(first)));
+        }
+        assertThat(pool.size(), is(1));
+    }
+
+    @Test
+    void packDirectoryChangeReplacesRepository() throws Exception {
+        Repository first;
+        try (Repository repo = pool.open(workspace)) {
+            first = repo;
+        }
+        File packDir = new File(workspace, ".git/objects/pack");
+        Files.createDirectories(packDir.toPath());
+        packDir.setLastModified(packDir.lastModified() - 60_000L);
+        try (Repository repo = pool.open(workspace)) {
+            assertThat(repo, is(not(sameInstance(first))));
+        }
+    }
+
+    @Test
+    void idleRepositoryIsReleased() throws Exception {
+        try (Repository repo = pool.open(workspace)) {
+            assertThat(pool.size(), is(1));
+        }
+        pool.sweep(System.currentTimeMillis() + 60_000L);
+        assertThat(pool.size(), is(0));
+    }
+
+    @Test
+    void directoryWithoutRepositoryIsNotPooled() throws Exception {
+        File empty = new File(workspace, "empty");
+        Files.createDirectories(empty.toPath());
+        try (Repository repo = pool.open(empty)) {
+            assertThat(pool.size(), is(0));
+        }
+    }
+
+    @Test
+    void invalidateReleasesRepository() throws Exception {
+        pool.open(workspace).close();
+        pool.invalidate(workspace);
+        assertThat(pool.size(), is(0));
+    }
+}
@@ -0,0 +1,126 @@
+package org.jenkinsci.plugins.gitclient;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.eclipse.jgit.transport.CredentialsProvider;
+import org.eclipse.jgit.transport.RemoteSession;
+import org.eclipse.jgit.transport.SshSessionFactory;
+import org.eclipse.jgit.transport.URIish;
+import org.eclipse.jgit.util.FS;
+import org.junit.jupiter.api.Test;
+
+class SshSessionPoolTest {
+
+    private final SshSessionPool pool = new SshSessionPool(60_000L, 2, 2);
+    private final List<CountingFactory> factories = new ArrayList<>();
+    private final URIish uri = new URIish().setHost("git.example.com").setPort(22).setUser("git");
+
+    private SshSessionFactory sessionFactory(String credentials) {
+        return pool.sessionFactory(credentials, () -> {
+            CountingFactory factory = new CountingFactory();
+            factories.add(factory);
+            return factory;
+        });
+    }
+
+    private RemoteSession open(String credentials) throws Exception {
+        return sessionFactory(credentials).getSession(uri, null, FS.DETECTED, 0);
+    }
+
+    @Test
+    void releasedSessionIsReused() throws Exception {
+        SshSessionFactory factory = sessionFactory("key");
+        factory.releaseSession(factory.getSession(uri, null, FS.DETECTED, 0));
+        open("key").disconnect();
+
+        assertThat(factories.size(), is(1));
+        assertThat(factories.get(0).sessions.size(), is(1));
+        assertThat(factories.get(0).sessions.get(0).disconnected, is(false));
+        assertThat(pool.size(), is(1));
+    }
+
+    @Test
+    void credentialsAreNotShared() throws Exception {
+        open("key").disconnect();
+        open("other key").disconnect();
+
+        assertThat(factories.size(), is(2));
+        assertThat(pool.size(), is(2));
+    }
+
+    @Test
+    void sessionsAreSharedUpToTheChannelAndHostLimits() throws Exception {
+        List<RemoteSession> leases = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            leases.add(open("key"));
+        }
+        List<CountingSession> sessions = factories.get(0).sessions;
+        // two channels in each of two pooled sessions, the fifth command connects without pooling
+        assertThat(sessions.size(), is(3));
+        assertThat(pool.size(), is(2));
+
+        leases.get(4).disconnect();
+        assertThat(sessions.get(2).disconnected, is(true));
+        for (RemoteSession lease : leases) {
+            lease.disconnect();
+        }
+        assertThat(sessions.get(0).disconnected, is(false));
+        assertThat(sessions.get(1).disconnected, is(false));
+    }
+
+    @Test
+    void idleSessionsAreClosed() throws Exception {
+        RemoteSession busy = open("key");
+        open("other key").disconnect();
+
+        pool.sweep(System.currentTimeMillis() + 60_000L);
+        assertThat(pool.size(), is(1));
+        assertThat(factories.get(1).sessions.get(0).disconnected, is(true));
+        assertThat(factories.get(1).closed, is(true));
+        assertThat(factories.get(0).closed, is(false));
+
+        busy.disconnect();
+        pool.sweep(System.currentTimeMillis() + 60_000L);
+        assertThat(pool.size(), is(0));
+        assertThat(factories.get(0).closed, is(true));
+    }
+
+    private static class CountingFactory extends SshSessionFactory implements AutoCloseable {
+        final List<CountingSession> sessions = new ArrayList<>();
+        boolean closed;
+
+        @Override
+        public RemoteSession getSession(URIish uri, CredentialsProvider credentialsProvider, FS fs, int tms) {
+            CountingSession session = new CountingSession();
+            sessions.add(session);
+            return session;
+        }
+
+        @Override
+        public String getType() {
+            return "counting";
+        }
+
+        @Override
+        public void close() {
+            closed = true;
+        }
+    }
+
+    private static class CountingSession implements RemoteSession {
+        boolean disconnected;
+
+        @Override
+        public Process exec(String commandName, int timeout) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void disconnect() {
+            disconnected = true;
+        }
+    }
+}
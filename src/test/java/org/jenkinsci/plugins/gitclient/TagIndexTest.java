@@ -0,0 +1,84 @@
+package org.jenkinsci.plugins.gitclient;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.sameInstance;
+
+import java.io.File;
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class TagIndexTest {
+
+    @TempDir
+    private File workspace;
+
+    private Git git;
+    private Repository repo;
+    private RevCommit first;
+    private RevCommit second;
+
+    @BeforeEach
+    void createRepository() throws Exception {
+        TagIndex.clear();
+        git = Git.init().setDirectory(workspace).call();
+        repo = git.getRepository();
+        first = git.commit().setMessage("first").setAllowEmpty(true).call();
+        second = git.commit().setMessage("second").setAllowEmpty(true).call();
+    }
+
+    @AfterEach
+    void closeRepository() {
+        git.close();
+        TagIndex.clear();
+    }
+
+    @Test
+    void annotatedTagsArePeeled() throws Exception {
+        git.tag().setName("annotated").setObjectId(first).setAnnotated(true).setMessage("a").call();
+        git.tag().setName("lightweight").setObjectId(first).setAnnotated(false).call();
+
+        TagIndex index = TagIndex.of(repo);
+        assertThat(index.size(), is(2));
+        assertThat(
+                index.tags(first).stream().map(TagIndex.Tag::shortName).toList(),
+                contains("annotated", "lightweight"));
+        assertThat(index.tags(first).get(0).annotated(), is(true));
+        assertThat(index.tags(first).get(0).id(), is(not(first.getId())));
+        assertThat(index.tags(second), is(empty()));
+    }
+
+    @Test
+    void unchangedTagsKeepTheIndex() throws Exception {
+        git.tag().setName("v1").setObjectId(first).setAnnotated(true).setMessage("v1").call();
+        TagIndex index = TagIndex.of(repo);
+
+        assertThat(TagIndex.of(repo), is(sameInstance(index)));
+    }
+
+    @Test
+    void createdMovedAndDeletedTagsAreUpdated() throws Exception {
+        git.tag().setName("moved").setObjectId(first).setAnnotated(false).call();
+        git.tag().setName("deleted").setObjectId(first).setAnnotated(false).call();
+        TagIndex.of(repo);
+
+        git.tag().setName("moved").setObjectId(second).setAnnotated(false).setForceUpdate(true).call();
+        git.tagDelete().setTags("deleted").call();
+        git.tag().setName("created").setObjectId(second).setAnnotated(true).setMessage("c").call();
+
+        TagIndex index = TagIndex.of(repo);
+        assertThat(index.size(), is(2));
+        assertThat(index.tags(first), is(empty()));
+        assertThat(
+                index.tags(second).stream().map(TagIndex.Tag::shortName).toList(),
+                contains("created", "moved"));
+    }
+}
@@ -0,0 +1,113 @@
+package org.jenkinsci.plugins.gitclient.cgit;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.sameInstance;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class CredentialFileCacheTest {
+
+    @TempDir
+    private File tempDir;
+
+    private final CredentialFileCache cache = new CredentialFileCache(60_000L);
+    private final Object credentials = new Object();
+    private final AtomicInteger writes = new AtomicInteger();
+
+    private CredentialFileCache.CredentialFiles write() throws IOException {
+        Path secret = new File(tempDir, "secret-" + writes.incrementAndGet()).toPath();
+        Files.writeString(secret, "secret");
+        return new CredentialFileCache.CredentialFiles(List.of(secret), Map.of("SECRET_FILE", secret.toString()));
+    }
+
+    private Path secretFile(CredentialFileCache.CredentialFiles files) {
+        return Path.of(files.getEnvironment().get("SECRET_FILE"));
+    }
+
+    @Test
+    void filesAreWrittenOnce() throws Exception {
+        CredentialFileCache.CredentialFiles first = cache.acquire(credentials, "askpass", this::write);
+        cache.release(first);
+        CredentialFileCache.CredentialFiles second = cache.acquire(credentials, "askpass", this::write);
+        cache.release(second);
+
+        assertThat(second, is(sameInstance(first)));
+        assertThat(writes.get(), is(1));
+        assertThat(Files.exists(secretFile(first)), is(true));
+    }
+
+    @Test
+    void otherCredentialsAreWrittenSeparately() throws Exception {
+        CredentialFileCache.CredentialFiles first = cache.acquire(credentials, "askpass", this::write);
+        CredentialFileCache.CredentialFiles second = cache.acquire(new Object(), "askpass", this::write);
+        CredentialFileCache.CredentialFiles third = cache.acquire(credentials, "ssh git", this::write);
+
+        assertThat(second, is(not(sameInstance(first))));
+        assertThat(third, is(not(sameInstance(first))));
+        assertThat(cache.size(), is(3));
+    }
+
+    @Test
+    void clearDeletesUnusedFiles() throws Exception {
+        CredentialFileCache.CredentialFiles files = cache.acquire(credentials, "askpass", this::write);
+        cache.release(files);
+        cache.clear();
+
+        assertThat(Files.exists(secretFile(files)), is(false));
+        assertThat(cache.size(), is(0));
+    }
+
+    @Test
+    void clearKeepsFilesInUseUntilReleased() throws Exception {
+        CredentialFileCache.CredentialFiles files = cache.acquire(credentials, "askpass", this::write);
+        cache.clear();
+        assertThat(Files.exists(secretFile(files)), is(true));
+
+        cache.release(files);
+        assertThat(Files.exists(secretFile(files)), is(false));
+    }
+
+    @Test
+    void filesAreDeletedWhenTheCommandCompletesByDefault() throws Exception {
+        CredentialFileCache perCommand = new CredentialFileCache();
+        CredentialFileCache.CredentialFiles files = perCommand.acquire(credentials, "askpass", this::write);
+        assertThat(Files.exists(secretFile(files)), is(true));
+
+        perCommand.release(files);
+        assertThat(Files.exists(secretFile(files)), is(false));
+        assertThat(perCommand.size(), is(0));
+    }
+
+    @Test
+    void idleFilesAreDeleted() throws Exception {
+        CredentialFileCache.CredentialFiles files = cache.acquire(credentials, "askpass", this::write);
+        cache.release(files);
+        cache.sweep(System.currentTimeMillis() + 60_000L);
+
+        assertThat(Files.exists(secretFile(files)), is(false));
+        assertThat(cache.size(), is(0));
+    }
+
+    @Test
+    void missingFilesAreWrittenAgain() throws Exception {
+        CredentialFileCache.CredentialFiles first = cache.acquire(credentials, "askpass", this::write);
+        cache.release(first);
+        Files.delete(secretFile(first));
+
+        CredentialFileCache.CredentialFiles second = cache.acquire(credentials, "askpass", this::write);
+        cache.release(second);
+
+        assertThat(second, is(not(sameInstance(first))));
+        assertThat(writes.get(), is(2));
+    }
+}
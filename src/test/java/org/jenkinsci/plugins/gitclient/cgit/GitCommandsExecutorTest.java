@@ -3,9 +3,11 @@ package org.jenkinsci.plugins.gitclient.cgit;
 import static java.util.Arrays.asList;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.emptyString;
+import static org.hamcrest.Matchers.hasSize;
 import static org.hamcrest.Matchers.instanceOf;
 import static org.hamcrest.Matchers.is;
 import static org.hamcrest.Matchers.lessThan;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
 import static org.hamcrest.Matchers.nullValue;
 import static org.hamcrest.Matchers.theInstance;
 import static org.junit.jupiter.api.Assertions.*;
@@ -19,8 +21,13 @@ import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.Queue;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -223,6 +230,75 @@ class GitCommandsExecutorTest {
         assertThat(e.getCause(), is(theInstance(commandException)));
     }
 
+    @Test
+    void nestedCommandsAreInvoked() throws Exception {
+        Queue<String> invoked = new ConcurrentLinkedQueue<>();
+        List<GitCommandsExecutor.NestedCommand> commands =
+                asList(new TreeCommand("a", 3, invoked), new TreeCommand("b", 3, invoked));
+
+        new GitCommandsExecutor(threads, listener).invokeNested(commands);
+
+        assertThat(invoked, hasSize(2 * (1 + 2 + 4)));
+    }
+
+    @Test
+    void nestedCommandFails() {
+        GitCommandsExecutor.NestedCommand good = List::of;
+        GitCommandsExecutor.NestedCommand bad = () -> {
+            throw new RuntimeException(error);
+        };
+        List<GitCommandsExecutor.NestedCommand> commands = Collections.singletonList(() -> List.of(good, bad));
+
+        Exception e = assertThrows(
+                GitException.class, () -> new GitCommandsExecutor(threads, listener).invokeNested(commands));
+        assertThat(e.getMessage(), is("java.lang.RuntimeException: " + error));
+    }
+
+    @Test
+    void commandsPerHostAreLimited() throws Exception {
+        AtomicInteger current = new AtomicInteger();
+        AtomicInteger maximum = new AtomicInteger();
+        List<GitCommandsExecutor.NestedCommand> commands = new ArrayList<>();
+        for (int i = 0; i < 6; i++) {
+            commands.add(new HostCommand("threads-" + threads + ".example.com", current, maximum));
+        }
+
+        new GitCommandsExecutor(threads, listener, 2).invokeNested(commands);
+
+        assertThat(maximum.get(), is(lessThanOrEqualTo(2)));
+        assertThat(current.get(), is(0));
+    }
+
+    @Test
+    void commandsRunWithTheRequestedParallelism() throws Exception {
+        // More commands of the same host at once than processors of most machines
+        int parallel = Math.min(threads, 40);
+        CountDownLatch started = new CountDownLatch(parallel);
+        AtomicInteger timedOut = new AtomicInteger();
+        List<GitCommandsExecutor.NestedCommand> commands = new ArrayList<>();
+        for (int i = 0; i < parallel; i++) {
+            commands.add(new GitCommandsExecutor.NestedCommand() {
+                @Override
+                public List<GitCommandsExecutor.NestedCommand> call() throws Exception {
+                    started.countDown();
+                    if (!started.await(30, TimeUnit.SECONDS)) {
+                        timedOut.incrementAndGet();
+                    }
+                    return List.of();
+                }
+
+                @Override
+                public String getHost() {
+                    return "parallel.example.com";
+                }
+            });
+        }
+
+        new GitCommandsExecutor(threads, listener).invokeNested(commands);
+
+        assertThat(timedOut.get(), is(0));
+    }
+
     private void loggedNoOutput() {
         String loggedOutput = logStream.toString();
         assertThat(loggedOutput, is(emptyString()));
@@ -288,4 +364,58 @@ class GitCommandsExecutorTest {
             throw exception;
         }
     }
+
+    /* A nested command with two nested commands of its own until depth is reached */
+    private static class TreeCommand implements GitCommandsExecutor.NestedCommand {
+
+        private final String name;
+        private final int depth;
+        private final Queue<String> invoked;
+
+        TreeCommand(String name, int depth, Queue<String> invoked) {
+            this.name = name;
+            this.depth = depth;
+            this.invoked = invoked;
+        }
+
+        @Override
+        public List<TreeCommand> call() {
+            invoked.add(name);
+            if (depth == 1) {
+                return List.of();
+            }
+            return List.of(
+                    new TreeCommand(name + "/0", depth - 1, invoked), new TreeCommand(name + "/1", depth - 1, invoked));
+        }
+    }
+
+    /* A command for a host which records how many commands run against that host at once */
+    private static class HostCommand implements GitCommandsExecutor.NestedCommand {
+
+        private final String host;
+        private final AtomicInteger current;
+        private final AtomicInteger maximum;
+
+        HostCommand(String host, AtomicInteger current, AtomicInteger maximum) {
+            this.host = host;
+            this.current = current;
+            this.maximum = maximum;
+        }
+
+        @Override
+        public List<GitCommandsExecutor.NestedCommand> call() throws Exception {
+            maximum.accumulateAndGet(current.incrementAndGet(), Math::max);
+            try {
+                Thread.sleep(20);
+            } finally {
+                current.decrementAndGet();
+            }
+            return List.of();
+        }
+
+        @Override
+        public String getHost() {
+            return host;
+        }
+    }
 }
@@ -0,0 +1,75 @@
+package org.jenkinsci.plugins.gitclient.cgit;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.is;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import hudson.plugins.git.GitException;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+class RecordOutputStreamTest {
+
+    private final List<String> records = new ArrayList<>();
+
+    @Test
+    void linesSplitAcrossWrites() throws Exception {
+        RecordOutputStream out = RecordOutputStream.lines(StandardCharsets.UTF_8, records::add);
+        out.write("first li".getBytes(StandardCharsets.UTF_8));
+        out.write("ne\r\nsecond line\nthi".getBytes(StandardCharsets.UTF_8));
+        out.write('r');
+        out.write('d');
+        assertThat(records, contains("first line", "second line"));
+        out.close();
+        assertThat(records, contains("first line", "second line", "third"));
+        assertThat(out.getRecordCount(), is(3L));
+        out.checkFailure();
+    }
+
+    @Test
+    void nulTerminatedRecordsKeepNewlines() throws Exception {
+        RecordOutputStream out = RecordOutputStream.nulTerminated(StandardCharsets.UTF_8, records::add);
+        byte[] bytes = "a\nb\0c\r\n\0".getBytes(StandardCharsets.UTF_8);
+        out.write(bytes, 0, bytes.length);
+        out.close();
+        assertThat(records, contains("a\nb", "c\r\n"));
+    }
+
+    @Test
+    void emptyLinesAreReported() throws Exception {
+        RecordOutputStream out = RecordOutputStream.lines(StandardCharsets.UTF_8, records::add);
+        out.write("\n\nx\n".getBytes(StandardCharsets.UTF_8));
+        out.close();
+        assertThat(records, contains("", "", "x"));
+    }
+
+    @Test
+    void consumerFailureIsDeferred() throws Exception {
+        RecordOutputStream out = RecordOutputStream.lines(StandardCharsets.UTF_8, line -> {
+            if (line.equals("bad")) {
+                throw new IOException("cannot parse " + line);
+            }
+            records.add(line);
+        });
+        out.write("good\nbad\nignored\n".getBytes(StandardCharsets.UTF_8));
+        out.close();
+        assertThat(records, contains("good"));
+        IOException e = assertThrows(IOException.class, out::checkFailure);
+        assertThat(e.getMessage(), is("cannot parse bad"));
+    }
+
+    @Test
+    void uncheckedConsumerFailureIsWrapped() throws Exception {
+        RecordOutputStream out = RecordOutputStream.lines(StandardCharsets.UTF_8, line -> {
+            throw new IllegalArgumentException(line);
+        });
+        out.write("not a sha1\n".getBytes(StandardCharsets.UTF_8));
+        out.close();
+        GitException e = assertThrows(GitException.class, out::checkFailure);
+        assertThat(e.getCause().getMessage(), is("not a sha1"));
+    }
+}
@@ -0,0 +1,123 @@
+package org.jenkinsci.plugins.gitclient.jgit;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.sameInstance;
+
+import com.sun.net.httpserver.HttpServer;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import javax.net.ssl.HostnameVerifier;
+import org.apache.http.HttpHost;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.HttpClient;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.util.EntityUtils;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class HttpClientPoolTest {
+
+    private final HttpClientPool pool = new HttpClientPool(60_000L, 4, 2);
+    private final List<Integer> clientPorts = new CopyOnWriteArrayList<>();
+    private final CountDownLatch slowRequests = new CountDownLatch(5);
+    private HttpServer server;
+
+    @BeforeEach
+    void startServer() throws Exception {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext("/", exchange -> {
+            clientPorts.add(exchange.getRemoteAddress().getPort());
+            if (exchange.getRequestURI().getPath().equals("/slow")) {
+                // Answer once all slow requests hold a connection
+                slowRequests.countDown();
+                try {
+                    slowRequests.await(30, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            byte[] body = "ok".getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(200, body.length);
+            exchange.getResponseBody().write(body);
+            exchange.close();
+        });
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.start();
+    }
+
+    @AfterEach
+    void stopServer() {
+        server.stop(0);
+    }
+
+    private String get(HttpClient client, String path) throws Exception {
+        String url = "http://127.0.0.1:" + server.getAddress().getPort() + path;
+        HttpResponse response = client.execute(new HttpGet(url));
+        return EntityUtils.toString(response.getEntity());
+    }
+
+    @Test
+    void clientIsSharedPerProxyAndVerifier() {
+        HostnameVerifier verifier = (hostname, session) -> true;
+        HttpClient client = pool.client(null, null);
+
+        assertThat(pool.client(null, null), is(sameInstance(client)));
+        assertThat(pool.client(new HttpHost("proxy.example.com", 3128), null), is(not(sameInstance(client))));
+        assertThat(pool.client(null, verifier), is(not(sameInstance(client))));
+        assertThat(pool.stats().getMax(), is(12));
+    }
+
+    @Test
+    void connectionIsReusedByFollowingRequests() throws Exception {
+        assertThat(get(pool.client(null, null), "/info/refs"), is("ok"));
+        assertThat(get(pool.client(null, null), "/git-upload-pack"), is("ok"));
+
+        assertThat(clientPorts.size(), is(2));
+        assertThat(clientPorts.get(1), is(clientPorts.get(0)));
+        assertThat(pool.stats().getAvailable(), is(1));
+        assertThat(pool.stats().getLeased(), is(0));
+    }
+
+    @Test
+    void requestsBeyondPoolLimitsUseUnpooledConnections() throws Exception {
+        HttpClient client = pool.client(null, null);
+        ExecutorService executor = Executors.newFixedThreadPool(5);
+        try {
+            // More concurrent requests than pooled connections per route, none of them waits for a connection
+            List<Future<String>> responses = new ArrayList<>();
+            for (int i = 0; i < 5; i++) {
+                responses.add(executor.submit(() -> get(client, "/slow")));
+            }
+            for (Future<String> response : responses) {
+                assertThat(response.get(30, TimeUnit.SECONDS), is("ok"));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertThat(pool.stats().getLeased(), is(0));
+        assertThat(pool.stats().getAvailable(), is(2));
+        assertThat(get(client, "/info/refs"), is("ok"));
+    }
+
+    @Test
+    void disabledPoolCreatesClientPerConnection() throws Exception {
+        HttpClientPool disabled = new HttpClientPool(0L, 4, 2);
+
+        assertThat(disabled.client(null, null), is(not(sameInstance(disabled.client(null, null)))));
+        assertThat(get(disabled.client(null, null), "/info/refs"), is("ok"));
+        assertThat(disabled.stats().getMax(), is(0));
+    }
+}
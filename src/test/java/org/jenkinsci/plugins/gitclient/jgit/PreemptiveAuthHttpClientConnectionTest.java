@@ -2,8 +2,26 @@ package org.jenkinsci.plugins.gitclient.jgit;
 
 import static org.junit.jupiter.api.Assertions.*;
 
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
 import org.apache.http.auth.NTCredentials;
+import org.eclipse.jgit.errors.TransportException;
+import org.eclipse.jgit.internal.storage.dfs.DfsRepositoryDescription;
+import org.eclipse.jgit.internal.storage.dfs.InMemoryRepository;
+import org.eclipse.jgit.lib.NullProgressMonitor;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.transport.RefSpec;
+import org.eclipse.jgit.transport.Transport;
+import org.eclipse.jgit.transport.TransportHttp;
 import org.eclipse.jgit.transport.URIish;
+import org.eclipse.jgit.transport.http.HttpConnection;
+import org.eclipse.jgit.transport.http.HttpConnectionFactory2;
 import org.junit.jupiter.api.Test;
 
 /**
@@ -128,4 +146,79 @@ class PreemptiveAuthHttpClientConnectionTest {
         createNTCredentials(
                 "cnorris@walker.example.com", "round\\:/house", "WALKER.EXAMPLE.COM", "cnorris", "round\\:/house");
     }
+
+    private static String pktLine(String line) {
+        return String.format("%04x", line.length() + 4) + line;
+    }
+
+    /* Smart HTTP server advertising one branch, which answers upload-pack requests with an HTML page */
+    private static HttpServer startServer() throws IOException {
+        HttpServer server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext("/", exchange -> {
+            String body;
+            if (exchange.getRequestMethod().equals("GET")) {
+                body = pktLine("# service=git-upload-pack\n") + "0000"
+                        + pktLine("1111111111111111111111111111111111111111 refs/heads/master\0multi_ack_detailed\n")
+                        + "0000";
+                exchange.getResponseHeaders().add("Content-Type", "application/x-git-upload-pack-advertisement");
+            } else {
+                exchange.getRequestBody().readAllBytes();
+                body = "<html>proxy login</html>\n".repeat(10_000);
+                exchange.getResponseHeaders().add("Content-Type", "text/html");
+            }
+            byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(200, bytes.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(bytes);
+            } catch (IOException e) {
+                // The client closed the connection
+            }
+        });
+        server.start();
+        return server;
+    }
+
+    @Test
+    void sessionReleasesResponsesWhichWereNotRead() throws Exception {
+        HttpServer server = startServer();
+        URL url = new URL("http://127.0.0.1:" + server.getAddress().getPort() + "/repo.git/info/refs");
+        PreemptiveAuthHttpClientConnectionFactory factory = new PreemptiveAuthHttpClientConnectionFactory(null);
+        try {
+            // More responses than connections per route, a leaked connection would block the last ones
+            for (int i = 0; i < HttpClientPool.MAX_CONNECTIONS_PER_ROUTE + 2; i++) {
+                HttpConnectionFactory2.GitSession session = factory.newSession();
+                HttpConnection connection = session.configure(factory.create(url), true);
+                connection.setRequestMethod("GET");
+                assertEquals(200, connection.getResponseCode());
+                // Dropped without reading its input stream, as JGit does when it fails
+                session.close();
+                assertEquals(
+                        0, PreemptiveAuthHttpClientConnectionFactory.getConnectionPoolStats().getLeased());
+            }
+        } finally {
+            server.stop(0);
+        }
+    }
+
+    @Test
+    void failedFetchesReleaseTheirConnections() throws Exception {
+        HttpServer server = startServer();
+        URIish uri = new URIish("http://127.0.0.1:" + server.getAddress().getPort() + "/repo.git");
+        PreemptiveAuthHttpClientConnectionFactory factory = new PreemptiveAuthHttpClientConnectionFactory(null);
+        try (Repository repo = new InMemoryRepository(new DfsRepositoryDescription("test"))) {
+            for (int i = 0; i < HttpClientPool.MAX_CONNECTIONS_PER_ROUTE + 2; i++) {
+                try (Transport transport = Transport.open(repo, uri)) {
+                    ((TransportHttp) transport).setHttpConnectionFactory(factory);
+                    assertThrows(
+                            TransportException.class,
+                            () -> transport.fetch(
+                                    NullProgressMonitor.INSTANCE, List.of(new RefSpec("refs/heads/master"))));
+                }
+                assertEquals(
+                        0, PreemptiveAuthHttpClientConnectionFactory.getConnectionPoolStats().getLeased());
+            }
+        } finally {
+            server.stop(0);
+        }
+    }
 }